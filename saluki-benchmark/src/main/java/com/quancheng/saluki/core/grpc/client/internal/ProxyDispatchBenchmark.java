@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
+import com.quancheng.saluki.core.grpc.client.GrpcProtocolClient;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.utils.ClassHelper;
+import com.quancheng.saluki.core.utils.ReflectUtils;
+
+import io.grpc.Channel;
+
+/**
+ * 对比JDK动态代理与javassist生成Stub的客户端分派开销，调用在构建完GrpcRequest后直接返回，不发出RPC；
+ * 运行方式：mvn -Pbenchmark package && java -jar saluki-benchmark/target/benchmarks.jar
+ *
+ * @author liushiming
+ * @version ProxyDispatchBenchmark.java, v 0.0.1 2017年10月20日 上午10:05:12 liushiming
+ * @since JDK 1.8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+  public interface EchoService {
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    Object echo(Object request);
+  }
+
+  private final Object request = new Object();
+
+  private EchoService jdkProxy;
+
+  private EchoService javassistStub;
+
+  @Setup
+  public void setup() {
+    GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+        EchoService.class.getName());
+    jdkProxy = (EchoService) Proxy.newProxyInstance(ClassHelper.getClassLoader(),
+        new Class[] {EchoService.class}, new NoopClientInvocation(refUrl));
+    javassistStub = (EchoService) ClientStubGenerator.newStub(EchoService.class,
+        new NoopClientInvocation(refUrl));
+  }
+
+  @Benchmark
+  public Object jdkProxy() {
+    return jdkProxy.echo(request);
+  }
+
+  @Benchmark
+  public Object javassistStub() {
+    return javassistStub.echo(request);
+  }
+
+  /**
+   * 与DefaultProxyClient的调用构建方式相同，只把发出RPC的部分换成直接返回请求参数
+   */
+  private static final class NoopClientInvocation extends AbstractClientInvocation {
+
+    private final GrpcProtocolClient.ChannelCall channelCall =
+        new GrpcProtocolClient.ChannelCall() {
+
+          @Override
+          public Channel getChannel(GrpcURL refUrl) {
+            return null;
+          }
+        };
+
+    private NoopClientInvocation(GrpcURL refUrl) {
+      super(refUrl);
+      for (Method method : ReflectUtils.findAllPublicMethods(EchoService.class)) {
+        super.cacheInvocationPlan(method.getName(), GrpcInvocationPlan.create(refUrl, method));
+      }
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(Method method, Object[] args) {
+      return this.buildGrpcRequest(super.getInvocationPlan(method.getName()), args);
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(GrpcInvocationPlan invocationPlan, Object[] args) {
+      return new GrpcRequest.Default(channelCall, invocationPlan, args, Constants.RPCTYPE_BLOCKING,
+          1000);
+    }
+
+    @Override
+    protected Object doInvoke(GrpcRequest request) {
+      return request.getRequestParam();
+    }
+  }
+
+}
@@ -42,6 +42,59 @@ public class Constants {
   public static final String REMOTE_PROTOCOL = "grpc";
   public static final String MONITOR_PROTOCOL = "monitor";
 
+  public static final String PROXY_KEY = "proxy";
+  public static final String PROXY_JDK = "jdk";
+  public static final String PROXY_JAVASSIST = "javassist";
+
+  public static final String ISOLATION_KEY = "isolation";
+  public static final String ISOLATION_HYSTRIX = "hystrix";
+  public static final String ISOLATION_NATIVE = "native";
+  public static final String MAX_CONCURRENT_KEY = "maxconcurrent";
+  public static final int DEFAULT_MAX_CONCURRENT = 500;
+
+  public static final String IDEMPOTENT_METHODS_KEY = "idempotentmethods";
+  public static final String HEDGING_METHODS_KEY = "hedgingmethods";
+  public static final String HEDGING_DELAY_KEY = "hedgingdelay";
+  public static final String MAX_HEDGES_KEY = "maxhedges";
+  public static final int DEFAULT_MAX_HEDGES = 1;
+
+  public static final String BATCH_METHODS_KEY = "batchmethods";
+
+  public static final String COALESCE_METHODS_KEY = "coalescemethods";
+
+  public static final String IO_THREADS_KEY = "iothreads";
+  public static final String TRANSPORT_KEY = "transport";
+  public static final String SHARE_CHANNEL_KEY = "sharechannel";
+  public static final String CONNECTIONS_KEY = "connections";
+  public static final String MAX_CONNECTIONS_KEY = "maxconnections";
+  public static final String MAX_STREAMS_KEY = "maxstreams";
+  public static final int DEFAULT_MAX_STREAMS = 100;
+  public static final String OUTLIER_DETECTION_KEY = "outlierdetection";
+  public static final String OUTLIER_CONSECUTIVE_ERRORS_KEY = "outlierconsecutiveerrors";
+  public static final String OUTLIER_EJECTION_TIME_KEY = "outlierejectiontime";
+  public static final String OUTLIER_MAX_EJECTION_PERCENT_KEY = "outliermaxejectionpercent";
+  public static final String HEALTH_CHECK_KEY = "healthcheck";
+  public static final String HEALTH_CHECK_INTERVAL_KEY = "healthcheckinterval";
+  public static final String LOAD_REPORT_RATE_KEY = "loadreportrate";
+
+  public static final String LOADBALANCE_KEY = "loadbalance";
+  public static final String WEIGHT_KEY = "weight";
+  public static final int DEFAULT_WEIGHT = 100;
+  public static final String TIMESTAMP_KEY = "timestamp";
+  public static final String ZONE_KEY = "zone";
+  public static final String REGION_KEY = "region";
+  public static final String LOCALITY_THRESHOLD_KEY = "localitythreshold";
+  public static final double DEFAULT_LOCALITY_THRESHOLD = 0.7;
+  public static final String WARMUP_KEY = "warmup";
+  public static final String WARMUP_CURVE_KEY = "warmupcurve";
+  public static final String MAX_INFLIGHT_KEY = "maxinflight";
+  public static final String HASH_KEY_KEY = "hashkey";
+  public static final String HASH_LOAD_FACTOR_KEY = "hashloadfactor";
+
+  public static final String CACHE_METHODS_KEY = "cachemethods";
+  public static final String CACHE_TTL_KEY = "cachettl";
+  public static final String CACHE_SIZE_KEY = "cachesize";
+
   public static final String ASYNC_KEY = "async";
   public static final int RPCTYPE_ASYNC = 1;
   public static final int RPCTYPE_BLOCKING = 2;
@@ -44,6 +44,38 @@ public class RpcBaseConfig implements Serializable {
 
     private Integer           httpPort;
 
+    private Integer           ioThreads;
+
+    private String            transport;
+
+    private Boolean           shareChannel;
+
+    private Integer           connections;
+
+    private Integer           maxConnections;
+
+    private Integer           maxStreams;
+
+    private Boolean           outlierDetection;
+
+    private Integer           outlierConsecutiveErrors;
+
+    private Long              outlierEjectionTime;
+
+    private Integer           outlierMaxEjectionPercent;
+
+    private Boolean           healthCheck;
+
+    private Long              healthCheckInterval;
+
+    private Double            loadReportRate;
+
+    private String            zone;
+
+    private String            region;
+
+    private Double            localityThreshold;
+
     public String getApplication() {
         return application;
     }
@@ -110,6 +142,149 @@ public class RpcBaseConfig implements Serializable {
         this.httpPort = httpPort;
     }
 
+    public Integer getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(Integer ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public Boolean getShareChannel() {
+        return shareChannel;
+    }
+
+    public void setShareChannel(Boolean shareChannel) {
+        this.shareChannel = shareChannel;
+    }
+
+    public Integer getConnections() {
+        return connections;
+    }
+
+    public void setConnections(Integer connections) {
+        this.connections = connections;
+    }
+
+    public Integer getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(Integer maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public Integer getMaxStreams() {
+        return maxStreams;
+    }
+
+    public void setMaxStreams(Integer maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    public Boolean getOutlierDetection() {
+        return outlierDetection;
+    }
+
+    public void setOutlierDetection(Boolean outlierDetection) {
+        this.outlierDetection = outlierDetection;
+    }
+
+    public Integer getOutlierConsecutiveErrors() {
+        return outlierConsecutiveErrors;
+    }
+
+    public void setOutlierConsecutiveErrors(Integer outlierConsecutiveErrors) {
+        this.outlierConsecutiveErrors = outlierConsecutiveErrors;
+    }
+
+    public Long getOutlierEjectionTime() {
+        return outlierEjectionTime;
+    }
+
+    public void setOutlierEjectionTime(Long outlierEjectionTime) {
+        this.outlierEjectionTime = outlierEjectionTime;
+    }
+
+    public Integer getOutlierMaxEjectionPercent() {
+        return outlierMaxEjectionPercent;
+    }
+
+    public void setOutlierMaxEjectionPercent(Integer outlierMaxEjectionPercent) {
+        this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+    }
+
+    public Boolean getHealthCheck() {
+        return healthCheck;
+    }
+
+    public void setHealthCheck(Boolean healthCheck) {
+        this.healthCheck = healthCheck;
+    }
+
+    public Long getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public void setHealthCheckInterval(Long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    public Double getLoadReportRate() {
+        return loadReportRate;
+    }
+
+    public void setLoadReportRate(Double loadReportRate) {
+        this.loadReportRate = loadReportRate;
+    }
+
+    public String getZone() {
+        return zone;
+    }
+
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+
+    public Double getLocalityThreshold() {
+        return localityThreshold;
+    }
+
+    public void setLocalityThreshold(Double localityThreshold) {
+        this.localityThreshold = localityThreshold;
+    }
+
+    /**
+     * 服务端注册时带上所在的可用区和地域，客户端引用时带上自己的可用区和地域，Picker据此优先同可用区的服务端
+     */
+    protected void addLocality(Map<String, String> params) {
+        if (StringUtils.isNotBlank(zone)) {
+            params.put(Constants.ZONE_KEY, zone);
+        }
+        if (StringUtils.isNotBlank(region)) {
+            params.put(Constants.REGION_KEY, region);
+        }
+        if (localityThreshold != null && localityThreshold > 0) {
+            params.put(Constants.LOCALITY_THRESHOLD_KEY, localityThreshold.toString());
+        }
+    }
+
     protected void addHttpPort(Map<String, String> params) {
         Integer httpport = getHttpPort();
         if (httpport != null && httpport != 0) {
@@ -180,7 +355,51 @@ public class RpcBaseConfig implements Serializable {
     }
 
     public GrpcEngine getGrpcEngine() {
-        return GrpcEngineHolder.getEngine(registryAddress, registryPort);
+        return GrpcEngineHolder.getEngine(registryAddress, registryPort, this.buildEngineOptions());
+    }
+
+    private Map<String, String> buildEngineOptions() {
+        Map<String, String> options = Maps.newHashMap();
+        if (ioThreads != null && ioThreads != 0) {
+            options.put(Constants.IO_THREADS_KEY, ioThreads.toString());
+        }
+        if (StringUtils.isNotBlank(transport)) {
+            options.put(Constants.TRANSPORT_KEY, transport);
+        }
+        if (shareChannel != null) {
+            options.put(Constants.SHARE_CHANNEL_KEY, shareChannel.toString());
+        }
+        if (connections != null && connections != 0) {
+            options.put(Constants.CONNECTIONS_KEY, connections.toString());
+        }
+        if (maxConnections != null && maxConnections != 0) {
+            options.put(Constants.MAX_CONNECTIONS_KEY, maxConnections.toString());
+        }
+        if (maxStreams != null && maxStreams != 0) {
+            options.put(Constants.MAX_STREAMS_KEY, maxStreams.toString());
+        }
+        if (outlierDetection != null) {
+            options.put(Constants.OUTLIER_DETECTION_KEY, outlierDetection.toString());
+        }
+        if (outlierConsecutiveErrors != null && outlierConsecutiveErrors != 0) {
+            options.put(Constants.OUTLIER_CONSECUTIVE_ERRORS_KEY, outlierConsecutiveErrors.toString());
+        }
+        if (outlierEjectionTime != null && outlierEjectionTime != 0) {
+            options.put(Constants.OUTLIER_EJECTION_TIME_KEY, outlierEjectionTime.toString());
+        }
+        if (outlierMaxEjectionPercent != null && outlierMaxEjectionPercent != 0) {
+            options.put(Constants.OUTLIER_MAX_EJECTION_PERCENT_KEY, outlierMaxEjectionPercent.toString());
+        }
+        if (healthCheck != null) {
+            options.put(Constants.HEALTH_CHECK_KEY, healthCheck.toString());
+        }
+        if (healthCheckInterval != null && healthCheckInterval != 0) {
+            options.put(Constants.HEALTH_CHECK_INTERVAL_KEY, healthCheckInterval.toString());
+        }
+        if (loadReportRate != null && loadReportRate > 0) {
+            options.put(Constants.LOAD_REPORT_RATE_KEY, loadReportRate.toString());
+        }
+        return options;
     }
 
     private static class GrpcEngineHolder {
@@ -197,7 +416,10 @@ public class RpcBaseConfig implements Serializable {
         private GrpcEngineHolder(){
         }
 
-        private GrpcEngine getGrpcEngine(String registryAddress, int registryPort) {
+        /**
+         * 同一个注册中心只有一个GrpcEngine，线程、传输和连接相关的配置以第一次创建时为准
+         */
+        private GrpcEngine getGrpcEngine(String registryAddress, int registryPort, Map<String, String> options) {
             String key = registryAddress + ":" + registryPort;
             LOCK.lock();
             try {
@@ -208,7 +430,7 @@ public class RpcBaseConfig implements Serializable {
                 Preconditions.checkNotNull(registryAddress, "registryAddress  is not Null", registryAddress);
                 Preconditions.checkState(registryPort != 0, "RegistryPort can not be zero", registryPort);
                 GrpcURL registryUrl = new GrpcURL(Constants.REGISTRY_PROTOCOL, registryAddress, registryPort);
-                engine = new GrpcEngine(registryUrl);
+                engine = new GrpcEngine(registryUrl, options);
                 ENGINES.put(key, engine);
                 return engine;
             } finally {
@@ -216,8 +438,9 @@ public class RpcBaseConfig implements Serializable {
             }
         }
 
-        public static final GrpcEngine getEngine(String registryAddress, Integer registryPort) {
-            return GrpcEngineHolderSingleton.INSTANCE.getGrpcEngine(registryAddress, registryPort);
+        public static final GrpcEngine getEngine(String registryAddress, Integer registryPort,
+                                                 Map<String, String> options) {
+            return GrpcEngineHolderSingleton.INSTANCE.getGrpcEngine(registryAddress, registryPort, options);
         }
 
     }
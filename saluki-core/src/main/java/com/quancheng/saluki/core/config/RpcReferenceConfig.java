@@ -54,6 +54,41 @@ public class RpcReferenceConfig extends RpcBaseConfig {
 
   private Set<Class> validatorGroups;
 
+  private String proxy;
+
+  private String isolation;
+
+  private Integer maxConcurrent;
+
+  private Set<String> idempotentMethods;
+
+  private Set<String> hedgingMethods;
+
+  private Integer hedgingDelay;
+
+  private Integer maxHedges;
+
+  private Set<String> batchMethods;
+
+  private Set<String> coalesceMethods;
+
+  private Set<String> cacheMethods;
+
+  private Integer cacheTtl;
+
+  private Integer cacheSize;
+
+  private String loadBalance;
+
+  private Integer maxInflight;
+
+  private String hashKey;
+
+  private Double hashLoadFactor;
+
+  private Integer warmup;
+
+  private String warmupCurve;
 
   private transient Object ref;
 
@@ -165,6 +200,150 @@ public class RpcReferenceConfig extends RpcBaseConfig {
     this.validatorGroups = validatorGroups;
   }
 
+  public String getProxy() {
+    return proxy;
+  }
+
+  public void setProxy(String proxy) {
+    this.proxy = proxy;
+  }
+
+  public String getIsolation() {
+    return isolation;
+  }
+
+  public void setIsolation(String isolation) {
+    this.isolation = isolation;
+  }
+
+  public Integer getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  public void setMaxConcurrent(int maxConcurrent) {
+    this.maxConcurrent = maxConcurrent;
+  }
+
+  public Set<String> getIdempotentMethods() {
+    return idempotentMethods;
+  }
+
+  public void setIdempotentMethods(Set<String> idempotentMethods) {
+    this.idempotentMethods = idempotentMethods;
+  }
+
+  public Set<String> getHedgingMethods() {
+    return hedgingMethods;
+  }
+
+  public void setHedgingMethods(Set<String> hedgingMethods) {
+    this.hedgingMethods = hedgingMethods;
+  }
+
+  public Integer getHedgingDelay() {
+    return hedgingDelay;
+  }
+
+  public void setHedgingDelay(int hedgingDelay) {
+    this.hedgingDelay = hedgingDelay;
+  }
+
+  public Integer getMaxHedges() {
+    return maxHedges;
+  }
+
+  public void setMaxHedges(int maxHedges) {
+    this.maxHedges = maxHedges;
+  }
+
+  public Set<String> getBatchMethods() {
+    return batchMethods;
+  }
+
+  public void setBatchMethods(Set<String> batchMethods) {
+    this.batchMethods = batchMethods;
+  }
+
+  public Set<String> getCoalesceMethods() {
+    return coalesceMethods;
+  }
+
+  public void setCoalesceMethods(Set<String> coalesceMethods) {
+    this.coalesceMethods = coalesceMethods;
+  }
+
+  public Set<String> getCacheMethods() {
+    return cacheMethods;
+  }
+
+  public void setCacheMethods(Set<String> cacheMethods) {
+    this.cacheMethods = cacheMethods;
+  }
+
+  public Integer getCacheTtl() {
+    return cacheTtl;
+  }
+
+  public void setCacheTtl(int cacheTtl) {
+    this.cacheTtl = cacheTtl;
+  }
+
+  public Integer getCacheSize() {
+    return cacheSize;
+  }
+
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+  }
+
+  public String getLoadBalance() {
+    return loadBalance;
+  }
+
+  public void setLoadBalance(String loadBalance) {
+    this.loadBalance = loadBalance;
+  }
+
+  public Integer getMaxInflight() {
+    return maxInflight;
+  }
+
+  public void setMaxInflight(int maxInflight) {
+    this.maxInflight = maxInflight;
+  }
+
+  public String getHashKey() {
+    return hashKey;
+  }
+
+  public void setHashKey(String hashKey) {
+    this.hashKey = hashKey;
+  }
+
+  public Double getHashLoadFactor() {
+    return hashLoadFactor;
+  }
+
+  public void setHashLoadFactor(double hashLoadFactor) {
+    this.hashLoadFactor = hashLoadFactor;
+  }
+
+  public Integer getWarmup() {
+    return warmup;
+  }
+
+  public void setWarmup(int warmup) {
+    this.warmup = warmup;
+  }
+
+  public String getWarmupCurve() {
+    return warmupCurve;
+  }
+
+  public void setWarmupCurve(String warmupCurve) {
+    this.warmupCurve = warmupCurve;
+  }
+
   public synchronized Object getProxyObj() {
     if (ref == null) {
       try {
@@ -192,6 +371,14 @@ public class RpcReferenceConfig extends RpcBaseConfig {
         this.addMonitorInterval(params);
         this.addHttpPort(params);
         this.addValidatorGroups(params);
+        this.addProxy(params);
+        this.addIsolation(params);
+        this.addHedging(params);
+        this.addBatchMethods(params);
+        this.addCoalesceMethods(params);
+        this.addCache(params);
+        this.addLoadBalance(params);
+        this.addLocality(params);
         GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, super.getHost(),
             super.getHttpPort(), serviceName, params);
         ref = super.getGrpcEngine().getClient(refUrl);
@@ -216,6 +403,104 @@ public class RpcReferenceConfig extends RpcBaseConfig {
     }
   }
 
+  private void addProxy(Map<String, String> params) {
+    String proxy = getProxy();
+    if (StringUtils.isNotBlank(proxy)) {
+      params.put(Constants.PROXY_KEY, proxy);
+    }
+  }
+
+  private void addIsolation(Map<String, String> params) {
+    String isolation = getIsolation();
+    if (StringUtils.isNotBlank(isolation)) {
+      params.put(Constants.ISOLATION_KEY, isolation);
+    }
+    Integer maxConcurrent = getMaxConcurrent();
+    if (maxConcurrent != null && maxConcurrent != 0) {
+      params.put(Constants.MAX_CONCURRENT_KEY, maxConcurrent.toString());
+    }
+  }
+
+  private void addHedging(Map<String, String> params) {
+    Set<String> idempotentMethods = getIdempotentMethods();
+    if (CollectionUtils.isNotEmpty(idempotentMethods)) {
+      validateMethods(idempotentMethods);
+      params.put(Constants.IDEMPOTENT_METHODS_KEY, StringUtils.join(idempotentMethods, ","));
+    }
+    Set<String> hedgingMethods = getHedgingMethods();
+    if (CollectionUtils.isNotEmpty(hedgingMethods)) {
+      validateMethods(hedgingMethods);
+      params.put(Constants.HEDGING_METHODS_KEY, StringUtils.join(hedgingMethods, ","));
+    }
+    Integer hedgingDelay = getHedgingDelay();
+    if (hedgingDelay != null && hedgingDelay != 0) {
+      params.put(Constants.HEDGING_DELAY_KEY, hedgingDelay.toString());
+    }
+    Integer maxHedges = getMaxHedges();
+    if (maxHedges != null && maxHedges != 0) {
+      params.put(Constants.MAX_HEDGES_KEY, maxHedges.toString());
+    }
+  }
+
+  private void addBatchMethods(Map<String, String> params) {
+    Set<String> batchMethods = getBatchMethods();
+    if (CollectionUtils.isNotEmpty(batchMethods)) {
+      validateMethods(batchMethods);
+      params.put(Constants.BATCH_METHODS_KEY, StringUtils.join(batchMethods, ","));
+    }
+  }
+
+  private void addCoalesceMethods(Map<String, String> params) {
+    Set<String> coalesceMethods = getCoalesceMethods();
+    if (CollectionUtils.isNotEmpty(coalesceMethods)) {
+      validateMethods(coalesceMethods);
+      params.put(Constants.COALESCE_METHODS_KEY, StringUtils.join(coalesceMethods, ","));
+    }
+  }
+
+  private void addCache(Map<String, String> params) {
+    Set<String> cacheMethods = getCacheMethods();
+    if (CollectionUtils.isNotEmpty(cacheMethods)) {
+      validateMethods(cacheMethods);
+      params.put(Constants.CACHE_METHODS_KEY, StringUtils.join(cacheMethods, ","));
+    }
+    Integer cacheTtl = getCacheTtl();
+    if (cacheTtl != null && cacheTtl != 0) {
+      params.put(Constants.CACHE_TTL_KEY, cacheTtl.toString());
+    }
+    Integer cacheSize = getCacheSize();
+    if (cacheSize != null && cacheSize != 0) {
+      params.put(Constants.CACHE_SIZE_KEY, cacheSize.toString());
+    }
+  }
+
+  private void addLoadBalance(Map<String, String> params) {
+    String loadBalance = getLoadBalance();
+    if (StringUtils.isNotBlank(loadBalance)) {
+      params.put(Constants.LOADBALANCE_KEY, loadBalance);
+    }
+    Integer maxInflight = getMaxInflight();
+    if (maxInflight != null && maxInflight != 0) {
+      params.put(Constants.MAX_INFLIGHT_KEY, maxInflight.toString());
+    }
+    String hashKey = getHashKey();
+    if (StringUtils.isNotBlank(hashKey)) {
+      params.put(Constants.HASH_KEY_KEY, hashKey);
+    }
+    Double hashLoadFactor = getHashLoadFactor();
+    if (hashLoadFactor != null && hashLoadFactor != 0) {
+      params.put(Constants.HASH_LOAD_FACTOR_KEY, hashLoadFactor.toString());
+    }
+    Integer warmup = getWarmup();
+    if (warmup != null && warmup != 0) {
+      params.put(Constants.WARMUP_KEY, warmup.toString());
+    }
+    String warmupCurve = getWarmupCurve();
+    if (StringUtils.isNotBlank(warmupCurve)) {
+      params.put(Constants.WARMUP_CURVE_KEY, warmupCurve);
+    }
+  }
+
   private void addAsync(Map<String, String> params) {
     if (this.isAsync()) {
       params.put(Constants.ASYNC_KEY, String.valueOf(Constants.RPCTYPE_ASYNC));
@@ -29,16 +29,50 @@ public class RpcServiceConfig extends RpcBaseConfig {
 
   private transient io.grpc.Server internalServer;
 
+  /**
+   * 服务端容量的相对权重，随注册的GrpcURL下发，客户端按weightedroundrobin选路时生效
+   */
+  private Integer weight;
+
+  /**
+   * 新启动时的预热时长（毫秒），客户端在这段时间内逐步把流量加到全量
+   */
+  private Integer warmup;
+
+  public Integer getWarmup() {
+    return warmup;
+  }
+
+  public void setWarmup(Integer warmup) {
+    this.warmup = warmup;
+  }
+
+  public Integer getWeight() {
+    return weight;
+  }
+
+  public void setWeight(Integer weight) {
+    this.weight = weight;
+  }
+
   public void destroy() {
     Runtime.getRuntime().addShutdownHook(new Thread() {
 
       public void run() {
         if (internalServer != null)
           internalServer.shutdown();
+        RpcServiceConfig.this.getGrpcEngine().destroy();
       }
     });
   }
 
+  /**
+   * 服务端数据变化导致已缓存的响应失效时调用，通知订阅了该服务的客户端清空响应缓存
+   */
+  public void publishCacheInvalidation(String serviceName) {
+    super.getGrpcEngine().publishCacheInvalidation(serviceName);
+  }
+
   public void addServiceDefinition(String serviceName, String group, String version,
       Object instance) {
     RpcServiceSingleConfig<Object> singleServiceConfig = new RpcServiceSingleConfig<Object>();
@@ -51,6 +85,7 @@ public class RpcServiceConfig extends RpcBaseConfig {
 
   public synchronized void export() {
     Map<GrpcURL, Object> providerUrls = Maps.newHashMap();
+    String timestamp = String.valueOf(System.currentTimeMillis());
     for (RpcServiceSingleConfig<Object> singleServiceConfig : singleServiceConfigs) {
       String serviceName = singleServiceConfig.getServiceName();
       Object serviceRef = singleServiceConfig.getRef();
@@ -61,6 +96,9 @@ public class RpcServiceConfig extends RpcBaseConfig {
       this.addInterval(params);
       this.addRegistryRpcPort(params);
       this.addHttpPort(params);
+      this.addWeight(params);
+      params.put(Constants.TIMESTAMP_KEY, timestamp);
+      this.addLocality(params);
       GrpcURL providerUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, super.getHost(),
           super.getRealityRpcPort(), serviceName, params);
       providerUrls.put(providerUrl, serviceRef);
@@ -84,6 +122,10 @@ public class RpcServiceConfig extends RpcBaseConfig {
       };
       awaitThread.setDaemon(false);
       awaitThread.start();
+      // 新版本的服务端上线后，客户端缓存的旧版本响应不再可信
+      for (RpcServiceSingleConfig<Object> singleServiceConfig : singleServiceConfigs) {
+        this.publishCacheInvalidation(singleServiceConfig.getServiceName());
+      }
     } catch (Exception e) {
       throw new IllegalStateException(e.getMessage(), e);
     }
@@ -123,6 +165,15 @@ public class RpcServiceConfig extends RpcBaseConfig {
     }
   }
 
+  private void addWeight(Map<String, String> params) {
+    if (weight != null && weight > 0) {
+      params.put(Constants.WEIGHT_KEY, weight.toString());
+    }
+    if (warmup != null && warmup > 0) {
+      params.put(Constants.WARMUP_KEY, warmup.toString());
+    }
+  }
+
   private void addRegistryRpcPort(Map<String, String> params) {
     Integer registryRpcPort = super.getRegistryRpcPort();
     if (registryRpcPort != 0) {
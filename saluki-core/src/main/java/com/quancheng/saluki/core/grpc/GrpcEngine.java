@@ -8,12 +8,12 @@ package com.quancheng.saluki.core.grpc;
 
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLException;
 
@@ -24,12 +24,13 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
-import com.quancheng.saluki.core.common.NamedThreadFactory;
 import com.quancheng.saluki.core.grpc.client.GrpcClientStrategy;
 import com.quancheng.saluki.core.grpc.client.GrpcProtocolClient;
 import com.quancheng.saluki.core.grpc.exception.RpcFrameworkException;
 import com.quancheng.saluki.core.grpc.interceptor.HeaderClientInterceptor;
 import com.quancheng.saluki.core.grpc.interceptor.HeaderServerInterceptor;
+import com.quancheng.saluki.core.grpc.loadbalance.HealthChecker;
+import com.quancheng.saluki.core.grpc.loadbalance.OutlierDetector;
 import com.quancheng.saluki.core.grpc.server.GrpcServerStrategy;
 import com.quancheng.saluki.core.grpc.util.SslUtil;
 import com.quancheng.saluki.core.registry.Registry;
@@ -39,7 +40,6 @@ import io.grpc.Attributes;
 import io.grpc.Channel;
 import io.grpc.ClientInterceptors;
 import io.grpc.Internal;
-import io.grpc.LoadBalancer;
 import io.grpc.ServerInterceptor;
 import io.grpc.ServerInterceptors;
 import io.grpc.ServerServiceDefinition;
@@ -49,7 +49,6 @@ import io.grpc.netty.NegotiationType;
 import io.grpc.netty.NettyChannelBuilder;
 import io.grpc.netty.NettyServerBuilder;
 import io.grpc.util.TransmitStatusRuntimeExceptionInterceptor;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 
@@ -62,6 +61,8 @@ public final class GrpcEngine {
 
   private static final Logger log = LoggerFactory.getLogger(GrpcEngine.class);
 
+  private static final String SHARED_CHANNEL_KEY = "*";
+
   private final GrpcURL registryUrl;
 
   private final Registry registry;
@@ -70,9 +71,57 @@ public final class GrpcEngine {
 
   private final Map<String, Channel> channelPool = Maps.newConcurrentMap();
 
+  private final Map<String, GrpcNameResolverProvider> nameResolverProviders =
+      Maps.newConcurrentMap();
+
+  private final GrpcEventLoops eventLoops;
+
+  private final boolean shareChannel;
+
+  private final GrpcRouteRoundRobinLbFactory loadBalancerFactory;
+
+  private final double loadReportRate;
+
   public GrpcEngine(GrpcURL registryUrl) {
+    this(registryUrl, Collections.<String, String>emptyMap());
+  }
+
+  /**
+   * iothreads为0时取netty的默认线程数，transport为epoll时在可用的情况下使用epoll；
+   * sharechannel为true时所有group共用一个Channel，同一个服务端地址只建一组连接，由Picker按调用的服务选路；
+   * connections、maxconnections为每个服务端地址的连接数下限和上限，maxstreams为单连接的并发流上限；
+   * outlierdetection为true时在负载均衡层摘除异常节点，healthcheck为true时按healthcheckinterval主动探测服务端的Health服务；
+   * loadreportrate为服务端在响应Trailer里附带负载报告的采样比例
+   */
+  public GrpcEngine(GrpcURL registryUrl, Map<String, String> options) {
     this.registryUrl = registryUrl;
     this.registry = RegistryProvider.asFactory().newRegistry(registryUrl);
+    GrpcURL optionUrl = registryUrl.addParameters(options);
+    this.eventLoops = new GrpcEventLoops(optionUrl.getParameter(Constants.IO_THREADS_KEY, 0),
+        optionUrl.getParameter(Constants.TRANSPORT_KEY, GrpcEventLoops.TRANSPORT_NIO));
+    this.shareChannel = optionUrl.getParameter(Constants.SHARE_CHANNEL_KEY, false);
+    int connections = optionUrl.getParameter(Constants.CONNECTIONS_KEY, 1);
+    int maxConnections = optionUrl.getParameter(Constants.MAX_CONNECTIONS_KEY, connections);
+    int maxStreams =
+        optionUrl.getParameter(Constants.MAX_STREAMS_KEY, Constants.DEFAULT_MAX_STREAMS);
+    OutlierDetector.Settings outlierSettings = null;
+    if (optionUrl.getParameter(Constants.OUTLIER_DETECTION_KEY, false)) {
+      outlierSettings = new OutlierDetector.Settings(
+          optionUrl.getParameter(Constants.OUTLIER_CONSECUTIVE_ERRORS_KEY,
+              OutlierDetector.DEFAULT_CONSECUTIVE_ERRORS),
+          optionUrl.getParameter(Constants.OUTLIER_EJECTION_TIME_KEY,
+              OutlierDetector.DEFAULT_BASE_EJECTION_MILLIS),
+          optionUrl.getParameter(Constants.OUTLIER_MAX_EJECTION_PERCENT_KEY,
+              OutlierDetector.DEFAULT_MAX_EJECTION_PERCENT));
+    }
+    long healthCheckInterval = 0;
+    if (optionUrl.getParameter(Constants.HEALTH_CHECK_KEY, false)) {
+      healthCheckInterval = optionUrl.getParameter(Constants.HEALTH_CHECK_INTERVAL_KEY,
+          HealthChecker.DEFAULT_INTERVAL_MILLIS);
+    }
+    this.loadBalancerFactory = GrpcRouteRoundRobinLbFactory.getInstance(connections,
+        maxConnections, maxStreams, outlierSettings, healthCheckInterval);
+    this.loadReportRate = optionUrl.getParameter(Constants.LOAD_REPORT_RATE_KEY, 0d);
   }
 
 
@@ -85,45 +134,54 @@ public final class GrpcEngine {
         if (subscribeUrl == null) {
           subscribeUrl = refUrl;
         }
-        String group = cacheSubscribeUrl(subscribeUrl);
-        if (channelPool.containsKey(group)) {
-          return channelPool.get(group);
+        String channelKey = shareChannel ? SHARED_CHANNEL_KEY : subscribeUrl.getGroup();
+        boolean subscribeAdded = cacheSubscribeUrl(channelKey, subscribeUrl);
+        if (channelPool.containsKey(channelKey)) {
+          if (subscribeAdded) {
+            nameResolverProviders.get(channelKey).resolveNow();
+          }
+          return channelPool.get(channelKey);
         } else {
-          Channel channel = create(group);
-          channelPool.put(group, channel);
+          Channel channel = create(channelKey);
+          channelPool.put(channelKey, channel);
           return channel;
         }
 
       }
 
-      private String cacheSubscribeUrl(GrpcURL subscribeUrl) {
-        String group = subscribeUrl.getGroup();
-        Set<GrpcURL> refUrls = subscribeGroupCache.get(group);
+      /**
+       * 订阅地址按Channel归类，不共用Channel时每个group一个Channel；返回是否新加入了订阅地址
+       */
+      private boolean cacheSubscribeUrl(String channelKey, GrpcURL subscribeUrl) {
+        Set<GrpcURL> refUrls = subscribeGroupCache.get(channelKey);
         if (refUrls == null) {
-          refUrls = Sets.newLinkedHashSet();
+          refUrls = Sets.newConcurrentHashSet();
           refUrls.add(subscribeUrl);
-          subscribeGroupCache.put(group, refUrls);
+          subscribeGroupCache.put(channelKey, refUrls);
+          return true;
         } else {
-          if (!refUrls.contains(subscribeUrl)) {
-            refUrls.add(subscribeUrl);
-          }
+          return refUrls.add(subscribeUrl);
         }
-        return group;
       }
 
-      private Channel create(String group) {
-        Set<GrpcURL> subscribeUrls = subscribeGroupCache.get(group);
-        Channel channel = NettyChannelBuilder.forTarget(registryUrl.toJavaURI().toString())//
-            .nameResolverFactory(new GrpcNameResolverProvider(subscribeUrls))//
-            .loadBalancerFactory(buildLoadBalanceFactory())//
+      private Channel create(String channelKey) {
+        Set<GrpcURL> subscribeUrls = subscribeGroupCache.get(channelKey);
+        NettyChannelBuilder channelBuilder =
+            NettyChannelBuilder.forTarget(registryUrl.toJavaURI().toString());
+        AtomicReference<Channel> healthCheckChannel = new AtomicReference<Channel>();
+        GrpcNameResolverProvider nameResolverProvider = new GrpcNameResolverProvider(subscribeUrls);
+        nameResolverProviders.put(channelKey, nameResolverProvider);
+        Channel channel = eventLoops.configure(channelBuilder)//
+            .nameResolverFactory(nameResolverProvider)//
+            .loadBalancerFactory(loadBalancerFactory.forChannel(healthCheckChannel))//
             .sslContext(buildClientSslContext())//
             .usePlaintext(false)//
             .negotiationType(NegotiationType.TLS)//
-            .eventLoopGroup(createWorkEventLoopGroup())//
             .keepAliveTime(1, TimeUnit.DAYS)//
             .maxHeaderListSize(4 * 1024 * 1024)//
             .directExecutor()//
             .build();//
+        healthCheckChannel.set(channel);
         return ClientInterceptors.intercept(channel,
             Arrays.asList(HeaderClientInterceptor.instance()));
       }
@@ -137,11 +195,10 @@ public final class GrpcEngine {
 
   public io.grpc.Server getServer(Map<GrpcURL, Object> providerUrls, int rpcPort) throws Exception {
 
-    final NettyServerBuilder remoteServer = NettyServerBuilder.forPort(rpcPort)//
+    final NettyServerBuilder remoteServer =
+        eventLoops.configure(NettyServerBuilder.forPort(rpcPort))//
         .sslContext(buildServerSslContext())//
         .keepAliveTime(1, TimeUnit.DAYS)//
-        .bossEventLoopGroup(createBossEventLoopGroup())//
-        .workerEventLoopGroup(createWorkEventLoopGroup())//
         .maxHeaderListSize(4 * 1024 * 1024)//
         // This is a performance optimization that avoids the synchronization and queuing overhead
         // that comes with SerializingExecutor.
@@ -159,8 +216,9 @@ public final class GrpcEngine {
           }
         }).directExecutor();
 
-    final List<ServerInterceptor> interceptors = Arrays.asList(HeaderServerInterceptor.instance(),
-        TransmitStatusRuntimeExceptionInterceptor.instance());
+    final List<ServerInterceptor> interceptors =
+        Arrays.asList(HeaderServerInterceptor.instance(loadReportRate),
+            TransmitStatusRuntimeExceptionInterceptor.instance());
 
     for (Map.Entry<GrpcURL, Object> entry : providerUrls.entrySet()) {
       GrpcURL providerUrl = entry.getKey();
@@ -178,6 +236,20 @@ public final class GrpcEngine {
 
   }
 
+  /**
+   * 服务端数据变化时发布响应缓存失效通知，订阅了该服务的客户端清空缓存
+   */
+  public void publishCacheInvalidation(String serviceName) {
+    registry.publishCacheInvalidation(serviceName);
+  }
+
+  /**
+   * 进程退出时停止注册中心的后台线程
+   */
+  public void destroy() {
+    registry.destroy();
+  }
+
   private SslContext buildClientSslContext() {
     try {
       InputStream certs = SslUtil.loadInputStreamCert("server.pem");
@@ -190,10 +262,6 @@ public final class GrpcEngine {
     }
   }
 
-  private LoadBalancer.Factory buildLoadBalanceFactory() {
-    return GrpcRouteRoundRobinLbFactory.getInstance();
-  }
-
   private SslContext buildServerSslContext() {
     try {
       InputStream certs = SslUtil.loadInputStreamCert("server.pem");
@@ -204,14 +272,4 @@ public final class GrpcEngine {
     }
   }
 
-  private NioEventLoopGroup createBossEventLoopGroup() {
-    ThreadFactory threadFactory = new NamedThreadFactory("grpc-default-boss-ELG", true);
-    return new NioEventLoopGroup(1, Executors.newCachedThreadPool(threadFactory));
-  }
-
-  private NioEventLoopGroup createWorkEventLoopGroup() {
-    ThreadFactory threadFactory = new NamedThreadFactory("grpc-default-worker-ELG", true);
-    return new NioEventLoopGroup(0, Executors.newCachedThreadPool(threadFactory));
-  }
-
 }
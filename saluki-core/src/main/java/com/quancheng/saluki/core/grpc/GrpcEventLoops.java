@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.quancheng.saluki.core.common.NamedThreadFactory;
+
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * 每个GrpcEngine共用一组boss/worker事件循环，所有客户端Channel和服务端都挂在同一个worker上，
+ * 不再按订阅的group各建一组线程；transport=epoll且classpath上有可用的netty-transport-native-epoll时使用epoll
+ *
+ * @author liushiming
+ * @version GrpcEventLoops.java, v 0.0.1 2017年10月19日 下午4:18:36 liushiming
+ * @since JDK 1.8
+ */
+final class GrpcEventLoops {
+
+  private static final Logger log = LoggerFactory.getLogger(GrpcEventLoops.class);
+
+  static final String TRANSPORT_NIO = "nio";
+
+  static final String TRANSPORT_EPOLL = "epoll";
+
+  private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+  private final int ioThreads;
+
+  private final boolean epoll;
+
+  private final Class<? extends Channel> channelType;
+
+  private final Class<? extends ServerChannel> serverChannelType;
+
+  private EventLoopGroup bossGroup;
+
+  private EventLoopGroup workerGroup;
+
+  @SuppressWarnings("unchecked")
+  GrpcEventLoops(int ioThreads, String transport) {
+    this.ioThreads = ioThreads;
+    this.epoll = TRANSPORT_EPOLL.equals(transport) && isEpollAvailable();
+    if (epoll) {
+      try {
+        this.channelType =
+            (Class<? extends Channel>) Class.forName(EPOLL_PACKAGE + "EpollSocketChannel");
+        this.serverChannelType = (Class<? extends ServerChannel>) Class
+            .forName(EPOLL_PACKAGE + "EpollServerSocketChannel");
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e.getMessage(), e);
+      }
+    } else {
+      this.channelType = NioSocketChannel.class;
+      this.serverChannelType = NioServerSocketChannel.class;
+    }
+    log.info("grpc event loops use " + (epoll ? TRANSPORT_EPOLL : TRANSPORT_NIO)
+        + " transport with " + (ioThreads > 0 ? ioThreads : "default") + " io threads");
+  }
+
+  NettyChannelBuilder configure(NettyChannelBuilder builder) {
+    return builder.eventLoopGroup(worker()).channelType(channelType);
+  }
+
+  NettyServerBuilder configure(NettyServerBuilder builder) {
+    return builder.bossEventLoopGroup(boss()).workerEventLoopGroup(worker())
+        .channelType(serverChannelType);
+  }
+
+  synchronized EventLoopGroup boss() {
+    if (bossGroup == null) {
+      bossGroup = newEventLoopGroup(1, new NamedThreadFactory("grpc-default-boss-ELG", true));
+    }
+    return bossGroup;
+  }
+
+  synchronized EventLoopGroup worker() {
+    if (workerGroup == null) {
+      workerGroup =
+          newEventLoopGroup(ioThreads, new NamedThreadFactory("grpc-default-worker-ELG", true));
+    }
+    return workerGroup;
+  }
+
+  /**
+   * nThreads为0时由netty取默认值(2倍CPU核数)
+   */
+  private EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+    if (!epoll) {
+      return new NioEventLoopGroup(nThreads, threadFactory);
+    }
+    try {
+      Constructor<?> constructor = Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup")
+          .getConstructor(int.class, ThreadFactory.class);
+      return (EventLoopGroup) constructor.newInstance(nThreads, threadFactory);
+    } catch (Exception e) {
+      throw new IllegalStateException("Create epoll event loop group failed", e);
+    }
+  }
+
+  private static boolean isEpollAvailable() {
+    try {
+      Object available =
+          Class.forName(EPOLL_PACKAGE + "Epoll").getMethod("isAvailable").invoke(null);
+      if (Boolean.TRUE.equals(available)) {
+        return true;
+      }
+      log.warn("epoll transport is not available on this platform, fall back to nio");
+    } catch (Throwable e) {
+      log.warn("netty-transport-native-epoll not found in classpath, fall back to nio");
+    }
+    return false;
+  }
+
+}
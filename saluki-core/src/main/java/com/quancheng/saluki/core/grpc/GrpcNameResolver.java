@@ -26,6 +26,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,7 +35,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.net.InetAddresses;
+import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.internal.cache.ResultCache;
+import com.quancheng.saluki.core.grpc.loadbalance.LoadBalanceStrategies;
 import com.quancheng.saluki.core.grpc.router.GrpcRouterFactory;
 import com.quancheng.saluki.core.registry.NotifyListener;
 import com.quancheng.saluki.core.registry.Registry;
@@ -61,12 +65,21 @@ public class GrpcNameResolver extends NameResolver {
 
   private final Registry registry;
 
-  private final String currentGroup;
-
   private final Set<GrpcURL> subscribeUrls;
 
   private final Set<GrpcURL> submitedSubscribeUrls = Sets.newConcurrentHashSet();
 
+  private final Set<String> submitedRouterGroups = Sets.newConcurrentHashSet();
+
+  private final NotifyListener.NotifyRouterListener routerListener =
+      new NotifyListener.NotifyRouterListener() {
+
+        @Override
+        public void notify(String group, String routerCondition) {
+          GrpcRouterFactory.getInstance().cacheRoute(group, routerCondition);
+        }
+      };
+
   private final NotifyListener.NotifyServiceListener serviceListener =
       new NotifyListener.NotifyServiceListener() {
 
@@ -78,11 +91,43 @@ public class GrpcNameResolver extends NameResolver {
                     + Arrays.toString(urls.toArray()));
           }
           GrpcNameResolver.this.urls.put(subscribeUrl, urls);
-          notifyLoadBalance(subscribeUrl, urls);
+          notifyLoadBalance();
         }
 
       };
 
+  private final NotifyListener.NotifyCacheListener cacheListener =
+      new NotifyListener.NotifyCacheListener() {
+
+        @Override
+        public void notify(String serviceName) {
+          log.info("Receive result cache invalidation of " + serviceName + " from registry");
+          ResultCache.invalidate(serviceName);
+        }
+
+      };
+
+  private final NotifyListener.NotifyWeightListener weightListener =
+      new NotifyListener.NotifyWeightListener() {
+
+        @Override
+        public void notify(String serviceName, String weights) {
+          log.info("Receive provider weights of " + serviceName + " from registry: " + weights);
+          if (StringUtils.isBlank(weights)) {
+            weightOverrides.remove(serviceName);
+          } else {
+            weightOverrides.put(serviceName, parseWeights(weights));
+          }
+          notifyLoadBalance();
+        }
+
+      };
+
+  /**
+   * 注册中心下发的权重，按服务名索引，取值为服务端地址(host:port)到权重的映射，覆盖服务端注册时带的weight参数
+   */
+  private final Map<String, Map<String, String>> weightOverrides = Maps.newConcurrentMap();
+
   private ScheduledExecutorService timerService;
 
   private ExecutorService executor;
@@ -93,22 +138,12 @@ public class GrpcNameResolver extends NameResolver {
 
   private Listener listener;
 
-  private volatile Map<GrpcURL, List<SocketAddress>> addresses = Maps.newConcurrentMap();
-
   private volatile Map<GrpcURL, List<GrpcURL>> urls = Maps.newConcurrentMap();
 
   public GrpcNameResolver(URI targetUri, Attributes params, Set<GrpcURL> subscribeUrls) {
     GrpcURL registryUrl = GrpcURL.valueOf(targetUri.toString());
     this.registry = RegistryProvider.asFactory().newRegistry(registryUrl);
     this.subscribeUrls = subscribeUrls;
-    this.currentGroup = this.subscribeUrls.iterator().next().getGroup();
-    registry.subscribe(currentGroup, new NotifyListener.NotifyRouterListener() {
-
-      @Override
-      public void notify(String group, String routerCondition) {
-        GrpcRouterFactory.getInstance().cacheRoute(group, routerCondition);
-      }
-    });
     this.timerService = SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
     this.executor = SharedResourceHolder.get(GrpcUtil.SHARED_CHANNEL_EXECUTOR);
   }
@@ -154,9 +189,17 @@ public class GrpcNameResolver extends NameResolver {
       }
       try {
         for (GrpcURL subscribeUrl : subscribeUrls) {
-          if (!submitedSubscribeUrls.contains(subscribeUrl)) {
+          if (submitedSubscribeUrls.add(subscribeUrl)) {
+            if (submitedRouterGroups.add(subscribeUrl.getGroup())) {
+              registry.subscribe(subscribeUrl.getGroup(), routerListener);
+            }
             registry.subscribe(subscribeUrl, serviceListener);
-            submitedSubscribeUrls.add(subscribeUrl);
+            if (ResultCache.isCacheEnabled(subscribeUrl)) {
+              registry.subscribe(subscribeUrl.getServiceInterface(), cacheListener);
+            }
+            if (LoadBalanceStrategies.isWeighted(subscribeUrl)) {
+              registry.subscribe(subscribeUrl.getServiceInterface(), weightListener);
+            }
           }
         }
       } finally {
@@ -169,6 +212,23 @@ public class GrpcNameResolver extends NameResolver {
 
 
 
+  /**
+   * 在调用线程上直接订阅尚未订阅的服务；注册中心已经在监听该group时会同步推送一次地址，
+   * 共用Channel上后加入的服务因此不会在下一次定时解析之前一直找不到提供方
+   */
+  final void resolveNow() {
+    synchronized (this) {
+      if (listener == null || shutdown) {
+        return;
+      }
+    }
+    resolutionRunnable.run();
+  }
+
+  final synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
   private final Runnable resolutionRunnableOnExecutor = new Runnable() {
     @Override
     public void run() {
@@ -188,18 +248,40 @@ public class GrpcNameResolver extends NameResolver {
     shutdown = true;
     for (GrpcURL subscribeUrl : subscribeUrls) {
       registry.unsubscribe(subscribeUrl, serviceListener);
+      registry.unsubscribe(subscribeUrl.getServiceInterface(), cacheListener);
+      registry.unsubscribe(subscribeUrl.getServiceInterface(), weightListener);
+    }
+    for (String group : submitedRouterGroups) {
+      registry.unsubscribe(group, routerListener);
     }
   }
 
 
 
   /**** help method *****/
-  private void notifyLoadBalance(GrpcURL subscribeUrl, List<GrpcURL> urls) {
-    if (urls != null && !urls.isEmpty()) {
-      List<EquivalentAddressGroup> servers = Lists.newArrayList();
-      List<SocketAddress> addresses = Lists.newArrayList();
-      Map<List<SocketAddress>, GrpcURL> addressUrlMapping = Maps.newHashMap();
-      for (GrpcURL url : urls) {
+  /**
+   * 同一个Channel上所有订阅服务的地址合并后一起推给LoadBalancer，相同的服务端地址只建一个子通道；
+   * 各服务自己的地址按serviceKey放进属性，Picker据此只在调用所属服务的地址里选路
+   */
+  private synchronized void notifyLoadBalance() {
+    List<EquivalentAddressGroup> servers = Lists.newArrayList();
+    Set<SocketAddress> addresses = Sets.newLinkedHashSet();
+    Map<List<SocketAddress>, GrpcURL> addressUrlMapping = Maps.newHashMap();
+    Map<String, Map<List<SocketAddress>, GrpcURL>> serviceAddressMapping = Maps.newHashMap();
+    Map<String, Map<SocketAddress, GrpcURL>> serviceProviders = Maps.newHashMap();
+    for (Map.Entry<GrpcURL, List<GrpcURL>> entry : this.urls.entrySet()) {
+      List<GrpcURL> providerUrls = entry.getValue();
+      if (providerUrls == null || providerUrls.isEmpty()) {
+        continue;
+      }
+      Map<List<SocketAddress>, GrpcURL> serviceMapping = Maps.newHashMap();
+      Map<SocketAddress, GrpcURL> serviceProvider = Maps.newHashMap();
+      Map<String, String> weights = weightOverrides.get(entry.getKey().getServiceInterface());
+      for (GrpcURL providerUrl : providerUrls) {
+        GrpcURL url = providerUrl;
+        if (weights != null && weights.containsKey(url.getAddress())) {
+          url = url.addParameter(Constants.WEIGHT_KEY, weights.get(url.getAddress()));
+        }
         String host = url.getHost();
         int port = url.getPort();
         List<SocketAddress> hostAddressMapping;
@@ -208,10 +290,18 @@ public class GrpcNameResolver extends NameResolver {
         } else {
           hostAddressMapping = DnsResolved(servers, addresses, host, port);
         }
+        serviceMapping.put(hostAddressMapping, url);
+        for (SocketAddress address : hostAddressMapping) {
+          serviceProvider.put(address, url);
+        }
         addressUrlMapping.put(hostAddressMapping, url);
       }
-      this.addresses.put(subscribeUrl, addresses);
-      Attributes config = this.buildAttributes(subscribeUrl, addressUrlMapping);
+      serviceAddressMapping.put(entry.getKey().getServiceKey(), serviceMapping);
+      serviceProviders.put(entry.getKey().getServiceKey(), serviceProvider);
+    }
+    if (!servers.isEmpty()) {
+      Attributes config = this.buildAttributes(addresses, addressUrlMapping,
+          serviceAddressMapping, serviceProviders);
       GrpcNameResolver.this.listener.onAddresses(servers, config);
     } else {
       GrpcNameResolver.this.listener
@@ -220,7 +310,7 @@ public class GrpcNameResolver extends NameResolver {
   }
 
   private List<SocketAddress> DnsResolved(List<EquivalentAddressGroup> servers,
-      List<SocketAddress> addresses, String host, int port) {
+      Set<SocketAddress> addresses, String host, int port) {
     List<SocketAddress> hostAddressMapping = Lists.newArrayList();
     try {
       InetAddress[] inetAddrs = InetAddress.getAllByName(host);
@@ -238,7 +328,7 @@ public class GrpcNameResolver extends NameResolver {
   }
 
   private List<SocketAddress> IpResolved(List<EquivalentAddressGroup> servers,
-      List<SocketAddress> addresses, String host, int port) {
+      Set<SocketAddress> addresses, String host, int port) {
     List<SocketAddress> hostAddressMapping = Lists.newArrayList();
     SocketAddress sock = new InetSocketAddress(InetAddresses.forString(host), port);
     hostAddressMapping.add(sock);
@@ -246,24 +336,42 @@ public class GrpcNameResolver extends NameResolver {
     return hostAddressMapping;
   }
 
-  private void addSocketAddress(List<EquivalentAddressGroup> servers, List<SocketAddress> addresses,
-      SocketAddress sock) {
-    EquivalentAddressGroup server = new EquivalentAddressGroup(sock);
-    servers.add(server);
-    addresses.add(sock);
+  /**
+   * 多个服务由同一个服务端进程提供时只加入一次，LoadBalancer上对应一个共享的子通道
+   */
+  private void addSocketAddress(List<EquivalentAddressGroup> servers,
+      Set<SocketAddress> addresses, SocketAddress sock) {
+    if (addresses.add(sock)) {
+      servers.add(new EquivalentAddressGroup(sock));
+    }
   }
 
-  private Attributes buildAttributes(GrpcURL subscribeUrl,
-      Map<List<SocketAddress>, GrpcURL> addressUrlMapping) {
-    Attributes.Builder builder = Attributes.newBuilder();
-    if (listener != null) {
-      builder.set(GrpcNameResolverProvider.NAMERESOVER_LISTENER, listener);
-    }
-    if (addresses.get(subscribeUrl) != null) {
-      builder.set(GrpcNameResolverProvider.REMOTE_ADDR_KEYS, addresses.get(subscribeUrl));
+  /**
+   * 格式为host:port=weight，多个以逗号分隔
+   */
+  private static Map<String, String> parseWeights(String weights) {
+    Map<String, String> parsed = Maps.newHashMap();
+    for (String weight : StringUtils.split(weights, ",")) {
+      String[] addressAndWeight = StringUtils.split(weight.trim(), "=");
+      if (addressAndWeight.length == 2 && StringUtils.isNumeric(addressAndWeight[1].trim())) {
+        parsed.put(addressAndWeight[0].trim(), addressAndWeight[1].trim());
+      } else {
+        log.warn("Ignore illegal provider weight " + weight);
+      }
     }
+    return parsed;
+  }
+
+  private Attributes buildAttributes(Set<SocketAddress> addresses,
+      Map<List<SocketAddress>, GrpcURL> addressUrlMapping,
+      Map<String, Map<List<SocketAddress>, GrpcURL>> serviceAddressMapping,
+      Map<String, Map<SocketAddress, GrpcURL>> serviceProviders) {
+    Attributes.Builder builder = Attributes.newBuilder();
+    builder.set(GrpcNameResolverProvider.REMOTE_ADDR_KEYS, Lists.newArrayList(addresses));
     if (!addressUrlMapping.isEmpty()) {
       builder.set(GrpcNameResolverProvider.GRPC_ADDRESS_GRPCURL_MAPPING, addressUrlMapping);
+      builder.set(GrpcNameResolverProvider.GRPC_SERVICE_ADDRESS_MAPPING, serviceAddressMapping);
+      builder.set(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS, serviceProviders);
     }
     return builder.build();
   }
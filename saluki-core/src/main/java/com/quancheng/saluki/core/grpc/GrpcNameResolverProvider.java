@@ -12,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.collect.Sets;
 import com.quancheng.saluki.core.common.GrpcURL;
 
 import io.grpc.Attributes;
@@ -30,18 +31,40 @@ public class GrpcNameResolverProvider extends NameResolverProvider {
   public static final Attributes.Key<Map<List<SocketAddress>, GrpcURL>> GRPC_ADDRESS_GRPCURL_MAPPING =
       Attributes.Key.of("grpc-address-mapping");
 
+  /**
+   * 按serviceKey索引的提供方地址映射和单个地址到提供方的映射，多个服务共用一个Channel时Picker按调用的服务过滤子通道，
+   * 负载均衡策略据此读取提供方的权重等参数
+   */
+  public static final Attributes.Key<Map<String, Map<List<SocketAddress>, GrpcURL>>> //
+  GRPC_SERVICE_ADDRESS_MAPPING = Attributes.Key.of("grpc-service-address-mapping");
+
+  public static final Attributes.Key<Map<String, Map<SocketAddress, GrpcURL>>> //
+  GRPC_SERVICE_PROVIDERS = Attributes.Key.of("grpc-service-providers");
+
   public static final Attributes.Key<List<SocketAddress>> REMOTE_ADDR_KEYS =
       Attributes.Key.of("remote-addresss");
 
-  public static final Attributes.Key<NameResolver.Listener> NAMERESOVER_LISTENER =
-      Attributes.Key.of("nameResolver-Listener");
-
   private final Set<GrpcURL> subscribeUrls;
 
+  private final Set<GrpcNameResolver> nameResolvers = Sets.newConcurrentHashSet();
+
   public GrpcNameResolverProvider(Set<GrpcURL> subscribeUrls) {
     this.subscribeUrls = subscribeUrls;
   }
 
+  /**
+   * 订阅地址集合新增了服务时调用，让这个Channel上正在使用的NameResolver立即订阅，不等定时解析
+   */
+  public void resolveNow() {
+    for (GrpcNameResolver nameResolver : nameResolvers) {
+      if (nameResolver.isShutdown()) {
+        nameResolvers.remove(nameResolver);
+      } else {
+        nameResolver.resolveNow();
+      }
+    }
+  }
+
   @Override
   protected boolean isAvailable() {
     return true;
@@ -54,7 +77,9 @@ public class GrpcNameResolverProvider extends NameResolverProvider {
 
   @Override
   public NameResolver newNameResolver(URI targetUri, Attributes params) {
-    return new GrpcNameResolver(targetUri, params, subscribeUrls);
+    GrpcNameResolver nameResolver = new GrpcNameResolver(targetUri, params, subscribeUrls);
+    nameResolvers.add(nameResolver);
+    return nameResolver;
   }
 
   @Override
@@ -14,18 +14,28 @@
 package com.quancheng.saluki.core.grpc;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.quancheng.saluki.core.common.GrpcURL;
 import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcPickHint;
+import com.quancheng.saluki.core.grpc.loadbalance.HealthChecker;
+import com.quancheng.saluki.core.grpc.loadbalance.LoadBalanceStrategies;
+import com.quancheng.saluki.core.grpc.loadbalance.LocalityFilter;
+import com.quancheng.saluki.core.grpc.loadbalance.OutlierDetector;
+import com.quancheng.saluki.core.grpc.loadbalance.ProviderSnapshot;
+import com.quancheng.saluki.core.grpc.loadbalance.SubchannelStats;
 import com.quancheng.saluki.core.grpc.router.GrpcRouter;
 import com.quancheng.saluki.core.grpc.router.GrpcRouterFactory;
 
 import io.grpc.Attributes;
-import io.grpc.EquivalentAddressGroup;
 import io.grpc.LoadBalancer.PickResult;
 import io.grpc.LoadBalancer.PickSubchannelArgs;
 import io.grpc.LoadBalancer.Subchannel;
@@ -42,24 +52,48 @@ public class GrpcRoutePicker extends SubchannelPicker {
   private final Attributes nameResovleCache;
   private final List<Subchannel> list;
   private final int size;
-  private int index = 0;
+  private final PickObserver pickObserver;
+  private final ConcurrentMap<String, RouteSnapshot> routeSnapshots = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, ProviderSnapshot> providerSnapshots =
+      Maps.newConcurrentMap();
+  private volatile ProviderSnapshot allProviders;
 
-  GrpcRoutePicker(List<Subchannel> list, Status status, Attributes nameResovleCache) {
+  GrpcRoutePicker(List<Subchannel> list, Status status, Attributes nameResovleCache,
+      PickObserver pickObserver) {
     this.list = list;
     this.size = list.size();
     this.status = status;
     this.nameResovleCache = nameResovleCache;
+    this.pickObserver = pickObserver;
   }
 
   @Override
   public PickResult pickSubchannel(PickSubchannelArgs args) {
+    Subchannel pinned = args.getCallOptions().getOption(HealthChecker.PIN_KEY);
+    if (pinned != null) {
+      // 健康检查的探测固定发往指定的子通道，不计入调用统计
+      return list.contains(pinned) ? PickResult.withSubchannel(pinned)
+          : PickResult.withError(HealthChecker.NOT_READY);
+    }
     Map<String, Object> affinity =
         args.getCallOptions().getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY);
     GrpcURL refUrl = (GrpcURL) affinity.get(GrpcCallOptions.GRPC_REF_URL);
+    GrpcPickHint pickHint = GrpcPickHint.get(args.getCallOptions());
     if (size > 0) {
-      Subchannel subchannel = nextSubchannel(refUrl);
-      affinity.put(GrpcCallOptions.GRPC_NAMERESOVER_ATTRIBUTES, nameResovleCache);
-      return PickResult.withSubchannel(subchannel);
+      Subchannel subchannel = nextSubchannel(refUrl, pickHint, args);
+      if (subchannel == null) {
+        return PickResult.withError(
+            Status.UNAVAILABLE.withDescription("No provider available for " + refUrl));
+      }
+      if (pickHint != null) {
+        pickHint.picked(subchannel.getAddresses().getAddresses());
+      }
+      if (pickObserver != null) {
+        pickObserver.onPicked(subchannel);
+      }
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      return stats != null ? PickResult.withSubchannel(subchannel, stats.tracerFactory())
+          : PickResult.withSubchannel(subchannel);
     }
     if (status != null) {
       return PickResult.withError(status);
@@ -67,55 +101,148 @@ public class GrpcRoutePicker extends SubchannelPicker {
     return PickResult.withNoResult();
   }
 
-  private Subchannel nextSubchannel(GrpcURL refUrl) {
+  /**
+   * 过滤出提供本次调用服务且满足路由规则的子通道，跳过健康检查不通过和被摘除的异常节点，按可用区就近筛选后交给引用配置的负载均衡策略选择；
+   * 重试时优先跳过本次调用已经尝试过的服务端，都尝试过了再在已尝试的里面选；策略选出服务端后再在它的多条连接里选一条
+   */
+  private Subchannel nextSubchannel(GrpcURL refUrl, GrpcPickHint pickHint,
+      PickSubchannelArgs args) {
     if (size == 0) {
       throw new NoSuchElementException();
     }
-    synchronized (this) {
-      Subchannel val = list.get(index);
-      boolean discard = discard(refUrl, val);
-      index++;
-      if (index >= size) {
-        index = 0;
+    ProviderSnapshot providerSnapshot = providerSnapshot(refUrl);
+    List<Subchannel> candidates = OutlierDetector
+        .filter(HealthChecker.filter(routedSubchannels(refUrl, providerSnapshot)));
+    if (pickHint != null && pickHint.hasTried()) {
+      List<Subchannel> untried = new ArrayList<Subchannel>(candidates.size());
+      for (Subchannel val : candidates) {
+        if (!pickHint.isTried(val.getAddresses().getAddresses())) {
+          untried.add(val);
+        }
+      }
+      if (!untried.isEmpty()) {
+        candidates = untried;
+      }
+    }
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    candidates = LocalityFilter.filter(candidates, providerSnapshot, refUrl);
+    Subchannel server =
+        LoadBalanceStrategies.get(refUrl).select(candidates, providerSnapshot, refUrl, args);
+    return server != null ? providerSnapshot.stripeOf(server) : null;
+  }
+
+  /**
+   * 服务端集合只随Picker变化，按服务构建一次，供路由和负载均衡策略共用
+   */
+  private ProviderSnapshot providerSnapshot(GrpcURL refUrl) {
+    if (refUrl == null) {
+      ProviderSnapshot snapshot = allProviders;
+      if (snapshot == null) {
+        snapshot = new ProviderSnapshot(list, null);
+        allProviders = snapshot;
       }
-      if (discard) {
-        return nextSubchannel(refUrl);
-      } else {
-        return val;
+      return snapshot;
+    }
+    String serviceKey = refUrl.getServiceKey();
+    ProviderSnapshot snapshot = providerSnapshots.get(serviceKey);
+    if (snapshot == null) {
+      ProviderSnapshot created = new ProviderSnapshot(list, findServiceProviders(refUrl));
+      snapshot = providerSnapshots.putIfAbsent(serviceKey, created);
+      if (snapshot == null) {
+        snapshot = created;
       }
     }
+    return snapshot;
   }
 
+  /**
+   * 路由结果只和子通道列表、服务地址及路由规则有关；Picker随地址变化重建，所以按服务缓存一份，
+   * 路由规则版本或引用变化时才重新计算；线程上下文里的临时路由规则只对当次调用生效，不缓存
+   */
+  private List<Subchannel> routedSubchannels(GrpcURL refUrl, ProviderSnapshot providerSnapshot) {
+    if (refUrl == null) {
+      return providerSnapshot.getSubchannels();
+    }
+    GrpcRouterFactory routerFactory = GrpcRouterFactory.getInstance();
+    GrpcRouter contextRouter = routerFactory.getContextRouter(refUrl.getGroup());
+    if (contextRouter != null) {
+      return route(refUrl, contextRouter, providerSnapshot);
+    }
+    long version = routerFactory.getRouteVersion();
+    String serviceKey = refUrl.getServiceKey();
+    RouteSnapshot snapshot = routeSnapshots.get(serviceKey);
+    if (snapshot == null || !snapshot.isValid(version, refUrl)) {
+      GrpcRouter configRouter = routerFactory.getConfigRouter(refUrl.getGroup());
+      snapshot = new RouteSnapshot(version, refUrl, route(refUrl, configRouter, providerSnapshot));
+      routeSnapshots.put(serviceKey, snapshot);
+    }
+    return snapshot.subchannels;
+  }
 
-  private boolean discard(GrpcURL refUrl, Subchannel subchannel) {
-    boolean discard = false;
-    if (refUrl != null) {
-      GrpcRouter grpcRouter = GrpcRouterFactory.getInstance().getGrpcRouter(refUrl.getGroup());
-      if (grpcRouter != null) {
-        grpcRouter.setRefUrl(refUrl);
-        EquivalentAddressGroup addressGroup = subchannel.getAddresses();
-        List<SocketAddress> currentAddress = addressGroup.getAddresses();
-        List<SocketAddress> deletAddress = Lists.newArrayList();
-        for (SocketAddress server : currentAddress) {
-          List<GrpcURL> providerUrls = findGrpcURLByAddress(server);
-          if (!grpcRouter.match(providerUrls)) {
-            deletAddress.add(server);
-          }
-        }
-        if (!deletAddress.isEmpty()) {
-          discard = true;
-        }
+  private List<Subchannel> route(GrpcURL refUrl, GrpcRouter grpcRouter,
+      ProviderSnapshot providerSnapshot) {
+    if (grpcRouter == null) {
+      return providerSnapshot.getSubchannels();
+    }
+    Map<SocketAddress, GrpcURL> serviceProviders = providerSnapshot.getProviders();
+    Map<List<SocketAddress>, GrpcURL> serviceMapping = findServiceMapping(refUrl);
+    List<Subchannel> routed = new ArrayList<Subchannel>(providerSnapshot.getSubchannels().size());
+    for (Subchannel val : providerSnapshot.getSubchannels()) {
+      if (!discard(refUrl, grpcRouter, serviceProviders, serviceMapping, val)) {
+        routed.add(val);
       }
     }
-    return discard;
+    return Collections.unmodifiableList(routed);
+  }
+
+  /**
+   * 共用Channel时子通道是所有订阅服务地址的并集，只选提供本次调用服务的地址
+   */
+  private Map<List<SocketAddress>, GrpcURL> findServiceMapping(GrpcURL refUrl) {
+    Map<String, Map<List<SocketAddress>, GrpcURL>> serviceAddressMapping =
+        nameResovleCache.get(GrpcNameResolverProvider.GRPC_SERVICE_ADDRESS_MAPPING);
+    if (refUrl == null || serviceAddressMapping == null) {
+      return null;
+    }
+    return serviceAddressMapping.get(refUrl.getServiceKey());
+  }
+
+  private Map<SocketAddress, GrpcURL> findServiceProviders(GrpcURL refUrl) {
+    Map<String, Map<SocketAddress, GrpcURL>> serviceProviders =
+        nameResovleCache.get(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS);
+    if (refUrl == null || serviceProviders == null) {
+      return null;
+    }
+    Map<SocketAddress, GrpcURL> providers = serviceProviders.get(refUrl.getServiceKey());
+    return providers != null ? providers : Collections.<SocketAddress, GrpcURL>emptyMap();
+  }
 
+  private boolean discard(GrpcURL refUrl, GrpcRouter grpcRouter,
+      Map<SocketAddress, GrpcURL> serviceProviders,
+      Map<List<SocketAddress>, GrpcURL> serviceMapping, Subchannel subchannel) {
+    if (refUrl == null || grpcRouter == null) {
+      return false;
+    }
+    for (SocketAddress server : subchannel.getAddresses().getAddresses()) {
+      List<GrpcURL> providerUrls = findGrpcURLByAddress(serviceProviders, serviceMapping, server);
+      if (!grpcRouter.match(refUrl, providerUrls)) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  private List<GrpcURL> findGrpcURLByAddress(SocketAddress address) {
-    Map<List<SocketAddress>, GrpcURL> addressMapping =
-        nameResovleCache.get(GrpcNameResolverProvider.GRPC_ADDRESS_GRPCURL_MAPPING);
+  private List<GrpcURL> findGrpcURLByAddress(Map<SocketAddress, GrpcURL> serviceProviders,
+      Map<List<SocketAddress>, GrpcURL> serviceMapping, SocketAddress address) {
+    if (serviceProviders != null && serviceProviders.containsKey(address)) {
+      return Lists.newArrayList(serviceProviders.get(address));
+    }
+    Map<List<SocketAddress>, GrpcURL> addressMapping = serviceMapping != null ? serviceMapping
+        : nameResovleCache.get(GrpcNameResolverProvider.GRPC_ADDRESS_GRPCURL_MAPPING);
     List<GrpcURL> providerUrls = Lists.newArrayList();
-    if (!addressMapping.isEmpty()) {
+    if (addressMapping != null && !addressMapping.isEmpty()) {
       for (Map.Entry<List<SocketAddress>, GrpcURL> entry : addressMapping.entrySet()) {
         List<SocketAddress> allAddress = entry.getKey();
         if (allAddress.contains(address)) {
@@ -126,4 +253,30 @@ public class GrpcRoutePicker extends SubchannelPicker {
     return providerUrls;
   }
 
+  private static final class RouteSnapshot {
+
+    private final long version;
+    private final GrpcURL refUrl;
+    private final List<Subchannel> subchannels;
+
+    private RouteSnapshot(long version, GrpcURL refUrl, List<Subchannel> subchannels) {
+      this.version = version;
+      this.refUrl = refUrl;
+      this.subchannels = subchannels;
+    }
+
+    private boolean isValid(long currentVersion, GrpcURL currentRefUrl) {
+      return version == currentVersion
+          && (refUrl == currentRefUrl || refUrl.equals(currentRefUrl));
+    }
+  }
+
+  /**
+   * 选中子通道后回调LoadBalancer，用于按在途流数扩充到同一服务端的连接
+   */
+  interface PickObserver {
+
+    void onPicked(Subchannel subchannel);
+  }
+
 }
@@ -15,18 +15,24 @@ import static io.grpc.ConnectivityState.TRANSIENT_FAILURE;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.Nullable;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.grpc.loadbalance.HealthChecker;
+import com.quancheng.saluki.core.grpc.loadbalance.OutlierDetector;
+import com.quancheng.saluki.core.grpc.loadbalance.SubchannelStats;
 
 import io.grpc.Attributes;
+import io.grpc.Channel;
 import io.grpc.ConnectivityState;
 import io.grpc.ConnectivityStateInfo;
 import io.grpc.EquivalentAddressGroup;
@@ -43,24 +49,97 @@ import io.grpc.Status;
 @Internal
 public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
 
-  private static final GrpcRouteRoundRobinLbFactory instance = new GrpcRouteRoundRobinLbFactory();
+  /**
+   * 单连接在途流数达到上限的这个比例时开始扩连接，给HTTP/2的MAX_CONCURRENT_STREAMS留出余量
+   */
+  private static final double SCALE_UP_RATIO = 0.8;
 
-  private GrpcRouteRoundRobinLbFactory() {}
+  private static final GrpcRouteRoundRobinLbFactory instance =
+      new GrpcRouteRoundRobinLbFactory(1, 1, Integer.MAX_VALUE, null, 0, null);
+
+  private final int connections;
+
+  private final int maxConnections;
+
+  private final int maxStreams;
+
+  private final OutlierDetector.Settings outlierSettings;
+
+  private final long healthCheckInterval;
+
+  private final AtomicReference<Channel> healthCheckChannel;
+
+  private GrpcRouteRoundRobinLbFactory(int connections, int maxConnections, int maxStreams,
+      OutlierDetector.Settings outlierSettings, long healthCheckInterval,
+      AtomicReference<Channel> healthCheckChannel) {
+    this.connections = connections;
+    this.maxConnections = maxConnections;
+    this.maxStreams = maxStreams;
+    this.outlierSettings = outlierSettings;
+    this.healthCheckInterval = healthCheckInterval;
+    this.healthCheckChannel = healthCheckChannel;
+  }
 
   public static GrpcRouteRoundRobinLbFactory getInstance() {
     return instance;
   }
 
+  /**
+   * 每个服务端地址先建connections条连接，单连接平均在途流数接近maxStreams时逐条扩到maxConnections，
+   * 地址下线时整组关闭；outlierSettings不为空时开启异常节点摘除，healthCheckInterval大于0时开启主动健康检查
+   */
+  public static GrpcRouteRoundRobinLbFactory getInstance(int connections, int maxConnections,
+      int maxStreams, OutlierDetector.Settings outlierSettings, long healthCheckInterval) {
+    int initial = Math.max(connections, 1);
+    if (initial == 1 && maxConnections <= 1 && outlierSettings == null
+        && healthCheckInterval <= 0) {
+      return instance;
+    }
+    return new GrpcRouteRoundRobinLbFactory(initial, Math.max(maxConnections, initial),
+        Math.max(maxStreams, 1), outlierSettings, healthCheckInterval, null);
+  }
+
+  /**
+   * 健康检查的探测要经过Channel本身发出，每个Channel一个Factory，Channel创建完成后再设置进来；
+   * 没有开启健康检查时直接返回当前实例
+   */
+  public GrpcRouteRoundRobinLbFactory forChannel(AtomicReference<Channel> channel) {
+    if (healthCheckInterval <= 0) {
+      return this;
+    }
+    return new GrpcRouteRoundRobinLbFactory(connections, maxConnections, maxStreams,
+        outlierSettings, healthCheckInterval, channel);
+  }
+
   @Override
   public LoadBalancer newLoadBalancer(Helper helper) {
-    return new GrpcRoundRobinLoadBalancer(helper);
+    OutlierDetector outlierDetector = null;
+    if (outlierSettings != null) {
+      outlierDetector = new OutlierDetector(outlierSettings);
+      outlierDetector.start();
+    }
+    HealthChecker healthChecker = null;
+    if (healthCheckInterval > 0 && healthCheckChannel != null) {
+      healthChecker = new HealthChecker(healthCheckInterval, healthCheckChannel);
+    }
+    return new GrpcRoundRobinLoadBalancer(helper, connections, maxConnections, maxStreams,
+        outlierDetector, healthChecker);
   }
 
-  private static class GrpcRoundRobinLoadBalancer extends LoadBalancer {
+  private static class GrpcRoundRobinLoadBalancer extends LoadBalancer
+      implements GrpcRoutePicker.PickObserver {
 
     private final Helper helper;
-    private final Map<EquivalentAddressGroup, Subchannel> subchannels =
-        new HashMap<EquivalentAddressGroup, Subchannel>();
+    private final int connections;
+    private final int maxConnections;
+    private final int scaleUpStreams;
+    private final ConcurrentMap<EquivalentAddressGroup, List<Subchannel>> subchannels =
+        Maps.newConcurrentMap();
+    private final AtomicBoolean scaling = new AtomicBoolean();
+    @Nullable
+    private final OutlierDetector outlierDetector;
+    @Nullable
+    private final HealthChecker healthChecker;
 
     @VisibleForTesting
     static final Attributes.Key<AtomicReference<ConnectivityStateInfo>> STATE_INFO =
@@ -68,8 +147,15 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
 
     private Attributes attributes;
 
-    GrpcRoundRobinLoadBalancer(Helper helper) {
+    GrpcRoundRobinLoadBalancer(Helper helper, int connections, int maxConnections,
+        int maxStreams, @Nullable OutlierDetector outlierDetector,
+        @Nullable HealthChecker healthChecker) {
       this.helper = checkNotNull(helper, "helper");
+      this.connections = connections;
+      this.maxConnections = maxConnections;
+      this.scaleUpStreams = Math.max((int) (maxStreams * SCALE_UP_RATIO), 1);
+      this.outlierDetector = outlierDetector;
+      this.healthChecker = healthChecker;
     }
 
     @Override
@@ -83,34 +169,109 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
 
       // Create new subchannels for new addresses.
       for (EquivalentAddressGroup addressGroup : addedAddrs) {
-        // NB(lukaszx0): we don't merge `attributes` with `subchannelAttr` because subchannel
-        // doesn't need them. They're describing the resolved server list but we're not taking
-        // any action based on this information.
-        Attributes subchannelAttrs = Attributes.newBuilder()
-            // NB(lukaszx0): because attributes are immutable we can't set
-            // new value for the key
-            // after creation but since we can mutate the values we leverge
-            // that and set
-            // AtomicReference which will allow mutating state info for given
-            // channel.
-            .set(STATE_INFO,
-                new AtomicReference<ConnectivityStateInfo>(ConnectivityStateInfo.forNonError(IDLE)))
-            .build();
-
-        Subchannel subchannel =
-            checkNotNull(helper.createSubchannel(addressGroup, subchannelAttrs), "subchannel");
-        subchannels.put(addressGroup, subchannel);
-        subchannel.requestConnection();
+        List<Subchannel> stripes = new CopyOnWriteArrayList<Subchannel>();
+        for (int i = 0; i < connections; i++) {
+          stripes.add(createSubchannel(addressGroup));
+        }
+        subchannels.put(addressGroup, stripes);
       }
 
       // Shutdown subchannels for removed addresses.
       for (EquivalentAddressGroup addressGroup : removedAddrs) {
-        Subchannel subchannel = subchannels.remove(addressGroup);
-        subchannel.shutdown();
+        for (Subchannel subchannel : subchannels.remove(addressGroup)) {
+          subchannel.shutdown();
+        }
+        if (outlierDetector != null) {
+          outlierDetector.removeHost(addressGroup);
+        }
+        if (healthChecker != null) {
+          healthChecker.removeTarget(addressGroup);
+        }
+      }
+      if (healthChecker != null) {
+        healthChecker
+            .updateServices(attributes.get(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS));
       }
       updateBalancingState(getAggregatedState(), getAggregatedError());
     }
 
+    private Subchannel createSubchannel(EquivalentAddressGroup addressGroup) {
+      // NB(lukaszx0): we don't merge `attributes` with `subchannelAttr` because subchannel
+      // doesn't need them. They're describing the resolved server list but we're not taking
+      // any action based on this information.
+      OutlierDetector.Host outlierHost =
+          outlierDetector != null ? outlierDetector.addHost(addressGroup) : null;
+      HealthChecker.Target healthTarget =
+          healthChecker != null ? healthChecker.addTarget(addressGroup) : null;
+      Attributes.Builder subchannelAttrs = Attributes.newBuilder()
+          // NB(lukaszx0): because attributes are immutable we can't set
+          // new value for the key
+          // after creation but since we can mutate the values we leverge
+          // that and set
+          // AtomicReference which will allow mutating state info for given
+          // channel.
+          .set(STATE_INFO,
+              new AtomicReference<ConnectivityStateInfo>(ConnectivityStateInfo.forNonError(IDLE)))
+          .set(SubchannelStats.STATS_KEY, new SubchannelStats(outlierHost));
+      if (outlierHost != null) {
+        subchannelAttrs.set(OutlierDetector.HOST_KEY, outlierHost);
+      }
+      if (healthTarget != null) {
+        subchannelAttrs.set(HealthChecker.TARGET_KEY, healthTarget);
+      }
+      Subchannel subchannel = checkNotNull(
+          helper.createSubchannel(addressGroup, subchannelAttrs.build()), "subchannel");
+      if (healthTarget != null) {
+        healthTarget.addSubchannel(subchannel);
+      }
+      subchannel.requestConnection();
+      return subchannel;
+    }
+
+    /**
+     * Picker线程上只做判断，扩连接交给helper的串行执行器，同一时间最多有一个扩连接任务在排队
+     */
+    @Override
+    public void onPicked(Subchannel picked) {
+      if (maxConnections <= connections) {
+        return;
+      }
+      final EquivalentAddressGroup addressGroup = picked.getAddresses();
+      List<Subchannel> stripes = subchannels.get(addressGroup);
+      if (stripes == null || stripes.size() >= maxConnections || !isSaturated(stripes)) {
+        return;
+      }
+      if (!scaling.compareAndSet(false, true)) {
+        return;
+      }
+      helper.runSerialized(new Runnable() {
+
+        @Override
+        public void run() {
+          try {
+            List<Subchannel> current = subchannels.get(addressGroup);
+            if (current != null && current.size() < maxConnections && isSaturated(current)) {
+              current.add(createSubchannel(addressGroup));
+            }
+          } finally {
+            scaling.set(false);
+          }
+        }
+      });
+    }
+
+    private boolean isSaturated(List<Subchannel> stripes) {
+      int inflight = 0;
+      int ready = 0;
+      for (Subchannel subchannel : stripes) {
+        if (getSubchannelStateInfoRef(subchannel).get().getState() == READY) {
+          inflight += SubchannelStats.get(subchannel).getInflight();
+          ready++;
+        }
+      }
+      return ready == stripes.size() && inflight >= scaleUpStreams * ready;
+    }
+
     @Override
     public void handleNameResolutionError(Status error) {
       updateBalancingState(TRANSIENT_FAILURE, error);
@@ -118,13 +279,17 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
 
     @Override
     public void handleSubchannelState(Subchannel subchannel, ConnectivityStateInfo stateInfo) {
-      if (!subchannels.containsValue(subchannel)) {
+      List<Subchannel> stripes = subchannels.get(subchannel.getAddresses());
+      if (stripes == null || !stripes.contains(subchannel)) {
         return;
       }
       if (stateInfo.getState() == IDLE) {
         subchannel.requestConnection();
       }
-      getSubchannelStateInfoRef(subchannel).set(stateInfo);
+      ConnectivityStateInfo previous = getSubchannelStateInfoRef(subchannel).getAndSet(stateInfo);
+      if (stateInfo.getState() == READY && previous.getState() != READY) {
+        SubchannelStats.get(subchannel).markReady();
+      }
       updateBalancingState(getAggregatedState(), getAggregatedError());
     }
 
@@ -133,6 +298,12 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
       for (Subchannel subchannel : getSubchannels()) {
         subchannel.shutdown();
       }
+      if (outlierDetector != null) {
+        outlierDetector.shutdown();
+      }
+      if (healthChecker != null) {
+        healthChecker.shutdown();
+      }
     }
 
     /**
@@ -140,7 +311,8 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
      */
     private void updateBalancingState(ConnectivityState state, Status error) {
       List<Subchannel> activeList = filterNonFailingSubchannels(getSubchannels());
-      helper.updateBalancingState(state, new GrpcRoutePicker(activeList, error, attributes));
+      helper.updateBalancingState(state,
+          new GrpcRoutePicker(activeList, error, attributes, this));
     }
 
     /**
@@ -205,7 +377,11 @@ public class GrpcRouteRoundRobinLbFactory extends LoadBalancer.Factory {
 
     @VisibleForTesting
     Collection<Subchannel> getSubchannels() {
-      return subchannels.values();
+      List<Subchannel> all = new ArrayList<Subchannel>();
+      for (List<Subchannel> stripes : subchannels.values()) {
+        all.addAll(stripes);
+      }
+      return all;
     }
 
     private static AtomicReference<ConnectivityStateInfo> getSubchannelStateInfoRef(
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 与GrpcMethodType一起标注在一元方法上：服务端额外注册该方法的批量端点，客户端在引用上开启batchMethods后，
+ * windowMillis内或攒够maxBatchSize个的并发调用合并为一次RPC发出
+ *
+ * @author liushiming
+ * @version GrpcBatch.java, v 0.0.1 2017年10月17日 上午9:52:14 liushiming
+ * @since JDK 1.8
+ */
+@Inherited
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface GrpcBatch {
+
+  int maxBatchSize() default 64;
+
+  int windowMillis() default 2;
+}
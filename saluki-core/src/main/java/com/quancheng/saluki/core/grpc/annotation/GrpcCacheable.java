@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 与GrpcMethodType一起标注在幂等的一元方法上：客户端按请求的序列化字节缓存响应，ttlMillis内相同的请求不再发出RPC；
+ * 引用上的cacheTtl、cacheSize优先于注解上的取值
+ *
+ * @author liushiming
+ * @version GrpcCacheable.java, v 0.0.1 2017年10月19日 上午10:05:21 liushiming
+ * @since JDK 1.8
+ */
+@Inherited
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface GrpcCacheable {
+
+  long ttlMillis() default 1000;
+
+  long maximumSize() default 1024;
+}
@@ -36,4 +36,6 @@ public @interface GrpcMethodType {
   Class<?> requestType() default void.class;
 
   Class<?> responseType() default void.class;
+
+  boolean idempotent() default false;
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.batch;
+
+import com.google.protobuf.Message;
+
+import io.grpc.Status;
+
+/**
+ * 批量调用中的一项：请求方向只有message，响应方向message与error二选一，error带上服务端的状态码，
+ * 批量调用方拿到的异常与单次调用一致
+ *
+ * @author liushiming
+ * @version BatchEntry.java, v 0.0.1 2017年10月17日 上午10:03:47 liushiming
+ * @since JDK 1.8
+ */
+public final class BatchEntry {
+
+  private final Message message;
+
+  private final String error;
+
+  private final Status.Code code;
+
+  private BatchEntry(Message message, String error, Status.Code code) {
+    this.message = message;
+    this.error = error;
+    this.code = code;
+  }
+
+  public static BatchEntry of(Message message) {
+    return new BatchEntry(message, null, Status.Code.OK);
+  }
+
+  public static BatchEntry error(Status status) {
+    String description = status.getDescription();
+    Status.Code code = status.isOk() ? Status.Code.UNKNOWN : status.getCode();
+    return new BatchEntry(null, description == null ? "" : description, code);
+  }
+
+  public Message getMessage() {
+    return message;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public Status.Code getCode() {
+    return code;
+  }
+
+  /**
+   * 错误项对应的Status，用来还原服务端抛出的异常
+   */
+  public Status getStatus() {
+    return Status.fromCode(code).withDescription(error);
+  }
+
+  public boolean isError() {
+    return error != null;
+  }
+
+}
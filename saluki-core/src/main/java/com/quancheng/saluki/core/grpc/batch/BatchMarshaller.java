@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 批量报文的编解码，按protobuf的repeated bytes编码，每一项为{1: bytes message, 2: string error,
+ * 3: int32 code}，非Java的服务端也可以按同样的proto定义实现批量端点；没有code的错误项按UNKNOWN处理
+ *
+ * @author liushiming
+ * @version BatchMarshaller.java, v 0.0.1 2017年10月17日 上午10:21:35 liushiming
+ * @since JDK 1.8
+ */
+public final class BatchMarshaller implements MethodDescriptor.Marshaller<List<BatchEntry>> {
+
+  private static final int MESSAGE_FIELD = 1;
+
+  private static final int ERROR_FIELD = 2;
+
+  private static final int CODE_FIELD = 3;
+
+  private final Message prototype;
+
+  public BatchMarshaller(Message prototype) {
+    this.prototype = prototype;
+  }
+
+  @Override
+  public InputStream stream(List<BatchEntry> entries) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      CodedOutputStream output = CodedOutputStream.newInstance(out);
+      for (BatchEntry entry : entries) {
+        output.writeBytes(MESSAGE_FIELD, encodeEntry(entry));
+      }
+      output.flush();
+      return new ByteArrayInputStream(out.toByteArray());
+    } catch (IOException e) {
+      throw Status.INTERNAL.withDescription("Error encoding batch").withCause(e)
+          .asRuntimeException();
+    }
+  }
+
+  @Override
+  public List<BatchEntry> parse(InputStream stream) {
+    try {
+      CodedInputStream input = CodedInputStream.newInstance(stream);
+      List<BatchEntry> entries = new ArrayList<BatchEntry>();
+      for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+        if (WireFormat.getTagFieldNumber(tag) == MESSAGE_FIELD) {
+          entries.add(decodeEntry(input.readBytes()));
+        } else {
+          input.skipField(tag);
+        }
+      }
+      return entries;
+    } catch (IOException e) {
+      throw Status.INTERNAL.withDescription("Invalid batch").withCause(e).asRuntimeException();
+    }
+  }
+
+  private ByteString encodeEntry(BatchEntry entry) throws IOException {
+    ByteString.Output out = ByteString.newOutput();
+    CodedOutputStream output = CodedOutputStream.newInstance(out);
+    if (entry.isError()) {
+      output.writeString(ERROR_FIELD, entry.getError());
+      output.writeInt32(CODE_FIELD, entry.getCode().value());
+    } else {
+      output.writeBytes(MESSAGE_FIELD, entry.getMessage().toByteString());
+    }
+    output.flush();
+    return out.toByteString();
+  }
+
+  private BatchEntry decodeEntry(ByteString bytes) throws IOException {
+    CodedInputStream input = bytes.newCodedInput();
+    Message message = null;
+    String error = null;
+    Status.Code code = Status.Code.UNKNOWN;
+    for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+      switch (WireFormat.getTagFieldNumber(tag)) {
+        case MESSAGE_FIELD:
+          message = prototype.getParserForType().parseFrom(input.readBytes());
+          break;
+        case ERROR_FIELD:
+          error = input.readString();
+          break;
+        case CODE_FIELD:
+          code = Status.fromCodeValue(input.readInt32()).getCode();
+          break;
+        default:
+          input.skipField(tag);
+          break;
+      }
+    }
+    if (error != null) {
+      return BatchEntry.error(Status.fromCode(code).withDescription(error));
+    }
+    return BatchEntry.of(message != null ? message : prototype);
+  }
+
+}
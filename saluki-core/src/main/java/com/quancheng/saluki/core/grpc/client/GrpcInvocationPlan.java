@@ -0,0 +1,372 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.ArgValidator;
+import com.quancheng.saluki.core.grpc.annotation.GrpcBatch;
+import com.quancheng.saluki.core.grpc.annotation.GrpcCacheable;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.client.internal.batch.BatchCollector;
+import com.quancheng.saluki.core.grpc.client.internal.breaker.Bulkhead;
+import com.quancheng.saluki.core.grpc.client.internal.breaker.CircuitBreaker;
+import com.quancheng.saluki.core.grpc.client.internal.cache.ResultCache;
+import com.quancheng.saluki.core.grpc.client.internal.hedging.HedgingPolicy;
+import com.quancheng.saluki.core.grpc.client.internal.unary.SingleFlight;
+import com.quancheng.saluki.core.grpc.exception.RpcFrameworkException;
+import com.quancheng.saluki.core.grpc.util.GrpcUtil;
+import com.quancheng.saluki.core.utils.ReflectUtils;
+
+import io.grpc.MethodDescriptor;
+import io.grpc.MethodDescriptor.MethodType;
+
+/**
+ * 每个(service, method)的调用计划，在创建引用时构建一次，调用时直接复用，避免每次调用都做反射和MethodDescriptor构建
+ *
+ * @author liushiming
+ * @version GrpcInvocationPlan.java, v 0.0.1 2017年10月9日 下午3:12:26 liushiming
+ * @since JDK 1.8
+ */
+@SuppressWarnings("rawtypes")
+public final class GrpcInvocationPlan {
+
+  private final GrpcURL subscribeUrl;
+
+  private final GrpcURL refUrl;
+
+  private final String serviceName;
+
+  private final String methodName;
+
+  private final MethodDescriptor<Message, Message> methodDescriptor;
+
+  private final MethodType methodType;
+
+  private final Class<?> requestType;
+
+  private final Class<?> responseType;
+
+  private final int retries;
+
+  private final boolean fallback;
+
+  private final boolean validate;
+
+  private final Set<Class> validatorGroups;
+
+  private final Class<?> returnType;
+
+  private final CircuitBreaker circuitBreaker;
+
+  private final Bulkhead bulkhead;
+
+  private final HedgingPolicy hedgingPolicy;
+
+  private final BatchCollector batchCollector;
+
+  private final SingleFlight singleFlight;
+
+  private final ResultCache resultCache;
+
+  private GrpcInvocationPlan(GrpcURL subscribeUrl, Method method) {
+    this.subscribeUrl = subscribeUrl;
+    this.refUrl = subscribeUrl.addParameter(Constants.METHOD_KEY, method.getName());
+    this.serviceName = refUrl.getServiceInterface();
+    this.methodName = method.getName();
+    GrpcMethodType grpcMethodType = method.getAnnotation(GrpcMethodType.class);
+    if (grpcMethodType == null) {
+      throw new IllegalArgumentException(
+          "method " + methodName + " of " + serviceName + " not have GrpcMethodType annotation");
+    }
+    this.methodDescriptor =
+        GrpcUtil.createMethodDescriptor(serviceName, methodName, grpcMethodType);
+    this.methodType = grpcMethodType.methodType();
+    this.requestType = grpcMethodType.requestType();
+    this.responseType = grpcMethodType.responseType();
+    this.retries = buildRetryOption(methodName, refUrl);
+    this.fallback = buildFallbackOption(methodName, refUrl);
+    this.validate = (methodType == MethodType.UNARY || methodType == MethodType.SERVER_STREAMING)
+        && requestType.isAnnotationPresent(ArgValidator.class);
+    this.validatorGroups = buildValidatorGroups(refUrl);
+    this.returnType = method.getReturnType();
+    String isolation = refUrl.getParameter(Constants.ISOLATION_KEY, Constants.ISOLATION_HYSTRIX);
+    if (Constants.ISOLATION_NATIVE.equals(isolation)) {
+      int maxConcurrent =
+          refUrl.getParameter(Constants.MAX_CONCURRENT_KEY, Constants.DEFAULT_MAX_CONCURRENT);
+      this.circuitBreaker = CircuitBreaker.of(serviceName, methodName);
+      this.bulkhead = Bulkhead.of(serviceName, methodName, maxConcurrent);
+    } else {
+      this.circuitBreaker = null;
+      this.bulkhead = null;
+    }
+    this.hedgingPolicy = buildHedgingPolicy(serviceName, methodName, grpcMethodType, refUrl);
+    this.batchCollector = buildBatchCollector(serviceName, method, grpcMethodType, refUrl);
+    this.singleFlight = buildSingleFlight(methodName, methodType, refUrl);
+    this.resultCache = buildResultCache(serviceName, method, grpcMethodType, refUrl);
+  }
+
+  public static GrpcInvocationPlan create(GrpcURL refUrl, Method method) {
+    return new GrpcInvocationPlan(refUrl, method);
+  }
+
+  public static GrpcInvocationPlan create(GrpcURL refUrl, String methodName) {
+    Class<?> service = ReflectUtils.forName(refUrl.getServiceInterface());
+    for (Method method : ReflectUtils.findAllPublicMethods(service)) {
+      if (method.getName().equals(methodName)) {
+        return create(refUrl, method);
+      }
+    }
+    RpcFrameworkException framworkException = new RpcFrameworkException(
+        new NoSuchMethodException("No such method " + methodName + " in class " + service));
+    throw framworkException;
+  }
+
+  public GrpcURL getSubscribeUrl() {
+    return subscribeUrl;
+  }
+
+  public GrpcURL getRefUrl() {
+    return refUrl;
+  }
+
+  public String getServiceName() {
+    return serviceName;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  public MethodDescriptor<Message, Message> getMethodDescriptor() {
+    return methodDescriptor;
+  }
+
+  public MethodType getMethodType() {
+    return methodType;
+  }
+
+  public Class<?> getRequestType() {
+    return requestType;
+  }
+
+  public Class<?> getResponseType() {
+    return responseType;
+  }
+
+  public int getRetries() {
+    return retries;
+  }
+
+  public boolean isFallback() {
+    return fallback;
+  }
+
+  public boolean isValidate() {
+    return validate;
+  }
+
+  public Set<Class> getValidatorGroups() {
+    return validatorGroups;
+  }
+
+  public Class<?> getReturnType() {
+    return returnType;
+  }
+
+  /**
+   * isolation=native时一元调用不经过Hystrix，由内置熔断器和信号量隔离保护
+   */
+  public boolean isNativeIsolation() {
+    return circuitBreaker != null;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public Bulkhead getBulkhead() {
+    return bulkhead;
+  }
+
+  /**
+   * 为null时该方法不做对冲，按retries走普通的失败重试
+   */
+  public HedgingPolicy getHedgingPolicy() {
+    return hedgingPolicy;
+  }
+
+  /**
+   * 不为null时该方法的并发调用合并为批量RPC发出
+   */
+  public BatchCollector getBatchCollector() {
+    return batchCollector;
+  }
+
+  /**
+   * 不为null时相同请求在途期间只发出一次RPC
+   */
+  public SingleFlight getSingleFlight() {
+    return singleFlight;
+  }
+
+  /**
+   * 不为null时该方法的响应按请求缓存，命中时不发出RPC
+   */
+  public ResultCache getResultCache() {
+    return resultCache;
+  }
+
+  /**
+   * 接口声明返回CompletableFuture、CompletionStage或Future时，一元调用走非阻塞路径；
+   * 按声明类型精确匹配，返回Object的方法仍按同步调用返回结果
+   */
+  public boolean isCompletableFutureReturn() {
+    return methodType == MethodType.UNARY && (returnType == CompletableFuture.class
+        || returnType == CompletionStage.class || returnType == Future.class);
+  }
+
+  public boolean isListenableFutureReturn() {
+    return methodType == MethodType.UNARY && returnType == ListenableFuture.class;
+  }
+
+  private static boolean buildFallbackOption(String methodName, GrpcURL refUrl) {
+    Boolean isEnableFallback = refUrl.getParameter(Constants.GRPC_FALLBACK_KEY, Boolean.FALSE);
+    String[] methodNames =
+        StringUtils.split(refUrl.getParameter(Constants.FALLBACK_METHODS_KEY), ",");
+    if (methodNames != null && methodNames.length > 0) {
+      return isEnableFallback && Arrays.asList(methodNames).contains(methodName);
+    } else {
+      return isEnableFallback;
+    }
+  }
+
+  private static int buildRetryOption(String methodName, GrpcURL refUrl) {
+    int retries = refUrl.getParameter((Constants.METHOD_RETRY_KEY), 0);
+    String[] methodNames = StringUtils.split(refUrl.getParameter(Constants.RETRY_METHODS_KEY), ",");
+    if (methodNames != null && methodNames.length > 0) {
+      if (Arrays.asList(methodNames).contains(methodName)) {
+        return retries;
+      } else {
+        return 0;
+      }
+    } else {
+      return retries;
+    }
+  }
+
+  private static HedgingPolicy buildHedgingPolicy(String serviceName, String methodName,
+      GrpcMethodType grpcMethodType, GrpcURL refUrl) {
+    String[] hedgingMethods =
+        StringUtils.split(refUrl.getParameter(Constants.HEDGING_METHODS_KEY), ",");
+    if (hedgingMethods == null || !Arrays.asList(hedgingMethods).contains(methodName)
+        || grpcMethodType.methodType() != MethodType.UNARY) {
+      return null;
+    }
+    if (!isIdempotent(methodName, grpcMethodType, refUrl)) {
+      throw new IllegalArgumentException("method " + methodName + " of " + serviceName
+          + " is not idempotent, hedging is only allowed for idempotent methods");
+    }
+    long hedgingDelay = refUrl.getParameter(Constants.HEDGING_DELAY_KEY, 0L);
+    int maxHedges = refUrl.getParameter(Constants.MAX_HEDGES_KEY, Constants.DEFAULT_MAX_HEDGES);
+    return new HedgingPolicy(serviceName, methodName, hedgingDelay, maxHedges);
+  }
+
+  private static BatchCollector buildBatchCollector(String serviceName, Method method,
+      GrpcMethodType grpcMethodType, GrpcURL refUrl) {
+    GrpcBatch grpcBatch = method.getAnnotation(GrpcBatch.class);
+    String[] batchMethods =
+        StringUtils.split(refUrl.getParameter(Constants.BATCH_METHODS_KEY), ",");
+    if (grpcBatch == null || batchMethods == null
+        || !Arrays.asList(batchMethods).contains(method.getName())
+        || grpcMethodType.methodType() != MethodType.UNARY) {
+      return null;
+    }
+    return new BatchCollector(
+        GrpcUtil.createBatchMethodDescriptor(serviceName, method.getName(), grpcMethodType),
+        grpcBatch.maxBatchSize(), grpcBatch.windowMillis(),
+        buildRetryOption(method.getName(), refUrl));
+  }
+
+  private static SingleFlight buildSingleFlight(String methodName, MethodType methodType,
+      GrpcURL refUrl) {
+    String[] coalesceMethods =
+        StringUtils.split(refUrl.getParameter(Constants.COALESCE_METHODS_KEY), ",");
+    if (coalesceMethods == null || !Arrays.asList(coalesceMethods).contains(methodName)
+        || methodType != MethodType.UNARY) {
+      return null;
+    }
+    return new SingleFlight();
+  }
+
+  private static ResultCache buildResultCache(String serviceName, Method method,
+      GrpcMethodType grpcMethodType, GrpcURL refUrl) {
+    String methodName = method.getName();
+    GrpcCacheable grpcCacheable = method.getAnnotation(GrpcCacheable.class);
+    String[] cacheMethods =
+        StringUtils.split(refUrl.getParameter(Constants.CACHE_METHODS_KEY), ",");
+    boolean cacheable = grpcCacheable != null
+        || (cacheMethods != null && Arrays.asList(cacheMethods).contains(methodName));
+    if (!cacheable || grpcMethodType.methodType() != MethodType.UNARY) {
+      return null;
+    }
+    if (!isIdempotent(methodName, grpcMethodType, refUrl)) {
+      throw new IllegalArgumentException("method " + methodName + " of " + serviceName
+          + " is not idempotent, result cache is only allowed for idempotent methods");
+    }
+    long ttlMillis = refUrl.getParameter(Constants.CACHE_TTL_KEY,
+        grpcCacheable != null ? grpcCacheable.ttlMillis() : 1000L);
+    long maximumSize = refUrl.getParameter(Constants.CACHE_SIZE_KEY,
+        grpcCacheable != null ? grpcCacheable.maximumSize() : 1024L);
+    return new ResultCache(serviceName, methodName, ttlMillis, maximumSize, refUrl);
+  }
+
+  private static boolean isIdempotent(String methodName, GrpcMethodType grpcMethodType,
+      GrpcURL refUrl) {
+    String[] idempotentMethods =
+        StringUtils.split(refUrl.getParameter(Constants.IDEMPOTENT_METHODS_KEY), ",");
+    return grpcMethodType.idempotent()
+        || (idempotentMethods != null && Arrays.asList(idempotentMethods).contains(methodName));
+  }
+
+  private static Set<Class> buildValidatorGroups(GrpcURL refUrl) {
+    String validatorGroupStr = refUrl.getParameter(Constants.VALIDATOR_GROUPS);
+    if (StringUtils.isEmpty(validatorGroupStr)) {
+      return Collections.emptySet();
+    }
+    Set<Class> validatorGroups = Sets.newHashSet();
+    for (String splitGroup : validatorGroupStr.split(";")) {
+      try {
+        validatorGroups.add(ReflectUtils.name2class(splitGroup));
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException(e.getMessage(), e);
+      }
+    }
+    return Collections.unmodifiableSet(validatorGroups);
+  }
+
+}
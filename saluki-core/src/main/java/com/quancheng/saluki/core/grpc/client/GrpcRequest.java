@@ -7,15 +7,9 @@
 package com.quancheng.saluki.core.grpc.client;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
 
 import com.google.protobuf.Message;
-import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
-import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
-import com.quancheng.saluki.core.grpc.exception.RpcFrameworkException;
-import com.quancheng.saluki.core.grpc.util.GrpcUtil;
-import com.quancheng.saluki.core.utils.ReflectUtils;
 
 import io.grpc.Channel;
 import io.grpc.MethodDescriptor;
@@ -48,6 +42,8 @@ public interface GrpcRequest {
 
   public io.grpc.MethodDescriptor.MethodType getMethodType();
 
+  public GrpcInvocationPlan getInvocationPlan();
+
 
   public static class Default implements GrpcRequest, Serializable {
 
@@ -57,22 +53,19 @@ public interface GrpcRequest {
 
     private final Channel channel;
 
-    private final String methodName;
-
     private final Object[] args;
 
     private final int callType;
 
     private final int callTimeout;
 
-    private final GrpcMethodType grpcMethodType;
+    private final GrpcInvocationPlan invocationPlan;
 
-    public Default(GrpcURL refUrl, GrpcProtocolClient.ChannelCall chanelPool, String methodName,
+    public Default(GrpcProtocolClient.ChannelCall chanelPool, GrpcInvocationPlan invocationPlan,
         Object[] args, int callType, int callTimeout) {
       super();
-      this.refUrl = refUrl.addParameter(Constants.METHOD_KEY, methodName);
-      this.channel = chanelPool.getChannel(refUrl);
-      this.methodName = methodName;
+      this.refUrl = invocationPlan.getRefUrl();
+      this.channel = chanelPool.getChannel(invocationPlan.getSubscribeUrl());
       if (args.length > 2) {
         throw new IllegalArgumentException(
             "grpc not support multiple args,args is " + args + " length is " + args.length);
@@ -81,14 +74,7 @@ public interface GrpcRequest {
       }
       this.callType = callType;
       this.callTimeout = callTimeout;
-      try {
-        Class<?> service = ReflectUtils.forName(this.getServiceName());
-        Method method = ReflectUtils.findMethodByMethodName(service, this.getMethodName());
-        grpcMethodType = method.getAnnotation(GrpcMethodType.class);
-      } catch (Exception e) {
-        RpcFrameworkException framworkException = new RpcFrameworkException(e);
-        throw framworkException;
-      }
+      this.invocationPlan = invocationPlan;
     }
 
     @Override
@@ -98,12 +84,12 @@ public interface GrpcRequest {
 
     @Override
     public MethodDescriptor<Message, Message> getMethodDescriptor() {
-      return GrpcUtil.createMethodDescriptor(this.getServiceName(), methodName, grpcMethodType);
+      return invocationPlan.getMethodDescriptor();
     }
 
     @Override
     public Class<?> getResponseType() {
-      return grpcMethodType.responseType();
+      return invocationPlan.getResponseType();
     }
 
     @Override
@@ -113,7 +99,7 @@ public interface GrpcRequest {
 
     @Override
     public String getServiceName() {
-      return refUrl.getServiceInterface();
+      return invocationPlan.getServiceName();
     }
 
     @Override
@@ -124,7 +110,7 @@ public interface GrpcRequest {
 
     @Override
     public String getMethodName() {
-      return this.methodName;
+      return invocationPlan.getMethodName();
     }
 
     @Override
@@ -139,7 +125,7 @@ public interface GrpcRequest {
 
     @Override
     public io.grpc.MethodDescriptor.MethodType getMethodType() {
-      return this.grpcMethodType.methodType();
+      return invocationPlan.getMethodType();
     }
 
 
@@ -148,6 +134,11 @@ public interface GrpcRequest {
       return args[1];
     }
 
+    @Override
+    public GrpcInvocationPlan getInvocationPlan() {
+      return this.invocationPlan;
+    }
+
   }
 
 }
@@ -8,20 +8,33 @@ package com.quancheng.saluki.core.grpc.client.internal;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
 import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
 import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.client.GrpcResponse;
+import com.quancheng.saluki.core.grpc.client.internal.cache.ResultCache;
 import com.quancheng.saluki.core.grpc.client.internal.stream.GrpcStreamClientCall;
+import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcBatchUnaryCommand;
 import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcBlockingUnaryCommand;
 import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcFutureUnaryCommand;
 import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcHystrixCommand;
+import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcNativeUnaryCommand;
+import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcObservableUnaryCommand;
 import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcUnaryClientCall;
 import com.quancheng.saluki.core.grpc.client.internal.validate.RequestValidator;
 import com.quancheng.saluki.core.grpc.exception.RpcErrorMsgConstant;
@@ -35,6 +48,8 @@ import com.quancheng.saluki.core.utils.ReflectUtils;
 import com.quancheng.saluki.serializer.exception.ProtobufException;
 
 import io.grpc.Channel;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.MethodDescriptor;
 import io.grpc.MethodDescriptor.MethodType;
 import io.grpc.stub.StreamObserver;
@@ -51,8 +66,14 @@ public abstract class AbstractClientInvocation implements InvocationHandler {
 
   private final RequestValidator requstValidator;
 
+  private final ConcurrentMap<String, GrpcInvocationPlan> invocationPlans =
+      Maps.newConcurrentMap();
+
   protected abstract GrpcRequest buildGrpcRequest(Method method, Object[] args);
 
+  protected abstract GrpcRequest buildGrpcRequest(GrpcInvocationPlan invocationPlan,
+      Object[] args);
+
 
   public AbstractClientInvocation(GrpcURL refUrl) {
     Long monitorinterval = refUrl.getParameter("monitorinterval", 60L);
@@ -65,31 +86,41 @@ public abstract class AbstractClientInvocation implements InvocationHandler {
     if (ReflectUtils.isToStringMethod(method)) {
       return AbstractClientInvocation.this.toString();
     } else {
-      GrpcRequest request = this.buildGrpcRequest(method, args);
-      requstValidator.doValidate(request);
-      MethodType methodType = request.getMethodType();
-      Channel channel = request.getChannel();
-      try {
-        switch (methodType) {
-          case UNARY:
-            return unaryCall(request, channel);
-          case CLIENT_STREAMING:
-            return streamCall(request, channel);
-          case SERVER_STREAMING:
-            return streamCall(request, channel);
-          case BIDI_STREAMING:
-            return streamCall(request, channel);
-          default:
-            RpcServiceException rpcFramwork =
-                new RpcServiceException(RpcErrorMsgConstant.SERVICE_UNFOUND);
-            throw rpcFramwork;
-        }
-      } finally {
-        Object remote = GrpcCallOptions.getAffinity(request.getRefUrl())
-            .get(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY);
-        log.debug(String.format("Service: %s  Method: %s  RemoteAddress: %s",
-            request.getServiceName(), request.getMethodName(), String.valueOf(remote)));
+      return this.doInvoke(this.buildGrpcRequest(method, args));
+    }
+  }
+
+  /**
+   * 字节码生成的Stub直接携带调用计划进入，不经过InvocationHandler的方法分派
+   */
+  public Object invoke(GrpcInvocationPlan invocationPlan, Object[] args) throws Throwable {
+    return this.doInvoke(this.buildGrpcRequest(invocationPlan, args));
+  }
+
+  protected Object doInvoke(GrpcRequest request) throws Throwable {
+    requstValidator.doValidate(request.getInvocationPlan(), request.getRequestParam());
+    MethodType methodType = request.getMethodType();
+    Channel channel = request.getChannel();
+    try {
+      switch (methodType) {
+        case UNARY:
+          return unaryCall(request, channel);
+        case CLIENT_STREAMING:
+          return streamCall(request, channel);
+        case SERVER_STREAMING:
+          return streamCall(request, channel);
+        case BIDI_STREAMING:
+          return streamCall(request, channel);
+        default:
+          RpcServiceException rpcFramwork =
+              new RpcServiceException(RpcErrorMsgConstant.SERVICE_UNFOUND);
+          throw rpcFramwork;
       }
+    } finally {
+      Object remote = GrpcCallOptions.getAffinity(request.getRefUrl())
+          .get(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY);
+      log.debug(String.format("Service: %s  Method: %s  RemoteAddress: %s",
+          request.getServiceName(), request.getMethodName(), String.valueOf(remote)));
     }
   }
 
@@ -136,10 +167,57 @@ public abstract class AbstractClientInvocation implements InvocationHandler {
     String serviceName = request.getServiceName();
     String methodName = request.getMethodName();
     GrpcURL refUrl = request.getRefUrl();
-    Integer retryOption = this.buildRetryOption(methodName, refUrl);
-    GrpcUnaryClientCall clientCall = GrpcUnaryClientCall.create(channel, retryOption, refUrl);
+    GrpcInvocationPlan invocationPlan = request.getInvocationPlan();
+    Deadline deadline = this.callDeadline(request);
+    boolean isFutureReturn =
+        invocationPlan.isCompletableFutureReturn() || invocationPlan.isListenableFutureReturn();
+    ResultCache resultCache = invocationPlan.getResultCache();
+    ByteString cacheKey = null;
+    if (resultCache != null) {
+      cacheKey = ResultCache.keyOf(this.requestMessage(request));
+    }
+    if (cacheKey != null) {
+      Message cachedResponse = resultCache.get(cacheKey, monitor);
+      if (cachedResponse != null) {
+        Object obj = this.responseArg(request, cachedResponse);
+        if (isFutureReturn) {
+          return adaptFuture(invocationPlan, Futures.immediateFuture(obj));
+        }
+        return obj;
+      }
+    }
+    if (invocationPlan.getBatchCollector() != null) {
+      GrpcBatchUnaryCommand batchCommand =
+          new GrpcBatchUnaryCommand(request, channel, deadline, monitor);
+      if (isFutureReturn) {
+        return adaptFuture(invocationPlan, batchCommand.future());
+      }
+      return batchCommand.execute();
+    }
+    GrpcUnaryClientCall clientCall =
+        GrpcUnaryClientCall.create(channel, invocationPlan.getRetries(),
+            invocationPlan.getHedgingPolicy(), invocationPlan.getSingleFlight(), deadline, refUrl);
+    if (cacheKey != null) {
+      clientCall = resultCache.populating(clientCall, cacheKey);
+    }
+    Boolean isEnableFallback = invocationPlan.isFallback();
+    if (invocationPlan.isNativeIsolation()) {
+      GrpcNativeUnaryCommand nativeCommand =
+          new GrpcNativeUnaryCommand(request, clientCall, monitor);
+      if (isFutureReturn) {
+        return adaptFuture(invocationPlan, nativeCommand.future());
+      }
+      return nativeCommand.execute();
+    }
+    if (isFutureReturn) {
+      GrpcObservableUnaryCommand observableCommand =
+          new GrpcObservableUnaryCommand(serviceName, methodName, isEnableFallback);
+      observableCommand.setClientCall(clientCall);
+      observableCommand.setRequest(request);
+      observableCommand.setClientServerMonitor(monitor);
+      return adaptFuture(invocationPlan, observableCommand.future());
+    }
     GrpcHystrixCommand hystrixCommand = null;
-    Boolean isEnableFallback = this.buildFallbackOption(methodName, refUrl);
     switch (request.getCallType()) {
       case Constants.RPCTYPE_ASYNC:
         hystrixCommand = new GrpcFutureUnaryCommand(serviceName, methodName, isEnableFallback);
@@ -160,29 +238,93 @@ public abstract class AbstractClientInvocation implements InvocationHandler {
 
 
 
-  private Boolean buildFallbackOption(String methodName, GrpcURL refUrl) {
-    Boolean isEnableFallback = refUrl.getParameter(Constants.GRPC_FALLBACK_KEY, Boolean.FALSE);
-    String[] methodNames =
-        StringUtils.split(refUrl.getParameter(Constants.FALLBACK_METHODS_KEY), ",");
-    if (methodNames != null && methodNames.length > 0) {
-      return isEnableFallback && Arrays.asList(methodNames).contains(methodName);
-    } else {
-      return isEnableFallback;
+  /**
+   * 在调用线程上计算截止时间：取callTimeout与当前Context中上游传下来的截止时间的较小值，
+   * 之后即使切换到Hystrix线程或重试线程执行，也不会丢失上游的时间预算
+   */
+  private Deadline callDeadline(GrpcRequest request) {
+    Deadline deadline = Deadline.after(request.getCallTimeout(), TimeUnit.MILLISECONDS);
+    Deadline upstreamDeadline = Context.current().getDeadline();
+    if (upstreamDeadline != null) {
+      deadline = deadline.minimum(upstreamDeadline);
     }
+    return deadline;
   }
 
-  private Integer buildRetryOption(String methodName, GrpcURL refUrl) {
-    Integer retries = refUrl.getParameter((Constants.METHOD_RETRY_KEY), 0);
-    String[] methodNames = StringUtils.split(refUrl.getParameter(Constants.RETRY_METHODS_KEY), ",");
-    if (methodNames != null && methodNames.length > 0) {
-      if (Arrays.asList(methodNames).contains(methodName)) {
-        return retries;
-      } else {
-        return Integer.valueOf(0);
+  private Message requestMessage(GrpcRequest request) {
+    try {
+      return SerializerUtil.pojo2Protobuf(request.getRequestParam());
+    } catch (ProtobufException e) {
+      RpcFrameworkException rpcFramwork = new RpcFrameworkException(e);
+      throw rpcFramwork;
+    }
+  }
+
+  /**
+   * 缓存里保存的是不可变的Message，每次命中都转换出新的POJO，调用方修改返回值不会影响缓存
+   */
+  private Object responseArg(GrpcRequest request, Message response) {
+    try {
+      return new GrpcResponse.Default(response, request.getResponseType()).getResponseArg();
+    } catch (ProtobufException e) {
+      RpcFrameworkException rpcFramwork = new RpcFrameworkException(e);
+      throw rpcFramwork;
+    }
+  }
+
+  private Object adaptFuture(GrpcInvocationPlan invocationPlan, ListenableFuture<Object> future) {
+    if (invocationPlan.isCompletableFutureReturn()) {
+      return toCompletableFuture(future);
+    }
+    return future;
+  }
+
+  private CompletableFuture<Object> toCompletableFuture(final ListenableFuture<Object> future) {
+    final CompletableFuture<Object> completableFuture = new CompletableFuture<Object>() {
+
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        future.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+      }
+    };
+    Futures.addCallback(future, new FutureCallback<Object>() {
+
+      @Override
+      public void onSuccess(Object result) {
+        completableFuture.complete(result);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        completableFuture.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return completableFuture;
+  }
+
+  /**
+   * 调用计划按key缓存，同一个(service, method)只做一次反射和MethodDescriptor构建
+   */
+  protected GrpcInvocationPlan getInvocationPlan(String planKey, GrpcURL refUrl,
+      String methodName) {
+    GrpcInvocationPlan invocationPlan = invocationPlans.get(planKey);
+    if (invocationPlan == null) {
+      invocationPlan = GrpcInvocationPlan.create(refUrl, methodName);
+      GrpcInvocationPlan previous = invocationPlans.putIfAbsent(planKey, invocationPlan);
+      if (previous != null) {
+        invocationPlan = previous;
       }
-    } else {
-      return retries;
     }
+    return invocationPlan;
+  }
+
+  protected GrpcInvocationPlan getInvocationPlan(String planKey) {
+    return invocationPlans.get(planKey);
+  }
+
+  protected void cacheInvocationPlan(String planKey, GrpcInvocationPlan invocationPlan) {
+    invocationPlans.put(planKey, invocationPlan);
   }
 
 }
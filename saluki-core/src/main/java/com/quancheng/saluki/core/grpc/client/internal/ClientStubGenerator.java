@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
+import com.quancheng.saluki.core.grpc.exception.RpcFrameworkException;
+import com.quancheng.saluki.core.utils.ClassHelper;
+import com.quancheng.saluki.core.utils.ReflectUtils;
+
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+
+/**
+ * 用javassist为服务接口生成实现类，每个RPC方法直接携带预先构建好的调用计划调用，代替JDK动态代理的反射分派
+ *
+ * @author liushiming
+ * @version ClientStubGenerator.java, v 0.0.1 2017年10月10日 上午10:21:37 liushiming
+ * @since JDK 1.8
+ */
+final class ClientStubGenerator {
+
+  private static final String STUB_CLASS_SUFFIX = "$$SalukiStub";
+
+  private static final AtomicInteger STUB_CLASS_COUNTER = new AtomicInteger(0);
+
+  private static final ConcurrentMap<Class<?>, StubClass> STUB_CLASS_CACHE =
+      Maps.newConcurrentMap();
+
+  private ClientStubGenerator() {}
+
+  public static Object newStub(Class<?> interfaceClass, AbstractClientInvocation invocation) {
+    StubClass stubClass = STUB_CLASS_CACHE.get(interfaceClass);
+    if (stubClass == null) {
+      synchronized (STUB_CLASS_CACHE) {
+        stubClass = STUB_CLASS_CACHE.get(interfaceClass);
+        if (stubClass == null) {
+          stubClass = generate(interfaceClass);
+          STUB_CLASS_CACHE.put(interfaceClass, stubClass);
+        }
+      }
+    }
+    Method[] methods = stubClass.methods;
+    GrpcInvocationPlan[] invocationPlans = new GrpcInvocationPlan[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      if (methods[i].isAnnotationPresent(GrpcMethodType.class)) {
+        invocationPlans[i] = invocation.getInvocationPlan(methods[i].getName());
+      }
+    }
+    try {
+      return stubClass.clazz
+          .getConstructor(AbstractClientInvocation.class, GrpcInvocationPlan[].class)
+          .newInstance(invocation, invocationPlans);
+    } catch (Exception e) {
+      throw new RpcFrameworkException(e);
+    }
+  }
+
+  private static StubClass generate(Class<?> interfaceClass) {
+    ClassLoader classLoader = ClassHelper.getClassLoader(interfaceClass);
+    ClassPool pool = new ClassPool(true);
+    pool.appendClassPath(new LoaderClassPath(classLoader));
+    pool.appendClassPath(new ClassClassPath(ClientStubGenerator.class));
+    String stubClassName =
+        interfaceClass.getName() + STUB_CLASS_SUFFIX + STUB_CLASS_COUNTER.getAndIncrement();
+    List<Method> methods = ReflectUtils.findAllPublicMethods(interfaceClass);
+    try {
+      CtClass ctClass = pool.makeClass(stubClassName);
+      ctClass.addInterface(pool.get(interfaceClass.getName()));
+      ctClass.addField(CtField.make("private final " + AbstractClientInvocation.class.getName()
+          + " invocation;", ctClass));
+      ctClass.addField(CtField.make(
+          "private final " + GrpcInvocationPlan.class.getName() + "[] invocationPlans;", ctClass));
+      ctClass.addConstructor(CtNewConstructor.make(
+          new CtClass[] {pool.get(AbstractClientInvocation.class.getName()),
+              pool.get(GrpcInvocationPlan.class.getName() + "[]")},
+          new CtClass[0], "{ this.invocation = $1; this.invocationPlans = $2; }", ctClass));
+      for (int i = 0; i < methods.size(); i++) {
+        Method method = methods.get(i);
+        if (!Modifier.isAbstract(method.getModifiers())) {
+          continue;
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        CtClass[] ctParameterTypes = new CtClass[parameterTypes.length];
+        for (int j = 0; j < parameterTypes.length; j++) {
+          ctParameterTypes[j] = pool.get(ReflectUtils.getName(parameterTypes[j]));
+        }
+        Class<?>[] exceptionTypes = method.getExceptionTypes();
+        CtClass[] ctExceptionTypes = new CtClass[exceptionTypes.length];
+        for (int j = 0; j < exceptionTypes.length; j++) {
+          ctExceptionTypes[j] = pool.get(exceptionTypes[j].getName());
+        }
+        CtMethod ctMethod = new CtMethod(pool.get(ReflectUtils.getName(method.getReturnType())),
+            method.getName(), ctParameterTypes, ctClass);
+        ctMethod.setExceptionTypes(ctExceptionTypes);
+        ctMethod.setBody(buildMethodBody(method, i));
+        ctClass.addMethod(ctMethod);
+      }
+      ctClass.addMethod(CtNewMethod
+          .make("public String toString() { return this.invocation.toString(); }", ctClass));
+      Class<?> clazz = ctClass.toClass(classLoader, interfaceClass.getProtectionDomain());
+      ctClass.detach();
+      return new StubClass(clazz, methods.toArray(new Method[methods.size()]));
+    } catch (Exception e) {
+      throw new RpcFrameworkException(
+          "generate client stub for " + interfaceClass.getName() + " failed", e);
+    }
+  }
+
+  /**
+   * 与JDK动态代理保持一致：RuntimeException、Error和接口声明的异常原样抛出，其余受检异常包装为
+   * UndeclaredThrowableException，避免javassist不做受检异常检查而把未声明的异常直接抛给调用方；
+   * 不支持远程调用的方法与DefaultProxyClient一样抛出IllegalArgumentException
+   */
+  private static String buildMethodBody(Method method, int index) {
+    if (!method.isAnnotationPresent(GrpcMethodType.class)) {
+      return "{ throw new IllegalArgumentException("
+          + "\"remote call type do not support this method " + method.getName() + "\"); }";
+    }
+    StringBuilder body = new StringBuilder("{ try { ");
+    if (method.getReturnType() == void.class) {
+      body.append("this.invocation.invoke(this.invocationPlans[").append(index)
+          .append("], $args); ");
+    } else {
+      body.append("return ($r) this.invocation.invoke(this.invocationPlans[").append(index)
+          .append("], $args); ");
+    }
+    body.append("} catch (java.lang.RuntimeException e) { throw e; } ");
+    body.append("catch (java.lang.Error e) { throw e; } ");
+    for (Class<?> exceptionType : method.getExceptionTypes()) {
+      body.append("catch (").append(exceptionType.getName()).append(" e) { throw e; } ");
+    }
+    body.append("catch (java.lang.Throwable e) { ")
+        .append("throw new java.lang.reflect.UndeclaredThrowableException(e); } }");
+    return body.toString();
+  }
+
+  private static final class StubClass {
+
+    private final Class<?> clazz;
+
+    private final Method[] methods;
+
+    private StubClass(Class<?> clazz, Method[] methods) {
+      this.clazz = clazz;
+      this.methods = methods;
+    }
+  }
+
+}
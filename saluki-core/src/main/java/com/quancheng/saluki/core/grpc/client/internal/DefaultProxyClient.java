@@ -9,7 +9,10 @@ package com.quancheng.saluki.core.grpc.client.internal;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
+import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
 import com.quancheng.saluki.core.grpc.client.GrpcProtocolClient;
 import com.quancheng.saluki.core.grpc.client.GrpcRequest;
 import com.quancheng.saluki.core.utils.ClassHelper;
@@ -39,8 +42,14 @@ public class DefaultProxyClient<T> implements GrpcProtocolClient<T> {
   @Override
   public T getGrpcClient(GrpcProtocolClient.ChannelCall channelPoll, int callType,
       int callTimeout) {
+    DefaultProxyClientInvocation invocation =
+        new DefaultProxyClientInvocation(channelPoll, callType, callTimeout);
+    String proxy = refUrl.getParameter(Constants.PROXY_KEY, Constants.PROXY_JDK);
+    if (Constants.PROXY_JAVASSIST.equals(proxy)) {
+      return (T) ClientStubGenerator.newStub(interfaceClass, invocation);
+    }
     return (T) Proxy.newProxyInstance(ClassHelper.getClassLoader(), new Class[] {interfaceClass},
-        new DefaultProxyClientInvocation(channelPoll, callType, callTimeout));
+        invocation);
   }
 
   private class DefaultProxyClientInvocation extends AbstractClientInvocation {
@@ -55,6 +64,13 @@ public class DefaultProxyClient<T> implements GrpcProtocolClient<T> {
       this.channelPool = call;
       this.callType = callType;
       this.callTimeout = callTimeout;
+      for (Method method : ReflectUtils.findAllPublicMethods(interfaceClass)) {
+        if (!method.isAnnotationPresent(GrpcMethodType.class)) {
+          continue;
+        }
+        super.cacheInvocationPlan(method.getName(),
+            GrpcInvocationPlan.create(DefaultProxyClient.this.refUrl, method));
+      }
     }
 
     @Override
@@ -64,8 +80,15 @@ public class DefaultProxyClient<T> implements GrpcProtocolClient<T> {
         throw new IllegalArgumentException(
             "remote call type do not support this method " + method.getName());
       }
-      GrpcRequest request = new GrpcRequest.Default(DefaultProxyClient.this.refUrl, channelPool,
-          method.getName(), args, callType, callTimeout);
+      GrpcInvocationPlan invocationPlan = super.getInvocationPlan(method.getName(),
+          DefaultProxyClient.this.refUrl, method.getName());
+      return this.buildGrpcRequest(invocationPlan, args);
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(GrpcInvocationPlan invocationPlan, Object[] args) {
+      GrpcRequest request =
+          new GrpcRequest.Default(channelPool, invocationPlan, args, callType, callTimeout);
       return request;
     }
 
@@ -11,6 +11,7 @@ import java.lang.reflect.Proxy;
 
 import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
 import com.quancheng.saluki.core.grpc.client.GrpcProtocolClient;
 import com.quancheng.saluki.core.grpc.client.GrpcRequest;
 import com.quancheng.saluki.core.grpc.service.GenericService;
@@ -55,13 +56,29 @@ public class GenericProxyClient<T> implements GrpcProtocolClient<T> {
 
     @Override
     protected GrpcRequest buildGrpcRequest(Method method, Object[] args) {
+      String planKey = getServiceName(args) + ":" + getGroup(args) + ":" + getVersion(args) + ":"
+          + getMethod(args);
+      GrpcInvocationPlan invocationPlan = super.getInvocationPlan(planKey);
+      if (invocationPlan == null) {
+        invocationPlan =
+            super.getInvocationPlan(planKey, resetRefUrl(args), this.getMethod(args));
+      }
+      return this.buildGrpcRequest(invocationPlan, this.getArg(args));
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(GrpcInvocationPlan invocationPlan, Object[] args) {
+      GrpcRequest request =
+          new GrpcRequest.Default(channelPool, invocationPlan, args, callType, callTimeout);
+      return request;
+    }
+
+    private GrpcURL resetRefUrl(Object[] args) {
       GrpcURL resetRefUrl = GenericProxyClient.this.refUrl;
       resetRefUrl = resetRefUrl.setPath(getServiceName(args));
       resetRefUrl = resetRefUrl.addParameter(Constants.GROUP_KEY, getGroup(args));
       resetRefUrl = resetRefUrl.addParameter(Constants.VERSION_KEY, getVersion(args));
-      GrpcRequest request = new GrpcRequest.Default(resetRefUrl, channelPool, this.getMethod(args),
-          this.getArg(args), callType, callTimeout);
-      return request;
+      return resetRefUrl;
     }
 
     private String getServiceName(Object[] args) {
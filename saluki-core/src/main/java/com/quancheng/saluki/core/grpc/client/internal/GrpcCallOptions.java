@@ -34,12 +34,13 @@ public abstract class GrpcCallOptions {
 
   public static final String GRPC_CURRENT_ADDR_KEY = "current-address";
 
-  public static final String GRPC_NAMERESOVER_ATTRIBUTES = "nameresolver-attributes";
-
   private static final Map<String, CallOptions> CACHEOPTIONS_CACHE = Maps.newConcurrentMap();
 
+  /**
+   * 按serviceKey(group/interface:version)缓存，同一个接口引用了不同group时Picker拿到的是各自的refUrl
+   */
   public static CallOptions createCallOptions(final GrpcURL refUrl) {
-    String serviceName = refUrl.getServiceInterface();
+    String serviceName = refUrl.getServiceKey();
     CallOptions options = CACHEOPTIONS_CACHE.get(serviceName);
     if (options == null) {
       ConcurrentHashMap<String, Object> customOptions = new ConcurrentHashMap<String, Object>();
@@ -53,7 +54,7 @@ public abstract class GrpcCallOptions {
   }
 
   public static Map<String, Object> getAffinity(final GrpcURL refUrl) {
-    String serviceName = refUrl.getServiceInterface();
+    String serviceName = refUrl.getServiceKey();
     return CACHEOPTIONS_CACHE.get(serviceName).getOption(CALLOPTIONS_CUSTOME_KEY);
   }
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import io.grpc.CallOptions;
+
+/**
+ * 单次调用的选路提示，通过CallOptions传给Picker：记录本次调用已经尝试过的服务端地址，重试时Picker跳过这些地址，
+ * 不再改写NameResolver推给LoadBalancer的地址列表
+ *
+ * @author liushiming
+ * @version GrpcPickHint.java, v 0.0.1 2017年10月13日 上午9:40:21 liushiming
+ * @since JDK 1.8
+ */
+public final class GrpcPickHint {
+
+  public static final CallOptions.Key<GrpcPickHint> PICK_HINT_KEY =
+      CallOptions.Key.of("pick-hint", null);
+
+  private final Set<SocketAddress> triedAddresses;
+
+  private volatile List<SocketAddress> pickedAddresses;
+
+  public static GrpcPickHint newPickHint() {
+    return new GrpcPickHint(Sets.newConcurrentHashSet());
+  }
+
+  private GrpcPickHint(Set<SocketAddress> triedAddresses) {
+    this.triedAddresses = triedAddresses;
+  }
+
+  /**
+   * 对冲调用的每一路请求各自记录选中的地址，但共享已尝试地址集合，保证各路请求落到不同的服务端
+   */
+  public GrpcPickHint fork() {
+    return new GrpcPickHint(this.triedAddresses);
+  }
+
+  public static GrpcPickHint get(CallOptions callOptions) {
+    return callOptions.getOption(PICK_HINT_KEY);
+  }
+
+  public CallOptions attach(CallOptions callOptions) {
+    return callOptions.withOption(PICK_HINT_KEY, this);
+  }
+
+  /**
+   * Picker选中子通道后回写，调用失败时据此标记已尝试
+   */
+  public void picked(List<SocketAddress> addresses) {
+    this.pickedAddresses = addresses;
+  }
+
+  public List<SocketAddress> getPickedAddresses() {
+    return pickedAddresses;
+  }
+
+  public void markTried(SocketAddress address) {
+    if (address != null) {
+      triedAddresses.add(address);
+    }
+  }
+
+  public void markPickedTried() {
+    List<SocketAddress> addresses = this.pickedAddresses;
+    if (addresses != null) {
+      triedAddresses.addAll(addresses);
+    }
+  }
+
+  public boolean isTried(List<SocketAddress> addresses) {
+    if (triedAddresses.isEmpty()) {
+      return false;
+    }
+    for (SocketAddress address : addresses) {
+      if (!triedAddresses.contains(address)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean hasTried() {
+    return !triedAddresses.isEmpty();
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.grpc.batch.BatchEntry;
+import com.quancheng.saluki.core.grpc.client.internal.unary.FailOverUnaryFuture;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.Deadline;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.internal.SharedResourceHolder;
+
+/**
+ * 客户端批量收集器，每个开启批量的方法一个实例：windowMillis内或攒够maxBatchSize个的并发调用合并为一次批量RPC，
+ * 响应按顺序拆回各调用方的Future；批量RPC的截止时间取这一批中最早的截止时间，整批失败时按方法的retries
+ * 经FailOverUnaryFuture换一个服务端重发，单项的业务错误不重试
+ *
+ * @author liushiming
+ * @version BatchCollector.java, v 0.0.1 2017年10月17日 下午2:15:40 liushiming
+ * @since JDK 1.8
+ */
+public final class BatchCollector {
+
+  private static final Logger logger = LoggerFactory.getLogger(BatchCollector.class);
+
+  private static final ScheduledExecutorService BATCH_TIMER =
+      SharedResourceHolder.get(io.grpc.internal.GrpcUtil.TIMER_SERVICE);
+
+  private final MethodDescriptor<List<BatchEntry>, List<BatchEntry>> batchMethod;
+
+  private final int maxBatchSize;
+
+  private final long windowMillis;
+
+  private final int retries;
+
+  private final Object lock = new Object();
+
+  private PendingBatch pending;
+
+  public BatchCollector(MethodDescriptor<List<BatchEntry>, List<BatchEntry>> batchMethod,
+      int maxBatchSize, long windowMillis, int retries) {
+    this.batchMethod = batchMethod;
+    this.maxBatchSize = maxBatchSize;
+    this.windowMillis = windowMillis;
+    this.retries = retries;
+  }
+
+  public ListenableFuture<Message> submit(Channel channel, CallOptions callOptions,
+      Message request) {
+    SettableFuture<Message> future = SettableFuture.create();
+    PendingBatch full = null;
+    synchronized (lock) {
+      if (pending == null) {
+        final PendingBatch batch = new PendingBatch(channel, callOptions);
+        pending = batch;
+        BATCH_TIMER.schedule(new Runnable() {
+
+          @Override
+          public void run() {
+            flush(batch);
+          }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+      }
+      pending.add(request, future, callOptions.getDeadline());
+      if (pending.size() >= maxBatchSize) {
+        full = pending;
+        pending = null;
+      }
+    }
+    if (full != null) {
+      full.send();
+    }
+    return future;
+  }
+
+  private void flush(PendingBatch batch) {
+    synchronized (lock) {
+      if (pending != batch) {
+        return;
+      }
+      pending = null;
+    }
+    batch.send();
+  }
+
+  private final class PendingBatch {
+
+    private final Channel channel;
+
+    private final CallOptions callOptions;
+
+    private final List<BatchEntry> requests = new ArrayList<BatchEntry>();
+
+    private final List<SettableFuture<Message>> futures = new ArrayList<SettableFuture<Message>>();
+
+    private Deadline deadline;
+
+    private PendingBatch(Channel channel, CallOptions callOptions) {
+      this.channel = channel;
+      this.callOptions = callOptions;
+    }
+
+    private void add(Message request, SettableFuture<Message> future, Deadline callDeadline) {
+      requests.add(BatchEntry.of(request));
+      futures.add(future);
+      if (callDeadline != null) {
+        deadline = deadline == null ? callDeadline : deadline.minimum(callDeadline);
+      }
+    }
+
+    private int size() {
+      return requests.size();
+    }
+
+    private void send() {
+      CallOptions batchCallOptions =
+          deadline != null ? callOptions.withDeadline(deadline) : callOptions;
+      ListenableFuture<List<BatchEntry>> responseFuture;
+      try {
+        FailOverUnaryFuture<List<BatchEntry>, List<BatchEntry>> batchCall =
+            new FailOverUnaryFuture<List<BatchEntry>, List<BatchEntry>>(batchMethod);
+        batchCall.setRequest(requests);
+        batchCall.setMaxRetries(retries);
+        batchCall.setChannel(channel);
+        batchCall.setCallOptions(batchCallOptions);
+        batchCall.run();
+        responseFuture = batchCall.getFuture();
+      } catch (Throwable e) {
+        this.failAll(e);
+        return;
+      }
+      Futures.addCallback(responseFuture, new FutureCallback<List<BatchEntry>>() {
+
+        @Override
+        public void onSuccess(List<BatchEntry> responses) {
+          if (responses.size() != futures.size()) {
+            failAll(Status.INTERNAL.withDescription("Batch response size " + responses.size()
+                + " not match request size " + futures.size()).asRuntimeException());
+            return;
+          }
+          for (int i = 0; i < responses.size(); i++) {
+            BatchEntry response = responses.get(i);
+            if (response.isError()) {
+              futures.get(i).setException(response.getStatus().asRuntimeException());
+            } else {
+              futures.get(i).set(response.getMessage());
+            }
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          failAll(t);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    private void failAll(Throwable t) {
+      logger.error(String.format("Batch call %s of %d requests failed",
+          batchMethod.getFullMethodName(), futures.size()), t);
+      for (SettableFuture<Message> future : futures) {
+        future.setException(t);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.breaker;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 信号量式的并发隔离，在调用线程上直接获取许可，不做线程切换
+ *
+ * @author liushiming
+ * @version Bulkhead.java, v 0.0.1 2017年10月12日 上午10:52:07 liushiming
+ * @since JDK 1.8
+ */
+public final class Bulkhead {
+
+  private static final ConcurrentMap<String, Bulkhead> BULKHEADS = Maps.newConcurrentMap();
+
+  private final int maxConcurrent;
+
+  private final AtomicInteger inflight = new AtomicInteger(0);
+
+  private Bulkhead(int maxConcurrent) {
+    this.maxConcurrent = maxConcurrent;
+  }
+
+  public static Bulkhead of(String serviceName, String methodName, int maxConcurrent) {
+    String key = serviceName + ":" + methodName;
+    Bulkhead bulkhead = BULKHEADS.get(key);
+    if (bulkhead == null) {
+      BULKHEADS.putIfAbsent(key, new Bulkhead(maxConcurrent));
+      bulkhead = BULKHEADS.get(key);
+    }
+    return bulkhead;
+  }
+
+  public boolean tryAcquire() {
+    for (;;) {
+      int current = inflight.get();
+      if (current >= maxConcurrent) {
+        return false;
+      }
+      if (inflight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  public void release() {
+    inflight.decrementAndGet();
+  }
+
+  public int getInflight() {
+    return inflight.get();
+  }
+
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.breaker;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+/**
+ * 无锁的滑动窗口熔断器，每个(service, method)一个实例，阈值与GrpcHystrixCommand的配置保持一致
+ * <p>
+ * 窗口按秒分桶，桶过期时由第一个写入的线程CAS重置，计数是近似值，换取调用路径上没有锁
+ *
+ * @author liushiming
+ * @version CircuitBreaker.java, v 0.0.1 2017年10月12日 上午10:14:52 liushiming
+ * @since JDK 1.8
+ */
+public final class CircuitBreaker {
+
+  private static final int BUCKETS = 10;
+
+  private static final long BUCKET_MILLIS = 1000L;
+
+  private static final int REQUEST_VOLUME_THRESHOLD = 20;
+
+  private static final int ERROR_THRESHOLD_PERCENTAGE = 50;
+
+  private static final long SLEEP_WINDOW_MILLIS = 30000L;
+
+  private static final int CLOSED = 0;
+
+  private static final int OPEN = 1;
+
+  private static final int HALF_OPEN = 2;
+
+  private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = Maps.newConcurrentMap();
+
+  private final AtomicLongArray bucketEpochs = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLongArray successes = new AtomicLongArray(BUCKETS);
+
+  private final AtomicLongArray failures = new AtomicLongArray(BUCKETS);
+
+  private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+  private final long sleepWindowMillis;
+
+  private volatile long openedAt;
+
+  private CircuitBreaker() {
+    this(SLEEP_WINDOW_MILLIS);
+  }
+
+  @VisibleForTesting
+  CircuitBreaker(long sleepWindowMillis) {
+    this.sleepWindowMillis = sleepWindowMillis;
+  }
+
+  public static CircuitBreaker of(String serviceName, String methodName) {
+    String key = serviceName + ":" + methodName;
+    CircuitBreaker breaker = BREAKERS.get(key);
+    if (breaker == null) {
+      BREAKERS.putIfAbsent(key, new CircuitBreaker());
+      breaker = BREAKERS.get(key);
+    }
+    return breaker;
+  }
+
+  /**
+   * 熔断打开后经过休眠窗口，只放行一个探测请求进入半开状态
+   */
+  public boolean allowRequest() {
+    int current = state.get();
+    if (current == CLOSED) {
+      return true;
+    }
+    if (current == OPEN && System.currentTimeMillis() - openedAt >= sleepWindowMillis) {
+      return state.compareAndSet(OPEN, HALF_OPEN);
+    }
+    return false;
+  }
+
+  public boolean isOpen() {
+    return state.get() != CLOSED;
+  }
+
+  public void onSuccess() {
+    if (state.get() == HALF_OPEN && state.compareAndSet(HALF_OPEN, CLOSED)) {
+      for (int i = 0; i < BUCKETS; i++) {
+        bucketEpochs.set(i, 0L);
+        successes.set(i, 0L);
+        failures.set(i, 0L);
+      }
+      return;
+    }
+    record(successes);
+  }
+
+  /**
+   * 调用被取消，结果不计入窗口；如果取消的是半开状态的探测请求，回到打开状态并重新计时，
+   * 否则熔断器会一直停在半开状态拒绝所有请求
+   */
+  public void onCancel() {
+    if (state.get() == HALF_OPEN) {
+      openedAt = System.currentTimeMillis();
+      state.compareAndSet(HALF_OPEN, OPEN);
+    }
+  }
+
+  public void onFailure() {
+    long now = System.currentTimeMillis();
+    if (state.get() == HALF_OPEN) {
+      openedAt = now;
+      state.compareAndSet(HALF_OPEN, OPEN);
+      return;
+    }
+    record(failures);
+    if (state.get() != CLOSED) {
+      return;
+    }
+    long epoch = now / BUCKET_MILLIS;
+    long total = 0;
+    long failed = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (bucketEpochs.get(i) > epoch - BUCKETS) {
+        failed += failures.get(i);
+        total += failures.get(i) + successes.get(i);
+      }
+    }
+    if (total >= REQUEST_VOLUME_THRESHOLD && failed * 100 >= total * ERROR_THRESHOLD_PERCENTAGE) {
+      openedAt = now;
+      state.compareAndSet(CLOSED, OPEN);
+    }
+  }
+
+  private void record(AtomicLongArray counter) {
+    long epoch = System.currentTimeMillis() / BUCKET_MILLIS;
+    int slot = (int) (epoch % BUCKETS);
+    long bucketEpoch = bucketEpochs.get(slot);
+    if (bucketEpoch < epoch && bucketEpochs.compareAndSet(slot, bucketEpoch, epoch)) {
+      successes.set(slot, 0L);
+      failures.set(slot, 0L);
+    }
+    counter.incrementAndGet(slot);
+  }
+
+}
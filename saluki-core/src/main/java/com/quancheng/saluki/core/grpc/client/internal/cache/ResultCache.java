@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.cache;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.annotation.GrpcCacheable;
+import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcUnaryClientCall;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+import com.quancheng.saluki.core.grpc.service.MonitorService;
+import com.quancheng.saluki.core.utils.ReflectUtils;
+
+import io.grpc.MethodDescriptor;
+
+/**
+ * 一元方法的客户端响应缓存，每个开启缓存的方法一个实例：以RpcContext附件和请求的序列化字节为key缓存不可变的响应Message，
+ * 按容量淘汰并在ttl后过期；服务端可以通过注册中心发布失效通知，清空该服务所有方法的缓存
+ *
+ * @author liushiming
+ * @version ResultCache.java, v 0.0.1 2017年10月19日 上午10:32:47 liushiming
+ * @since JDK 1.8
+ */
+public final class ResultCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+  private static final String CACHE_PROVIDER = "cache";
+
+  private static final ConcurrentMap<String, Set<ResultCache>> SERVICE_CACHES =
+      Maps.newConcurrentMap();
+
+  private final Cache<ByteString, Message> cache;
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final AtomicLong generation = new AtomicLong(0L);
+
+  private final GrpcURL hitUrl;
+
+  private final GrpcURL missUrl;
+
+  public ResultCache(String serviceName, String methodName, long ttlMillis, long maximumSize,
+      GrpcURL refUrl) {
+    this.cache = CacheBuilder.newBuilder()//
+        .maximumSize(maximumSize)//
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)//
+        .removalListener(new RemovalListener<ByteString, Message>() {
+
+          @Override
+          public void onRemoval(RemovalNotification<ByteString, Message> notification) {
+            if (notification.wasEvicted()) {
+              evictions.increment();
+            }
+          }
+        }).build();
+    this.hitUrl = new GrpcURL(Constants.MONITOR_PROTOCOL, refUrl.getHost(), refUrl.getPort(), //
+        serviceName + "/" + methodName, //
+        MonitorService.APPLICATION, refUrl.getParameter(Constants.APPLICATION_NAME), //
+        MonitorService.INTERFACE, serviceName, //
+        MonitorService.METHOD, methodName, //
+        MonitorService.PROVIDER, CACHE_PROVIDER, //
+        MonitorService.CONCURRENT, "0", //
+        MonitorService.CACHE_HIT, "1");
+    this.missUrl = hitUrl.removeParameter(MonitorService.CACHE_HIT)
+        .addParameter(MonitorService.CACHE_MISS, "1");
+    Set<ResultCache> caches = SERVICE_CACHES.get(serviceName);
+    if (caches == null) {
+      SERVICE_CACHES.putIfAbsent(serviceName, Sets.newConcurrentHashSet());
+      caches = SERVICE_CACHES.get(serviceName);
+    }
+    caches.add(this);
+  }
+
+  /**
+   * key由RpcContext附件和请求的序列化字节组成，附件不同的调用不共享缓存；RpcContext里带有任意对象值时返回null，不走缓存
+   */
+  public static ByteString keyOf(Message request) {
+    RpcContext context = RpcContext.getContext();
+    if (!context.get().isEmpty()) {
+      return null;
+    }
+    Map<String, String> attachments = context.getAttachments();
+    try {
+      ByteString.Output output = ByteString.newOutput();
+      CodedOutputStream coded = CodedOutputStream.newInstance(output);
+      coded.writeUInt32NoTag(attachments.size());
+      for (Map.Entry<String, String> entry : new TreeMap<String, String>(attachments)
+          .entrySet()) {
+        coded.writeStringNoTag(entry.getKey());
+        coded.writeStringNoTag(String.valueOf(entry.getValue()));
+      }
+      request.writeTo(coded);
+      coded.flush();
+      return output.toByteString();
+    } catch (IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * 命中与未命中都计入监控，未命中时顺带上报自上次以来被淘汰的条目数
+   */
+  public Message get(ByteString key, ClientServerMonitor monitor) {
+    Message response = cache.getIfPresent(key);
+    try {
+      if (response != null) {
+        monitor.collect(hitUrl);
+      } else {
+        long evicted = evictions.sumThenReset();
+        monitor.collect(evicted == 0 ? missUrl
+            : missUrl.addParameter(MonitorService.CACHE_EVICTION, String.valueOf(evicted)));
+      }
+    } catch (Throwable t) {
+      logger.warn("Failed to monitor result cache, cause: " + t.getMessage());
+    }
+    return response;
+  }
+
+  /**
+   * 当前的缓存代数，每次失效加一；发出调用前取一次，响应回来时用来判断这个响应是否早于失效通知
+   */
+  public long generation() {
+    return generation.get();
+  }
+
+  /**
+   * 调用发出后收到过失效通知的响应不放入缓存；放入后再检查一次，覆盖与失效通知并发的情况
+   */
+  public void put(ByteString key, Message response, long requestGeneration) {
+    if (generation.get() != requestGeneration) {
+      return;
+    }
+    cache.put(key, response);
+    if (generation.get() != requestGeneration) {
+      cache.invalidate(key);
+    }
+  }
+
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  /**
+   * 未命中时包装实际发出调用的clientCall，调用成功后把响应放入缓存
+   */
+  public GrpcUnaryClientCall populating(final GrpcUnaryClientCall clientCall,
+      final ByteString key) {
+    return new GrpcUnaryClientCall() {
+
+      @Override
+      public ListenableFuture<Message> unaryFuture(Message request,
+          MethodDescriptor<Message, Message> method) {
+        final long requestGeneration = generation();
+        ListenableFuture<Message> responseFuture = clientCall.unaryFuture(request, method);
+        Futures.addCallback(responseFuture, new FutureCallback<Message>() {
+
+          @Override
+          public void onSuccess(Message response) {
+            put(key, response, requestGeneration);
+          }
+
+          @Override
+          public void onFailure(Throwable t) {}
+        }, MoreExecutors.directExecutor());
+        return responseFuture;
+      }
+
+      @Override
+      public Message blockingUnaryResult(Message request,
+          MethodDescriptor<Message, Message> method) {
+        long requestGeneration = generation();
+        Message response = clientCall.blockingUnaryResult(request, method);
+        put(key, response, requestGeneration);
+        return response;
+      }
+    };
+  }
+
+  /**
+   * 收到服务端发布的失效通知时清空该服务下所有方法的缓存
+   */
+  public static void invalidate(String serviceName) {
+    Set<ResultCache> caches = SERVICE_CACHES.get(serviceName);
+    if (caches != null) {
+      for (ResultCache cache : caches) {
+        cache.invalidateAll();
+      }
+    }
+  }
+
+  /**
+   * 引用上配置了cacheMethods或接口上有方法标注了GrpcCacheable时，才需要订阅该服务的缓存失效通知
+   */
+  public static boolean isCacheEnabled(GrpcURL subscribeUrl) {
+    if (StringUtils.isNotBlank(subscribeUrl.getParameter(Constants.CACHE_METHODS_KEY))) {
+      return true;
+    }
+    try {
+      Class<?> service = ReflectUtils.forName(subscribeUrl.getServiceInterface());
+      for (Method method : ReflectUtils.findAllPublicMethods(service)) {
+        if (method.isAnnotationPresent(GrpcCacheable.class)) {
+          return true;
+        }
+      }
+    } catch (Throwable e) {
+      logger.debug("Can not load service interface " + subscribeUrl.getServiceInterface(), e);
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.hedging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局对冲预算：每个原始请求存入0.1个令牌，每次对冲消耗1个令牌，保证对冲请求不超过总请求量的10%，
+ * 避免服务端整体变慢时对冲把流量放大
+ *
+ * @author liushiming
+ * @version HedgingBudget.java, v 0.0.1 2017年10月16日 上午10:41:08 liushiming
+ * @since JDK 1.8
+ */
+public final class HedgingBudget {
+
+  private static final long TOKEN = 1000L;
+
+  private static final long DEPOSIT_PER_REQUEST = TOKEN / 10;
+
+  private static final long MAX_TOKENS = 100 * TOKEN;
+
+  private static final HedgingBudget instance = new HedgingBudget();
+
+  private final AtomicLong tokens = new AtomicLong(10 * TOKEN);
+
+  private HedgingBudget() {}
+
+  public static HedgingBudget instance() {
+    return instance;
+  }
+
+  public void onRequest() {
+    for (;;) {
+      long current = tokens.get();
+      if (current >= MAX_TOKENS) {
+        return;
+      }
+      long next = Math.min(MAX_TOKENS, current + DEPOSIT_PER_REQUEST);
+      if (tokens.compareAndSet(current, next)) {
+        return;
+      }
+    }
+  }
+
+  public boolean tryAcquire() {
+    for (;;) {
+      long current = tokens.get();
+      if (current < TOKEN) {
+        return false;
+      }
+      if (tokens.compareAndSet(current, current - TOKEN)) {
+        return true;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.hedging;
+
+/**
+ * 方法级的对冲策略：hedgingDelay毫秒内没有响应时向另一个服务端再发一次相同请求，最多maxHedges次；
+ * hedgingDelay不大于0时使用该方法最近观测到的p95耗时
+ *
+ * @author liushiming
+ * @version HedgingPolicy.java, v 0.0.1 2017年10月16日 上午11:12:45 liushiming
+ * @since JDK 1.8
+ */
+public final class HedgingPolicy {
+
+  private final long hedgingDelay;
+
+  private final int maxHedges;
+
+  private final LatencyTracker latencyTracker;
+
+  public HedgingPolicy(String serviceName, String methodName, long hedgingDelay, int maxHedges) {
+    this.hedgingDelay = hedgingDelay;
+    this.maxHedges = maxHedges;
+    this.latencyTracker = LatencyTracker.of(serviceName, methodName);
+  }
+
+  /**
+   * 返回-1表示还没有足够的耗时样本，本次不对冲
+   */
+  public long nextHedgingDelay() {
+    if (hedgingDelay > 0) {
+      return hedgingDelay;
+    }
+    return latencyTracker.p95();
+  }
+
+  public int getMaxHedges() {
+    return maxHedges;
+  }
+
+  public LatencyTracker getLatencyTracker() {
+    return latencyTracker;
+  }
+
+  public HedgingBudget getBudget() {
+    return HedgingBudget.instance();
+  }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.hedging;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.collect.Maps;
+
+/**
+ * 记录最近若干次成功调用的耗时，按需计算p95，计算结果缓存一秒，调用路径上只有一次数组写入
+ *
+ * @author liushiming
+ * @version LatencyTracker.java, v 0.0.1 2017年10月16日 上午10:05:33 liushiming
+ * @since JDK 1.8
+ */
+public final class LatencyTracker {
+
+  private static final int SAMPLE_SIZE = 256;
+
+  private static final int MIN_SAMPLES = 20;
+
+  private static final long REFRESH_MILLIS = 1000L;
+
+  private static final ConcurrentMap<String, LatencyTracker> TRACKERS = Maps.newConcurrentMap();
+
+  private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_SIZE);
+
+  private final AtomicLong cursor = new AtomicLong(0L);
+
+  private volatile long cachedPercentile = -1L;
+
+  private volatile long cachedAt;
+
+  private LatencyTracker() {}
+
+  public static LatencyTracker of(String serviceName, String methodName) {
+    String key = serviceName + ":" + methodName;
+    LatencyTracker tracker = TRACKERS.get(key);
+    if (tracker == null) {
+      TRACKERS.putIfAbsent(key, new LatencyTracker());
+      tracker = TRACKERS.get(key);
+    }
+    return tracker;
+  }
+
+  public void record(long elapsedMillis) {
+    int slot = (int) (cursor.getAndIncrement() % SAMPLE_SIZE);
+    samples.set(slot, elapsedMillis);
+  }
+
+  /**
+   * 样本不足时返回-1
+   */
+  public long p95() {
+    long now = System.currentTimeMillis();
+    if (now - cachedAt < REFRESH_MILLIS) {
+      return cachedPercentile;
+    }
+    int count = (int) Math.min(cursor.get(), SAMPLE_SIZE);
+    long percentile = -1L;
+    if (count >= MIN_SAMPLES) {
+      long[] copy = new long[count];
+      for (int i = 0; i < count; i++) {
+        copy[i] = samples.get(i);
+      }
+      Arrays.sort(copy);
+      percentile = copy[(int) Math.ceil(count * 0.95) - 1];
+    }
+    cachedPercentile = percentile;
+    cachedAt = now;
+    return percentile;
+  }
+
+}
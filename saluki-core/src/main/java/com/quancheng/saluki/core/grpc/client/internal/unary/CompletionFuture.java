@@ -15,8 +15,6 @@ package com.quancheng.saluki.core.grpc.client.internal.unary;
 
 import com.google.common.util.concurrent.AbstractFuture;
 
-import io.grpc.ClientCall;
-
 /**
  * @author liushiming
  * @version CompletionFuture.java, v 0.0.1 2017年7月14日 下午9:42:42 liushiming
@@ -24,15 +22,15 @@ import io.grpc.ClientCall;
  */
 public class CompletionFuture<T> extends AbstractFuture<T> {
 
-  private final ClientCall<?, T> call;
+  private final Cancellable call;
 
-  CompletionFuture(ClientCall<?, T> call) {
+  CompletionFuture(Cancellable call) {
     this.call = call;
   }
 
   @Override
   protected void interruptTask() {
-    call.cancel("CompletionFuture was cancelled", null);
+    call.cancel();
   }
 
   @Override
@@ -45,4 +43,9 @@ public class CompletionFuture<T> extends AbstractFuture<T> {
     return super.setException(throwable);
   }
 
+  interface Cancellable {
+
+    void cancel();
+  }
+
 }
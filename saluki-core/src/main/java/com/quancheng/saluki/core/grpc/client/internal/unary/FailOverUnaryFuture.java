@@ -7,8 +7,7 @@
 package com.quancheng.saluki.core.grpc.client.internal.unary;
 
 import java.net.SocketAddress;
-import java.util.Map;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -16,37 +15,47 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcPickHint;
+import com.quancheng.saluki.core.grpc.loadbalance.LoadReport;
 
 import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.ClientCall;
+import io.grpc.Deadline;
 import io.grpc.Grpc;
 import io.grpc.Metadata;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
 
 /**
+ * 单次调用的重试状态机，每次调用一个实例；重试时通过{@link GrpcPickHint}让Picker避开已尝试过的服务端，
+ * 不改动NameResolver的地址列表
+ *
  * @author liushiming 2017年5月2日 下午5:42:42
  * @version FailOverListener.java, v 0.0.1 2017年5月2日 下午5:42:42 liushiming
  */
 public class FailOverUnaryFuture<Request, Response> extends ClientCall.Listener<Response>
-    implements Runnable {
+    implements Runnable, CompletionFuture.Cancellable {
 
   private final static Logger logger = LoggerFactory.getLogger(FailOverUnaryFuture.class);
 
-  private final ScheduledExecutorService scheduleRetryService = GrpcUtil.TIMER_SERVICE.create();
+  private static final Executor retryExecutor =
+      SharedResourceHolder.get(GrpcUtil.SHARED_CHANNEL_EXECUTOR);
 
   private final AtomicInteger currentRetries = new AtomicInteger(0);
 
   private final MethodDescriptor<Request, Response> method;
 
-  private CompletionFuture<Response> completionFuture;
+  private final GrpcPickHint pickHint = GrpcPickHint.newPickHint();
 
-  private ClientCall<Request, Response> clientCall;
+  private final CompletionFuture<Response> completionFuture = new CompletionFuture<Response>(this);
+
+  private volatile ClientCall<Request, Response> clientCall;
 
   private Request request;
-  private Response response;
+  private volatile Response response;
   private Integer maxRetries;
   private boolean enabledRetry;
   private CallOptions callOptions;
@@ -57,7 +66,7 @@ public class FailOverUnaryFuture<Request, Response> extends ClientCall.Listener<
   }
 
   public void setCallOptions(CallOptions callOptions) {
-    this.callOptions = callOptions;
+    this.callOptions = pickHint.attach(callOptions);
   }
 
   public void setChannel(Channel channel) {
@@ -75,7 +84,7 @@ public class FailOverUnaryFuture<Request, Response> extends ClientCall.Listener<
 
   @Override
   public void onMessage(Response message) {
-    if (this.response != null && !enabledRetry) {
+    if (this.response != null) {
       throw Status.INTERNAL.withDescription("More than one value received for unary call")
           .asRuntimeException();
     }
@@ -85,72 +94,71 @@ public class FailOverUnaryFuture<Request, Response> extends ClientCall.Listener<
 
   @Override
   public void onClose(Status status, Metadata trailers) {
+    SocketAddress remoteServer = clientCall.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+    LoadReport.record(remoteServer, trailers);
     try {
-      SocketAddress remoteServer = clientCall.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
-      callOptions.getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY)
-          .put(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY, remoteServer);
+      if (remoteServer != null) {
+        callOptions.getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY)
+            .put(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY, remoteServer);
+      }
     } finally {
       if (status.isOk()) {
         statusOk(trailers);
       } else {
-        statusError(status, trailers);
+        statusError(status, trailers, remoteServer);
       }
     }
   }
 
   private void statusOk(Metadata trailers) {
-    try {
-      if (enabledRetry) {
-        final NameResolverNotify nameResolverNotify = this.createNameResolverNotify();
-        nameResolverNotify.resetChannel();
-      }
-    } finally {
-      if (response == null) {
-        completionFuture.setException(Status.INTERNAL
-            .withDescription("No value received for unary call").asRuntimeException(trailers));
-      }
+    if (response == null) {
+      completionFuture.setException(Status.INTERNAL
+          .withDescription("No value received for unary call").asRuntimeException(trailers));
+    } else {
       completionFuture.set(response);
     }
   }
 
 
-  private void statusError(Status status, Metadata trailers) {
-    if (enabledRetry) {
-      final NameResolverNotify nameResolverNotify = this.createNameResolverNotify();
-      boolean retryHaveDone = this.retryHaveDone();
-      if (retryHaveDone) {
-        completionFuture.setException(status.asRuntimeException(trailers));
-      } else {
-        nameResolverNotify.refreshChannel();
-        scheduleRetryService.execute(this);
-        SocketAddress remoteAddress =
-            (SocketAddress) callOptions.getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY)
-                .get(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY);
-        logger.error(String.format("Retrying failed call. Failure #%d，Failure Server: %s",
-            currentRetries.get(), String.valueOf(remoteAddress)));
-        currentRetries.getAndIncrement();
-      }
+  private void statusError(Status status, Metadata trailers, SocketAddress remoteServer) {
+    if (enabledRetry && !completionFuture.isCancelled() && !this.retryHaveDone()
+        && !this.deadlineExceeded(status)) {
+      pickHint.markPickedTried();
+      pickHint.markTried(remoteServer);
+      this.response = null;
+      int retries = currentRetries.incrementAndGet();
+      logger.error(String.format("Retrying failed call. Failure #%d，Failure Server: %s",
+          retries, String.valueOf(remoteServer)));
+      retryExecutor.execute(this);
     } else {
       completionFuture.setException(status.asRuntimeException(trailers));
     }
-
   }
 
-  private NameResolverNotify createNameResolverNotify() {
-    Map<String, Object> affinity = callOptions.getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY);
-    NameResolverNotify nameResolverNotify = NameResolverNotify.newNameResolverNotify();
-    nameResolverNotify.refreshAffinity(affinity);
-    return nameResolverNotify;
+  /**
+   * 截止时间已到时不再重试，重试只消耗剩余的时间预算
+   */
+  private boolean deadlineExceeded(Status status) {
+    if (status.getCode() == Status.Code.DEADLINE_EXCEEDED) {
+      return true;
+    }
+    Deadline deadline = callOptions.getDeadline();
+    return deadline != null && deadline.isExpired();
   }
 
   private boolean retryHaveDone() {
     return currentRetries.get() >= maxRetries;
   }
 
+  /**
+   * 重试在retryExecutor上异步执行，调用方在此期间取消或结果已确定时不再发出新的调用
+   */
   @Override
   public void run() {
+    if (completionFuture.isDone()) {
+      return;
+    }
     this.clientCall = channel.newCall(method, callOptions);
-    this.completionFuture = new CompletionFuture<Response>(this.clientCall);
     this.clientCall.start(this, new Metadata());
     this.clientCall.sendMessage(request);
     this.clientCall.halfClose();
@@ -162,6 +170,7 @@ public class FailOverUnaryFuture<Request, Response> extends ClientCall.Listener<
     return completionFuture;
   }
 
+  @Override
   public void cancel() {
     if (clientCall != null) {
       clientCall.cancel("User requested cancelation.", null);
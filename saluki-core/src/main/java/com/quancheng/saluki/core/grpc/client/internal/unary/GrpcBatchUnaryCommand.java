@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.batch.BatchCollector;
+import com.quancheng.saluki.core.grpc.client.internal.cache.ResultCache;
+import com.quancheng.saluki.core.grpc.exception.RpcServiceException;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.Deadline;
+
+/**
+ * 批量方法的一元调用：请求交给BatchCollector合并发出，不经过Hystrix，降级语义与GrpcHystrixCommand一致
+ *
+ * @author liushiming
+ * @version GrpcBatchUnaryCommand.java, v 0.0.1 2017年10月17日 下午3:40:02 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcBatchUnaryCommand {
+
+  private static final Logger logger = LoggerFactory.getLogger(GrpcBatchUnaryCommand.class);
+
+  private final UnaryCommandSupport support;
+
+  private final BatchCollector batchCollector;
+
+  private final ResultCache resultCache;
+
+  private final Channel channel;
+
+  private final CallOptions callOptions;
+
+  private final boolean isEnabledFallBack;
+
+  public GrpcBatchUnaryCommand(GrpcRequest request, Channel channel, Deadline deadline,
+      ClientServerMonitor clientServerMonitor) {
+    GrpcInvocationPlan invocationPlan = request.getInvocationPlan();
+    this.support = new UnaryCommandSupport(invocationPlan.getServiceName(),
+        invocationPlan.getMethodName(), false);
+    this.support.setRequest(request);
+    this.support.setClientServerMonitor(clientServerMonitor);
+    this.batchCollector = invocationPlan.getBatchCollector();
+    this.resultCache = invocationPlan.getResultCache();
+    this.channel = channel;
+    this.callOptions =
+        GrpcCallOptions.createCallOptions(request.getRefUrl()).withDeadline(deadline);
+    this.isEnabledFallBack = invocationPlan.isFallback();
+  }
+
+  public Object execute() {
+    try {
+      return this.future().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw UnaryCommandSupport.toServiceException(e);
+    } catch (ExecutionException e) {
+      throw UnaryCommandSupport.toServiceException(e.getCause());
+    }
+  }
+
+  /**
+   * 一批请求共用一组Header，不传递单个调用方的RpcContext，避免把某一个调用方的附件带给整批请求
+   */
+  public ListenableFuture<Object> future() {
+    final Message request = support.getRequestMessage();
+    final ByteString cacheKey = resultCache != null ? ResultCache.keyOf(request) : null;
+    RpcContext.removeContext();
+    final AtomicInteger concurrent =
+        UnaryCommandSupport.currentConcurrent(support.getServiceName(), support.getMethodName());
+    concurrent.incrementAndGet();
+    final long cacheGeneration = resultCache != null ? resultCache.generation() : 0L;
+    final SettableFuture<Object> future = SettableFuture.create();
+    Futures.addCallback(batchCollector.submit(channel, callOptions, request),
+        new FutureCallback<Message>() {
+
+          @Override
+          public void onSuccess(Message response) {
+            concurrent.decrementAndGet();
+            if (cacheKey != null) {
+              resultCache.put(cacheKey, response, cacheGeneration);
+            }
+            try {
+              Object obj = support.transformMessage(response);
+              support.asyncCollect(request, response, false);
+              future.set(obj);
+            } catch (Throwable e) {
+              future.setException(e);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            concurrent.decrementAndGet();
+            if (e instanceof CancellationException) {
+              return;
+            }
+            logger.error(e.getMessage(), e);
+            try {
+              RpcServiceException serviceException = UnaryCommandSupport.toServiceException(e);
+              future.set(support.fallbackOrThrow(serviceException, isEnabledFallBack));
+            } catch (Throwable t) {
+              future.setException(t);
+            }
+          }
+        }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+}
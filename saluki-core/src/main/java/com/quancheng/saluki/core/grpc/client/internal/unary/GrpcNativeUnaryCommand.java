@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.client.internal.breaker.Bulkhead;
+import com.quancheng.saluki.core.grpc.client.internal.breaker.CircuitBreaker;
+import com.quancheng.saluki.core.grpc.exception.RpcErrorMsgConstant;
+import com.quancheng.saluki.core.grpc.exception.RpcServiceException;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+
+import io.grpc.MethodDescriptor;
+
+/**
+ * 不依赖Hystrix的一元调用，在调用线程上完成熔断判断和信号量隔离，降级语义与GrpcHystrixCommand一致
+ *
+ * @author liushiming
+ * @version GrpcNativeUnaryCommand.java, v 0.0.1 2017年10月12日 上午11:30:16 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcNativeUnaryCommand {
+
+  private static final Logger logger = LoggerFactory.getLogger(GrpcNativeUnaryCommand.class);
+
+  private final UnaryCommandSupport support;
+
+  private final CircuitBreaker circuitBreaker;
+
+  private final Bulkhead bulkhead;
+
+  private final boolean isEnabledFallBack;
+
+  public GrpcNativeUnaryCommand(GrpcRequest request, GrpcUnaryClientCall clientCall,
+      ClientServerMonitor clientServerMonitor) {
+    GrpcInvocationPlan invocationPlan = request.getInvocationPlan();
+    this.support = new UnaryCommandSupport(invocationPlan.getServiceName(),
+        invocationPlan.getMethodName(), false);
+    this.support.setRequest(request);
+    this.support.setClientCall(clientCall);
+    this.support.setClientServerMonitor(clientServerMonitor);
+    this.circuitBreaker = invocationPlan.getCircuitBreaker();
+    this.bulkhead = invocationPlan.getBulkhead();
+    this.isEnabledFallBack = invocationPlan.isFallback();
+  }
+
+  public Object execute() {
+    GrpcRequest grpcRequest = support.getRequest();
+    Message request = support.getRequestMessage();
+    RpcServiceException rejected = this.tryAcquire();
+    if (rejected != null) {
+      return this.fallbackOrThrow(rejected);
+    }
+    AtomicInteger concurrent =
+        UnaryCommandSupport.currentConcurrent(support.getServiceName(), support.getMethodName());
+    concurrent.incrementAndGet();
+    try {
+      MethodDescriptor<Message, Message> methodDesc = grpcRequest.getMethodDescriptor();
+      Message response;
+      if (grpcRequest.getCallType() == Constants.RPCTYPE_BLOCKING) {
+        response = support.getClientCall().blockingUnaryResult(request, methodDesc);
+      } else {
+        response = support.getClientCall().unaryFuture(request, methodDesc)
+            .get(grpcRequest.getCallTimeout(), TimeUnit.MILLISECONDS);
+      }
+      circuitBreaker.onSuccess();
+      Object obj = support.transformMessage(response);
+      support.asyncCollect(request, response, false);
+      return obj;
+    } catch (Throwable e) {
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      circuitBreaker.onFailure();
+      logger.error(e.getMessage(), e);
+      support.cacheCurrentServer();
+      return this.fallbackOrThrow(this.toServiceException(e));
+    } finally {
+      bulkhead.release();
+      concurrent.decrementAndGet();
+    }
+  }
+
+  public ListenableFuture<Object> future() {
+    final GrpcRequest grpcRequest = support.getRequest();
+    final Message request = support.getRequestMessage();
+    RpcServiceException rejected = this.tryAcquire();
+    if (rejected != null) {
+      try {
+        return Futures.immediateFuture(this.fallbackOrThrow(rejected));
+      } catch (RpcServiceException e) {
+        return Futures.immediateFailedFuture(e);
+      }
+    }
+    final AtomicInteger concurrent =
+        UnaryCommandSupport.currentConcurrent(support.getServiceName(), support.getMethodName());
+    concurrent.incrementAndGet();
+    final SettableFuture<Object> future = SettableFuture.create();
+    final ListenableFuture<Message> responseFuture;
+    try {
+      responseFuture = Futures.withTimeout(
+          support.getClientCall().unaryFuture(request, grpcRequest.getMethodDescriptor()),
+          grpcRequest.getCallTimeout(), TimeUnit.MILLISECONDS, UnaryCommandSupport.TIMEOUT_SERVICE);
+    } catch (Throwable e) {
+      bulkhead.release();
+      concurrent.decrementAndGet();
+      circuitBreaker.onFailure();
+      return Futures.immediateFailedFuture(this.toServiceException(e));
+    }
+    Futures.addCallback(responseFuture, new FutureCallback<Message>() {
+
+      @Override
+      public void onSuccess(Message response) {
+        bulkhead.release();
+        concurrent.decrementAndGet();
+        circuitBreaker.onSuccess();
+        try {
+          Object obj = support.transformMessage(response);
+          support.asyncCollect(request, response, false);
+          future.set(obj);
+        } catch (Throwable e) {
+          future.setException(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable e) {
+        bulkhead.release();
+        concurrent.decrementAndGet();
+        if (e instanceof CancellationException) {
+          circuitBreaker.onCancel();
+          return;
+        }
+        circuitBreaker.onFailure();
+        logger.error(e.getMessage(), e);
+        try {
+          future.set(fallbackOrThrow(toServiceException(e)));
+        } catch (Throwable t) {
+          future.setException(t);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    future.addListener(new Runnable() {
+
+      @Override
+      public void run() {
+        if (future.isCancelled()) {
+          responseFuture.cancel(true);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  /**
+   * 先取信号量再问熔断器，避免熔断器放行的半开探测请求又被信号量拒绝而永远没有结果
+   */
+  private RpcServiceException tryAcquire() {
+    if (!bulkhead.tryAcquire()) {
+      return new RpcServiceException("concurrent requests over limit "
+          + bulkhead.getMaxConcurrent() + " for " + support.getServiceName() + ":"
+          + support.getMethodName(), RpcErrorMsgConstant.SERVICE_REJECT);
+    }
+    if (!circuitBreaker.allowRequest()) {
+      bulkhead.release();
+      return new RpcServiceException("circuit breaker is open for " + support.getServiceName()
+          + ":" + support.getMethodName(), RpcErrorMsgConstant.SERVICE_REJECT);
+    }
+    return null;
+  }
+
+  private RpcServiceException toServiceException(Throwable e) {
+    return UnaryCommandSupport.toServiceException(e);
+  }
+
+  private Object fallbackOrThrow(RpcServiceException e) {
+    return support.fallbackOrThrow(e, isEnabledFallBack);
+  }
+
+}
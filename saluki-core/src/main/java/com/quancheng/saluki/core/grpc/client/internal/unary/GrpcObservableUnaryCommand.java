@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import com.netflix.hystrix.HystrixCommandGroupKey;
+import com.netflix.hystrix.HystrixCommandKey;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.netflix.hystrix.HystrixObservableCommand;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.exception.RpcErrorMsgConstant;
+import com.quancheng.saluki.core.grpc.exception.RpcServiceException;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+import com.quancheng.saluki.core.grpc.util.GrpcUtil;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * 非阻塞的一元调用命令，使用信号量隔离，结果由gRPC回调线程完成，不占用Hystrix线程池的线程
+ *
+ * @author liushiming
+ * @version GrpcObservableUnaryCommand.java, v 0.0.1 2017年10月11日 下午3:05:48 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcObservableUnaryCommand extends HystrixObservableCommand<Object> {
+
+  private static final Logger logger = LoggerFactory.getLogger(GrpcObservableUnaryCommand.class);
+
+  private final UnaryCommandSupport support;
+
+  public GrpcObservableUnaryCommand(String serviceName, String methodName,
+      Boolean isEnabledFallBack) {
+    super(Setter.withGroupKey(HystrixCommandGroupKey.Factory.asKey(serviceName))//
+        .andCommandKey(HystrixCommandKey.Factory.asKey(serviceName + ":" + methodName))//
+        .andCommandPropertiesDefaults(UnaryCommandSupport.commandProperties(isEnabledFallBack)
+            .withExecutionIsolationStrategy(
+                HystrixCommandProperties.ExecutionIsolationStrategy.SEMAPHORE)//
+            .withExecutionIsolationSemaphoreMaxConcurrentRequests(Integer.MAX_VALUE)//
+            .withFallbackIsolationSemaphoreMaxConcurrentRequests(Integer.MAX_VALUE)));
+    this.support = new UnaryCommandSupport(serviceName, methodName);
+  }
+
+  public void setRequest(GrpcRequest request) {
+    support.setRequest(request);
+  }
+
+  public void setClientCall(GrpcUnaryClientCall clientCall) {
+    support.setClientCall(clientCall);
+  }
+
+  public void setClientServerMonitor(ClientServerMonitor clientServerMonitor) {
+    support.setClientServerMonitor(clientServerMonitor);
+  }
+
+  /**
+   * 订阅命令并以ListenableFuture返回结果，熔断、降级及监控仍由Hystrix处理；
+   * 取消的Future只会退订不会终止，并发计数在终止和退订两处共用一个标记，保证只减一次
+   */
+  public ListenableFuture<Object> future() {
+    final SettableFuture<Object> future = SettableFuture.create();
+    final AtomicInteger concurrent =
+        UnaryCommandSupport.currentConcurrent(support.getServiceName(), support.getMethodName());
+    concurrent.incrementAndGet();
+    final AtomicBoolean released = new AtomicBoolean(false);
+    final Action0 release = new Action0() {
+
+      @Override
+      public void call() {
+        if (released.compareAndSet(false, true)) {
+          concurrent.decrementAndGet();
+        }
+      }
+    };
+    Observable<Object> observable =
+        this.toObservable().doOnTerminate(release).doOnUnsubscribe(release);
+    final Subscription subscription = observable.subscribe(new Action1<Object>() {
+
+      @Override
+      public void call(Object response) {
+        future.set(response);
+      }
+    }, new Action1<Throwable>() {
+
+      @Override
+      public void call(Throwable error) {
+        future.setException(error);
+      }
+    });
+    future.addListener(new Runnable() {
+
+      @Override
+      public void run() {
+        if (future.isCancelled()) {
+          subscription.unsubscribe();
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  @Override
+  protected Observable<Object> construct() {
+    return Observable.create(new Observable.OnSubscribe<Object>() {
+
+      @Override
+      public void call(final Subscriber<? super Object> subscriber) {
+        final Message request;
+        final ListenableFuture<Message> responseFuture;
+        try {
+          support.restoreRpcContext();
+          GrpcRequest grpcRequest = support.getRequest();
+          request = support.getRequestMessage();
+          responseFuture = Futures.withTimeout(
+              support.getClientCall().unaryFuture(request, grpcRequest.getMethodDescriptor()),
+              grpcRequest.getCallTimeout(), TimeUnit.MILLISECONDS,
+              UnaryCommandSupport.TIMEOUT_SERVICE);
+        } catch (Throwable e) {
+          subscriber.onError(e);
+          return;
+        } finally {
+          RpcContext.removeContext();
+        }
+        subscriber.add(Subscriptions.create(new Action0() {
+
+          @Override
+          public void call() {
+            responseFuture.cancel(true);
+          }
+        }));
+        Futures.addCallback(responseFuture, new FutureCallback<Message>() {
+
+          @Override
+          public void onSuccess(Message response) {
+            try {
+              Object obj = support.transformMessage(response);
+              support.asyncCollect(request, response, false);
+              subscriber.onNext(obj);
+              subscriber.onCompleted();
+            } catch (Throwable e) {
+              subscriber.onError(e);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable e) {
+            logger.error(e.getMessage(), e);
+            if (e instanceof TimeoutException) {
+              subscriber.onError(new RpcServiceException(e, RpcErrorMsgConstant.SERVICE_TIMEOUT));
+            } else {
+              subscriber
+                  .onError(new RpcServiceException(e, RpcErrorMsgConstant.BIZ_DEFAULT_EXCEPTION));
+            }
+          }
+        }, MoreExecutors.directExecutor());
+      }
+    });
+  }
+
+  @Override
+  protected Observable<Object> resumeWithFallback() {
+    Class<?> responseType = support.getRequest().getResponseType();
+    Message response = GrpcUtil.createDefaultInstance(responseType);
+    Object obj = support.transformMessage(response);
+    support.asyncCollectFallback(response);
+    return Observable.just(obj);
+  }
+
+}
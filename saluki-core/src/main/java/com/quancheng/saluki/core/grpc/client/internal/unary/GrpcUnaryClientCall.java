@@ -8,18 +8,19 @@ package com.quancheng.saluki.core.grpc.client.internal.unary;
 
 
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.Message;
 import com.quancheng.saluki.core.common.GrpcURL;
 import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.hedging.HedgingPolicy;
+import com.quancheng.saluki.core.grpc.loadbalance.ConsistentHashStrategy;
 
 import io.grpc.CallOptions;
 import io.grpc.Channel;
+import io.grpc.Deadline;
 import io.grpc.MethodDescriptor;
 import io.grpc.Status;
 
@@ -36,22 +37,37 @@ public interface GrpcUnaryClientCall {
 
   public static GrpcUnaryClientCall create(final Channel channel, final Integer retryOptions,
       final GrpcURL refUrl) {
-    final CallOptions callOptions = GrpcCallOptions.createCallOptions(refUrl);
+    return create(channel, retryOptions, null, null, null, refUrl);
+  }
+
+  /**
+   * deadline为本次调用的截止时间，失败重试和对冲请求共用同一个截止时间，只消耗剩余的时间预算；
+   * singleFlight不为null时相同请求在途期间只发出一次RPC
+   */
+  public static GrpcUnaryClientCall create(final Channel channel, final Integer retryOptions,
+      final HedgingPolicy hedgingPolicy, final SingleFlight singleFlight, final Deadline deadline,
+      final GrpcURL refUrl) {
+    final CallOptions baseCallOptions = deadline != null
+        ? GrpcCallOptions.createCallOptions(refUrl).withDeadline(deadline)
+        : GrpcCallOptions.createCallOptions(refUrl);
     return new GrpcUnaryClientCall() {
 
       private FailOverUnaryFuture<Message, Message> newFailOverUnaryFuture(
           final MethodDescriptor<Message, Message> method) {
-        if (FAILOVER_UNARAY_FUTRURES.containsKey(method)) {
-          return FAILOVER_UNARAY_FUTRURES.get(method);
-        } else {
-          return new FailOverUnaryFuture<Message, Message>(method);
-        }
+        return new FailOverUnaryFuture<Message, Message>(method);
       }
 
-
-      @Override
-      public ListenableFuture<Message> unaryFuture(Message request,
+      private ListenableFuture<Message> newCall(Message request,
           MethodDescriptor<Message, Message> method) {
+        CallOptions callOptions =
+            ConsistentHashStrategy.attachHashKey(baseCallOptions, refUrl, request);
+        if (hedgingPolicy != null) {
+          HedgingUnaryFuture<Message, Message> hedgingFuture =
+              new HedgingUnaryFuture<Message, Message>(method, channel, callOptions, request,
+                  hedgingPolicy);
+          hedgingFuture.run();
+          return hedgingFuture.getFuture();
+        }
         FailOverUnaryFuture<Message, Message> retryCallListener = newFailOverUnaryFuture(method);
         retryCallListener.setRequest(request);
         retryCallListener.setMaxRetries(retryOptions);
@@ -61,30 +77,37 @@ public interface GrpcUnaryClientCall {
         return retryCallListener.getFuture();
       }
 
+      @Override
+      public ListenableFuture<Message> unaryFuture(final Message request,
+          final MethodDescriptor<Message, Message> method) {
+        if (singleFlight != null) {
+          return singleFlight.execute(method.getFullMethodName(), request, deadline,
+              new Supplier<ListenableFuture<Message>>() {
+
+                @Override
+                public ListenableFuture<Message> get() {
+                  return newCall(request, method);
+                }
+              });
+        }
+        return newCall(request, method);
+      }
+
       @Override
       public Message blockingUnaryResult(Message request,
           MethodDescriptor<Message, Message> method) {
-        FailOverUnaryFuture<Message, Message> retryCallListener = newFailOverUnaryFuture(method);
-        retryCallListener.setRequest(request);
-        retryCallListener.setMaxRetries(retryOptions);
-        retryCallListener.setChannel(channel);
-        retryCallListener.setCallOptions(callOptions);
+        ListenableFuture<Message> responseFuture = this.unaryFuture(request, method);
         try {
-          retryCallListener.run();
-          return retryCallListener.getFuture().get();
+          return responseFuture.get();
         } catch (InterruptedException e) {
-          retryCallListener.cancel();
+          responseFuture.cancel(true);
           throw Status.CANCELLED.withCause(e).asRuntimeException();
         } catch (ExecutionException e) {
-          retryCallListener.cancel();
+          responseFuture.cancel(true);
           throw Status.fromThrowable(e).asRuntimeException();
         }
       }
     };
   }
 
-  static final Map<MethodDescriptor<Message, Message>, FailOverUnaryFuture<Message, Message>> FAILOVER_UNARAY_FUTRURES =
-      Collections.synchronizedMap(
-          new WeakHashMap<MethodDescriptor<Message, Message>, FailOverUnaryFuture<Message, Message>>());
-
 }
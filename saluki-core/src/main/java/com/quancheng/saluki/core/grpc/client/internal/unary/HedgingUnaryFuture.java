@@ -0,0 +1,256 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcPickHint;
+import com.quancheng.saluki.core.grpc.client.internal.hedging.HedgingPolicy;
+import com.quancheng.saluki.core.grpc.loadbalance.LoadReport;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Deadline;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 单次对冲调用，每次调用一个实例：首个请求发出后超过对冲延迟仍无响应，则通过{@link GrpcPickHint}
+ * 向另一个服务端发出相同请求，取第一个成功的响应并取消其余请求；对冲次数受maxHedges和全局对冲预算限制，
+ * 某一路失败且没有其他在途请求时立即补发一路，所以对冲方法不再走FailOverUnaryFuture的重试
+ *
+ * @author liushiming
+ * @version HedgingUnaryFuture.java, v 0.0.1 2017年10月16日 下午2:20:37 liushiming
+ * @since JDK 1.8
+ */
+public class HedgingUnaryFuture<Request, Response> implements CompletionFuture.Cancellable {
+
+  private static final Logger logger = LoggerFactory.getLogger(HedgingUnaryFuture.class);
+
+  private final MethodDescriptor<Request, Response> method;
+
+  private final Channel channel;
+
+  private final CallOptions callOptions;
+
+  private final Request request;
+
+  private final HedgingPolicy hedgingPolicy;
+
+  private final GrpcPickHint pickHint = GrpcPickHint.newPickHint();
+
+  private final CompletionFuture<Response> completionFuture = new CompletionFuture<Response>(this);
+
+  private final List<Attempt> attempts = new CopyOnWriteArrayList<Attempt>();
+
+  private final AtomicInteger hedges = new AtomicInteger(0);
+
+  private final AtomicInteger outstanding = new AtomicInteger(0);
+
+  private volatile ScheduledFuture<?> hedgingTask;
+
+  private volatile long startTime;
+
+  public HedgingUnaryFuture(MethodDescriptor<Request, Response> method, Channel channel,
+      CallOptions callOptions, Request request, HedgingPolicy hedgingPolicy) {
+    this.method = method;
+    this.channel = channel;
+    this.callOptions = callOptions;
+    this.request = request;
+    this.hedgingPolicy = hedgingPolicy;
+  }
+
+  public void run() {
+    startTime = System.currentTimeMillis();
+    hedgingPolicy.getBudget().onRequest();
+    this.startAttempt();
+    this.scheduleHedge();
+  }
+
+  public ListenableFuture<Response> getFuture() {
+    return completionFuture;
+  }
+
+  @Override
+  public void cancel() {
+    this.cancelOthers(null, "User requested cancelation.");
+  }
+
+  private void scheduleHedge() {
+    long delay = hedgingPolicy.nextHedgingDelay();
+    if (delay < 0 || hedges.get() >= hedgingPolicy.getMaxHedges() || completionFuture.isDone()) {
+      return;
+    }
+    Deadline deadline = callOptions.getDeadline();
+    if (deadline != null && deadline.timeRemaining(TimeUnit.MILLISECONDS) <= delay) {
+      return;
+    }
+    hedgingTask = UnaryCommandSupport.TIMEOUT_SERVICE.schedule(new Runnable() {
+
+      @Override
+      public void run() {
+        if (!completionFuture.isDone() && reserveHedge()) {
+          logger.info(String.format("No response after %dms, hedging call %s #%d", delay,
+              method.getFullMethodName(), hedges.get()));
+          startAttempt();
+          scheduleHedge();
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private boolean reserveHedge() {
+    for (;;) {
+      int current = hedges.get();
+      if (current >= hedgingPolicy.getMaxHedges()) {
+        return false;
+      }
+      if (hedges.compareAndSet(current, current + 1)) {
+        break;
+      }
+    }
+    if (!hedgingPolicy.getBudget().tryAcquire()) {
+      hedges.decrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  private void startAttempt() {
+    for (Attempt running : attempts) {
+      running.attemptHint.markPickedTried();
+    }
+    Attempt attempt = new Attempt(pickHint.fork());
+    outstanding.incrementAndGet();
+    attempts.add(attempt);
+    attempt.start();
+    if (completionFuture.isDone()) {
+      attempt.cancel("Hedged call already completed.");
+    }
+  }
+
+  private void cancelOthers(Attempt winner, String message) {
+    ScheduledFuture<?> task = this.hedgingTask;
+    if (task != null) {
+      task.cancel(false);
+    }
+    for (Attempt attempt : attempts) {
+      if (attempt != winner) {
+        attempt.cancel(message);
+      }
+    }
+  }
+
+  /**
+   * 每次调用只记录一次，从首个请求发出算起的端到端耗时；如果记录对冲胜出那一路自身的耗时，
+   * p95会被拉低，进而触发更多对冲
+   */
+  private void recordLatency() {
+    hedgingPolicy.getLatencyTracker().record(System.currentTimeMillis() - startTime);
+  }
+
+  private void onAttemptFailed(Status status, Metadata trailers) {
+    if (outstanding.decrementAndGet() > 0 || completionFuture.isDone()) {
+      return;
+    }
+    Deadline deadline = callOptions.getDeadline();
+    boolean deadlineExceeded = status.getCode() == Status.Code.DEADLINE_EXCEEDED
+        || (deadline != null && deadline.isExpired());
+    if (!deadlineExceeded && reserveHedge()) {
+      logger.error(String.format("Hedged call failed with %s, hedging call %s #%d",
+          status.getCode(), method.getFullMethodName(), hedges.get()));
+      this.startAttempt();
+    } else {
+      completionFuture.setException(status.asRuntimeException(trailers));
+    }
+  }
+
+  private final class Attempt extends ClientCall.Listener<Response> {
+
+    private final GrpcPickHint attemptHint;
+
+    private final CallOptions attemptCallOptions;
+
+    private volatile ClientCall<Request, Response> clientCall;
+
+    private volatile Response response;
+
+    private Attempt(GrpcPickHint attemptHint) {
+      this.attemptHint = attemptHint;
+      this.attemptCallOptions = attemptHint.attach(callOptions);
+    }
+
+    private void start() {
+      this.clientCall = channel.newCall(method, attemptCallOptions);
+      this.clientCall.start(this, new Metadata());
+      this.clientCall.sendMessage(request);
+      this.clientCall.halfClose();
+      this.clientCall.request(1);
+    }
+
+    private void cancel(String message) {
+      ClientCall<Request, Response> call = this.clientCall;
+      if (call != null) {
+        call.cancel(message, null);
+      }
+    }
+
+    @Override
+    public void onMessage(Response message) {
+      if (this.response != null) {
+        throw Status.INTERNAL.withDescription("More than one value received for unary call")
+            .asRuntimeException();
+      }
+      this.response = message;
+    }
+
+    @Override
+    public void onClose(Status status, Metadata trailers) {
+      SocketAddress remoteServer = clientCall.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+      LoadReport.record(remoteServer, trailers);
+      if (remoteServer != null) {
+        callOptions.getOption(GrpcCallOptions.CALLOPTIONS_CUSTOME_KEY)
+            .put(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY, remoteServer);
+      }
+      if (status.isOk() && response != null) {
+        outstanding.decrementAndGet();
+        if (completionFuture.set(response)) {
+          recordLatency();
+          cancelOthers(this, "Hedged call succeeded on another server.");
+        }
+        return;
+      }
+      attemptHint.markPickedTried();
+      attemptHint.markTried(remoteServer);
+      if (status.isOk()) {
+        status = Status.INTERNAL.withDescription("No value received for unary call");
+      }
+      onAttemptFailed(status, trailers);
+    }
+  }
+
+}
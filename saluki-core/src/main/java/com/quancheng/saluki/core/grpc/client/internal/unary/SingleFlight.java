@@ -0,0 +1,179 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.RpcContext;
+
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
+
+/**
+ * 相同请求合并：每个开启合并的方法一个实例，以方法名、RpcContext附件和请求的序列化字节为key，在途期间相同的请求只发出一次RPC，
+ * 所有等待方共享同一个结果；RpcContext里带有任意对象值时不合并。等待方各自取消不会取消共享的调用，
+ * 各自的截止时间到了单独以DEADLINE_EXCEEDED结束；在途调用的截止时间早于等待方时不合并，避免等待方被提前超时。
+ * 调用结束后立即移除，不做结果缓存
+ *
+ * @author liushiming
+ * @version SingleFlight.java, v 0.0.1 2017年10月18日 上午10:12:33 liushiming
+ * @since JDK 1.8
+ */
+public final class SingleFlight {
+
+  private static final ScheduledExecutorService DEADLINE_TIMER =
+      SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
+
+  private final ConcurrentMap<Key, Inflight> inflight = Maps.newConcurrentMap();
+
+  public ListenableFuture<Message> execute(String methodName, Message request, Deadline deadline,
+      Supplier<ListenableFuture<Message>> call) {
+    RpcContext context = RpcContext.getContext();
+    if (!context.get().isEmpty()) {
+      return start(call);
+    }
+    final Key key = new Key(methodName, context.getAttachments(), request.toByteString());
+    final Inflight leader = new Inflight(SettableFuture.<Message>create(), deadline);
+    Inflight existing = inflight.putIfAbsent(key, leader);
+    if (existing != null) {
+      if (existing.deadline != null
+          && (deadline == null || existing.deadline.isBefore(deadline))) {
+        return start(call);
+      }
+      return follow(existing.future, deadline);
+    }
+    leader.future.addListener(new Runnable() {
+
+      @Override
+      public void run() {
+        inflight.remove(key, leader);
+      }
+    }, MoreExecutors.directExecutor());
+    try {
+      leader.future.setFuture(call.get());
+    } catch (Throwable e) {
+      leader.future.setException(e);
+    }
+    return Futures.nonCancellationPropagating(leader.future);
+  }
+
+  private static ListenableFuture<Message> start(Supplier<ListenableFuture<Message>> call) {
+    try {
+      return call.get();
+    } catch (Throwable e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * 等待方按自己的截止时间结束，不影响共享的调用
+   */
+  private static ListenableFuture<Message> follow(ListenableFuture<Message> shared,
+      Deadline deadline) {
+    final SettableFuture<Message> follower = SettableFuture.create();
+    Futures.addCallback(shared, new FutureCallback<Message>() {
+
+      @Override
+      public void onSuccess(Message result) {
+        follower.set(result);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        follower.setException(t);
+      }
+    }, MoreExecutors.directExecutor());
+    if (deadline != null && !follower.isDone()) {
+      final ScheduledFuture<?> timeout = DEADLINE_TIMER.schedule(new Runnable() {
+
+        @Override
+        public void run() {
+          follower.setException(Status.DEADLINE_EXCEEDED
+              .withDescription("deadline exceeded while waiting for coalesced call")
+              .asRuntimeException());
+        }
+      }, deadline.timeRemaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+      follower.addListener(new Runnable() {
+
+        @Override
+        public void run() {
+          timeout.cancel(false);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+    return follower;
+  }
+
+  private static final class Inflight {
+
+    private final SettableFuture<Message> future;
+
+    private final Deadline deadline;
+
+    private Inflight(SettableFuture<Message> future, Deadline deadline) {
+      this.future = future;
+      this.deadline = deadline;
+    }
+  }
+
+  private static final class Key {
+
+    private final String methodName;
+
+    private final Map<String, String> attachments;
+
+    private final ByteString request;
+
+    private Key(String methodName, Map<String, String> attachments, ByteString request) {
+      this.methodName = methodName;
+      this.attachments = Maps.newHashMap(attachments);
+      this.request = request;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return methodName.equals(other.methodName) && request.equals(other.request)
+          && attachments.equals(other.attachments);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(methodName, attachments, request);
+    }
+  }
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.tuple.ImmutableTriple;
+import org.apache.commons.lang3.tuple.Triple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.protobuf.Message;
+import com.netflix.hystrix.HystrixCommandProperties;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.NamedThreadFactory;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.client.GrpcResponse;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.exception.RpcErrorMsgConstant;
+import com.quancheng.saluki.core.grpc.exception.RpcFrameworkException;
+import com.quancheng.saluki.core.grpc.exception.RpcServiceException;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+import com.quancheng.saluki.core.grpc.service.MonitorService;
+import com.quancheng.saluki.core.grpc.util.GrpcUtil;
+import com.quancheng.saluki.core.grpc.util.SerializerUtil;
+import com.quancheng.saluki.serializer.exception.ProtobufException;
+
+import io.grpc.Status;
+import io.grpc.internal.SharedResourceHolder;
+
+/**
+ * 同步与异步的Hystrix命令共用的上下文快照、报文转换及监控采集
+ *
+ * @author liushiming
+ * @version UnaryCommandSupport.java, v 0.0.1 2017年10月11日 下午2:36:10 liushiming
+ * @since JDK 1.8
+ */
+@SuppressWarnings("rawtypes")
+final class UnaryCommandSupport {
+
+  private static final Logger logger = LoggerFactory.getLogger(UnaryCommandSupport.class);
+
+  private static final ConcurrentMap<String, AtomicInteger> concurrents = Maps.newConcurrentMap();
+
+  private static final ExecutorService collectLogExecutor =
+      Executors.newSingleThreadExecutor(new NamedThreadFactory("salukiCollectTask", true));
+
+  static final ScheduledExecutorService TIMEOUT_SERVICE =
+      SharedResourceHolder.get(io.grpc.internal.GrpcUtil.TIMER_SERVICE);
+
+  private final String serviceName;
+
+  private final String methodName;
+
+  private final long start;
+
+  private final Triple<Map<String, String>, Map<String, Object>, Set<Class>> rpcContext;
+
+  private GrpcRequest request;
+
+  private GrpcUnaryClientCall clientCall;
+
+  private ClientServerMonitor clientServerMonitor;
+
+  UnaryCommandSupport(String serviceName, String methodName) {
+    this(serviceName, methodName, true);
+  }
+
+  /**
+   * 在调用线程上直接发起调用时不需要快照RpcContext
+   */
+  UnaryCommandSupport(String serviceName, String methodName, boolean snapshotRpcContext) {
+    this.serviceName = serviceName;
+    this.methodName = methodName;
+    this.start = System.currentTimeMillis();
+    if (snapshotRpcContext) {
+      this.rpcContext = new ImmutableTriple<Map<String, String>, Map<String, Object>, Set<Class>>(
+          RpcContext.getContext().getAttachments(), RpcContext.getContext().get(),
+          RpcContext.getContext().getHoldenGroups());
+      RpcContext.removeContext();
+    } else {
+      this.rpcContext = null;
+    }
+  }
+
+  static HystrixCommandProperties.Setter commandProperties(Boolean isEnabledFallBack) {
+    return HystrixCommandProperties.Setter().withCircuitBreakerRequestVolumeThreshold(20)// 10秒钟内至少19此请求失败，熔断器才发挥起作用
+        .withCircuitBreakerSleepWindowInMilliseconds(30000)// 熔断器中断请求30秒后会进入半打开状态,放部分流量过去重试
+        .withCircuitBreakerErrorThresholdPercentage(50)// 错误率达到50开启熔断保护
+        .withExecutionTimeoutEnabled(false)// 禁用这里的超时
+        .withFallbackEnabled(isEnabledFallBack);
+  }
+
+  String getServiceName() {
+    return serviceName;
+  }
+
+  String getMethodName() {
+    return methodName;
+  }
+
+  GrpcRequest getRequest() {
+    return request;
+  }
+
+  void setRequest(GrpcRequest request) {
+    this.request = request;
+  }
+
+  GrpcUnaryClientCall getClientCall() {
+    return clientCall;
+  }
+
+  void setClientCall(GrpcUnaryClientCall clientCall) {
+    this.clientCall = clientCall;
+  }
+
+  void setClientServerMonitor(ClientServerMonitor clientServerMonitor) {
+    this.clientServerMonitor = clientServerMonitor;
+  }
+
+  void restoreRpcContext() {
+    RpcContext.getContext().setAttachments(rpcContext.getLeft());
+    RpcContext.getContext().set(rpcContext.getMiddle());
+    RpcContext.getContext().setHoldenGroups(rpcContext.getRight());
+  }
+
+  static AtomicInteger currentConcurrent(String serviceName, String methodName) {
+    String key = serviceName + ":" + methodName;
+    AtomicInteger concurrent = concurrents.get(key);
+    if (concurrent == null) {
+      concurrents.putIfAbsent(key, new AtomicInteger());
+      concurrent = concurrents.get(key);
+    }
+    return concurrent;
+  }
+
+  Message getRequestMessage() {
+    try {
+      Object param = this.request.getRequestParam();
+      return SerializerUtil.pojo2Protobuf(param);
+    } catch (ProtobufException e) {
+      RpcFrameworkException rpcFramwork = new RpcFrameworkException(e);
+      throw rpcFramwork;
+    }
+  }
+
+  Object transformMessage(Message message) {
+    Class<?> respPojoType = request.getResponseType();
+    GrpcResponse response = new GrpcResponse.Default(message, respPojoType);
+    try {
+      return response.getResponseArg();
+    } catch (ProtobufException e) {
+      RpcFrameworkException rpcFramwork = new RpcFrameworkException(e);
+      throw rpcFramwork;
+    }
+  }
+
+  void asyncCollect(final Message request, final Message response, final boolean error) {
+    collectLogExecutor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        collect(request, response, error);
+      }
+    });
+  }
+
+  void asyncCollectFallback(final Message response) {
+    collectLogExecutor.execute(new Runnable() {
+
+      @Override
+      public void run() {
+        collect(getRequestMessage(), response, true);
+      }
+    });
+  }
+
+  private void collect(Message request, Message response, boolean error) {
+    try {
+      InetSocketAddress provider = (InetSocketAddress) GrpcCallOptions
+          .getAffinity(this.request.getRefUrl()).get(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY);
+      if (request == null || response == null || provider == null) {
+        return;
+      }
+      long elapsed = System.currentTimeMillis() - this.start; // 计算调用耗时
+      int concurrent = currentConcurrent(serviceName, methodName).get(); // 当前并发数
+      String service = serviceName; // 获取服务名称
+      String method = methodName; // 获取方法名
+      GrpcURL refUrl = this.request.getRefUrl();
+      String host = refUrl.getHost();
+      Integer port = refUrl.getPort();
+      clientServerMonitor.collect(new GrpcURL(Constants.MONITOR_PROTOCOL, host, port, //
+          service + "/" + method, //
+          MonitorService.TIMESTAMP, String.valueOf(start), //
+          MonitorService.APPLICATION, refUrl.getParameter(Constants.APPLICATION_NAME), //
+          MonitorService.INTERFACE, service, //
+          MonitorService.METHOD, method, //
+          MonitorService.PROVIDER, provider.getHostName(), //
+          error ? MonitorService.FAILURE : MonitorService.SUCCESS, "1", //
+          MonitorService.ELAPSED, String.valueOf(elapsed), //
+          MonitorService.CONCURRENT, String.valueOf(concurrent), //
+          MonitorService.INPUT, String.valueOf(request.getSerializedSize()), //
+          MonitorService.OUTPUT, String.valueOf(response.getSerializedSize())));
+    } catch (Throwable t) {
+      logger.warn("Failed to monitor count service " + serviceName + ", cause: " + t.getMessage());
+    }
+  }
+
+  static RpcServiceException toServiceException(Throwable e) {
+    if (e instanceof RpcServiceException) {
+      return (RpcServiceException) e;
+    } else if (e instanceof TimeoutException
+        || Status.fromThrowable(e).getCode() == Status.Code.DEADLINE_EXCEEDED) {
+      return new RpcServiceException(e, RpcErrorMsgConstant.SERVICE_TIMEOUT);
+    } else {
+      return new RpcServiceException(e, RpcErrorMsgConstant.BIZ_DEFAULT_EXCEPTION);
+    }
+  }
+
+  /**
+   * 开启降级时返回默认响应并按失败采集，否则抛出异常
+   */
+  Object fallbackOrThrow(RpcServiceException e, boolean isEnabledFallBack) {
+    if (!isEnabledFallBack) {
+      throw e;
+    }
+    Class<?> responseType = request.getResponseType();
+    Message response = GrpcUtil.createDefaultInstance(responseType);
+    Object obj = this.transformMessage(response);
+    this.asyncCollectFallback(response);
+    return obj;
+  }
+
+  void cacheCurrentServer() {
+    Object obj = GrpcCallOptions.getAffinity(this.request.getRefUrl())
+        .get(GrpcCallOptions.GRPC_CURRENT_ADDR_KEY);
+    if (obj != null) {
+      InetSocketAddress currentServer = (InetSocketAddress) obj;
+      RpcContext.getContext().setAttachment(Constants.REMOTE_ADDRESS, currentServer.getHostName());
+    }
+  }
+
+}
@@ -20,12 +20,8 @@ import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
 import javax.validation.Validator;
 
-import org.apache.commons.lang3.StringUtils;
-
-import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.RpcContext;
-import com.quancheng.saluki.core.grpc.annotation.ArgValidator;
-import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
 import com.quancheng.saluki.core.grpc.exception.RpcValidatorException;
 import com.quancheng.saluki.core.utils.CollectionUtils;
 
@@ -56,24 +52,17 @@ public class RequestValidator {
   }
 
   @SuppressWarnings("rawtypes")
-  public void doValidate(final GrpcRequest request) throws ClassNotFoundException {
-    if (!request.getRequestParam().getClass().isAnnotationPresent(ArgValidator.class)) {
+  public void doValidate(final GrpcInvocationPlan invocationPlan, final Object requestParam) {
+    if (!invocationPlan.isValidate()) {
       return;
     }
-    Set<Class> validatorGroups = new HashSet<>();
-    String validatorGroupStr = request.getRefUrl().getParameter(Constants.VALIDATOR_GROUPS);
-    if (StringUtils.isNotEmpty(validatorGroupStr)) {
-      String[] splitGroups = validatorGroupStr.split(";");
-      for (String splitGroup : splitGroups) {
-        validatorGroups.add(Class.forName(splitGroup));
-      }
-    }
+    Set<Class> validatorGroups = new HashSet<>(invocationPlan.getValidatorGroups());
     Set<Class> optional = RpcContext.getContext().getHoldenGroups();
     if (optional != null) {
       validatorGroups.addAll(optional);
     }
-    Set<ConstraintViolation<Object>> violations = validator.validate(request.getRequestParam(),
-        (Class[]) validatorGroups.toArray(new Class[0]));
+    Set<ConstraintViolation<Object>> violations =
+        validator.validate(requestParam, (Class[]) validatorGroups.toArray(new Class[0]));
     if (CollectionUtils.isNotEmpty(violations)) {
       StringBuffer validateMsg = new StringBuffer();
       for (ConstraintViolation<Object> constraintViolation : violations) {
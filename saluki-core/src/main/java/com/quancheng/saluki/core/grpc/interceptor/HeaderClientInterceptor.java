@@ -7,6 +7,7 @@
 package com.quancheng.saluki.core.grpc.interceptor;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +20,8 @@ import io.grpc.CallOptions;
 import io.grpc.Channel;
 import io.grpc.ClientCall;
 import io.grpc.ClientInterceptor;
+import io.grpc.Context;
+import io.grpc.Deadline;
 import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
 import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
 import io.grpc.Metadata;
@@ -43,12 +46,13 @@ public class HeaderClientInterceptor implements ClientInterceptor {
 
   @Override
   public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
-      CallOptions callOptions, Channel next) {
+      final CallOptions callOptions, Channel next) {
     return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
 
       @Override
       public void start(Listener<RespT> responseListener, Metadata headers) {
         copyThreadLocalToMetadata(headers);
+        copyDeadlineToMetadata(callOptions, headers);
         super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
 
           @Override
@@ -60,6 +64,21 @@ public class HeaderClientInterceptor implements ClientInterceptor {
     };
   }
 
+  /**
+   * 把本次调用剩余的时间预算(毫秒)放入Metadata，服务端据此恢复Context的截止时间，并继续传给下游调用
+   */
+  private void copyDeadlineToMetadata(CallOptions callOptions, Metadata headers) {
+    Deadline deadline = callOptions.getDeadline();
+    Deadline contextDeadline = Context.current().getDeadline();
+    if (deadline == null || (contextDeadline != null && contextDeadline.isBefore(deadline))) {
+      deadline = contextDeadline;
+    }
+    if (deadline != null) {
+      long remaining = Math.max(0L, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+      headers.put(GrpcUtil.GRPC_CONTEXT_DEADLINE, String.valueOf(remaining));
+    }
+  }
+
   private void copyThreadLocalToMetadata(Metadata headers) {
     Map<String, String> attachments = RpcContext.getContext().getAttachments();
     Map<String, Object> values = RpcContext.getContext().get();
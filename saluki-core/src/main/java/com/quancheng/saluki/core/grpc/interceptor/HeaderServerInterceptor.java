@@ -8,6 +8,9 @@ package com.quancheng.saluki.core.grpc.interceptor;
 
 import java.net.InetSocketAddress;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,15 +18,20 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.reflect.TypeToken;
 import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.loadbalance.LoadReport;
 import com.quancheng.saluki.core.grpc.util.GrpcUtil;
 import com.quancheng.saluki.core.grpc.util.SerializerUtil;
 
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
 import io.grpc.Grpc;
 import io.grpc.Metadata;
 import io.grpc.ServerCall;
 import io.grpc.ServerCall.Listener;
 import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
+import io.grpc.Status;
 
 /**
  * @author shimingliu 2016年12月14日 下午10:29:37
@@ -33,16 +41,32 @@ public class HeaderServerInterceptor implements ServerInterceptor {
 
   private static final Logger log = LoggerFactory.getLogger(HeaderServerInterceptor.class);
 
+  private static final ScheduledExecutorService DEADLINE_TIMER =
+      io.grpc.internal.SharedResourceHolder.get(io.grpc.internal.GrpcUtil.TIMER_SERVICE);
+
+
+  private final double loadReportRate;
 
   public static ServerInterceptor instance() {
-    return new HeaderServerInterceptor();
+    return new HeaderServerInterceptor(0);
+  }
+
+  /**
+   * loadReportRate为在响应Trailer里附带服务端负载报告的采样比例，0为不报告
+   */
+  public static ServerInterceptor instance(double loadReportRate) {
+    return new HeaderServerInterceptor(loadReportRate);
   }
 
-  private HeaderServerInterceptor() {}
+  private HeaderServerInterceptor(double loadReportRate) {
+    this.loadReportRate = Math.min(Math.max(loadReportRate, 0), 1);
+  }
 
   @Override
-  public <ReqT, RespT> Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call,
+  public <ReqT, RespT> Listener<ReqT> interceptCall(final ServerCall<ReqT, RespT> call,
       final Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+    final boolean reportLoad = loadReportRate > 0;
+    final long startNanos = System.nanoTime();
     final class ServerCallHandlerWrap implements ServerCallHandler<ReqT, RespT> {
 
       private final ServerCallHandler<ReqT, RespT> handler;
@@ -55,7 +79,12 @@ public class HeaderServerInterceptor implements ServerInterceptor {
       public Listener<ReqT> startCall(ServerCall<ReqT, RespT> call, Metadata headers) {
         try {
           contextCopy(call, headers);
-          return handler.startCall(call, headers);
+          Listener<ReqT> listener = handler.startCall(call, headers);
+          // startCall抛出异常时不会再有onComplete或onCancel，只在成功后计入在途
+          if (reportLoad) {
+            ServerLoad.callStarted();
+          }
+          return listener;
         } finally {
           RpcContext.removeContext();
         }
@@ -67,8 +96,11 @@ public class HeaderServerInterceptor implements ServerInterceptor {
 
       private final Listener<ReqT> listener;
 
-      public ListenerWrap(Listener<ReqT> listener) {
+      private final Context.CancellableContext deadlineContext;
+
+      public ListenerWrap(Listener<ReqT> listener, Context.CancellableContext deadlineContext) {
         this.listener = listener;
+        this.deadlineContext = deadlineContext;
       }
 
       @Override
@@ -78,6 +110,9 @@ public class HeaderServerInterceptor implements ServerInterceptor {
 
       @Override
       public void onHalfClose() {
+        if (reportLoad) {
+          ServerLoad.dispatched(startNanos);
+        }
         try {
           contextCopy(call, headers);
           listener.onHalfClose();
@@ -88,12 +123,29 @@ public class HeaderServerInterceptor implements ServerInterceptor {
 
       @Override
       public void onCancel() {
-        listener.onCancel();
+        try {
+          listener.onCancel();
+        } finally {
+          releaseDeadline();
+        }
       }
 
       @Override
       public void onComplete() {
-        listener.onComplete();
+        try {
+          listener.onComplete();
+        } finally {
+          releaseDeadline();
+        }
+      }
+
+      private void releaseDeadline() {
+        if (reportLoad) {
+          ServerLoad.callFinished();
+        }
+        if (deadlineContext != null) {
+          deadlineContext.cancel(null);
+        }
       }
 
       @Override
@@ -102,7 +154,54 @@ public class HeaderServerInterceptor implements ServerInterceptor {
       }
 
     };
-    return new ListenerWrap(new ServerCallHandlerWrap(next).startCall(call, headers));
+    final ServerCall<ReqT, RespT> reportingCall = reportLoad ? reportLoad(call) : call;
+    final Context.CancellableContext deadlineContext = restoreDeadline(headers);
+    if (deadlineContext == null) {
+      return new ListenerWrap(new ServerCallHandlerWrap(next).startCall(reportingCall, headers),
+          null);
+    }
+    return Contexts.interceptCall(deadlineContext, reportingCall, headers,
+        new ServerCallHandler<ReqT, RespT>() {
+
+          @Override
+          public Listener<ReqT> startCall(ServerCall<ReqT, RespT> call, Metadata headers) {
+            return new ListenerWrap(new ServerCallHandlerWrap(next).startCall(call, headers),
+                deadlineContext);
+          }
+        });
+  }
+
+  /**
+   * 按采样率在Trailer里带上服务端当前的负载，客户端负载均衡据此估算各服务端的余量
+   */
+  private <ReqT, RespT> ServerCall<ReqT, RespT> reportLoad(ServerCall<ReqT, RespT> call) {
+    return new SimpleForwardingServerCall<ReqT, RespT>(call) {
+
+      @Override
+      public void close(Status status, Metadata trailers) {
+        if (ThreadLocalRandom.current().nextDouble() < loadReportRate) {
+          trailers.put(LoadReport.TRAILER_KEY, ServerLoad.report().encode());
+        }
+        super.close(status, trailers);
+      }
+    };
+  }
+
+  /**
+   * 按客户端传来的剩余时间预算恢复Context截止时间，业务代码中发起的下游调用会自动继承这个截止时间
+   */
+  private Context.CancellableContext restoreDeadline(Metadata headers) {
+    String remaining = headers.get(GrpcUtil.GRPC_CONTEXT_DEADLINE);
+    if (remaining == null) {
+      return null;
+    }
+    try {
+      return Context.current().withDeadlineAfter(Long.parseLong(remaining), TimeUnit.MILLISECONDS,
+          DEADLINE_TIMER);
+    } catch (NumberFormatException e) {
+      log.error(e.getMessage(), e);
+      return null;
+    }
   }
 
 
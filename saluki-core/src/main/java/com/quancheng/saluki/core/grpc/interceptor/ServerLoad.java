@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, Quancheng-ec.com All right reserved. This software is the confidential and
+ * proprietary information of Quancheng-ec.com ("Confidential Information"). You shall not disclose
+ * such Confidential Information and shall use it only in accordance with the terms of the license
+ * agreement you entered into with Quancheng-ec.com.
+ */
+package com.quancheng.saluki.core.grpc.interceptor;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.quancheng.saluki.core.grpc.loadbalance.LoadReport;
+
+/**
+ * 服务端进程维度的负载统计，开启负载报告时由HeaderServerInterceptor维护：在途请求数、从收到请求头到交给业务处理的排队耗时EWMA，
+ * 以及CPU利用率；CPU利用率读取有系统调用开销，最多每秒采样一次
+ *
+ * @author liushiming
+ * @version ServerLoad.java, v 0.0.1 2017年10月26日 下午3:40:51 liushiming
+ * @since JDK 1.8
+ */
+final class ServerLoad {
+
+  private static final double QUEUE_ALPHA = 0.05;
+
+  private static final long UTILIZATION_SAMPLE_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  private static final OperatingSystemMXBean OS = ManagementFactory.getOperatingSystemMXBean();
+
+  private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+  private static final AtomicInteger INFLIGHT = new AtomicInteger();
+
+  private static final Object QUEUE_LOCK = new Object();
+
+  private static volatile double queueNanos;
+
+  private static volatile double utilization;
+
+  private static volatile long utilizationSampled;
+
+  private ServerLoad() {}
+
+  static void callStarted() {
+    INFLIGHT.incrementAndGet();
+  }
+
+  static void callFinished() {
+    INFLIGHT.decrementAndGet();
+  }
+
+  static void dispatched(long startNanos) {
+    double queued = System.nanoTime() - startNanos;
+    synchronized (QUEUE_LOCK) {
+      queueNanos = queueNanos * (1 - QUEUE_ALPHA) + queued * QUEUE_ALPHA;
+    }
+  }
+
+  static LoadReport report() {
+    return new LoadReport(INFLIGHT.get(), TimeUnit.NANOSECONDS.toMicros((long) queueNanos),
+        utilization());
+  }
+
+  private static double utilization() {
+    long now = System.currentTimeMillis();
+    if (now - utilizationSampled < UTILIZATION_SAMPLE_MILLIS) {
+      return utilization;
+    }
+    utilizationSampled = now;
+    double sampled = -1;
+    if (OS instanceof com.sun.management.OperatingSystemMXBean) {
+      sampled = ((com.sun.management.OperatingSystemMXBean) OS).getProcessCpuLoad();
+    }
+    if (sampled < 0) {
+      double loadAverage = OS.getSystemLoadAverage();
+      sampled = loadAverage >= 0 ? loadAverage / PROCESSORS : 0;
+    }
+    utilization = Math.min(sampled, 1);
+    return utilization;
+  }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.RpcContext;
+
+import io.grpc.CallOptions;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 一致性哈希：按hashkey取RpcContext附件或请求里的同名字段作为key，相同的key落到同一个服务端，保证服务端本地缓存的命中率。
+ * 每个服务端地址在环上有VIRTUAL_NODES个虚拟节点，环按服务端全集构建，Picker重建时只增删变化地址的虚拟节点，约1/N的key会迁移，
+ * 不在候选里的地址只在环上跳过；带负载上限，某个地址的在途请求超过平均值的loadFactor倍时顺时针找下一个地址，热点key不会压垮单台机器
+ *
+ * @author liushiming
+ * @version ConsistentHashStrategy.java, v 0.0.1 2017年10月24日 下午4:12:50 liushiming
+ * @since JDK 1.8
+ */
+public final class ConsistentHashStrategy implements LoadBalanceStrategy {
+
+  public static final CallOptions.Key<String> HASH_KEY = CallOptions.Key.of("hash-key", null);
+
+  public static final double DEFAULT_LOAD_FACTOR = 1.25;
+
+  private static final int VIRTUAL_NODES = 160;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final double loadFactor;
+
+  private volatile Ring ring = new Ring(null, Collections.<EquivalentAddressGroup>emptySet(),
+      new TreeMap<Long, EquivalentAddressGroup>());
+
+  public ConsistentHashStrategy(double loadFactor) {
+    this.loadFactor = loadFactor >= 1 ? loadFactor : DEFAULT_LOAD_FACTOR;
+  }
+
+  /**
+   * 在发起调用前取出哈希key放入CallOptions，重试时沿用同一个key；RpcContext附件优先，其次是请求里的同名字段。
+   * 字段没有设置（proto3标量为默认值）或repeated字段为空时不带key，select退回随机选择，避免所有这类请求落到同一个服务端
+   */
+  public static CallOptions attachHashKey(CallOptions callOptions, GrpcURL refUrl,
+      Message request) {
+    String name = refUrl.getParameter(Constants.HASH_KEY_KEY);
+    if (StringUtils.isBlank(name)) {
+      return callOptions;
+    }
+    String key = RpcContext.getContext().getAttachment(name);
+    if (key == null && request != null) {
+      FieldDescriptor field = request.getDescriptorForType().findFieldByName(name);
+      if (field != null && (field.isRepeated() ? request.getRepeatedFieldCount(field) > 0
+          : request.hasField(field))) {
+        key = String.valueOf(request.getField(field));
+      }
+    }
+    return key != null ? callOptions.withOption(HASH_KEY, key) : callOptions;
+  }
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    if (candidates.isEmpty()) {
+      return null;
+    }
+    String key = args.getCallOptions().getOption(HASH_KEY);
+    if (key == null) {
+      return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+    // 环按服务端全集构建，路由、健康检查、就近选路和重试过滤掉的地址只在环上跳过
+    Ring current = ringOf(snapshot);
+    long average = (long) Math.ceil(loadFactor * (inflight(candidates) + 1) / candidates.size());
+    long hash = HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    Set<EquivalentAddressGroup> visited = null;
+    for (NavigableMap<Long, EquivalentAddressGroup> part : current.walk(hash)) {
+      for (EquivalentAddressGroup server : part.values()) {
+        if (visited != null && visited.contains(server)) {
+          continue;
+        }
+        Subchannel chosen = pick(snapshot.getServers().get(server), candidates, average);
+        if (chosen != null) {
+          return chosen;
+        }
+        if (visited == null) {
+          visited = Sets.newHashSet();
+        }
+        visited.add(server);
+      }
+    }
+    return leastLoaded(candidates);
+  }
+
+  /**
+   * 服务端在候选里的连接的在途请求之和不超过上限时，选其中在途最少的一条；上限按连接数放大，多连接的服务端不会被提前跳过
+   */
+  private static Subchannel pick(List<Subchannel> stripes, List<Subchannel> candidates,
+      long average) {
+    if (stripes == null) {
+      return null;
+    }
+    Subchannel chosen = null;
+    long min = Long.MAX_VALUE;
+    long inflight = 0;
+    int count = 0;
+    for (Subchannel subchannel : stripes) {
+      if (!candidates.contains(subchannel)) {
+        continue;
+      }
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      long load = stats != null ? stats.getInflight() : 0;
+      inflight += load;
+      count++;
+      if (load < min) {
+        min = load;
+        chosen = subchannel;
+      }
+    }
+    return count > 0 && inflight <= average * count ? chosen : null;
+  }
+
+  /**
+   * 环只在服务端全集变化即Picker重建时更新，新环在上一个环的基础上只增删变化地址的虚拟节点
+   */
+  private Ring ringOf(ProviderSnapshot snapshot) {
+    Ring current = ring;
+    if (current.snapshot == snapshot) {
+      return current;
+    }
+    synchronized (this) {
+      current = ring;
+      if (current.snapshot == snapshot) {
+        return current;
+      }
+      Set<EquivalentAddressGroup> members = snapshot.getServers().keySet();
+      TreeMap<Long, EquivalentAddressGroup> nodes = current.nodes;
+      if (!current.members.equals(members)) {
+        nodes = new TreeMap<Long, EquivalentAddressGroup>(nodes);
+        for (EquivalentAddressGroup removed : Sets.difference(current.members, members)) {
+          for (int i = 0; i < VIRTUAL_NODES; i++) {
+            nodes.remove(virtualNodeHash(removed, i), removed);
+          }
+        }
+        for (EquivalentAddressGroup added : Sets.difference(members, current.members)) {
+          for (int i = 0; i < VIRTUAL_NODES; i++) {
+            nodes.put(virtualNodeHash(added, i), added);
+          }
+        }
+      }
+      current = new Ring(snapshot, ImmutableSet.copyOf(members), nodes);
+      ring = current;
+      return current;
+    }
+  }
+
+  private static long virtualNodeHash(EquivalentAddressGroup server, int index) {
+    return HASH.hashString(server.getAddresses() + "#" + index, StandardCharsets.UTF_8).asLong();
+  }
+
+  private static long inflight(List<Subchannel> subchannels) {
+    long inflight = 0;
+    for (Subchannel subchannel : subchannels) {
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      if (stats != null) {
+        inflight += stats.getInflight();
+      }
+    }
+    return inflight;
+  }
+
+  private static Subchannel leastLoaded(List<Subchannel> subchannels) {
+    Subchannel chosen = subchannels.get(0);
+    long min = Long.MAX_VALUE;
+    for (Subchannel subchannel : subchannels) {
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      long load = stats != null ? stats.getInflight() : 0;
+      if (load < min) {
+        min = load;
+        chosen = subchannel;
+      }
+    }
+    return chosen;
+  }
+
+  private static final class Ring {
+
+    private final ProviderSnapshot snapshot;
+
+    private final Set<EquivalentAddressGroup> members;
+
+    private final TreeMap<Long, EquivalentAddressGroup> nodes;
+
+    private Ring(ProviderSnapshot snapshot, Set<EquivalentAddressGroup> members,
+        TreeMap<Long, EquivalentAddressGroup> nodes) {
+      this.snapshot = snapshot;
+      this.members = members;
+      this.nodes = nodes;
+    }
+
+    /**
+     * 从hash所在位置顺时针走一圈
+     */
+    @SuppressWarnings("unchecked")
+    private NavigableMap<Long, EquivalentAddressGroup>[] walk(long hash) {
+      return new NavigableMap[] {nodes.tailMap(hash, true), nodes.headMap(hash, false)};
+    }
+  }
+
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
+import io.grpc.stub.ClientCalls;
+
+/**
+ * 客户端主动健康检查，每个LoadBalancer一个实例：按服务端地址周期性调用服务端导出的Health.Check检查该地址上订阅的服务，
+ * 返回NOT_SERVING的地址在Picker选路时立即跳过，探测调用连续失败达到阈值才跳过，避免一次超时或丢包就摘掉正常的地址；
+ * 跳过的地址连续若干次返回SERVING后恢复。
+ * 为了不让大量客户端把服务端打满：每个地址只探测一条连接，周期带随机抖动，
+ * 上个周期内已有业务调用成功的地址不再探测；探测走已有的连接，通过CallOptions固定到该子通道，不额外建连
+ *
+ * @author liushiming
+ * @version HealthChecker.java, v 0.0.1 2017年10月26日 上午11:02:47 liushiming
+ * @since JDK 1.8
+ */
+public final class HealthChecker {
+
+  private static final Logger logger = LoggerFactory.getLogger(HealthChecker.class);
+
+  public static final Attributes.Key<Target> TARGET_KEY = Attributes.Key.of("health-target");
+
+  /**
+   * 探测调用固定选中的子通道，Picker看到这个选项时不再走路由和负载均衡
+   */
+  public static final CallOptions.Key<Subchannel> PIN_KEY =
+      CallOptions.Key.of("health-check-pin", null);
+
+  public static final Status NOT_READY =
+      Status.UNAVAILABLE.withDescription("Health check subchannel not ready");
+
+  public static final long DEFAULT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  /**
+   * 与saluki-service里health.proto的定义保持一致，saluki-core不依赖saluki-service，报文直接按字段编码
+   */
+  private static final String HEALTH_SERVICE = "com.quancheng.saluki.service.Health";
+
+  private static final int SERVICE_FIELD = 1;
+
+  private static final int STATUS_FIELD = 1;
+
+  private static final int SERVING = 1;
+
+  private static final int NOT_SERVING = 2;
+
+  private static final MethodDescriptor<String, Integer> CHECK_METHOD =
+      MethodDescriptor.<String, Integer>newBuilder()
+          .setType(MethodDescriptor.MethodType.UNARY)//
+          .setFullMethodName(MethodDescriptor.generateFullMethodName(HEALTH_SERVICE, "Check"))//
+          .setRequestMarshaller(new CheckRequestMarshaller())//
+          .setResponseMarshaller(new CheckResponseMarshaller())//
+          .setSafe(false)//
+          .setIdempotent(false)//
+          .build();
+
+  private static final long PROBE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+  /**
+   * 探测调用连续失败多少次判为不可用，以及不可用的地址连续返回SERVING多少次恢复
+   */
+  private static final int UNHEALTHY_THRESHOLD = 3;
+
+  private static final int HEALTHY_THRESHOLD = 2;
+
+  private static final double JITTER = 0.2;
+
+  private final ConcurrentMap<EquivalentAddressGroup, Target> targets = Maps.newConcurrentMap();
+
+  private final long intervalMillis;
+
+  private final AtomicReference<Channel> channel;
+
+  private ScheduledExecutorService timerService;
+
+  /**
+   * channel在Channel创建完成后才会设置，设置前的探测直接跳过
+   */
+  public HealthChecker(long intervalMillis, AtomicReference<Channel> channel) {
+    this.intervalMillis = Math.max(intervalMillis, 1);
+    this.channel = channel;
+    this.timerService = SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
+  }
+
+  public synchronized void shutdown() {
+    for (Target target : targets.values()) {
+      target.stopped = true;
+    }
+    targets.clear();
+    if (timerService != null) {
+      timerService = SharedResourceHolder.release(GrpcUtil.TIMER_SERVICE, timerService);
+    }
+  }
+
+  public synchronized Target addTarget(EquivalentAddressGroup addressGroup) {
+    Target target = targets.get(addressGroup);
+    if (target == null && timerService != null) {
+      target = new Target(addressGroup);
+      targets.put(addressGroup, target);
+      target.schedule();
+    }
+    return target;
+  }
+
+  /**
+   * 探测检查的服务取该地址提供的一个订阅服务的接口名；地址推送时更新，地址上没有订阅服务时不探测
+   */
+  public void updateServices(Map<String, Map<SocketAddress, GrpcURL>> serviceProviders) {
+    Map<EquivalentAddressGroup, String> services = Maps.newHashMap();
+    if (serviceProviders != null) {
+      for (Map<SocketAddress, GrpcURL> providers : serviceProviders.values()) {
+        for (Map.Entry<SocketAddress, GrpcURL> entry : providers.entrySet()) {
+          EquivalentAddressGroup addressGroup = new EquivalentAddressGroup(entry.getKey());
+          if (!services.containsKey(addressGroup)) {
+            services.put(addressGroup, entry.getValue().getServiceInterface());
+          }
+        }
+      }
+    }
+    for (Target target : targets.values()) {
+      target.service = services.get(target.addressGroup);
+    }
+  }
+
+  public void removeTarget(EquivalentAddressGroup addressGroup) {
+    Target target = targets.remove(addressGroup);
+    if (target != null) {
+      target.stopped = true;
+    }
+  }
+
+  /**
+   * 去掉NOT_SERVING的子通道；没有需要去掉的直接返回原列表，全部NOT_SERVING时也返回原列表
+   */
+  public static List<Subchannel> filter(List<Subchannel> subchannels) {
+    int notServing = 0;
+    for (int i = 0, size = subchannels.size(); i < size; i++) {
+      if (!isServing(subchannels.get(i))) {
+        notServing++;
+      }
+    }
+    if (notServing == 0 || notServing == subchannels.size()) {
+      return subchannels;
+    }
+    List<Subchannel> serving = new ArrayList<Subchannel>(subchannels.size() - notServing);
+    for (int i = 0, size = subchannels.size(); i < size; i++) {
+      Subchannel subchannel = subchannels.get(i);
+      if (isServing(subchannel)) {
+        serving.add(subchannel);
+      }
+    }
+    return serving;
+  }
+
+  private static boolean isServing(Subchannel subchannel) {
+    Target target = subchannel.getAttributes().get(TARGET_KEY);
+    return target == null || target.serving;
+  }
+
+  private synchronized void schedule(Runnable probe, long delayMillis) {
+    if (timerService != null) {
+      timerService.schedule(probe, delayMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 同一服务端地址的所有连接共用一个Target
+   */
+  public final class Target implements Runnable {
+
+    private final EquivalentAddressGroup addressGroup;
+
+    private final List<Subchannel> subchannels = new CopyOnWriteArrayList<Subchannel>();
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private volatile boolean serving = true;
+
+    private volatile boolean stopped;
+
+    private volatile String service;
+
+    private long lastProbeMillis;
+
+    // 以下两个计数只在探测回调里读写，同一时间只有一个探测在途
+    private int consecutiveFailures;
+
+    private int consecutiveSuccesses;
+
+    private Target(EquivalentAddressGroup addressGroup) {
+      this.addressGroup = addressGroup;
+    }
+
+    public void addSubchannel(Subchannel subchannel) {
+      subchannels.add(subchannel);
+    }
+
+    public boolean isServing() {
+      return serving;
+    }
+
+    private void schedule() {
+      double jitter = 1 + JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+      HealthChecker.this.schedule(this, (long) (intervalMillis * jitter));
+    }
+
+    @Override
+    public void run() {
+      if (stopped) {
+        return;
+      }
+      try {
+        probe();
+      } catch (Throwable e) {
+        logger.error(e.getMessage(), e);
+      } finally {
+        schedule();
+      }
+    }
+
+    private void probe() {
+      long now = System.currentTimeMillis();
+      long lastProbe = lastProbeMillis;
+      lastProbeMillis = now;
+      Channel current = channel.get();
+      String checked = service;
+      if (current == null || checked == null || subchannels.isEmpty()
+          || (serving && hasServed(lastProbe))) {
+        return;
+      }
+      if (!probing.compareAndSet(false, true)) {
+        return;
+      }
+      Subchannel subchannel =
+          subchannels.get(ThreadLocalRandom.current().nextInt(subchannels.size()));
+      CallOptions callOptions = CallOptions.DEFAULT.withOption(PIN_KEY, subchannel)
+          .withDeadlineAfter(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+      Futures.addCallback(
+          ClientCalls.futureUnaryCall(current.newCall(CHECK_METHOD, callOptions), checked),
+          new FutureCallback<Integer>() {
+
+            @Override
+            public void onSuccess(Integer status) {
+              if (status == SERVING) {
+                recordSuccess();
+              } else if (status == NOT_SERVING) {
+                consecutiveFailures = 0;
+                setServing(false, "NOT_SERVING");
+              }
+              probing.set(false);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+              Status status = Status.fromThrowable(t);
+              switch (status.getCode()) {
+                case UNIMPLEMENTED:
+                  // 服务端没有导出Health服务，不再探测
+                  stopped = true;
+                  setServing(true, "health service unimplemented");
+                  break;
+                case CANCELLED:
+                  break;
+                case UNAVAILABLE:
+                  if (NOT_READY.getDescription().equals(status.getDescription())) {
+                    break;
+                  }
+                  recordFailure(status);
+                  break;
+                default:
+                  recordFailure(status);
+                  break;
+              }
+              probing.set(false);
+            }
+          }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * 上次探测之后该地址有业务调用成功，说明服务端在正常服务，本周期不再探测
+     */
+    private boolean hasServed(long sinceMillis) {
+      for (Subchannel subchannel : subchannels) {
+        SubchannelStats stats = SubchannelStats.get(subchannel);
+        if (stats != null && stats.getLastOkMillis() > sinceMillis) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private void recordSuccess() {
+      consecutiveFailures = 0;
+      if (!serving && ++consecutiveSuccesses >= HEALTHY_THRESHOLD) {
+        setServing(true, consecutiveSuccesses + " consecutive SERVING");
+      }
+    }
+
+    private void recordFailure(Status status) {
+      consecutiveSuccesses = 0;
+      if (++consecutiveFailures >= UNHEALTHY_THRESHOLD) {
+        setServing(false, consecutiveFailures + " consecutive failures, last: " + status);
+      }
+    }
+
+    private void setServing(boolean newServing, String reason) {
+      if (serving != newServing) {
+        serving = newServing;
+        consecutiveSuccesses = 0;
+        logger.warn(String.format("Health check of %s changed to %s, reason: %s",
+            addressGroup.getAddresses(), newServing ? "serving" : "not serving", reason));
+      }
+    }
+  }
+
+  private static final class CheckRequestMarshaller implements MethodDescriptor.Marshaller<String> {
+
+    @Override
+    public InputStream stream(String service) {
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        output.writeString(SERVICE_FIELD, service);
+        output.flush();
+        return new ByteArrayInputStream(out.toByteArray());
+      } catch (IOException e) {
+        throw Status.INTERNAL.withDescription("Error encoding health check").withCause(e)
+            .asRuntimeException();
+      }
+    }
+
+    @Override
+    public String parse(InputStream stream) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class CheckResponseMarshaller
+      implements MethodDescriptor.Marshaller<Integer> {
+
+    @Override
+    public InputStream stream(Integer status) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Integer parse(InputStream stream) {
+      try {
+        CodedInputStream input = CodedInputStream.newInstance(stream);
+        int status = 0;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+          if (WireFormat.getTagFieldNumber(tag) == STATUS_FIELD) {
+            status = input.readEnum();
+          } else {
+            input.skipField(tag);
+          }
+        }
+        return status;
+      } catch (IOException e) {
+        throw Status.INTERNAL.withDescription("Invalid health check response").withCause(e)
+            .asRuntimeException();
+      }
+    }
+  }
+
+}
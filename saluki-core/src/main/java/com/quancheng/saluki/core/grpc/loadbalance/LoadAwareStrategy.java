@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 按服务端在Trailer里报告的负载选路：随机取两个候选服务端，按余量的比例随机选一个，余量高的服务端分到更多请求又不会被一拥而上。
+ * 余量 = (1 - CPU利用率) / (1 + 在途请求数) / (1 + 排队毫秒)，在途请求数取服务端报告与本地各连接合计中较大的一个；
+ * 没有报告（服务端未开启或报告已过期）时按DEFAULT_UTILIZATION和本地在途计数估算
+ *
+ * @author liushiming
+ * @version LoadAwareStrategy.java, v 0.0.1 2017年10月26日 下午5:03:26 liushiming
+ * @since JDK 1.8
+ */
+public final class LoadAwareStrategy implements LoadBalanceStrategy {
+
+  private static final double DEFAULT_UTILIZATION = 0.5;
+
+  private static final double MIN_HEADROOM = 0.05;
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    List<Subchannel> servers = snapshot.serversOf(candidates);
+    int size = servers.size();
+    if (size == 0) {
+      return null;
+    }
+    if (size == 1) {
+      return servers.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    Subchannel a = servers.get(first);
+    Subchannel b = servers.get(second);
+    double headroomA = headroom(a, snapshot);
+    double headroomB = headroom(b, snapshot);
+    return random.nextDouble() * (headroomA + headroomB) < headroomA ? a : b;
+  }
+
+  /**
+   * 报告按服务端地址记录，同一服务端的多条连接共用一份
+   */
+  private static double headroom(Subchannel server, ProviderSnapshot snapshot) {
+    int inflight = snapshot.inflightOf(server);
+    LoadReport report = LoadReport.get(server);
+    if (report == null) {
+      return (1 - DEFAULT_UTILIZATION) / (1 + inflight);
+    }
+    double idle = Math.max(1 - report.getUtilization(), MIN_HEADROOM);
+    double queueMillis = report.getQueueMicros() / 1000d;
+    return idle / (1 + Math.max(report.getInflight(), inflight)) / (1 + queueMillis);
+  }
+
+}
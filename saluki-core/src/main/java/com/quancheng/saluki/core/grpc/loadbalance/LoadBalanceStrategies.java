@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 按引用的loadbalance参数创建负载均衡策略，每个引用一个实例，有状态的策略（计数器、统计窗口）不在引用间共享
+ *
+ * @author liushiming
+ * @version LoadBalanceStrategies.java, v 0.0.1 2017年10月23日 下午2:40:03 liushiming
+ * @since JDK 1.8
+ */
+public final class LoadBalanceStrategies {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadBalanceStrategies.class);
+
+  public static final String ROUND_ROBIN = "roundrobin";
+
+  public static final String P2C = "p2c";
+
+  public static final String PEAK_EWMA = "peakewma";
+
+  public static final String CONSISTENT_HASH = "consistenthash";
+
+  public static final String WEIGHTED_ROUND_ROBIN = "weightedroundrobin";
+
+  public static final String LOAD_AWARE = "loadaware";
+
+  private static final LoadBalanceStrategy DEFAULT_STRATEGY = new RoundRobinStrategy();
+
+  private static final ConcurrentMap<String, LoadBalanceStrategy> STRATEGIES =
+      Maps.newConcurrentMap();
+
+  private LoadBalanceStrategies() {}
+
+  public static LoadBalanceStrategy get(final GrpcURL refUrl) {
+    if (refUrl == null) {
+      return DEFAULT_STRATEGY;
+    }
+    String serviceKey = refUrl.getServiceKey();
+    LoadBalanceStrategy strategy = STRATEGIES.get(serviceKey);
+    if (strategy == null) {
+      LoadBalanceStrategy created = create(refUrl);
+      strategy = STRATEGIES.putIfAbsent(serviceKey, created);
+      if (strategy == null) {
+        strategy = created;
+      }
+    }
+    return strategy;
+  }
+
+  /**
+   * 按权重选路的引用才订阅注册中心的权重调整
+   */
+  public static boolean isWeighted(GrpcURL refUrl) {
+    return WEIGHTED_ROUND_ROBIN.equals(refUrl.getParameter(Constants.LOADBALANCE_KEY));
+  }
+
+  /**
+   * 子通道对应服务端的weight参数，找不到服务端时取默认权重，负数按0处理
+   */
+  public static int weightOf(Map<SocketAddress, GrpcURL> providers, Subchannel subchannel) {
+    GrpcURL provider = providerOf(providers, subchannel);
+    if (provider == null) {
+      return Constants.DEFAULT_WEIGHT;
+    }
+    return Math.max(provider.getParameter(Constants.WEIGHT_KEY, Constants.DEFAULT_WEIGHT), 0);
+  }
+
+  public static GrpcURL providerOf(Map<SocketAddress, GrpcURL> providers, Subchannel subchannel) {
+    if (providers == null) {
+      return null;
+    }
+    for (SocketAddress address : subchannel.getAddresses().getAddresses()) {
+      GrpcURL provider = providers.get(address);
+      if (provider != null) {
+        return provider;
+      }
+    }
+    return null;
+  }
+
+  private static LoadBalanceStrategy create(GrpcURL refUrl) {
+    String name = refUrl.getParameter(Constants.LOADBALANCE_KEY, ROUND_ROBIN);
+    switch (name) {
+      case ROUND_ROBIN:
+        return new RoundRobinStrategy();
+      case P2C:
+        return new P2cStrategy(refUrl.getParameter(Constants.MAX_INFLIGHT_KEY, 0));
+      case PEAK_EWMA:
+        return new PeakEwmaStrategy();
+      case CONSISTENT_HASH:
+        return new ConsistentHashStrategy(refUrl.getParameter(Constants.HASH_LOAD_FACTOR_KEY,
+            ConsistentHashStrategy.DEFAULT_LOAD_FACTOR));
+      case WEIGHTED_ROUND_ROBIN:
+        return new WeightedRoundRobinStrategy();
+      case LOAD_AWARE:
+        return new LoadAwareStrategy();
+      default:
+        log.warn("Unknown loadbalance " + name + " of " + refUrl.getServiceKey()
+            + ", use roundrobin instead");
+        return new RoundRobinStrategy();
+    }
+  }
+
+}
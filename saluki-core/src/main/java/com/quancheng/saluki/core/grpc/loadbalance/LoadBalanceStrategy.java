@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.List;
+
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 负载均衡策略，按引用配置选择：Picker先按服务、路由规则和重试已尝试地址过滤出候选子通道，再交给策略选出一个；
+ * snapshot为Picker里该服务的全部服务端，每个Picker只构建一次，返回null表示没有可用的子通道。
+ * 策略按服务端选，返回服务端的任意一条连接即可，Picker再由ProviderSnapshot.stripeOf在该服务端的连接里选
+ *
+ * @author liushiming
+ * @version LoadBalanceStrategy.java, v 0.0.1 2017年10月23日 下午2:10:45 liushiming
+ * @since JDK 1.8
+ */
+public interface LoadBalanceStrategy {
+
+  Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot, GrpcURL refUrl,
+      PickSubchannelArgs args);
+
+}
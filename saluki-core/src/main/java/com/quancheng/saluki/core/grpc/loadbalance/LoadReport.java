@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Metadata;
+
+/**
+ * 服务端按采样率放在响应Trailer里的负载报告：在途请求数、排队耗时的EWMA（微秒）和CPU利用率（千分比），
+ * 编码为"inflight,queueMicros,utilizationPermille"；客户端按服务端地址缓存最近一次报告，超过REPORT_TTL未更新即视为没有报告
+ *
+ * @author liushiming
+ * @version LoadReport.java, v 0.0.1 2017年10月26日 下午4:12:09 liushiming
+ * @since JDK 1.8
+ */
+public final class LoadReport {
+
+  public static final Metadata.Key<String> TRAILER_KEY =
+      Metadata.Key.of("saluki-load-report", Metadata.ASCII_STRING_MARSHALLER);
+
+  private static final long REPORT_TTL_SECONDS = 30;
+
+  private static final Cache<SocketAddress, LoadReport> REPORTS = CacheBuilder.newBuilder() //
+      .maximumSize(10000) //
+      .expireAfterWrite(REPORT_TTL_SECONDS, TimeUnit.SECONDS) //
+      .build();
+
+  private final int inflight;
+
+  private final long queueMicros;
+
+  private final double utilization;
+
+  public LoadReport(int inflight, long queueMicros, double utilization) {
+    this.inflight = Math.max(inflight, 0);
+    this.queueMicros = Math.max(queueMicros, 0);
+    this.utilization = Math.min(Math.max(utilization, 0), 1);
+  }
+
+  public int getInflight() {
+    return inflight;
+  }
+
+  public long getQueueMicros() {
+    return queueMicros;
+  }
+
+  public double getUtilization() {
+    return utilization;
+  }
+
+  public String encode() {
+    return inflight + "," + queueMicros + "," + Math.round(utilization * 1000);
+  }
+
+  /**
+   * 格式不对时返回null，不影响调用本身
+   */
+  public static LoadReport parse(String value) {
+    String[] fields = StringUtils.split(value, ',');
+    if (fields == null || fields.length < 3) {
+      return null;
+    }
+    try {
+      return new LoadReport(Integer.parseInt(fields[0]), Long.parseLong(fields[1]),
+          Integer.parseInt(fields[2]) / 1000d);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 客户端在调用结束时记录服务端带回的报告，没有报告时不做任何事
+   */
+  public static void record(SocketAddress server, Metadata trailers) {
+    if (server == null || trailers == null) {
+      return;
+    }
+    String value = trailers.get(TRAILER_KEY);
+    if (value == null) {
+      return;
+    }
+    LoadReport report = parse(value);
+    if (report != null) {
+      REPORTS.put(server, report);
+    }
+  }
+
+  public static LoadReport get(Subchannel subchannel) {
+    for (SocketAddress address : subchannel.getAddresses().getAddresses()) {
+      LoadReport report = REPORTS.getIfPresent(address);
+      if (report != null) {
+        return report;
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 就近选路：引用带了zone时，候选子通道按服务端的zone、region分为同可用区、同地域和其他三层，优先在同可用区里选。
+ * 同可用区READY的服务端占注册数的比例低于localitythreshold时，按比例/阈值的概率留在本可用区，其余溢出到同地域，
+ * 同地域没有时再到其他地域；某一层没有候选时直接用下一层
+ *
+ * @author liushiming
+ * @version LocalityFilter.java, v 0.0.1 2017年10月26日 上午10:48:21 liushiming
+ * @since JDK 1.8
+ */
+public final class LocalityFilter {
+
+  private static final int LOCAL = 0;
+
+  private static final int SAME_REGION = 1;
+
+  private static final int REMOTE = 2;
+
+  private LocalityFilter() {}
+
+  /**
+   * 先数出各层的候选数，只有一层时原样返回，需要分层时才为选中的一层分配列表
+   */
+  public static List<Subchannel> filter(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl) {
+    if (refUrl == null || snapshot.getProviders() == null || candidates.size() < 2) {
+      return candidates;
+    }
+    String zone = refUrl.getParameter(Constants.ZONE_KEY);
+    if (StringUtils.isBlank(zone)) {
+      return candidates;
+    }
+    String region = refUrl.getParameter(Constants.REGION_KEY);
+    int[] counts = new int[3];
+    for (Subchannel subchannel : candidates) {
+      counts[tierOf(snapshot.providerOf(subchannel), zone, region)]++;
+    }
+    int spillover = counts[SAME_REGION] > 0 ? SAME_REGION : REMOTE;
+    if (counts[LOCAL] == 0 || counts[spillover] == 0) {
+      int only = counts[LOCAL] == 0 ? spillover : LOCAL;
+      return counts[only] == candidates.size() ? candidates : tier(candidates, snapshot, zone,
+          region, only, counts[only]);
+    }
+    double threshold = refUrl.getParameter(Constants.LOCALITY_THRESHOLD_KEY,
+        Constants.DEFAULT_LOCALITY_THRESHOLD);
+    // 本可用区在Picker里的服务端占注册数的比例，乘以其中没有被健康检查、异常摘除或重试过滤掉的连接比例
+    double healthy = counts[LOCAL] / (double) Math.max(snapshot.subchannelsIn(zone), 1)
+        * snapshot.serversIn(zone) / snapshot.registeredIn(zone);
+    if (healthy >= threshold || ThreadLocalRandom.current().nextDouble() < healthy / threshold) {
+      return tier(candidates, snapshot, zone, region, LOCAL, counts[LOCAL]);
+    }
+    return tier(candidates, snapshot, zone, region, spillover, counts[spillover]);
+  }
+
+  private static int tierOf(GrpcURL provider, String zone, String region) {
+    if (provider == null) {
+      return REMOTE;
+    }
+    if (zone.equals(provider.getParameter(Constants.ZONE_KEY))) {
+      return LOCAL;
+    }
+    if (StringUtils.isNotBlank(region)
+        && region.equals(provider.getParameter(Constants.REGION_KEY))) {
+      return SAME_REGION;
+    }
+    return REMOTE;
+  }
+
+  private static List<Subchannel> tier(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      String zone, String region, int tier, int count) {
+    List<Subchannel> chosen = new ArrayList<Subchannel>(count);
+    for (Subchannel subchannel : candidates) {
+      if (tierOf(snapshot.providerOf(subchannel), zone, region) == tier) {
+        chosen.add(subchannel);
+      }
+    }
+    return chosen;
+  }
+
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Status;
+import io.grpc.internal.GrpcUtil;
+import io.grpc.internal.SharedResourceHolder;
+
+/**
+ * 负载均衡层的异常节点摘除，每个LoadBalancer一个实例，按服务端地址统计：连续失败达到阈值立即摘除；
+ * 每个统计周期结束时，按成功率和平均耗时与同一批地址的均值比较，低于均值若干个标准差的摘除；
+ * 摘除时长为基础时长乘以摘除次数，到期自动恢复，未再被摘除的周期里摘除次数逐步回落；
+ * 同一时间被摘除的地址不超过总数的maxEjectionPercent，该比例大于0时至少允许摘除一个。
+ * 摘除只在Picker选路时跳过，不关闭子通道，也不改动注册中心推送的地址列表
+ *
+ * @author liushiming
+ * @version OutlierDetector.java, v 0.0.1 2017年10月25日 下午2:36:18 liushiming
+ * @since JDK 1.8
+ */
+public final class OutlierDetector {
+
+  private static final Logger logger = LoggerFactory.getLogger(OutlierDetector.class);
+
+  public static final Attributes.Key<Host> HOST_KEY = Attributes.Key.of("outlier-host");
+
+  public static final int DEFAULT_CONSECUTIVE_ERRORS = 5;
+
+  public static final long DEFAULT_BASE_EJECTION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  public static final int DEFAULT_MAX_EJECTION_PERCENT = 10;
+
+  private static final long INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static final long MAX_EJECTION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  /**
+   * 参与成功率和耗时比较的地址数下限，以及单个地址在一个周期内的调用数下限
+   */
+  private static final int MINIMUM_HOSTS = 5;
+
+  private static final long REQUEST_VOLUME = 100;
+
+  private static final double STDEV_FACTOR = 1.9;
+
+  /**
+   * 耗时离群还要求至少是均值的这个倍数，避免地址间耗时都很接近时因为标准差太小误摘
+   */
+  private static final double LATENCY_MIN_RATIO = 1.5;
+
+  /**
+   * 只统计服务端或传输层自身的故障；服务端业务异常以UNKNOWN返回，和调用方自身原因的状态一样不计为失败
+   */
+  private static final Set<Status.Code> FAILURE_CODES = EnumSet.of(Status.Code.DEADLINE_EXCEEDED,
+      Status.Code.RESOURCE_EXHAUSTED, Status.Code.UNIMPLEMENTED, Status.Code.INTERNAL,
+      Status.Code.UNAVAILABLE, Status.Code.DATA_LOSS);
+
+  private final ConcurrentMap<EquivalentAddressGroup, Host> hosts = Maps.newConcurrentMap();
+
+  private final int consecutiveErrors;
+
+  private final long baseEjectionMillis;
+
+  private final int maxEjectionPercent;
+
+  private ScheduledExecutorService timerService;
+
+  private ScheduledFuture<?> sweepFuture;
+
+  public OutlierDetector(Settings settings) {
+    this.consecutiveErrors = settings.consecutiveErrors;
+    this.baseEjectionMillis = settings.baseEjectionMillis;
+    this.maxEjectionPercent = settings.maxEjectionPercent;
+  }
+
+  public synchronized void start() {
+    if (sweepFuture != null) {
+      return;
+    }
+    timerService = SharedResourceHolder.get(GrpcUtil.TIMER_SERVICE);
+    sweepFuture = timerService.scheduleWithFixedDelay(new Runnable() {
+
+      @Override
+      public void run() {
+        try {
+          sweep();
+        } catch (Throwable e) {
+          logger.error(e.getMessage(), e);
+        }
+      }
+    }, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void shutdown() {
+    if (sweepFuture != null) {
+      sweepFuture.cancel(false);
+      sweepFuture = null;
+      timerService = SharedResourceHolder.release(GrpcUtil.TIMER_SERVICE, timerService);
+    }
+    hosts.clear();
+  }
+
+  public Host addHost(EquivalentAddressGroup addressGroup) {
+    Host host = new Host(addressGroup);
+    Host existing = hosts.putIfAbsent(addressGroup, host);
+    return existing != null ? existing : host;
+  }
+
+  public void removeHost(EquivalentAddressGroup addressGroup) {
+    hosts.remove(addressGroup);
+  }
+
+  /**
+   * 去掉被摘除的子通道；没有被摘除的直接返回原列表，全部被摘除时也返回原列表，宁可打到异常节点也不让调用无路可走
+   */
+  public static List<Subchannel> filter(List<Subchannel> subchannels) {
+    int ejected = 0;
+    for (int i = 0, size = subchannels.size(); i < size; i++) {
+      if (isEjected(subchannels.get(i))) {
+        ejected++;
+      }
+    }
+    if (ejected == 0 || ejected == subchannels.size()) {
+      return subchannels;
+    }
+    List<Subchannel> healthy = new ArrayList<Subchannel>(subchannels.size() - ejected);
+    for (int i = 0, size = subchannels.size(); i < size; i++) {
+      Subchannel subchannel = subchannels.get(i);
+      if (!isEjected(subchannel)) {
+        healthy.add(subchannel);
+      }
+    }
+    return healthy;
+  }
+
+  private static boolean isEjected(Subchannel subchannel) {
+    Host host = subchannel.getAttributes().get(HOST_KEY);
+    return host != null && host.isEjected();
+  }
+
+  private synchronized boolean eject(Host host, String reason) {
+    long now = System.currentTimeMillis();
+    if (host.isEjected(now) || !hosts.containsKey(host.addressGroup)) {
+      return false;
+    }
+    int ejected = 0;
+    for (Host val : hosts.values()) {
+      if (val.isEjected(now)) {
+        ejected++;
+      }
+    }
+    int maxEjected =
+        maxEjectionPercent > 0 ? Math.max(hosts.size() * maxEjectionPercent / 100, 1) : 0;
+    if (ejected >= maxEjected) {
+      return false;
+    }
+    int ejectionCount = ++host.ejectionCount;
+    long ejectionMillis = Math.min(baseEjectionMillis * ejectionCount,
+        Math.max(MAX_EJECTION_MILLIS, baseEjectionMillis));
+    host.ejectedUntil = now + ejectionMillis;
+    logger.warn(String.format("Eject %s for %dms, reason: %s, ejection #%d",
+        host.addressGroup.getAddresses(), ejectionMillis, reason, ejectionCount));
+    return true;
+  }
+
+  /**
+   * 统计周期结束：取出各地址本周期的计数并清零，回落未被摘除地址的摘除次数，再按成功率和耗时找离群地址
+   */
+  private void sweep() {
+    long now = System.currentTimeMillis();
+    List<Host> candidates = new ArrayList<Host>(hosts.size());
+    for (Host host : hosts.values()) {
+      host.rollWindow();
+      synchronized (this) {
+        if (!host.isEjected(now) && host.ejectionCount > 0) {
+          host.ejectionCount--;
+        }
+      }
+      if (!host.isEjected(now) && host.windowRequests >= REQUEST_VOLUME) {
+        candidates.add(host);
+      }
+    }
+    if (candidates.size() < MINIMUM_HOSTS) {
+      return;
+    }
+    int size = candidates.size();
+    double[] successRates = new double[size];
+    double[] latencies = new double[size];
+    for (int i = 0; i < size; i++) {
+      Host host = candidates.get(i);
+      successRates[i] = (double) host.windowSuccesses / host.windowRequests;
+      latencies[i] = (double) host.windowLatencyNanos / host.windowRequests;
+    }
+    double successMean = mean(successRates);
+    double successThreshold = successMean - STDEV_FACTOR * stdev(successRates, successMean);
+    double latencyMean = mean(latencies);
+    double latencyThreshold = Math.max(latencyMean + STDEV_FACTOR * stdev(latencies, latencyMean),
+        latencyMean * LATENCY_MIN_RATIO);
+    for (int i = 0; i < size; i++) {
+      Host host = candidates.get(i);
+      if (successRates[i] < successThreshold) {
+        eject(host, String.format("success rate %.3f below %.3f", successRates[i],
+            successThreshold));
+      } else if (latencies[i] > latencyThreshold) {
+        eject(host, String.format("mean latency %.1fms above %.1fms", latencies[i] / 1000000,
+            latencyThreshold / 1000000));
+      }
+    }
+  }
+
+  private static double mean(double[] values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  private static double stdev(double[] values, double mean) {
+    double variance = 0;
+    for (double value : values) {
+      variance += (value - mean) * (value - mean);
+    }
+    return Math.sqrt(variance / values.length);
+  }
+
+  /**
+   * 同一服务端地址的所有连接共用一个Host，调用结果由SubchannelStats在流结束时记录
+   */
+  public final class Host {
+
+    private final EquivalentAddressGroup addressGroup;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong successes = new AtomicLong();
+
+    private final AtomicLong latencyNanos = new AtomicLong();
+
+    private volatile long ejectedUntil;
+
+    // 以下字段只在OutlierDetector的锁内或统计线程里读写
+    private int ejectionCount;
+
+    private long windowRequests;
+
+    private long windowSuccesses;
+
+    private long windowLatencyNanos;
+
+    private Host(EquivalentAddressGroup addressGroup) {
+      this.addressGroup = addressGroup;
+    }
+
+    public boolean isEjected() {
+      return isEjected(System.currentTimeMillis());
+    }
+
+    private boolean isEjected(long now) {
+      return now < ejectedUntil;
+    }
+
+    public void record(Status status, long rttNanos) {
+      if (status.getCode() == Status.Code.CANCELLED) {
+        return;
+      }
+      requests.incrementAndGet();
+      latencyNanos.addAndGet(rttNanos);
+      if (!FAILURE_CODES.contains(status.getCode())) {
+        successes.incrementAndGet();
+        consecutiveFailures.set(0);
+        return;
+      }
+      if (consecutiveErrors > 0 && consecutiveFailures.incrementAndGet() >= consecutiveErrors
+          && eject(this, consecutiveFailures.get() + " consecutive failures")) {
+        consecutiveFailures.set(0);
+      }
+    }
+
+    private void rollWindow() {
+      windowRequests = requests.getAndSet(0);
+      windowSuccesses = successes.getAndSet(0);
+      windowLatencyNanos = latencyNanos.getAndSet(0);
+    }
+  }
+
+  /**
+   * 引擎级的摘除配置，consecutiveErrors为0时不按连续失败摘除
+   */
+  public static final class Settings {
+
+    private final int consecutiveErrors;
+
+    private final long baseEjectionMillis;
+
+    private final int maxEjectionPercent;
+
+    public Settings(int consecutiveErrors, long baseEjectionMillis, int maxEjectionPercent) {
+      this.consecutiveErrors = Math.max(consecutiveErrors, 0);
+      this.baseEjectionMillis = Math.max(baseEjectionMillis, 1);
+      this.maxEjectionPercent = Math.min(Math.max(maxEjectionPercent, 0), 100);
+    }
+  }
+
+}
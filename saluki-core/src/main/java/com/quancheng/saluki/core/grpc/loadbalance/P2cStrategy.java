@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * Power of two choices：随机取两个候选服务端，选在途请求少的一个；在途请求数由SubchannelStats无锁计数，按服务端的全部连接合计。
+ * maxInflight大于0时作为单个服务端的隔离上限，两个都超限时退回全量扫描，全部超限则不选
+ *
+ * @author liushiming
+ * @version P2cStrategy.java, v 0.0.1 2017年10月23日 下午2:26:12 liushiming
+ * @since JDK 1.8
+ */
+public final class P2cStrategy implements LoadBalanceStrategy {
+
+  private final int maxInflight;
+
+  public P2cStrategy(int maxInflight) {
+    this.maxInflight = maxInflight > 0 ? maxInflight : Integer.MAX_VALUE;
+  }
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    List<Subchannel> servers = snapshot.serversOf(candidates);
+    int size = servers.size();
+    if (size == 0) {
+      return null;
+    }
+    if (size == 1) {
+      Subchannel only = servers.get(0);
+      return snapshot.inflightOf(only) < maxInflight ? only : null;
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    Subchannel a = servers.get(first);
+    Subchannel b = servers.get(second);
+    int loadA = snapshot.inflightOf(a);
+    int loadB = snapshot.inflightOf(b);
+    Subchannel chosen = loadA <= loadB ? a : b;
+    if (Math.min(loadA, loadB) < maxInflight) {
+      return chosen;
+    }
+    return leastLoaded(servers, snapshot);
+  }
+
+  private Subchannel leastLoaded(List<Subchannel> servers, ProviderSnapshot snapshot) {
+    Subchannel chosen = null;
+    int min = maxInflight;
+    for (Subchannel subchannel : servers) {
+      int load = snapshot.inflightOf(subchannel);
+      if (load < min) {
+        min = load;
+        chosen = subchannel;
+      }
+    }
+    return chosen;
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 峰值EWMA：随机取两个候选服务端，按ewma × (在途+1)估算的负载选低的一个，慢的机器很快就分不到流量；
+ * 同一服务端的多条连接在途请求合计，ewma取其中最大的一个。
+ * 还没有耗时样本的新机器空闲时负载为0，优先探测；有在途请求但还没返回时按惩罚值计算，避免一上线就被压垮
+ *
+ * @author liushiming
+ * @version PeakEwmaStrategy.java, v 0.0.1 2017年10月24日 上午11:02:37 liushiming
+ * @since JDK 1.8
+ */
+public final class PeakEwmaStrategy implements LoadBalanceStrategy {
+
+  private static final double PENALTY = Long.MAX_VALUE >> 16;
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    List<Subchannel> servers = snapshot.serversOf(candidates);
+    int size = servers.size();
+    if (size == 0) {
+      return null;
+    }
+    if (size == 1) {
+      return servers.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+    Subchannel a = servers.get(first);
+    Subchannel b = servers.get(second);
+    return load(a, snapshot) <= load(b, snapshot) ? a : b;
+  }
+
+  private static double load(Subchannel server, ProviderSnapshot snapshot) {
+    int inflight = 0;
+    double ewma = 0;
+    for (Subchannel subchannel : snapshot.stripesOf(server)) {
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      if (stats != null) {
+        inflight += stats.getInflight();
+        ewma = Math.max(ewma, stats.getEwmaNanos());
+      }
+    }
+    if (ewma == 0 && inflight != 0) {
+      return PENALTY + inflight;
+    }
+    return ewma * (inflight + 1);
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 一个Picker里某个服务的全部服务端：提供该服务的子通道、地址到服务端GrpcURL的映射以及按地址分组的连接。
+ * Picker随子通道或地址变化重建，所以每个Picker每个服务只构建一次，选路时负载均衡策略按它的标识判断服务端集合是否变化，
+ * 不必每次比较候选列表；各可用区的注册数和连接数也在构建时统计好。providers为null时表示不区分服务，所有子通道都算在内。
+ * 同一服务端有多条连接时，负载均衡策略先按服务端选，再由stripeOf在该服务端的连接里选，连接多的服务端不会因此分到更多请求
+ *
+ * @author liushiming
+ * @version ProviderSnapshot.java, v 0.0.1 2017年10月27日 上午10:12:40 liushiming
+ * @since JDK 1.8
+ */
+public final class ProviderSnapshot {
+
+  private final Map<SocketAddress, GrpcURL> providers;
+
+  private final List<Subchannel> subchannels;
+
+  private final Map<Subchannel, GrpcURL> providerBySubchannel;
+
+  private final Map<EquivalentAddressGroup, List<Subchannel>> servers;
+
+  private final Map<String, Integer> registeredByZone;
+
+  private final Map<String, Integer> serversByZone;
+
+  private final Map<String, Integer> subchannelsByZone;
+
+  private final boolean striped;
+
+  private final AtomicInteger stripeIndex = new AtomicInteger();
+
+  public ProviderSnapshot(List<Subchannel> all, Map<SocketAddress, GrpcURL> providers) {
+    this.providers = providers;
+    List<Subchannel> subchannels = new ArrayList<Subchannel>(all.size());
+    Map<Subchannel, GrpcURL> providerBySubchannel = Maps.newHashMapWithExpectedSize(all.size());
+    Map<EquivalentAddressGroup, List<Subchannel>> servers =
+        new LinkedHashMap<EquivalentAddressGroup, List<Subchannel>>();
+    for (Subchannel subchannel : all) {
+      GrpcURL provider = LoadBalanceStrategies.providerOf(providers, subchannel);
+      if (providers != null && provider == null) {
+        continue;
+      }
+      subchannels.add(subchannel);
+      if (provider != null) {
+        providerBySubchannel.put(subchannel, provider);
+      }
+      List<Subchannel> stripes = servers.get(subchannel.getAddresses());
+      if (stripes == null) {
+        stripes = new ArrayList<Subchannel>(1);
+        servers.put(subchannel.getAddresses(), stripes);
+      }
+      stripes.add(subchannel);
+    }
+    for (Map.Entry<EquivalentAddressGroup, List<Subchannel>> entry : servers.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    this.subchannels = Collections.unmodifiableList(subchannels);
+    this.providerBySubchannel = providerBySubchannel;
+    this.servers = Collections.unmodifiableMap(servers);
+    this.striped = servers.size() < subchannels.size();
+    this.registeredByZone = Maps.newHashMap();
+    if (providers != null) {
+      for (GrpcURL provider : providers.values()) {
+        add(registeredByZone, provider.getParameter(Constants.ZONE_KEY), 1);
+      }
+    }
+    this.serversByZone = Maps.newHashMap();
+    this.subchannelsByZone = Maps.newHashMap();
+    for (List<Subchannel> stripes : this.servers.values()) {
+      GrpcURL provider = providerOf(stripes.get(0));
+      String zone = provider != null ? provider.getParameter(Constants.ZONE_KEY) : null;
+      add(serversByZone, zone, 1);
+      add(subchannelsByZone, zone, stripes.size());
+    }
+  }
+
+  private static void add(Map<String, Integer> counts, String zone, int delta) {
+    if (zone == null) {
+      return;
+    }
+    counts.put(zone, count(counts, zone) + delta);
+  }
+
+  private static int count(Map<String, Integer> counts, String zone) {
+    Integer count = counts.get(zone);
+    return count != null ? count : 0;
+  }
+
+  public Map<SocketAddress, GrpcURL> getProviders() {
+    return providers;
+  }
+
+  /**
+   * 提供该服务的子通道，顺序与Picker的子通道列表一致
+   */
+  public List<Subchannel> getSubchannels() {
+    return subchannels;
+  }
+
+  /**
+   * 按地址分组的子通道，同一服务端的多条连接在一组
+   */
+  public Map<EquivalentAddressGroup, List<Subchannel>> getServers() {
+    return servers;
+  }
+
+  /**
+   * 候选子通道按服务端去重，每个服务端只留下第一条连接作代表；每个服务端只有一条连接时原样返回
+   */
+  public List<Subchannel> serversOf(List<Subchannel> candidates) {
+    if (!striped || candidates.size() < 2) {
+      return candidates;
+    }
+    List<Subchannel> deduped = new ArrayList<Subchannel>(servers.size());
+    Set<EquivalentAddressGroup> seen = Sets.newHashSetWithExpectedSize(servers.size());
+    for (Subchannel subchannel : candidates) {
+      if (seen.add(subchannel.getAddresses())) {
+        deduped.add(subchannel);
+      }
+    }
+    return deduped;
+  }
+
+  /**
+   * 子通道所在服务端的全部连接；路由、健康检查、异常摘除、重试和就近选路都按地址过滤，选中的服务端的连接都可用
+   */
+  public List<Subchannel> stripesOf(Subchannel server) {
+    List<Subchannel> stripes = striped ? servers.get(server.getAddresses()) : null;
+    return stripes != null ? stripes : Collections.singletonList(server);
+  }
+
+  /**
+   * 在选中服务端的连接里选在途请求最少的一条，相同时轮流使用
+   */
+  public Subchannel stripeOf(Subchannel server) {
+    List<Subchannel> stripes = stripesOf(server);
+    int size = stripes.size();
+    if (size == 1) {
+      return stripes.get(0);
+    }
+    int start = stripeIndex.getAndIncrement() & Integer.MAX_VALUE;
+    Subchannel chosen = null;
+    int min = Integer.MAX_VALUE;
+    for (int i = 0; i < size; i++) {
+      Subchannel subchannel = stripes.get((start + i) % size);
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      int load = stats != null ? stats.getInflight() : 0;
+      if (load < min) {
+        min = load;
+        chosen = subchannel;
+      }
+    }
+    return chosen;
+  }
+
+  /**
+   * 服务端所有连接的在途请求之和
+   */
+  public int inflightOf(Subchannel server) {
+    int inflight = 0;
+    for (Subchannel subchannel : stripesOf(server)) {
+      SubchannelStats stats = SubchannelStats.get(subchannel);
+      if (stats != null) {
+        inflight += stats.getInflight();
+      }
+    }
+    return inflight;
+  }
+
+  public GrpcURL providerOf(Subchannel subchannel) {
+    return providerBySubchannel.get(subchannel);
+  }
+
+  /**
+   * 注册在该可用区的服务端数，包括还没有建立连接的，至少为1
+   */
+  public int registeredIn(String zone) {
+    return Math.max(count(registeredByZone, zone), 1);
+  }
+
+  /**
+   * 该可用区已经在Picker里的服务端数
+   */
+  public int serversIn(String zone) {
+    return count(serversByZone, zone);
+  }
+
+  /**
+   * 该可用区已经在Picker里的子通道数，同一服务端的多条连接分别计数
+   */
+  public int subchannelsIn(String zone) {
+    return count(subchannelsByZone, zone);
+  }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 轮询，默认策略；每个引用一个计数器，不加锁，按服务端轮询，不按连接。预热中的子通道按SlowStart的系数概率放行，没轮上的顺延给下一个
+ *
+ * @author liushiming
+ * @version RoundRobinStrategy.java, v 0.0.1 2017年10月23日 下午2:18:30 liushiming
+ * @since JDK 1.8
+ */
+public final class RoundRobinStrategy implements LoadBalanceStrategy {
+
+  private final AtomicInteger index = new AtomicInteger();
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    List<Subchannel> servers = snapshot.serversOf(candidates);
+    int size = servers.size();
+    if (size == 0) {
+      return null;
+    }
+    int next = index.getAndIncrement() & Integer.MAX_VALUE;
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < size; i++) {
+      Subchannel subchannel = servers.get((next + i) % size);
+      if (SlowStart.admit(snapshot.getProviders(), subchannel, refUrl, random.nextDouble())) {
+        return subchannel;
+      }
+    }
+    return servers.get(next % size);
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.SocketAddress;
+import java.util.Map;
+
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 新上线服务端的预热：从子通道变为READY和服务端注册时间中较晚的一个开始，在warmup毫秒内把流量系数从MIN_FACTOR升到1，
+ * warmupcurve为linear时线性增长，为exponential时指数增长。warmup和warmupcurve优先取服务端注册的参数，其次取引用的参数
+ *
+ * @author liushiming
+ * @version SlowStart.java, v 0.0.1 2017年10月25日 下午3:36:08 liushiming
+ * @since JDK 1.8
+ */
+public final class SlowStart {
+
+  public static final String CURVE_LINEAR = "linear";
+
+  public static final String CURVE_EXPONENTIAL = "exponential";
+
+  private static final double MIN_FACTOR = 0.1;
+
+  private SlowStart() {}
+
+  /**
+   * 预热结束或没有配置预热时为1
+   */
+  public static double factor(Map<SocketAddress, GrpcURL> providers, Subchannel subchannel,
+      GrpcURL refUrl) {
+    GrpcURL provider = LoadBalanceStrategies.providerOf(providers, subchannel);
+    long warmup = parameter(provider, refUrl, Constants.WARMUP_KEY, 0L);
+    if (warmup <= 0) {
+      return 1;
+    }
+    SubchannelStats stats = SubchannelStats.get(subchannel);
+    long start = stats != null ? stats.getReadyMillis() : 0;
+    if (provider != null) {
+      start = Math.max(start, provider.getParameter(Constants.TIMESTAMP_KEY, 0L));
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    if (start == 0 || elapsed >= warmup) {
+      return 1;
+    }
+    double progress = Math.max(elapsed, 0) / (double) warmup;
+    String curve = provider != null ? provider.getParameter(Constants.WARMUP_CURVE_KEY) : null;
+    if (curve == null && refUrl != null) {
+      curve = refUrl.getParameter(Constants.WARMUP_CURVE_KEY);
+    }
+    if (CURVE_EXPONENTIAL.equals(curve)) {
+      return MIN_FACTOR * Math.pow(1 / MIN_FACTOR, progress);
+    }
+    return MIN_FACTOR + (1 - MIN_FACTOR) * progress;
+  }
+
+  /**
+   * 不按权重选路的策略用概率放行：预热中的子通道按系数的概率被接受，否则让给下一个候选
+   */
+  public static boolean admit(Map<SocketAddress, GrpcURL> providers, Subchannel subchannel,
+      GrpcURL refUrl, double random) {
+    return random < factor(providers, subchannel, refUrl);
+  }
+
+  private static long parameter(GrpcURL provider, GrpcURL refUrl, String key, long defaultValue) {
+    if (provider != null && provider.hasParameter(key)) {
+      return provider.getParameter(key, defaultValue);
+    }
+    return refUrl != null ? refUrl.getParameter(key, defaultValue) : defaultValue;
+  }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+/**
+ * 子通道维度的调用统计，创建子通道时放入Attributes；Picker选中子通道时带上tracerFactory，流开始时计入在途，流结束时减去，
+ * 同时把这次调用的耗时计入峰值EWMA：耗时高于当前值时直接取峰值，否则按距上次采样的时间指数衰减
+ *
+ * @author liushiming
+ * @version SubchannelStats.java, v 0.0.1 2017年10月23日 上午10:05:12 liushiming
+ * @since JDK 1.8
+ */
+public final class SubchannelStats {
+
+  public static final Attributes.Key<SubchannelStats> STATS_KEY =
+      Attributes.Key.of("subchannel-stats");
+
+  private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+  private final AtomicInteger inflight = new AtomicInteger();
+
+  private final Object ewmaLock = new Object();
+
+  private volatile double ewmaNanos;
+
+  private long lastObserved;
+
+  private volatile long readyMillis;
+
+  private volatile long lastOkMillis;
+
+  private final OutlierDetector.Host outlierHost;
+
+  private final ClientStreamTracer.Factory tracerFactory = new ClientStreamTracer.Factory() {
+
+    @Override
+    public ClientStreamTracer newClientStreamTracer(CallOptions callOptions, Metadata headers) {
+      inflight.incrementAndGet();
+      final long start = System.nanoTime();
+      return new ClientStreamTracer() {
+
+        @Override
+        public void streamClosed(Status status) {
+          inflight.decrementAndGet();
+          long now = System.nanoTime();
+          observe(start, now);
+          if (status.isOk()) {
+            lastOkMillis = System.currentTimeMillis();
+          }
+          if (outlierHost != null) {
+            outlierHost.record(status, now - start);
+          }
+        }
+      };
+    }
+  };
+
+  public SubchannelStats() {
+    this(null);
+  }
+
+  /**
+   * outlierHost不为空时，每次调用的结果和耗时同时记入该地址的异常检测统计
+   */
+  public SubchannelStats(OutlierDetector.Host outlierHost) {
+    this.outlierHost = outlierHost;
+  }
+
+  public static SubchannelStats get(Subchannel subchannel) {
+    return subchannel.getAttributes().get(STATS_KEY);
+  }
+
+  public int getInflight() {
+    return inflight.get();
+  }
+
+  /**
+   * 每次从非READY变为READY时记下时间，服务端重启后重连的子通道重新预热
+   */
+  public void markReady() {
+    this.readyMillis = System.currentTimeMillis();
+  }
+
+  public long getReadyMillis() {
+    return readyMillis;
+  }
+
+  /**
+   * 最近一次调用成功的时间，健康检查据此跳过有正常业务流量的地址
+   */
+  public long getLastOkMillis() {
+    return lastOkMillis;
+  }
+
+  /**
+   * 还没有完成过调用时为0
+   */
+  public double getEwmaNanos() {
+    return ewmaNanos;
+  }
+
+  private void observe(long start, long now) {
+    double rtt = now - start;
+    synchronized (ewmaLock) {
+      double current = ewmaNanos;
+      if (rtt > current) {
+        ewmaNanos = rtt;
+      } else {
+        double weight = Math.exp(-(now - lastObserved) / DECAY_NANOS);
+        ewmaNanos = current * weight + rtt * (1 - weight);
+      }
+      lastObserved = now;
+    }
+  }
+
+  public ClientStreamTracer.Factory tracerFactory() {
+    return tracerFactory;
+  }
+
+}
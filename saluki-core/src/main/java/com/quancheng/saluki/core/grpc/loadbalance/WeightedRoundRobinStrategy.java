@@ -0,0 +1,237 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Sets;
+import com.google.common.math.IntMath;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcPickHint;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 平滑加权轮询（nginx算法），权重取服务端GrpcURL的weight参数，注册中心下发的权重已由NameResolver覆盖进去。
+ * Picker重建（服务端或权重变化）时按服务端全集预先算出一整轮的选择序列，选路只是按计数器取下标，不在候选里的顺延到下一个；
+ * 候选就是该服务的全部子通道时不做判断，否则按候选列表建一个identity set，同一个候选列表只建一次。
+ * 重试时候选列表少了已尝试的地址，顺延MAX_SKIPS次仍未命中时也一样，在候选的服务端里按权重随机选。
+ * 预热中的服务端权重乘以SlowStart的系数，预热期间序列每秒重建一次
+ *
+ * @author liushiming
+ * @version WeightedRoundRobinStrategy.java, v 0.0.1 2017年10月25日 上午10:20:16 liushiming
+ * @since JDK 1.8
+ */
+public final class WeightedRoundRobinStrategy implements LoadBalanceStrategy {
+
+  private static final int MAX_SCHEDULE_SIZE = 4096;
+
+  private static final long WARMUP_REBUILD_MILLIS = 1000;
+
+  private static final int MAX_SKIPS = 16;
+
+  private final AtomicInteger index = new AtomicInteger();
+
+  private volatile Schedule schedule;
+
+  private volatile CandidateSet candidateSet;
+
+  @Override
+  public Subchannel select(List<Subchannel> candidates, ProviderSnapshot snapshot,
+      GrpcURL refUrl, PickSubchannelArgs args) {
+    Map<SocketAddress, GrpcURL> providers = snapshot.getProviders();
+    List<Subchannel> servers = snapshot.serversOf(candidates);
+    int size = servers.size();
+    if (size == 0) {
+      return null;
+    }
+    if (size == 1) {
+      return servers.get(0);
+    }
+    GrpcPickHint pickHint = GrpcPickHint.get(args.getCallOptions());
+    if (pickHint != null && pickHint.hasTried()) {
+      return randomByWeight(servers, providers, refUrl);
+    }
+    Schedule current = schedule;
+    if (current == null || current.snapshot != snapshot || current.isExpired()) {
+      current = new Schedule(snapshot, refUrl);
+      schedule = current;
+    }
+    int length = current.sequence.length;
+    if (candidates == snapshot.getSubchannels()) {
+      return current.sequence[(index.getAndIncrement() & Integer.MAX_VALUE) % length];
+    }
+    Set<Subchannel> members = candidateSet(candidates);
+    for (int i = 0; i < length && i < MAX_SKIPS; i++) {
+      int next = index.getAndIncrement() & Integer.MAX_VALUE;
+      Subchannel chosen = current.sequence[next % length];
+      if (members.contains(chosen)) {
+        return chosen;
+      }
+    }
+    // 路由或健康检查过滤掉的服务端占了序列的大部分时不再顺延
+    return randomByWeight(servers, providers, refUrl);
+  }
+
+  /**
+   * 路由结果按服务缓存，健康检查、异常摘除和就近选路没有过滤掉地址时原样返回，所以候选列表大多是同一个对象
+   */
+  private Set<Subchannel> candidateSet(List<Subchannel> candidates) {
+    CandidateSet current = candidateSet;
+    if (current == null || current.candidates != candidates) {
+      current = new CandidateSet(candidates);
+      candidateSet = current;
+    }
+    return current.members;
+  }
+
+  private static int effectiveWeight(Map<SocketAddress, GrpcURL> providers,
+      Subchannel subchannel, GrpcURL refUrl) {
+    int weight = LoadBalanceStrategies.weightOf(providers, subchannel);
+    double factor = SlowStart.factor(providers, subchannel, refUrl);
+    return factor >= 1 || weight == 0 ? weight : Math.max((int) (weight * factor), 1);
+  }
+
+  private static Subchannel randomByWeight(List<Subchannel> servers,
+      Map<SocketAddress, GrpcURL> providers, GrpcURL refUrl) {
+    int[] weights = new int[servers.size()];
+    int total = 0;
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = effectiveWeight(providers, servers.get(i), refUrl);
+      total += weights[i];
+    }
+    if (total == 0) {
+      return servers.get(ThreadLocalRandom.current().nextInt(weights.length));
+    }
+    int offset = ThreadLocalRandom.current().nextInt(total);
+    for (int i = 0; i < weights.length; i++) {
+      offset -= weights[i];
+      if (offset < 0) {
+        return servers.get(i);
+      }
+    }
+    return servers.get(weights.length - 1);
+  }
+
+  /**
+   * 一轮的选择序列，构建完成后不再修改，整体替换
+   */
+  private static final class Schedule {
+
+    private final ProviderSnapshot snapshot;
+
+    private final Subchannel[] sequence;
+
+    private final long expireMillis;
+
+    private Schedule(ProviderSnapshot snapshot, GrpcURL refUrl) {
+      this.snapshot = snapshot;
+      this.sequence = build(snapshot, refUrl);
+      this.expireMillis = warming(snapshot, refUrl)
+          ? System.currentTimeMillis() + WARMUP_REBUILD_MILLIS : Long.MAX_VALUE;
+    }
+
+    private boolean isExpired() {
+      return System.currentTimeMillis() >= expireMillis;
+    }
+
+    private static boolean warming(ProviderSnapshot snapshot, GrpcURL refUrl) {
+      for (List<Subchannel> stripes : snapshot.getServers().values()) {
+        if (SlowStart.factor(snapshot.getProviders(), stripes.get(0), refUrl) < 1) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * 序列里是每个服务端的第一条连接，选中后由Picker在该服务端的连接里再选
+     */
+    @SuppressWarnings("unchecked")
+    private static Subchannel[] build(ProviderSnapshot snapshot, GrpcURL refUrl) {
+      Map<SocketAddress, GrpcURL> providers = snapshot.getProviders();
+      Map<EquivalentAddressGroup, List<Subchannel>> servers = snapshot.getServers();
+      List<Subchannel>[] groups = servers.values().toArray(new List[servers.size()]);
+      int[] weights = new int[groups.length];
+      int total = 0;
+      int gcd = 0;
+      for (int i = 0; i < groups.length; i++) {
+        Subchannel subchannel = groups[i].get(0);
+        weights[i] = effectiveWeight(providers, subchannel, refUrl);
+        total += weights[i];
+        gcd = weights[i] == 0 ? gcd : IntMath.gcd(gcd, weights[i]);
+      }
+      if (total == 0) {
+        // 全部为0时退化为普通轮询
+        Arrays.fill(weights, 1);
+        total = groups.length;
+        gcd = 1;
+      }
+      total = 0;
+      for (int i = 0; i < weights.length; i++) {
+        weights[i] /= gcd;
+        total += weights[i];
+      }
+      if (total > MAX_SCHEDULE_SIZE) {
+        int scaled = 0;
+        for (int i = 0; i < weights.length; i++) {
+          if (weights[i] > 0) {
+            weights[i] = Math.max(1, (int) ((long) weights[i] * MAX_SCHEDULE_SIZE / total));
+          }
+          scaled += weights[i];
+        }
+        total = scaled;
+      }
+      Subchannel[] sequence = new Subchannel[total];
+      int[] currentWeights = new int[weights.length];
+      for (int n = 0; n < total; n++) {
+        int best = -1;
+        for (int i = 0; i < weights.length; i++) {
+          currentWeights[i] += weights[i];
+          if (best < 0 || currentWeights[i] > currentWeights[best]) {
+            best = i;
+          }
+        }
+        currentWeights[best] -= total;
+        sequence[n] = groups[best].get(0);
+      }
+      return sequence;
+    }
+  }
+
+  /**
+   * 候选列表和它的identity set，整体替换
+   */
+  private static final class CandidateSet {
+
+    private final List<Subchannel> candidates;
+
+    private final Set<Subchannel> members;
+
+    private CandidateSet(List<Subchannel> candidates) {
+      this.candidates = candidates;
+      this.members = Sets.newIdentityHashSet();
+      this.members.addAll(candidates);
+    }
+  }
+
+}
@@ -40,5 +40,12 @@ public abstract class GrpcRouter {
 
     protected abstract void parseRouter();
 
-    public abstract boolean match(List<GrpcURL> providerUrl);
+    public boolean match(List<GrpcURL> providerUrl) {
+        return match(refUrl, providerUrl);
+    }
+
+    /**
+     * 同一条规则的Router会被缓存共用，调用方直接传入引用的refUrl，不要依赖setRefUrl
+     */
+    public abstract boolean match(GrpcURL refUrl, List<GrpcURL> providerUrl);
 }
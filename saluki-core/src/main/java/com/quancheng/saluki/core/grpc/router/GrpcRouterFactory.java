@@ -6,11 +6,18 @@
  */
 package com.quancheng.saluki.core.grpc.router;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.quancheng.saluki.core.common.RpcContext;
 import com.quancheng.saluki.core.grpc.router.internal.ConditionRouter;
 import com.quancheng.saluki.core.grpc.router.internal.ScriptRouter;
@@ -34,45 +41,89 @@ public final class GrpcRouterFactory {
         }
 
       });
+
+  /**
+   * 按规则文本缓存解析好的Router，规则不变时不再重复解析正则或创建脚本引擎
+   */
+  private static final Cache<String, GrpcRouter> ROUTER_CACHE = CacheBuilder.newBuilder() //
+      .maximumSize(100) //
+      .build();
+
   private static final GrpcRouterFactory instance = new GrpcRouterFactory();
 
+  private final AtomicLong routeVersion = new AtomicLong();
+
   private GrpcRouterFactory() {}
 
   public static GrpcRouterFactory getInstance() {
     return instance;
   }
 
+  /**
+   * 注册中心每次轮询都会通知，只有规则确实变化时才递增版本，Picker据此判断预先计算的路由结果是否过期
+   */
   public void cacheRoute(String group, String routerCondition) {
+    String current = ROUTE_CACHE.getIfPresent(group);
     if (!StringUtils.isEmpty(routerCondition)) {
-      ROUTE_CACHE.put(group, routerCondition);
-    } else {
+      if (!routerCondition.equals(current)) {
+        ROUTE_CACHE.put(group, routerCondition);
+        routeVersion.incrementAndGet();
+      }
+    } else if (current != null) {
       ROUTE_CACHE.invalidate(group);
+      routeVersion.incrementAndGet();
     }
   }
 
-  public GrpcRouter getGrpcRouter(String group) {
-    String currentRouterRule = null;
-    // 从线程上下文取路由规则
-    if (RpcContext.getContext().containAttachment("routerRule")) {
-      currentRouterRule = RpcContext.getContext().getAttachment("routerRule");
-    }
-    // 从配置中心获取路由规则并覆盖线程上下文的路由规则
+  public long getRouteVersion() {
+    return routeVersion.get();
+  }
+
+  /**
+   * 配置中心下发的路由规则
+   */
+  public GrpcRouter getConfigRouter(String group) {
     String configRouterRule = ROUTE_CACHE.getIfPresent(group);
-    if (configRouterRule != null) {
-      currentRouterRule = configRouterRule;
+    return configRouterRule != null ? this.createRouter(configRouterRule) : null;
+  }
+
+  /**
+   * 线程上下文里的临时路由规则，只在配置中心没有该group的规则时生效，取出后即从上下文移除
+   */
+  public GrpcRouter getContextRouter(String group) {
+    if (!RpcContext.getContext().containAttachment("routerRule")) {
+      return null;
     }
-    if (currentRouterRule != null) {
-      try {
-        return this.createRouter(currentRouterRule);
-      } finally {
-        RpcContext.getContext().removeAttachment("routerRule");
-      }
-    } else {
+    String contextRouterRule = RpcContext.getContext().getAttachment("routerRule");
+    RpcContext.getContext().removeAttachment("routerRule");
+    if (ROUTE_CACHE.getIfPresent(group) != null) {
       return null;
     }
+    return this.createRouter(contextRouterRule);
+  }
+
+  public GrpcRouter getGrpcRouter(String group) {
+    // 配置中心的路由规则覆盖线程上下文的路由规则
+    GrpcRouter contextRouter = this.getContextRouter(group);
+    return contextRouter != null ? contextRouter : this.getConfigRouter(group);
+  }
+
+  private GrpcRouter createRouter(final String routerMessage) {
+    try {
+      return ROUTER_CACHE.get(routerMessage, new Callable<GrpcRouter>() {
+
+        @Override
+        public GrpcRouter call() throws Exception {
+          return parseRouter(routerMessage);
+        }
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new IllegalStateException(e.getCause());
+    }
   }
 
-  private GrpcRouter createRouter(String routerMessage) {
+  private GrpcRouter parseRouter(String routerMessage) {
     if (routerMessage.startsWith("condition://") || routerMessage.indexOf("//") == -1) {
       routerMessage = routerMessage.replaceAll("condition://", "");
       return new ConditionRouter(routerMessage);
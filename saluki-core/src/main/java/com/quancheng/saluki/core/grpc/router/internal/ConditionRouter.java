@@ -19,6 +19,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.quancheng.saluki.core.common.GrpcURL;
 import com.quancheng.saluki.core.grpc.router.GrpcRouter;
@@ -34,18 +35,24 @@ public class ConditionRouter extends GrpcRouter {
 
   private static final Pattern ROUTE_PATTERN = Pattern.compile("([&!=,]*)\\s*([^&!=,\\s]+)");
 
-  private Map<String, MatchPair> whenCondition;
+  private static final Condition[] NO_CONDITION = new Condition[0];
 
-  private Map<String, MatchPair> thenCondition;
+  private Condition[] whenCondition;
+
+  private Condition[] thenCondition;
 
   public ConditionRouter(String routerMessage) {
     super(routerMessage);
   }
 
+  /**
+   * 规则只在创建时解析一次并编译成按参数名索引的条件数组，Router按规则文本缓存在GrpcRouterFactory，
+   * 匹配时直接按参数名取值，不再把URL复制成Map
+   */
   @Override
   protected void parseRouter() {
-    whenCondition = Maps.newHashMap();
-    thenCondition = Maps.newHashMap();
+    Map<String, MatchPair> when = Maps.newHashMap();
+    Map<String, MatchPair> then = Maps.newHashMap();
     String rulestr = super.getRule();
     String[] rules = StringUtils.split(rulestr, "\n");
     for (String rule : rules) {
@@ -53,21 +60,22 @@ public class ConditionRouter extends GrpcRouter {
       String whenRule = i < 0 ? null : rule.substring(0, i).trim();
       String thenRule = i < 0 ? rule.trim() : rule.substring(i + 2).trim();
       try {
-        whenCondition.putAll(doParseRule(whenRule));
-        thenCondition.putAll(doParseRule(thenRule));
+        when.putAll(doParseRule(whenRule));
+        then.putAll(doParseRule(thenRule));
       } catch (ParseException e) {
         log.error(e.getMessage(), e);
       }
     }
+    whenCondition = compile(when);
+    thenCondition = compile(then);
   }
 
   @Override
-  public boolean match(List<GrpcURL> providerUrls) {
-    GrpcURL refUrl = super.getRefUrl();
+  public boolean match(GrpcURL refUrl, List<GrpcURL> providerUrls) {
     if (matchWhen(refUrl)) {
       boolean allMatchThen = false;
-      for (GrpcURL providerUrl : providerUrls) {
-        if (matchThen(refUrl, providerUrl)) {
+      for (int i = 0, size = providerUrls.size(); i < size; i++) {
+        if (matchThen(refUrl, providerUrls.get(i))) {
           allMatchThen = true;
         } else {
           allMatchThen = false;
@@ -92,32 +100,101 @@ public class ConditionRouter extends GrpcRouter {
     return thenCondition != null && matchCondition(thenCondition, providerUrl, refUrl);
   }
 
-  private boolean matchCondition(Map<String, MatchPair> condition, GrpcURL url, GrpcURL param) {
-    Map<String, String> sample = url.toMap();
-    for (Map.Entry<String, String> entry : sample.entrySet()) {
-      String key = entry.getKey();
-      MatchPair pair = condition.get(key);
-      if (pair != null && !pair.isMatch(entry.getValue(), param)) {
+  /**
+   * URL上没有的参数不参与匹配，与原先遍历url.toMap()的语义一致
+   */
+  private boolean matchCondition(Condition[] condition, GrpcURL url, GrpcURL param) {
+    for (Condition pair : condition) {
+      String value = pair.valueOf(url);
+      if (value != null && !pair.isMatch(value, param)) {
         return false;
       }
     }
     return true;
   }
 
+  private static Condition[] compile(Map<String, MatchPair> condition) {
+    if (condition.isEmpty()) {
+      return NO_CONDITION;
+    }
+    Condition[] compiled = new Condition[condition.size()];
+    int i = 0;
+    for (Map.Entry<String, MatchPair> entry : condition.entrySet()) {
+      compiled[i++] = new Condition(entry.getKey(), entry.getValue());
+    }
+    return compiled;
+  }
+
   // help method
   private final class MatchPair {
 
     final Set<String> matches = new HashSet<String>();
     final Set<String> mismatches = new HashSet<String>();
+  }
+
+  /**
+   * 编译后的单个参数条件：matches需全部命中，mismatches命中任意一个即不匹配；
+   * 精确值放在HashSet里，通配符预先拆成前后缀，$引用的值在匹配时从refUrl取
+   */
+  private static final class Condition {
+
+    private final String key;
+    private final boolean isPort;
+    private final boolean matchNever;
+    private final String matchExact;
+    private final ValuePattern[] matchPatterns;
+    private final Set<String> mismatchExacts;
+    private final ValuePattern[] mismatchPatterns;
+
+    Condition(String key, MatchPair pair) {
+      this.key = key;
+      this.isPort = "port".equals(key);
+      Set<String> exacts = new HashSet<String>();
+      List<ValuePattern> patterns = Lists.newArrayList();
+      split(pair.matches, exacts, patterns);
+      // 精确值需全部相等，两个以上不同的精确值不可能同时命中
+      this.matchNever = exacts.size() > 1;
+      this.matchExact = exacts.size() == 1 ? exacts.iterator().next() : null;
+      this.matchPatterns = patterns.toArray(new ValuePattern[patterns.size()]);
+      this.mismatchExacts = new HashSet<String>();
+      patterns.clear();
+      split(pair.mismatches, mismatchExacts, patterns);
+      this.mismatchPatterns = patterns.toArray(new ValuePattern[patterns.size()]);
+    }
 
-    public boolean isMatch(String value, GrpcURL param) {
-      for (String match : matches) {
-        if (!GrpcURLUtils.isMatchGlobPattern(match, value, param)) {
+    private static void split(Set<String> values, Set<String> exacts,
+        List<ValuePattern> patterns) {
+      for (String value : values) {
+        ValuePattern pattern = new ValuePattern(value);
+        if (pattern.isExact()) {
+          exacts.add(value);
+        } else {
+          patterns.add(pattern);
+        }
+      }
+    }
+
+    String valueOf(GrpcURL url) {
+      if (isPort) {
+        return url.getPort() > 0 ? String.valueOf(url.getPort()) : null;
+      }
+      return url.getRawParameter(key);
+    }
+
+    boolean isMatch(String value, GrpcURL param) {
+      if (matchNever || (matchExact != null && !matchExact.equals(value))) {
+        return false;
+      }
+      for (ValuePattern match : matchPatterns) {
+        if (!match.isMatch(value, param)) {
           return false;
         }
       }
-      for (String mismatch : mismatches) {
-        if (GrpcURLUtils.isMatchGlobPattern(mismatch, value, param)) {
+      if (mismatchExacts.contains(value)) {
+        return false;
+      }
+      for (ValuePattern mismatch : mismatchPatterns) {
+        if (mismatch.isMatch(value, param)) {
           return false;
         }
       }
@@ -125,6 +202,49 @@ public class ConditionRouter extends GrpcRouter {
     }
   }
 
+  /**
+   * 与GrpcURLUtils.isMatchGlobPattern等价：只识别最后一个星号，编译成前缀加后缀
+   */
+  private static final class ValuePattern {
+
+    private final String pattern;
+    private final String reference;
+    private final boolean any;
+    private final boolean glob;
+    private final String prefix;
+    private final String suffix;
+
+    ValuePattern(String pattern) {
+      this.pattern = pattern;
+      this.reference = pattern.startsWith("$") ? pattern.substring(1) : null;
+      this.any = "*".equals(pattern);
+      int i = pattern.lastIndexOf('*');
+      this.glob = i != -1;
+      this.prefix = glob ? pattern.substring(0, i) : pattern;
+      this.suffix = glob ? pattern.substring(i + 1) : "";
+    }
+
+    boolean isExact() {
+      return !glob && reference == null;
+    }
+
+    boolean isMatch(String value, GrpcURL param) {
+      if (reference != null && param != null) {
+        return GrpcURLUtils.isMatchGlobPattern(param.getRawParameter(reference), value);
+      }
+      if (any) {
+        return true;
+      }
+      if (value.length() == 0) {
+        return false;
+      }
+      if (!glob) {
+        return value.equals(pattern);
+      }
+      return value.startsWith(prefix) && value.endsWith(suffix);
+    }
+  }
+
   private Map<String, MatchPair> doParseRule(String rule) throws ParseException {
     Map<String, MatchPair> condition = new HashMap<String, MatchPair>();
     if (StringUtils.isBlank(rule)) {
@@ -6,9 +6,17 @@
  */
 package com.quancheng.saluki.core.grpc.router.internal;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import javax.script.Invocable;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -28,17 +36,59 @@ public class ScriptRouter extends GrpcRouter {
 
   private static final Logger log = LoggerFactory.getLogger(ScriptRouter.class);
 
-  private ScriptEngine engine;
+  private static final String REF_URL_BINDING = "__saluki_refUrl";
+
+  private static final String PROVIDER_URLS_BINDING = "__saluki_providerUrls";
+
+  private static final String INVOKE_SCRIPT =
+      "route(" + REF_URL_BINDING + ", " + PROVIDER_URLS_BINDING + ")";
+
+  private static final int MAX_POOLED_BINDINGS = 16;
+
+  /**
+   * 单次脚本执行的时间预算，超出后本次按全部放行处理，并在COOL_DOWN_MILLIS内不再执行该脚本
+   */
+  private static final long TIME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private static final long COOL_DOWN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final String NASHORN_PACKAGE = "jdk.nashorn.api.scripting.";
+
+  private final BlockingQueue<Bindings> bindingsPool =
+      new ArrayBlockingQueue<Bindings>(MAX_POOLED_BINDINGS);
+
+  private final ScriptEngine engine;
+
+  private final CompiledScript routeScript;
+
+  private final CompiledScript invokeScript;
+
+  private volatile long disabledUntil;
 
   public ScriptRouter(String type, String rule) {
     super(rule);
-    engine = new ScriptEngineManager().getEngineByName(type);
+    ScriptEngine engine = new ScriptEngineManager().getEngineByName(type);
     if (engine == null && StringUtils.equals(type, "javascript")) {
       engine = new ScriptEngineManager().getEngineByName("js");
     }
     if (engine == null) {
       throw new IllegalStateException("Unsupported route rule type: " + type + ", rule: " + rule);
     }
+    engine = sandbox(engine);
+    if (!(engine instanceof Compilable)) {
+      throw new IllegalStateException("Route rule type " + type + " can not be compiled");
+    }
+    this.engine = engine;
+    CompiledScript routeScript = null;
+    CompiledScript invokeScript = null;
+    try {
+      routeScript = ((Compilable) engine).compile(rule);
+      invokeScript = ((Compilable) engine).compile(INVOKE_SCRIPT);
+    } catch (ScriptException e) {
+      log.error("route script compile error , rule has been ignored. rule: " + rule, e);
+    }
+    this.routeScript = routeScript;
+    this.invokeScript = invokeScript;
   }
 
   @Override
@@ -46,22 +96,91 @@ public class ScriptRouter extends GrpcRouter {
     // do nothing
   }
 
+  /**
+   * 脚本在创建时编译一次；每个Bindings是独立的全局作用域，执行过一次规则脚本后放回池中复用，
+   * 并发的匹配各自取用不同的Bindings。脚本执行超时或出错都按全部放行处理；时间预算只对池里取出的Bindings计算，
+   * 新建Bindings要执行规则脚本，第一次调用还要链接调用点，耗时远超预算，计入会让规则刚下发就被停用
+   */
   @Override
-  public boolean match(List<GrpcURL> providerUrls) {
+  public boolean match(GrpcURL refUrl, List<GrpcURL> providerUrls) {
+    if (invokeScript == null || disabledUntil > System.currentTimeMillis()) {
+      return true;
+    }
     String rule = super.getRule();
+    Bindings bindings = bindingsPool.poll();
+    boolean pooled = bindings != null;
     try {
-      engine.eval(super.getRule());
-      Invocable invocable = (Invocable) engine;
-      GrpcURL refUrl = super.getRefUrl();
-      Object obj = invocable.invokeFunction("route", refUrl, providerUrls);
+      if (!pooled) {
+        bindings = newBindings();
+      }
+      bindings.put(REF_URL_BINDING, refUrl);
+      bindings.put(PROVIDER_URLS_BINDING, providerUrls);
+      long start = System.nanoTime();
+      Object obj = invokeScript.eval(bindings);
+      long elapsed = System.nanoTime() - start;
+      if (pooled && elapsed > TIME_BUDGET_NANOS) {
+        disabledUntil = System.currentTimeMillis() + COOL_DOWN_MILLIS;
+        log.warn("route script took " + TimeUnit.NANOSECONDS.toMillis(elapsed)
+            + "ms, rule has been ignored for " + COOL_DOWN_MILLIS + "ms. rule: " + rule);
+        return true;
+      }
       if (obj instanceof Boolean) {
         return (Boolean) obj;
       } else {
         return true;
       }
-    } catch (ScriptException | NoSuchMethodException e) {
+    } catch (Throwable e) {
       log.error("route error , rule has been ignored. rule: " + rule + ", url: " + providerUrls, e);
       return true;
+    } finally {
+      if (bindings != null) {
+        bindings.remove(REF_URL_BINDING);
+        bindings.remove(PROVIDER_URLS_BINDING);
+        bindingsPool.offer(bindings);
+      }
+    }
+  }
+
+  private Bindings newBindings() throws ScriptException {
+    Bindings bindings = engine.createBindings();
+    routeScript.eval(bindings);
+    return bindings;
+  }
+
+  /**
+   * 路由规则来自配置中心，Nashorn引擎换成带ClassFilter的实例，脚本不能通过Java.type、Packages等访问任何Java类，
+   * 只能调用传入的GrpcURL的方法。Nashorn的API通过反射调用，classpath或JDK里没有Nashorn时原样返回
+   */
+  private static ScriptEngine sandbox(ScriptEngine engine) {
+    Object factory = engine.getFactory();
+    if (!factory.getClass().getName().equals(NASHORN_PACKAGE + "NashornScriptEngineFactory")) {
+      log.warn("route script engine " + factory.getClass().getName()
+          + " is not sandboxed, scripts can access java classes");
+      return engine;
+    }
+    try {
+      Class<?> classFilter = Class.forName(NASHORN_PACKAGE + "ClassFilter");
+      Object denyAll = Proxy.newProxyInstance(classFilter.getClassLoader(),
+          new Class<?>[] {classFilter}, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+              if (method.getName().equals("exposeToScripts")) {
+                return Boolean.FALSE;
+              }
+              if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+              }
+              if (method.getName().equals("equals")) {
+                return proxy == args[0];
+              }
+              return "DenyAllClassFilter";
+            }
+          });
+      return (ScriptEngine) factory.getClass().getMethod("getScriptEngine", classFilter)
+          .invoke(factory, denyAll);
+    } catch (Exception e) {
+      throw new IllegalStateException("Create sandboxed route script engine failed", e);
     }
   }
 
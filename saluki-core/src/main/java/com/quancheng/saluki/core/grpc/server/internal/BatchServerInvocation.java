@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.server.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.grpc.batch.BatchEntry;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCalls.UnaryMethod;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * 批量端点：逐项交给原方法的ServerInvocation执行，单项失败只影响该项的结果，监控采集与并发统计保持按项计算
+ *
+ * @author liushiming
+ * @version BatchServerInvocation.java, v 0.0.1 2017年10月17日 上午11:08:52 liushiming
+ * @since JDK 1.8
+ */
+public class BatchServerInvocation implements UnaryMethod<List<BatchEntry>, List<BatchEntry>> {
+
+  private final ServerInvocation serverInvocation;
+
+  public BatchServerInvocation(ServerInvocation serverInvocation) {
+    this.serverInvocation = serverInvocation;
+  }
+
+  @Override
+  public void invoke(List<BatchEntry> requests, StreamObserver<List<BatchEntry>> responseObserver) {
+    List<BatchEntry> responses = new ArrayList<BatchEntry>(requests.size());
+    for (BatchEntry request : requests) {
+      EntryObserver entryObserver = new EntryObserver();
+      serverInvocation.invoke(request.getMessage(), entryObserver);
+      responses.add(entryObserver.getResult());
+    }
+    responseObserver.onNext(responses);
+    responseObserver.onCompleted();
+  }
+
+  private static final class EntryObserver implements StreamObserver<Message> {
+
+    private BatchEntry result;
+
+    @Override
+    public void onNext(Message value) {
+      result = BatchEntry.of(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      result = BatchEntry.error(Status.fromThrowable(t));
+    }
+
+    @Override
+    public void onCompleted() {}
+
+    BatchEntry getResult() {
+      if (result == null) {
+        return BatchEntry.error(
+            Status.INTERNAL.withDescription("No value returned for batch entry"));
+      }
+      return result;
+    }
+  }
+
+}
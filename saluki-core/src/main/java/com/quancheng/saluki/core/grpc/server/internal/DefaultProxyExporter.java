@@ -17,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Maps;
 import com.google.protobuf.Message;
 import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.GrpcBatch;
 import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
 import com.quancheng.saluki.core.grpc.exception.RpcErrorMsgConstant;
 import com.quancheng.saluki.core.grpc.exception.RpcServiceException;
@@ -67,9 +68,16 @@ public class DefaultProxyExporter implements GrpcProtocolExporter {
       GrpcMethodType grpcMethodType = method.getAnnotation(GrpcMethodType.class);
       switch (grpcMethodType.methodType()) {
         case UNARY:
+          ServerInvocation unaryInvocation = new ServerInvocation(serviceRef, method,
+              grpcMethodType, providerUrl, concurrents, clientServerMonitor);
           serviceDefBuilder.addMethod(methodDescriptor,
-              ServerCalls.asyncUnaryCall(new ServerInvocation(serviceRef, method, grpcMethodType,
-                  providerUrl, concurrents, clientServerMonitor)));
+              ServerCalls.asyncUnaryCall(unaryInvocation));
+          if (method.isAnnotationPresent(GrpcBatch.class)) {
+            serviceDefBuilder.addMethod(
+                GrpcUtil.createBatchMethodDescriptor(serviceName, method.getName(),
+                    grpcMethodType),
+                ServerCalls.asyncUnaryCall(new BatchServerInvocation(unaryInvocation)));
+          }
           break;
         case CLIENT_STREAMING:
           serviceDefBuilder.addMethod(methodDescriptor,
@@ -86,7 +86,7 @@ public class ServerInvocation implements io.grpc.stub.ServerCalls.UnaryMethod<Me
       String stackTrace = ThrowableUtil.stackTraceToString(e);
       log.error(e.getMessage(), e);
       StatusRuntimeException statusException =
-          Status.UNAVAILABLE.withDescription(stackTrace).asRuntimeException();
+          Status.UNKNOWN.withDescription(stackTrace).asRuntimeException();
       responseObserver.onError(statusException);
     } finally {
       log.debug(String.format("Service: %s  Method: %s  RemoteAddress: %s",
@@ -123,7 +123,7 @@ public class ServerInvocation implements io.grpc.stub.ServerCalls.UnaryMethod<Me
       String stackTrace = ThrowableUtil.stackTraceToString(e);
       log.error(e.getMessage(), e);
       StatusRuntimeException statusException =
-          Status.UNAVAILABLE.withDescription(stackTrace).asRuntimeException();
+          Status.UNKNOWN.withDescription(stackTrace).asRuntimeException();
       responseObserver.onError(statusException);
     } finally {
       log.debug(String.format("Service: %s  Method: %s  RemoteAddress: %s",
@@ -166,7 +166,7 @@ public class ServerInvocation implements io.grpc.stub.ServerCalls.UnaryMethod<Me
         }
       });
       StatusRuntimeException statusException =
-          Status.UNAVAILABLE.withDescription(stackTrace).asRuntimeException();
+          Status.UNKNOWN.withDescription(stackTrace).asRuntimeException();
       responseObserver.onError(statusException);
     } finally {
       log.info(String.format("Service: %s  Method: %s  RemoteAddress: %s",
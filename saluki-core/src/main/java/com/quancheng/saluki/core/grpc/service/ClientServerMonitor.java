@@ -25,7 +25,7 @@ public class ClientServerMonitor implements MonitorService {
 
   private static final Object LOCK = new Object();
 
-  private static final int LENGTH = 10;
+  private static final int LENGTH = 13;
 
   private final ScheduledFuture<?> sendFuture;
 
@@ -84,16 +84,22 @@ public class ClientServerMonitor implements MonitorService {
         long maxOutput = numbers[7];
         long maxElapsed = numbers[8];
         long maxConcurrent = numbers[9];
+        long cacheHit = numbers[10];
+        long cacheMiss = numbers[11];
+        long cacheEviction = numbers[12];
+        long calls = success + failure;
         // 发送汇总信息
         GrpcURL url = statistics.getUrl().addParameters(MonitorService.TIMESTAMP,
             String.valueOf(timestamp), MonitorService.SUCCESS, String.valueOf(success),
             MonitorService.FAILURE, String.valueOf(failure), MonitorService.INPUT,
             String.valueOf(input), MonitorService.OUTPUT, String.valueOf(output),
             MonitorService.ELAPSED, String.valueOf(elapsed), MonitorService.CONCURRENT,
-            String.valueOf(concurrent / (success + failure)), MonitorService.MAX_INPUT,
+            String.valueOf(calls == 0 ? 0 : concurrent / calls), MonitorService.MAX_INPUT,
             String.valueOf(maxInput), MonitorService.MAX_OUTPUT, String.valueOf(maxOutput),
             MonitorService.MAX_ELAPSED, String.valueOf(maxElapsed), MonitorService.MAX_CONCURRENT,
-            String.valueOf(maxConcurrent));
+            String.valueOf(maxConcurrent), MonitorService.CACHE_HIT, String.valueOf(cacheHit),
+            MonitorService.CACHE_MISS, String.valueOf(cacheMiss), MonitorService.CACHE_EVICTION,
+            String.valueOf(cacheEviction));
         for (MonitorService monitor : monitorServices) {
           monitor.collect(url);
         }
@@ -109,6 +115,9 @@ public class ClientServerMonitor implements MonitorService {
             update[3] = 0;
             update[4] = 0;
             update[5] = 0;
+            update[10] = 0;
+            update[11] = 0;
+            update[12] = 0;
           } else {
             update[0] = current[0] - success;
             update[1] = current[1] - failure;
@@ -116,6 +125,9 @@ public class ClientServerMonitor implements MonitorService {
             update[3] = current[3] - output;
             update[4] = current[4] - elapsed;
             update[5] = current[5] - concurrent;
+            update[10] = current[10] - cacheHit;
+            update[11] = current[11] - cacheMiss;
+            update[12] = current[12] - cacheEviction;
           }
         } while (!reference.compareAndSet(current, update));
       }
@@ -131,6 +143,9 @@ public class ClientServerMonitor implements MonitorService {
     int output = url.getParameter(MonitorService.OUTPUT, 0);
     int elapsed = url.getParameter(MonitorService.ELAPSED, 0);
     int concurrent = url.getParameter(MonitorService.CONCURRENT, 1);
+    int cacheHit = url.getParameter(MonitorService.CACHE_HIT, 0);
+    int cacheMiss = url.getParameter(MonitorService.CACHE_MISS, 0);
+    int cacheEviction = url.getParameter(MonitorService.CACHE_EVICTION, 0);
     // 初始化原子引用
     Statistics statistics = new Statistics(url);
     AtomicReference<long[]> reference = statisticsMap.get(statistics);
@@ -154,6 +169,9 @@ public class ClientServerMonitor implements MonitorService {
         update[7] = output;
         update[8] = elapsed;
         update[9] = concurrent;
+        update[10] = cacheHit;
+        update[11] = cacheMiss;
+        update[12] = cacheEviction;
       } else {
         update[0] = current[0] + success;
         update[1] = current[1] + failure;
@@ -165,6 +183,9 @@ public class ClientServerMonitor implements MonitorService {
         update[7] = current[7] > output ? current[7] : output;
         update[8] = current[8] > elapsed ? current[8] : elapsed;
         update[9] = current[9] > concurrent ? current[9] : concurrent;
+        update[10] = current[10] + cacheHit;
+        update[11] = current[11] + cacheMiss;
+        update[12] = current[12] + cacheEviction;
       }
     } while (!reference.compareAndSet(current, update));
   }
@@ -172,7 +193,8 @@ public class ClientServerMonitor implements MonitorService {
   private boolean isZero(long[] current) {
     return current[0] == 0l && current[1] == 0l && current[2] == 0l && current[3] == 0l
         && current[4] == 0l && current[5] == 0l && current[6] == 0l && current[7] == 0l
-        && current[8] == 0l && current[9] == 0l;
+        && current[8] == 0l && current[9] == 0l && current[10] == 0l && current[11] == 0l
+        && current[12] == 0l;
   }
 
   public void destroy() {
@@ -42,6 +42,12 @@ public interface MonitorService {
 
     String MAX_CONCURRENT = "max.concurrent";
 
+    String CACHE_HIT      = "cache.hit";
+
+    String CACHE_MISS     = "cache.miss";
+
+    String CACHE_EVICTION = "cache.eviction";
+
     /**
      * 监控数据采集. 1.
      * 支持调用次数统计：count://host/interface?application=foo&method=foo&provider=10.20.153.11:20880&success=12&failure=2&elapsed=135423423
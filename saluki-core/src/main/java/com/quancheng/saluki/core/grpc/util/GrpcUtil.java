@@ -14,10 +14,13 @@
 package com.quancheng.saluki.core.grpc.util;
 
 import java.lang.reflect.Method;
+import java.util.List;
 
 import com.google.common.base.Charsets;
 import com.google.protobuf.Message;
 import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.batch.BatchEntry;
+import com.quancheng.saluki.core.grpc.batch.BatchMarshaller;
 import com.quancheng.saluki.core.utils.ReflectUtils;
 import com.quancheng.saluki.serializer.ProtobufEntity;
 
@@ -39,6 +42,11 @@ public class GrpcUtil {
   public static final Metadata.Key<String> GRPC_CONTEXT_VALUES =
       Metadata.Key.of("grpc_header_values-bin", utf8Marshaller());
 
+  public static final String BATCH_METHOD_SUFFIX = "$batch";
+
+  public static final Metadata.Key<String> GRPC_CONTEXT_DEADLINE =
+      Metadata.Key.of("grpc_header_deadline", Metadata.ASCII_STRING_MARSHALLER);
+
   private static Metadata.BinaryMarshaller<String> utf8Marshaller() {
     return new Metadata.BinaryMarshaller<String>() {
 
@@ -87,6 +95,26 @@ public class GrpcUtil {
   }
 
 
+  /**
+   * 标注了GrpcBatch的一元方法对应的批量端点，方法名为原方法名加上BATCH_METHOD_SUFFIX
+   */
+  public static io.grpc.MethodDescriptor<List<BatchEntry>, List<BatchEntry>>
+      createBatchMethodDescriptor(String clzzName, String methodName,
+          GrpcMethodType grpcMethodType) {
+    Message argsReq = createDefaultInstance(grpcMethodType.requestType());
+    Message argsRep = createDefaultInstance(grpcMethodType.responseType());
+    String batchMethodName = methodName + BATCH_METHOD_SUFFIX;
+    return io.grpc.MethodDescriptor.<List<BatchEntry>, List<BatchEntry>>newBuilder()
+        .setType(io.grpc.MethodDescriptor.MethodType.UNARY)//
+        .setFullMethodName(
+            io.grpc.MethodDescriptor.generateFullMethodName(clzzName, batchMethodName))//
+        .setRequestMarshaller(new BatchMarshaller(argsReq))//
+        .setResponseMarshaller(new BatchMarshaller(argsRep))//
+        .setSafe(false)//
+        .setIdempotent(false)//
+        .build();
+  }
+
   public static Message createDefaultInstance(Class<?> type) {
     Class<? extends Message> messageType;
     if (!Message.class.isAssignableFrom(type)) {
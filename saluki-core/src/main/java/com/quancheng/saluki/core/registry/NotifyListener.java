@@ -26,4 +26,14 @@ public interface NotifyListener {
     void notify(String group, String routerCondition);
   }
 
+  public interface NotifyCacheListener {
+
+    void notify(String serviceName);
+  }
+
+  public interface NotifyWeightListener {
+
+    void notify(String serviceName, String weights);
+  }
+
 }
@@ -47,9 +47,39 @@ public interface Registry {
      */
     void unsubscribe(String group, NotifyListener.NotifyRouterListener listener);
 
+    /**
+     * 订阅服务的响应缓存失效通知
+     */
+    void subscribe(String serviceName, NotifyListener.NotifyCacheListener listener);
+
+    /**
+     * 取消订阅响应缓存失效通知
+     */
+    void unsubscribe(String serviceName, NotifyListener.NotifyCacheListener listener);
+
+    /**
+     * 服务端发布响应缓存失效通知，订阅了该服务的客户端清空缓存
+     */
+    void publishCacheInvalidation(String serviceName);
+
+    /**
+     * 订阅服务端权重的动态调整，取值为host:port=weight的列表，删除后通知null
+     */
+    void subscribe(String serviceName, NotifyListener.NotifyWeightListener listener);
+
+    /**
+     * 取消订阅服务端权重
+     */
+    void unsubscribe(String serviceName, NotifyListener.NotifyWeightListener listener);
+
     /**
      * 查询服务
      */
     List<GrpcURL> discover(GrpcURL url);
 
+    /**
+     * 停止注册中心的后台线程，注册中心实例在进程内共享，只在进程退出时调用
+     */
+    void destroy();
+
 }
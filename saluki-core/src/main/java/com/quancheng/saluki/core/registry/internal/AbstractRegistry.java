@@ -98,6 +98,10 @@ public abstract class AbstractRegistry implements Registry {
     return result;
   }
 
+  public void destroy() {
+    notifyExecutor.shutdown();
+  }
+
   public void register(GrpcURL url) {
     if (url == null) {
       throw new IllegalArgumentException("register url == null");
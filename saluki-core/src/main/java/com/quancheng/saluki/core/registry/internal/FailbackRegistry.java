@@ -216,6 +216,17 @@ public abstract class FailbackRegistry extends AbstractRegistry {
     }
   }
 
+  @Override
+  public void destroy() {
+    try {
+      retryFuture.cancel(true);
+      retryExecutor.shutdown();
+    } catch (Throwable t) {
+      logger.error("Unexpected error occur at cancel retry timer, cause: " + t.getMessage(), t);
+    }
+    super.destroy();
+  }
+
   public Future<?> getRetryFuture() {
     return retryFuture;
   }
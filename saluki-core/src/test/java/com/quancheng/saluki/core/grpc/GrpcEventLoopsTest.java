@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+/**
+ * 所有Channel共用一个按ioThreads定长的worker，epoll不可用时退回nio
+ *
+ * @author liushiming
+ * @version GrpcEventLoopsTest.java, v 0.0.1 2017年10月30日 下午5:02:14 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcEventLoopsTest {
+
+  private GrpcEventLoops eventLoops;
+
+  @After
+  public void tearDown() {
+    eventLoops.worker().shutdownGracefully();
+    eventLoops.boss().shutdownGracefully();
+  }
+
+  @Test
+  public void testWorkerIsShared() {
+    eventLoops = new GrpcEventLoops(2, GrpcEventLoops.TRANSPORT_NIO);
+    EventLoopGroup worker = eventLoops.worker();
+    assertSame(worker, eventLoops.worker());
+    assertNotSame(worker, eventLoops.boss());
+  }
+
+  @Test
+  public void testWorkerSizedToIoThreads() {
+    eventLoops = new GrpcEventLoops(3, GrpcEventLoops.TRANSPORT_NIO);
+    assertEquals(3, ((NioEventLoopGroup) eventLoops.worker()).executorCount());
+    assertEquals(1, ((NioEventLoopGroup) eventLoops.boss()).executorCount());
+  }
+
+  @Test
+  public void testEpollFallsBackToNio() {
+    eventLoops = new GrpcEventLoops(1, GrpcEventLoops.TRANSPORT_EPOLL);
+    assertTrue(eventLoops.worker() instanceof NioEventLoopGroup);
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.Attributes;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.ResolvedServerInfoGroup;
+import io.grpc.Status;
+
+/**
+ * 共用Channel时同一个服务端地址只推给LoadBalancer一次，后加入的服务通过resolveNow立即订阅
+ *
+ * @author liushiming
+ * @version GrpcNameResolverTest.java, v 0.0.1 2017年10月30日 下午5:24:09 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcNameResolverTest {
+
+  private static final String SERVICE_A = "com.example.ServiceA";
+
+  private static final String SERVICE_B = "com.example.ServiceB";
+
+  private final RecordingRegistryProvider.RecordingRegistry registry =
+      RecordingRegistryProvider.REGISTRY;
+
+  private final Set<GrpcURL> subscribeUrls = Sets.newConcurrentHashSet();
+
+  private final GrpcNameResolverProvider provider = new GrpcNameResolverProvider(subscribeUrls);
+
+  private final RecordingListener listener = new RecordingListener();
+
+  private NameResolver nameResolver;
+
+  @Before
+  public void setUp() {
+    registry.reset();
+    GrpcURL provider = new GrpcURL(Constants.REMOTE_PROTOCOL, "10.0.0.1", 12201);
+    registry.providers.put(SERVICE_A, Collections.singletonList(provider.setPath(SERVICE_A)));
+    registry.providers.put(SERVICE_B, Collections.singletonList(provider.setPath(SERVICE_B)));
+  }
+
+  @After
+  public void tearDown() {
+    if (nameResolver != null) {
+      nameResolver.shutdown();
+    }
+  }
+
+  @Test
+  public void testSharedProviderAddressIsPushedOnce() throws Exception {
+    subscribeUrls.add(subscribeUrl(SERVICE_A, "groupA"));
+    subscribeUrls.add(subscribeUrl(SERVICE_B, "groupB"));
+    start();
+
+    assertEquals(1, listener.awaitAddresses().size());
+    Map<String, Map<SocketAddress, GrpcURL>> serviceProviders =
+        listener.attributes.get(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS);
+    SocketAddress address = new InetSocketAddress("10.0.0.1", 12201);
+    assertEquals(SERVICE_A, serviceProviders.get(subscribeUrl(SERVICE_A, "groupA").getServiceKey())
+        .get(address).getServiceInterface());
+    assertEquals(SERVICE_B, serviceProviders.get(subscribeUrl(SERVICE_B, "groupB").getServiceKey())
+        .get(address).getServiceInterface());
+  }
+
+  @Test
+  public void testResolveNowSubscribesJoinedService() throws Exception {
+    subscribeUrls.add(subscribeUrl(SERVICE_A, "groupA"));
+    start();
+    listener.awaitAddresses();
+    assertEquals(1, registry.subscribed.size());
+
+    GrpcURL joined = subscribeUrl(SERVICE_B, "groupB");
+    subscribeUrls.add(joined);
+    provider.resolveNow();
+    assertTrue(registry.subscribed.contains(joined));
+    assertTrue(listener.attributes.get(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS)
+        .containsKey(joined.getServiceKey()));
+  }
+
+  @Test
+  public void testResolveNowSkipsShutdownResolver() throws Exception {
+    subscribeUrls.add(subscribeUrl(SERVICE_A, "groupA"));
+    start();
+    listener.awaitAddresses();
+    nameResolver.shutdown();
+    registry.subscribed.clear();
+    provider.resolveNow();
+    assertTrue(registry.subscribed.isEmpty());
+  }
+
+  private void start() {
+    nameResolver = provider.newNameResolver(URI.create("consul://127.0.0.1:8500"),
+        Attributes.EMPTY);
+    nameResolver.start(listener);
+  }
+
+  private static GrpcURL subscribeUrl(String service, String group) {
+    return new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0, service, Constants.GROUP_KEY,
+        group);
+  }
+
+  private static final class RecordingListener implements NameResolver.Listener {
+
+    private volatile List<EquivalentAddressGroup> servers;
+
+    private volatile Attributes attributes;
+
+    /**
+     * start时的首次解析在共享线程池上异步执行
+     */
+    private List<EquivalentAddressGroup> awaitAddresses() throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 5000;
+      while (servers == null && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertNotNull(servers);
+      return servers;
+    }
+
+    @Override
+    public void onAddresses(List<EquivalentAddressGroup> servers, Attributes attributes) {
+      this.servers = servers;
+      this.attributes = attributes;
+    }
+
+    @Override
+    @Deprecated
+    public void onUpdate(List<ResolvedServerInfoGroup> servers, Attributes attributes) {}
+
+    @Override
+    public void onError(Status error) {}
+  }
+
+}
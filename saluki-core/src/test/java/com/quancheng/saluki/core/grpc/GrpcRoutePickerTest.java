@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.loadbalance.FakeSubchannel;
+import com.quancheng.saluki.core.grpc.router.GrpcRouterFactory;
+
+import io.grpc.Attributes;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 路由结果按服务预先计算，规则变化时重新计算，线程上下文里的临时规则只对当次调用生效
+ *
+ * @author liushiming
+ * @version GrpcRoutePickerTest.java, v 0.0.1 2017年10月30日 下午7:26:52 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcRoutePickerTest {
+
+  private static final String GROUP = GrpcRoutePickerTest.class.getSimpleName();
+
+  private final GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+      "test.Echo", Constants.GROUP_KEY, GROUP);
+
+  private final FakeSubchannel first = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel second = new FakeSubchannel("10.0.0.2");
+
+  private final GrpcRoutePicker picker = new GrpcRoutePicker(
+      Arrays.<Subchannel>asList(first, second), null, attributes(first, second), null);
+
+  private final PickSubchannelArgs args =
+      FakeSubchannel.args(GrpcCallOptions.createCallOptions(refUrl));
+
+  @After
+  public void tearDown() {
+    GrpcRouterFactory.getInstance().cacheRoute(GROUP, null);
+    RpcContext.removeContext();
+  }
+
+  @Test
+  public void testConfigRuleIsApplied() {
+    GrpcRouterFactory.getInstance().cacheRoute(GROUP, "=> host = 10.0.0.2");
+    assertEquals(Sets.newHashSet(second), picked(20));
+  }
+
+  @Test
+  public void testChangedRuleRecomputesRoute() {
+    GrpcRouterFactory routerFactory = GrpcRouterFactory.getInstance();
+    routerFactory.cacheRoute(GROUP, "=> host = 10.0.0.1");
+    assertEquals(Sets.newHashSet(first), picked(20));
+    long version = routerFactory.getRouteVersion();
+    routerFactory.cacheRoute(GROUP, "=> host = 10.0.0.1");
+    assertEquals(version, routerFactory.getRouteVersion());
+    routerFactory.cacheRoute(GROUP, "=> host = 10.0.0.2");
+    assertEquals(Sets.newHashSet(second), picked(20));
+    routerFactory.cacheRoute(GROUP, null);
+    assertEquals(Sets.newHashSet(first, second), picked(20));
+  }
+
+  @Test
+  public void testContextRuleAppliesToOneCall() {
+    RpcContext.getContext().setAttachment("routerRule", "=> host = 10.0.0.1");
+    assertEquals(Sets.newHashSet(first), picked(1));
+    assertEquals(Sets.newHashSet(first, second), picked(20));
+  }
+
+  private Set<Subchannel> picked(int picks) {
+    Set<Subchannel> picked = Sets.newHashSet();
+    for (int i = 0; i < picks; i++) {
+      picked.add(picker.pickSubchannel(args).getSubchannel());
+    }
+    return picked;
+  }
+
+  private Attributes attributes(Subchannel... subchannels) {
+    Map<SocketAddress, GrpcURL> providers = Maps.newHashMap();
+    for (Subchannel subchannel : subchannels) {
+      InetSocketAddress address =
+          (InetSocketAddress) subchannel.getAddresses().getAddresses().get(0);
+      providers.put(address, new GrpcURL(Constants.REMOTE_PROTOCOL, address.getHostString(),
+          address.getPort(), "test.Echo"));
+    }
+    return Attributes.newBuilder().set(GrpcNameResolverProvider.GRPC_SERVICE_PROVIDERS,
+        ImmutableMap.of(refUrl.getServiceKey(), providers)).build();
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.registry.NotifyListener;
+import com.quancheng.saluki.core.registry.Registry;
+import com.quancheng.saluki.core.registry.RegistryProvider;
+
+/**
+ * 测试用的注册中心：订阅时同步推送预置的提供方地址，并记录订阅过的服务
+ *
+ * @author liushiming
+ * @version RecordingRegistryProvider.java, v 0.0.1 2017年10月30日 下午5:20:41 liushiming
+ * @since JDK 1.8
+ */
+public class RecordingRegistryProvider extends RegistryProvider {
+
+  static final RecordingRegistry REGISTRY = new RecordingRegistry();
+
+  @Override
+  protected boolean isAvailable() {
+    return true;
+  }
+
+  @Override
+  protected int priority() {
+    return 0;
+  }
+
+  @Override
+  public Registry newRegistry(GrpcURL url) {
+    return REGISTRY;
+  }
+
+  static final class RecordingRegistry implements Registry {
+
+    final Map<String, List<GrpcURL>> providers = Maps.newConcurrentMap();
+
+    final List<GrpcURL> subscribed = Lists.newCopyOnWriteArrayList();
+
+    void reset() {
+      providers.clear();
+      subscribed.clear();
+    }
+
+    @Override
+    public void register(GrpcURL url) {}
+
+    @Override
+    public void unregister(GrpcURL url) {}
+
+    @Override
+    public void subscribe(GrpcURL url, NotifyListener.NotifyServiceListener listener) {
+      subscribed.add(url);
+      List<GrpcURL> urls = providers.get(url.getServiceInterface());
+      if (urls != null) {
+        listener.notify(url, urls);
+      }
+    }
+
+    @Override
+    public void subscribe(String group, NotifyListener.NotifyRouterListener listener) {}
+
+    @Override
+    public void unsubscribe(GrpcURL url, NotifyListener.NotifyServiceListener listener) {}
+
+    @Override
+    public void unsubscribe(String group, NotifyListener.NotifyRouterListener listener) {}
+
+    @Override
+    public void subscribe(String serviceName, NotifyListener.NotifyCacheListener listener) {}
+
+    @Override
+    public void unsubscribe(String serviceName, NotifyListener.NotifyCacheListener listener) {}
+
+    @Override
+    public void publishCacheInvalidation(String serviceName) {}
+
+    @Override
+    public void subscribe(String serviceName, NotifyListener.NotifyWeightListener listener) {}
+
+    @Override
+    public void unsubscribe(String serviceName, NotifyListener.NotifyWeightListener listener) {}
+
+    @Override
+    public List<GrpcURL> discover(GrpcURL url) {
+      return providers.get(url.getServiceInterface());
+    }
+
+    @Override
+    public void destroy() {}
+  }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.StringValue;
+
+import io.grpc.Status;
+
+/**
+ * @author liushiming
+ * @version BatchMarshallerTest.java, v 0.0.1 2017年10月27日 下午3:48:02 liushiming
+ * @since JDK 1.8
+ */
+public class BatchMarshallerTest {
+
+  private final BatchMarshaller marshaller =
+      new BatchMarshaller(StringValue.getDefaultInstance());
+
+  @Test
+  public void testRoundTrip() {
+    List<BatchEntry> entries = Arrays.asList(//
+        BatchEntry.of(StringValue.newBuilder().setValue("hello").build()), //
+        BatchEntry.error(Status.NOT_FOUND.withDescription("no such user")), //
+        BatchEntry.of(StringValue.getDefaultInstance()), //
+        BatchEntry.error(Status.DEADLINE_EXCEEDED));
+    List<BatchEntry> parsed = marshaller.parse(marshaller.stream(entries));
+    assertEquals(4, parsed.size());
+
+    assertFalse(parsed.get(0).isError());
+    assertEquals(StringValue.newBuilder().setValue("hello").build(), parsed.get(0).getMessage());
+
+    assertTrue(parsed.get(1).isError());
+    assertEquals(Status.Code.NOT_FOUND, parsed.get(1).getCode());
+    assertEquals("no such user", parsed.get(1).getError());
+    assertNull(parsed.get(1).getMessage());
+
+    assertFalse(parsed.get(2).isError());
+    assertEquals(StringValue.getDefaultInstance(), parsed.get(2).getMessage());
+
+    assertTrue(parsed.get(3).isError());
+    assertEquals(Status.Code.DEADLINE_EXCEEDED, parsed.get(3).getStatus().getCode());
+    assertEquals("", parsed.get(3).getError());
+  }
+
+  @Test
+  public void testEmptyBatch() {
+    List<BatchEntry> parsed =
+        marshaller.parse(marshaller.stream(Collections.<BatchEntry>emptyList()));
+    assertTrue(parsed.isEmpty());
+  }
+
+  @Test
+  public void testOkStatusIsNotAnError() {
+    BatchEntry entry = BatchEntry.error(Status.OK);
+    assertEquals(Status.Code.UNKNOWN, entry.getCode());
+  }
+
+  @Test
+  public void testErrorWithoutCodeIsUnknown() throws IOException {
+    ByteString.Output item = ByteString.newOutput();
+    CodedOutputStream itemOutput = CodedOutputStream.newInstance(item);
+    itemOutput.writeString(2, "failed");
+    itemOutput.flush();
+    ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    CodedOutputStream batchOutput = CodedOutputStream.newInstance(batch);
+    batchOutput.writeBytes(1, item.toByteString());
+    batchOutput.flush();
+
+    List<BatchEntry> parsed = marshaller.parse(new ByteArrayInputStream(batch.toByteArray()));
+    assertEquals(1, parsed.size());
+    assertEquals(Status.Code.UNKNOWN, parsed.get(0).getCode());
+    assertEquals("failed", parsed.get(0).getError());
+  }
+
+}
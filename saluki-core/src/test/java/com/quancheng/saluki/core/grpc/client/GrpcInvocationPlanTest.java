@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+
+import io.grpc.MethodDescriptor.MethodType;
+
+/**
+ * @author liushiming
+ * @version GrpcInvocationPlanTest.java, v 0.0.1 2017年10月30日 下午2:48:09 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcInvocationPlanTest {
+
+  public interface FutureService {
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    CompletableFuture<Object> completable(Object request);
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    CompletionStage<Object> stage(Object request);
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    ListenableFuture<Object> listenable(Object request);
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    Object plain(Object request);
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class,
+        methodType = MethodType.SERVER_STREAMING)
+    CompletableFuture<Object> streaming(Object request);
+  }
+
+  private final GrpcURL refUrl =
+      new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0, FutureService.class.getName());
+
+  @Test
+  public void testCompletableFutureReturn() {
+    assertTrue(plan("completable").isCompletableFutureReturn());
+    assertTrue(plan("stage").isCompletableFutureReturn());
+    assertFalse(plan("completable").isListenableFutureReturn());
+  }
+
+  @Test
+  public void testListenableFutureReturn() {
+    assertTrue(plan("listenable").isListenableFutureReturn());
+    assertFalse(plan("listenable").isCompletableFutureReturn());
+  }
+
+  @Test
+  public void testObjectReturnStaysSynchronous() {
+    assertFalse(plan("plain").isCompletableFutureReturn());
+    assertFalse(plan("plain").isListenableFutureReturn());
+  }
+
+  @Test
+  public void testStreamingIsNeverFutureReturn() {
+    assertFalse(plan("streaming").isCompletableFutureReturn());
+  }
+
+  private GrpcInvocationPlan plan(String methodName) {
+    return GrpcInvocationPlan.create(refUrl, methodName);
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.annotation.GrpcMethodType;
+import com.quancheng.saluki.core.grpc.client.GrpcInvocationPlan;
+import com.quancheng.saluki.core.grpc.client.GrpcProtocolClient;
+import com.quancheng.saluki.core.grpc.client.GrpcRequest;
+import com.quancheng.saluki.core.utils.ReflectUtils;
+
+import io.grpc.Channel;
+
+/**
+ * 生成的Stub与JDK动态代理的异常语义保持一致
+ *
+ * @author liushiming
+ * @version ClientStubGeneratorTest.java, v 0.0.1 2017年10月30日 上午10:12:05 liushiming
+ * @since JDK 1.8
+ */
+public class ClientStubGeneratorTest {
+
+  public interface EchoService {
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    Object echo(Object request);
+
+    @GrpcMethodType(requestType = StringValue.class, responseType = StringValue.class)
+    Object read(Object request) throws IOException;
+
+    void notRemote();
+  }
+
+  private RecordingClientInvocation invocation;
+
+  private EchoService stub;
+
+  @Before
+  public void setUp() {
+    GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+        EchoService.class.getName());
+    invocation = new RecordingClientInvocation(refUrl);
+    stub = (EchoService) ClientStubGenerator.newStub(EchoService.class, invocation);
+  }
+
+  @Test
+  public void testDispatchesWithInvocationPlan() {
+    Object request = new Object();
+    assertSame(request, stub.echo(request));
+    assertEquals("echo", invocation.lastMethod);
+    assertSame(request, stub.echo(request));
+  }
+
+  @Test
+  public void testRuntimeExceptionPassesThrough() {
+    IllegalStateException failure = new IllegalStateException("failed");
+    invocation.failure = failure;
+    try {
+      stub.echo(new Object());
+      fail();
+    } catch (IllegalStateException e) {
+      assertSame(failure, e);
+    }
+  }
+
+  @Test
+  public void testDeclaredCheckedExceptionPassesThrough() throws Exception {
+    IOException failure = new IOException("failed");
+    invocation.failure = failure;
+    try {
+      stub.read(new Object());
+      fail();
+    } catch (IOException e) {
+      assertSame(failure, e);
+    }
+  }
+
+  @Test
+  public void testUndeclaredCheckedExceptionIsWrapped() {
+    Exception failure = new Exception("failed");
+    invocation.failure = failure;
+    try {
+      stub.echo(new Object());
+      fail();
+    } catch (UndeclaredThrowableException e) {
+      assertSame(failure, e.getUndeclaredThrowable());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedMethodMatchesProxy() {
+    stub.notRemote();
+  }
+
+  private static final class RecordingClientInvocation extends AbstractClientInvocation {
+
+    private final GrpcProtocolClient.ChannelCall channelCall =
+        new GrpcProtocolClient.ChannelCall() {
+
+          @Override
+          public Channel getChannel(GrpcURL refUrl) {
+            return null;
+          }
+        };
+
+    private volatile String lastMethod;
+
+    private volatile Throwable failure;
+
+    private RecordingClientInvocation(GrpcURL refUrl) {
+      super(refUrl);
+      for (Method method : ReflectUtils.findAllPublicMethods(EchoService.class)) {
+        if (method.isAnnotationPresent(GrpcMethodType.class)) {
+          super.cacheInvocationPlan(method.getName(), GrpcInvocationPlan.create(refUrl, method));
+        }
+      }
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(Method method, Object[] args) {
+      return this.buildGrpcRequest(super.getInvocationPlan(method.getName()), args);
+    }
+
+    @Override
+    protected GrpcRequest buildGrpcRequest(GrpcInvocationPlan invocationPlan, Object[] args) {
+      lastMethod = invocationPlan.getMethodName();
+      return new GrpcRequest.Default(channelCall, invocationPlan, args, Constants.RPCTYPE_BLOCKING,
+          1000);
+    }
+
+    @Override
+    protected Object doInvoke(GrpcRequest request) throws Throwable {
+      if (failure != null) {
+        throw failure;
+      }
+      return request.getRequestParam();
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.breaker;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author liushiming
+ * @version CircuitBreakerTest.java, v 0.0.1 2017年10月27日 下午3:10:21 liushiming
+ * @since JDK 1.8
+ */
+public class CircuitBreakerTest {
+
+  private static final long NEVER = Long.MAX_VALUE;
+
+  @Test
+  public void testStaysClosedBelowRequestVolume() {
+    CircuitBreaker breaker = new CircuitBreaker(NEVER);
+    for (int i = 0; i < 19; i++) {
+      breaker.onFailure();
+    }
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void testStaysClosedBelowErrorPercentage() {
+    CircuitBreaker breaker = new CircuitBreaker(NEVER);
+    for (int i = 0; i < 11; i++) {
+      breaker.onSuccess();
+    }
+    for (int i = 0; i < 9; i++) {
+      breaker.onFailure();
+    }
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void testOpensAndRejectsDuringSleepWindow() {
+    CircuitBreaker breaker = new CircuitBreaker(NEVER);
+    for (int i = 0; i < 10; i++) {
+      breaker.onSuccess();
+    }
+    for (int i = 0; i < 10; i++) {
+      breaker.onFailure();
+    }
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.allowRequest());
+  }
+
+  @Test
+  public void testHalfOpenAllowsSingleProbe() {
+    CircuitBreaker breaker = open(new CircuitBreaker(0));
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    assertTrue(breaker.isOpen());
+  }
+
+  @Test
+  public void testSuccessfulProbeClosesAndResetsWindow() {
+    CircuitBreaker breaker = open(new CircuitBreaker(0));
+    assertTrue(breaker.allowRequest());
+    breaker.onSuccess();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    // 关闭后窗口清空，之前的失败不再计入
+    breaker.onFailure();
+    assertFalse(breaker.isOpen());
+  }
+
+  @Test
+  public void testFailedProbeReopens() {
+    CircuitBreaker breaker = open(new CircuitBreaker(0));
+    assertTrue(breaker.allowRequest());
+    breaker.onFailure();
+    assertTrue(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void testCancelledProbeReleasesHalfOpen() {
+    CircuitBreaker breaker = open(new CircuitBreaker(0));
+    assertTrue(breaker.allowRequest());
+    breaker.onCancel();
+    assertTrue(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  @Test
+  public void testCancelWhenClosedIsIgnored() {
+    CircuitBreaker breaker = new CircuitBreaker(NEVER);
+    breaker.onCancel();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  private static CircuitBreaker open(CircuitBreaker breaker) {
+    for (int i = 0; i < 20; i++) {
+      breaker.onFailure();
+    }
+    assertTrue(breaker.isOpen());
+    return breaker;
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.RpcContext;
+import com.quancheng.saluki.core.grpc.client.internal.unary.GrpcUnaryClientCall;
+import com.quancheng.saluki.core.grpc.service.ClientServerMonitor;
+
+import io.grpc.MethodDescriptor;
+
+/**
+ * @author liushiming
+ * @version ResultCacheTest.java, v 0.0.1 2017年10月30日 下午4:26:51 liushiming
+ * @since JDK 1.8
+ */
+public class ResultCacheTest {
+
+  private static final String SERVICE = ResultCacheTest.class.getName();
+
+  private final GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0, SERVICE);
+
+  private final ResultCache resultCache = new ResultCache(SERVICE, "echo", 60000L, 16L, refUrl);
+
+  private final ClientServerMonitor monitor = ClientServerMonitor.newClientServerMonitor(60L);
+
+  @After
+  public void tearDown() {
+    RpcContext.removeContext();
+    monitor.destroy();
+  }
+
+  @Test
+  public void testKeyIncludesAttachments() {
+    ByteString plain = ResultCache.keyOf(message("a"));
+    RpcContext.getContext().setAttachment("tenant", "a");
+    ByteString tenantA = ResultCache.keyOf(message("a"));
+    RpcContext.getContext().setAttachment("tenant", "b");
+    ByteString tenantB = ResultCache.keyOf(message("a"));
+    assertNotEquals(plain, tenantA);
+    assertNotEquals(tenantA, tenantB);
+    RpcContext.getContext().setAttachment("tenant", "a");
+    assertEquals(tenantA, ResultCache.keyOf(message("a")));
+  }
+
+  @Test
+  public void testKeyIgnoresAttachmentOrder() {
+    RpcContext.getContext().setAttachment("a", "1").setAttachment("b", "2");
+    ByteString first = ResultCache.keyOf(message("a"));
+    RpcContext.removeContext();
+    RpcContext.getContext().setAttachment("b", "2").setAttachment("a", "1");
+    assertEquals(first, ResultCache.keyOf(message("a")));
+  }
+
+  @Test
+  public void testContextValuesSkipCache() {
+    RpcContext.getContext().set("user", new Object());
+    assertNull(ResultCache.keyOf(message("a")));
+  }
+
+  @Test
+  public void testPopulatingCachesSuccessfulResponse() throws Exception {
+    ByteString key = ResultCache.keyOf(message("a"));
+    Message response = message("response");
+    ListenableFuture<Message> future =
+        resultCache.populating(respondWith(response), key).unaryFuture(message("a"), null);
+    assertSame(response, future.get());
+    assertSame(response, resultCache.get(key, monitor));
+  }
+
+  @Test
+  public void testResponseOlderThanInvalidationIsNotCached() {
+    ByteString key = ResultCache.keyOf(message("a"));
+    long generation = resultCache.generation();
+    ResultCache.invalidate(SERVICE);
+    resultCache.put(key, message("stale"), generation);
+    assertNull(resultCache.get(key, monitor));
+  }
+
+  @Test
+  public void testInvalidateClearsService() {
+    ByteString key = ResultCache.keyOf(message("a"));
+    resultCache.put(key, message("response"), resultCache.generation());
+    ResultCache.invalidate(SERVICE);
+    assertNull(resultCache.get(key, monitor));
+  }
+
+  private static GrpcUnaryClientCall respondWith(final Message response) {
+    return new GrpcUnaryClientCall() {
+
+      @Override
+      public ListenableFuture<Message> unaryFuture(Message request,
+          MethodDescriptor<Message, Message> method) {
+        return Futures.immediateFuture(response);
+      }
+
+      @Override
+      public Message blockingUnaryResult(Message request,
+          MethodDescriptor<Message, Message> method) {
+        return response;
+      }
+    };
+  }
+
+  private static Message message(String value) {
+    return StringValue.newBuilder().setValue(value).build();
+  }
+
+}
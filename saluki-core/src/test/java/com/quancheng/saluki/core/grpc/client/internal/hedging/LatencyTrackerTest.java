@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.hedging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * p95的结果缓存一秒，每个用例用单独的方法名拿到新的实例
+ *
+ * @author liushiming
+ * @version LatencyTrackerTest.java, v 0.0.1 2017年10月27日 下午4:15:33 liushiming
+ * @since JDK 1.8
+ */
+public class LatencyTrackerTest {
+
+  private static final String SERVICE = LatencyTrackerTest.class.getName();
+
+  @Test
+  public void testSameInstancePerMethod() {
+    assertSame(LatencyTracker.of(SERVICE, "same"), LatencyTracker.of(SERVICE, "same"));
+  }
+
+  @Test
+  public void testTooFewSamples() {
+    LatencyTracker tracker = LatencyTracker.of(SERVICE, "tooFewSamples");
+    for (int i = 1; i < 20; i++) {
+      tracker.record(i);
+    }
+    assertEquals(-1L, tracker.p95());
+  }
+
+  @Test
+  public void testP95() {
+    LatencyTracker tracker = LatencyTracker.of(SERVICE, "p95");
+    for (int i = 100; i >= 1; i--) {
+      tracker.record(i);
+    }
+    assertEquals(95L, tracker.p95());
+  }
+
+  @Test
+  public void testKeepsFullWindowAfterWrap() {
+    LatencyTracker tracker = LatencyTracker.of(SERVICE, "wrap");
+    for (int i = 1; i <= 300; i++) {
+      tracker.record(i);
+    }
+    // 窗口里是最近的256个样本45..300
+    assertEquals(288L, tracker.p95());
+  }
+
+  @Test
+  public void testCachesPercentile() {
+    LatencyTracker tracker = LatencyTracker.of(SERVICE, "cache");
+    for (int i = 1; i <= 100; i++) {
+      tracker.record(i);
+    }
+    assertEquals(95L, tracker.p95());
+    for (int i = 0; i < 100; i++) {
+      tracker.record(1000);
+    }
+    assertEquals(95L, tracker.p95());
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcCallOptions;
+import com.quancheng.saluki.core.grpc.client.internal.GrpcPickHint;
+import com.quancheng.saluki.core.grpc.client.internal.unary.RecordingChannel.RecordingCall;
+
+import io.grpc.Grpc;
+import io.grpc.Status;
+
+/**
+ * 每次调用独立的重试状态机：失败的服务端记入PickHint，重试不改动地址列表
+ *
+ * @author liushiming
+ * @version FailOverUnaryFutureTest.java, v 0.0.1 2017年10月30日 下午3:10:27 liushiming
+ * @since JDK 1.8
+ */
+public class FailOverUnaryFutureTest {
+
+  private final GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+      FailOverUnaryFutureTest.class.getName());
+
+  private final RecordingChannel channel = new RecordingChannel();
+
+  @Test
+  public void testRetryMarksFailedServerTried() throws Exception {
+    FailOverUnaryFuture<Message, Message> future = newFuture(1);
+    future.run();
+    RecordingCall first = channel.awaitCall(1);
+    first.fail(Status.UNAVAILABLE);
+
+    RecordingCall second = channel.awaitCall(2);
+    SocketAddress failed = first.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+    GrpcPickHint pickHint = GrpcPickHint.get(second.callOptions);
+    assertTrue(pickHint.isTried(Collections.singletonList(failed)));
+    Message response = RecordingChannel.message("response");
+    second.respond(response);
+    assertSame(response, future.getFuture().get());
+  }
+
+  @Test
+  public void testRetriesExhausted() throws Exception {
+    FailOverUnaryFuture<Message, Message> future = newFuture(1);
+    future.run();
+    channel.awaitCall(1).fail(Status.UNAVAILABLE);
+    channel.awaitCall(2).fail(Status.UNAVAILABLE);
+    assertFailedWith(Status.Code.UNAVAILABLE, future);
+    assertEquals(2, channel.calls.size());
+  }
+
+  @Test
+  public void testDeadlineExceededIsNotRetried() throws Exception {
+    FailOverUnaryFuture<Message, Message> future = newFuture(3);
+    future.run();
+    channel.awaitCall(1).fail(Status.DEADLINE_EXCEEDED);
+    assertFailedWith(Status.Code.DEADLINE_EXCEEDED, future);
+    assertEquals(1, channel.calls.size());
+  }
+
+  @Test
+  public void testCancelledCallIsNotRestarted() throws Exception {
+    FailOverUnaryFuture<Message, Message> future = newFuture(1);
+    future.run();
+    future.getFuture().cancel(true);
+    // 模拟取消之前已经提交到retryExecutor的重试
+    future.run();
+    assertEquals(1, channel.calls.size());
+    assertNotNull(channel.calls.get(0).cancelMessage);
+  }
+
+  private FailOverUnaryFuture<Message, Message> newFuture(int maxRetries) {
+    FailOverUnaryFuture<Message, Message> future =
+        new FailOverUnaryFuture<Message, Message>(RecordingChannel.METHOD);
+    future.setRequest(RecordingChannel.message("request"));
+    future.setMaxRetries(maxRetries);
+    future.setChannel(channel);
+    future.setCallOptions(GrpcCallOptions.createCallOptions(refUrl));
+    return future;
+  }
+
+  private static void assertFailedWith(Status.Code code,
+      FailOverUnaryFuture<Message, Message> future) throws InterruptedException {
+    try {
+      future.getFuture().get();
+      fail("Expected " + code);
+    } catch (ExecutionException e) {
+      assertEquals(code, Status.fromThrowable(e).getCode());
+    }
+  }
+
+}
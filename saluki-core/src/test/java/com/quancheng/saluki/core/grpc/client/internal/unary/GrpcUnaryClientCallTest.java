@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Message;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.client.internal.unary.RecordingChannel.RecordingCall;
+
+import io.grpc.Deadline;
+import io.grpc.Status;
+
+/**
+ * 一元调用的future由gRPC回调完成，发起调用的线程不等待结果
+ *
+ * @author liushiming
+ * @version GrpcUnaryClientCallTest.java, v 0.0.1 2017年10月30日 下午2:31:40 liushiming
+ * @since JDK 1.8
+ */
+public class GrpcUnaryClientCallTest {
+
+  private final GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+      GrpcUnaryClientCallTest.class.getName());
+
+  private final RecordingChannel channel = new RecordingChannel();
+
+  @Test
+  public void testFutureCompletesFromCallback() throws Exception {
+    GrpcUnaryClientCall clientCall = GrpcUnaryClientCall.create(channel, 0, refUrl);
+    Message request = RecordingChannel.message("request");
+    ListenableFuture<Message> future = clientCall.unaryFuture(request, RecordingChannel.METHOD);
+    assertFalse(future.isDone());
+
+    RecordingCall call = channel.calls.get(0);
+    assertSame(request, call.request);
+    assertTrue(call.halfClosed);
+    Message response = RecordingChannel.message("response");
+    call.respond(response);
+    assertSame(response, future.get());
+  }
+
+  @Test
+  public void testFailureCompletesFuture() throws Exception {
+    GrpcUnaryClientCall clientCall = GrpcUnaryClientCall.create(channel, 0, refUrl);
+    ListenableFuture<Message> future =
+        clientCall.unaryFuture(RecordingChannel.message("request"), RecordingChannel.METHOD);
+    channel.calls.get(0).fail(Status.INTERNAL);
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(Status.Code.INTERNAL, Status.fromThrowable(e).getCode());
+    }
+    assertEquals(1, channel.calls.size());
+  }
+
+  @Test
+  public void testRetrySpendsRemainingDeadline() throws Exception {
+    Deadline deadline = Deadline.after(10, TimeUnit.SECONDS);
+    GrpcUnaryClientCall clientCall =
+        GrpcUnaryClientCall.create(channel, 1, null, null, deadline, refUrl);
+    clientCall.unaryFuture(RecordingChannel.message("request"), RecordingChannel.METHOD);
+    RecordingCall first = channel.awaitCall(1);
+    assertSame(deadline, first.callOptions.getDeadline());
+    first.fail(Status.UNAVAILABLE);
+    assertSame(deadline, channel.awaitCall(2).callOptions.getDeadline());
+  }
+
+  @Test
+  public void testCancelFutureCancelsCall() {
+    GrpcUnaryClientCall clientCall = GrpcUnaryClientCall.create(channel, 0, refUrl);
+    ListenableFuture<Message> future =
+        clientCall.unaryFuture(RecordingChannel.message("request"), RecordingChannel.METHOD);
+    future.cancel(true);
+    assertNotNull(channel.calls.get(0).cancelMessage);
+  }
+
+}
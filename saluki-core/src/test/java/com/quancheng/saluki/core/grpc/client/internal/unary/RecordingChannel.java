@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+
+/**
+ * 记录发出的每次调用，由用例决定何时以及如何结束调用；第n次调用的远端地址为127.0.0.1:n
+ *
+ * @author liushiming
+ * @version RecordingChannel.java, v 0.0.1 2017年10月30日 下午2:05:16 liushiming
+ * @since JDK 1.8
+ */
+final class RecordingChannel extends Channel {
+
+  static final MethodDescriptor<Message, Message> METHOD =
+      MethodDescriptor.<Message, Message>newBuilder().setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Echo", "echo"))
+          .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .build();
+
+  final List<RecordingCall> calls = new CopyOnWriteArrayList<RecordingCall>();
+
+  static Message message(String value) {
+    return StringValue.newBuilder().setValue(value).build();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <RequestT, ResponseT> ClientCall<RequestT, ResponseT> newCall(
+      MethodDescriptor<RequestT, ResponseT> methodDescriptor, CallOptions callOptions) {
+    RecordingCall call =
+        new RecordingCall(callOptions, new InetSocketAddress("127.0.0.1", calls.size() + 1));
+    calls.add(call);
+    return (ClientCall<RequestT, ResponseT>) call;
+  }
+
+  @Override
+  public String authority() {
+    return "recording";
+  }
+
+  /**
+   * 等待异步发起(如重试线程)的第count次调用
+   */
+  RecordingCall awaitCall(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (calls.size() < count || calls.get(count - 1).request == null) {
+      if (System.nanoTime() > deadline) {
+        throw new AssertionError("call " + count + " was not started");
+      }
+      Thread.sleep(1);
+    }
+    return calls.get(count - 1);
+  }
+
+  static final class RecordingCall extends ClientCall<Message, Message> {
+
+    final CallOptions callOptions;
+
+    private final Attributes attributes;
+
+    volatile Listener<Message> listener;
+
+    volatile Message request;
+
+    volatile boolean halfClosed;
+
+    volatile String cancelMessage;
+
+    private RecordingCall(CallOptions callOptions, SocketAddress remoteAddress) {
+      this.callOptions = callOptions;
+      this.attributes =
+          Attributes.newBuilder().set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, remoteAddress).build();
+    }
+
+    void respond(Message response) {
+      listener.onMessage(response);
+      listener.onClose(Status.OK, new Metadata());
+    }
+
+    void fail(Status status) {
+      listener.onClose(status, new Metadata());
+    }
+
+    @Override
+    public void start(Listener<Message> responseListener, Metadata headers) {
+      this.listener = responseListener;
+    }
+
+    @Override
+    public void request(int numMessages) {}
+
+    @Override
+    public void cancel(String message, Throwable cause) {
+      this.cancelMessage = message;
+    }
+
+    @Override
+    public void halfClose() {
+      this.halfClosed = true;
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+      this.request = message;
+    }
+
+    @Override
+    public Attributes getAttributes() {
+      return attributes;
+    }
+  }
+
+}
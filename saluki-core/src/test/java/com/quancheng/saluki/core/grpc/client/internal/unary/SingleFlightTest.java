@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.client.internal.unary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.common.RpcContext;
+
+import io.grpc.Deadline;
+import io.grpc.Status;
+
+/**
+ * @author liushiming
+ * @version SingleFlightTest.java, v 0.0.1 2017年10月27日 下午4:30:48 liushiming
+ * @since JDK 1.8
+ */
+public class SingleFlightTest {
+
+  private static final String METHOD = "test.Echo/echo";
+
+  private final SingleFlight singleFlight = new SingleFlight();
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  @Test
+  public void testSameRequestSharesOneCall() throws Exception {
+    SettableFuture<Message> response = SettableFuture.create();
+    ListenableFuture<Message> first = execute(request("a"), supplier(response));
+    ListenableFuture<Message> second = execute(request("a"), supplier(response));
+    assertEquals(1, calls.get());
+    assertFalse(first.isDone());
+
+    Message result = request("result");
+    response.set(result);
+    assertSame(result, first.get());
+    assertSame(result, second.get());
+  }
+
+  @Test
+  public void testDifferentRequestsAreNotMerged() {
+    execute(request("a"), supplier(SettableFuture.<Message>create()));
+    execute(request("b"), supplier(SettableFuture.<Message>create()));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testCompletedCallIsNotCached() throws Exception {
+    SettableFuture<Message> response = SettableFuture.create();
+    response.set(request("result"));
+    execute(request("a"), supplier(response)).get();
+    execute(request("a"), supplier(response)).get();
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testWaiterCancelDoesNotCancelSharedCall() throws Exception {
+    SettableFuture<Message> response = SettableFuture.create();
+    ListenableFuture<Message> first = execute(request("a"), supplier(response));
+    ListenableFuture<Message> second = execute(request("a"), supplier(response));
+    first.cancel(true);
+    assertFalse(response.isCancelled());
+
+    Message result = request("result");
+    response.set(result);
+    assertTrue(first.isCancelled());
+    assertSame(result, second.get());
+  }
+
+  @Test
+  public void testFailureIsSharedAndRemoved() throws Exception {
+    SettableFuture<Message> response = SettableFuture.create();
+    ListenableFuture<Message> first = execute(request("a"), supplier(response));
+    ListenableFuture<Message> second = execute(request("a"), supplier(response));
+    IllegalStateException failure = new IllegalStateException("failed");
+    response.setException(failure);
+    assertFailedWith(failure, first);
+    assertFailedWith(failure, second);
+
+    execute(request("a"), supplier(SettableFuture.<Message>create()));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testDifferentMethodsAreNotMerged() {
+    singleFlight.execute("test.Echo/a", request("a"), null,
+        supplier(SettableFuture.<Message>create()));
+    singleFlight.execute("test.Echo/b", request("a"), null,
+        supplier(SettableFuture.<Message>create()));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testDifferentAttachmentsAreNotMerged() {
+    try {
+      RpcContext.getContext().setAttachment("tenant", "a");
+      execute(request("a"), supplier(SettableFuture.<Message>create()));
+      RpcContext.getContext().setAttachment("tenant", "b");
+      execute(request("a"), supplier(SettableFuture.<Message>create()));
+      assertEquals(2, calls.get());
+      execute(request("a"), supplier(SettableFuture.<Message>create()));
+      assertEquals(2, calls.get());
+    } finally {
+      RpcContext.removeContext();
+    }
+  }
+
+  @Test
+  public void testContextValuesAreNotMerged() {
+    try {
+      RpcContext.getContext().set("user", new Object());
+      execute(request("a"), supplier(SettableFuture.<Message>create()));
+      execute(request("a"), supplier(SettableFuture.<Message>create()));
+      assertEquals(2, calls.get());
+    } finally {
+      RpcContext.removeContext();
+    }
+  }
+
+  @Test
+  public void testFollowerTimesOutOnItsOwnDeadline() throws Exception {
+    SettableFuture<Message> response = SettableFuture.create();
+    ListenableFuture<Message> leader = singleFlight.execute(METHOD, request("a"),
+        Deadline.after(10, TimeUnit.SECONDS), supplier(response));
+    ListenableFuture<Message> follower = singleFlight.execute(METHOD, request("a"),
+        Deadline.after(50, TimeUnit.MILLISECONDS), supplier(response));
+    assertEquals(1, calls.get());
+    try {
+      follower.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(e).getCode());
+    }
+    assertFalse(leader.isDone());
+    assertFalse(response.isCancelled());
+  }
+
+  @Test
+  public void testEarlierLeaderDeadlineIsNotJoined() {
+    singleFlight.execute(METHOD, request("a"), Deadline.after(100, TimeUnit.MILLISECONDS),
+        supplier(SettableFuture.<Message>create()));
+    singleFlight.execute(METHOD, request("a"), Deadline.after(10, TimeUnit.SECONDS),
+        supplier(SettableFuture.<Message>create()));
+    assertEquals(2, calls.get());
+  }
+
+  @Test
+  public void testSupplierThrowing() {
+    final IllegalStateException failure = new IllegalStateException("failed");
+    ListenableFuture<Message> future =
+        execute(request("a"), new Supplier<ListenableFuture<Message>>() {
+
+          @Override
+          public ListenableFuture<Message> get() {
+            throw failure;
+          }
+        });
+    assertFailedWith(failure, future);
+  }
+
+  private ListenableFuture<Message> execute(Message request,
+      Supplier<ListenableFuture<Message>> call) {
+    return singleFlight.execute(METHOD, request, null, call);
+  }
+
+  private Supplier<ListenableFuture<Message>> supplier(final ListenableFuture<Message> response) {
+    return new Supplier<ListenableFuture<Message>>() {
+
+      @Override
+      public ListenableFuture<Message> get() {
+        calls.incrementAndGet();
+        return response;
+      }
+    };
+  }
+
+  private static Message request(String value) {
+    return StringValue.newBuilder().setValue(value).build();
+  }
+
+  private static void assertFailedWith(Throwable expected, ListenableFuture<Message> future) {
+    try {
+      future.get();
+      fail("Expected " + expected);
+    } catch (ExecutionException e) {
+      assertSame(expected, e.getCause());
+    } catch (InterruptedException e) {
+      fail(e.toString());
+    }
+  }
+
+}
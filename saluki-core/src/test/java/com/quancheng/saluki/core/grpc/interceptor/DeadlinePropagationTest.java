@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.interceptor;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import com.quancheng.saluki.core.grpc.util.GrpcUtil;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.grpc.protobuf.ProtoUtils;
+
+/**
+ * 客户端把剩余时间预算放入Metadata，服务端恢复为Context截止时间
+ *
+ * @author liushiming
+ * @version DeadlinePropagationTest.java, v 0.0.1 2017年10月30日 下午3:42:18 liushiming
+ * @since JDK 1.8
+ */
+public class DeadlinePropagationTest {
+
+  private static final MethodDescriptor<Message, Message> METHOD =
+      MethodDescriptor.<Message, Message>newBuilder().setType(MethodDescriptor.MethodType.UNARY)
+          .setFullMethodName(MethodDescriptor.generateFullMethodName("test.Echo", "echo"))
+          .setRequestMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .setResponseMarshaller(ProtoUtils.marshaller(StringValue.getDefaultInstance()))
+          .build();
+
+  @Test
+  public void testClientSendsRemainingBudget() {
+    Metadata headers = clientHeaders(
+        CallOptions.DEFAULT.withDeadline(Deadline.after(1000, TimeUnit.MILLISECONDS)));
+    long remaining = Long.parseLong(headers.get(GrpcUtil.GRPC_CONTEXT_DEADLINE));
+    assertTrue(remaining > 0 && remaining <= 1000);
+  }
+
+  @Test
+  public void testClientUsesEarlierUpstreamDeadline() throws Exception {
+    Context.CancellableContext upstream =
+        Context.current().withDeadlineAfter(200, TimeUnit.MILLISECONDS,
+            io.grpc.internal.SharedResourceHolder.get(io.grpc.internal.GrpcUtil.TIMER_SERVICE));
+    Context previous = upstream.attach();
+    try {
+      Metadata headers = clientHeaders(
+          CallOptions.DEFAULT.withDeadline(Deadline.after(10, TimeUnit.SECONDS)));
+      assertTrue(Long.parseLong(headers.get(GrpcUtil.GRPC_CONTEXT_DEADLINE)) <= 200);
+    } finally {
+      upstream.detach(previous);
+      upstream.cancel(null);
+    }
+  }
+
+  @Test
+  public void testClientWithoutDeadline() {
+    assertNull(clientHeaders(CallOptions.DEFAULT).get(GrpcUtil.GRPC_CONTEXT_DEADLINE));
+  }
+
+  @Test
+  public void testServerRestoresContextDeadline() {
+    Metadata headers = new Metadata();
+    headers.put(GrpcUtil.GRPC_CONTEXT_DEADLINE, "500");
+    Deadline deadline = serverDeadline(headers);
+    assertNotNull(deadline);
+    long remaining = deadline.timeRemaining(TimeUnit.MILLISECONDS);
+    assertTrue(remaining > 0 && remaining <= 500);
+  }
+
+  @Test
+  public void testServerIgnoresMalformedBudget() {
+    Metadata headers = new Metadata();
+    headers.put(GrpcUtil.GRPC_CONTEXT_DEADLINE, "soon");
+    assertNull(serverDeadline(headers));
+  }
+
+  private static Metadata clientHeaders(CallOptions callOptions) {
+    final AtomicReference<Metadata> sent = new AtomicReference<Metadata>();
+    Channel next = new Channel() {
+
+      @Override
+      public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+          CallOptions callOptions) {
+        return new ClientCall<ReqT, RespT>() {
+
+          @Override
+          public void start(Listener<RespT> responseListener, Metadata headers) {
+            sent.set(headers);
+          }
+
+          @Override
+          public void request(int numMessages) {}
+
+          @Override
+          public void cancel(String message, Throwable cause) {}
+
+          @Override
+          public void halfClose() {}
+
+          @Override
+          public void sendMessage(ReqT message) {}
+        };
+      }
+
+      @Override
+      public String authority() {
+        return "test";
+      }
+    };
+    HeaderClientInterceptor.instance().interceptCall(METHOD, callOptions, next)
+        .start(new ClientCall.Listener<Message>() {}, new Metadata());
+    return sent.get();
+  }
+
+  private static Deadline serverDeadline(Metadata headers) {
+    final AtomicReference<Deadline> observed = new AtomicReference<Deadline>();
+    ServerCallHandler<Message, Message> handler = new ServerCallHandler<Message, Message>() {
+
+      @Override
+      public ServerCall.Listener<Message> startCall(ServerCall<Message, Message> call,
+          Metadata headers) {
+        observed.set(Context.current().getDeadline());
+        return new ServerCall.Listener<Message>() {};
+      }
+    };
+    ServerCall.Listener<Message> listener =
+        HeaderServerInterceptor.instance().interceptCall(new FakeServerCall(), headers, handler);
+    listener.onComplete();
+    return observed.get();
+  }
+
+  private static final class FakeServerCall extends ServerCall<Message, Message> {
+
+    private final Attributes attributes = Attributes.newBuilder()
+        .set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, new InetSocketAddress("127.0.0.1", 1)).build();
+
+    @Override
+    public void request(int numMessages) {}
+
+    @Override
+    public void sendHeaders(Metadata headers) {}
+
+    @Override
+    public void sendMessage(Message message) {}
+
+    @Override
+    public void close(Status status, Metadata trailers) {}
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+
+    @Override
+    public Attributes getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public MethodDescriptor<Message, Message> getMethodDescriptor() {
+      return METHOD;
+    }
+  }
+
+}
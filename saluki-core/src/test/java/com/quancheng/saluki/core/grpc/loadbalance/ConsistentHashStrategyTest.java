@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.StringValue;
+import com.google.protobuf.Value;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.common.RpcContext;
+
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 服务端没有在途请求时负载上限不起作用，key总是落在环上顺时针的第一个候选服务端
+ *
+ * @author liushiming
+ * @version ConsistentHashStrategyTest.java, v 0.0.1 2017年10月27日 下午4:52:19 liushiming
+ * @since JDK 1.8
+ */
+public class ConsistentHashStrategyTest {
+
+  private static final int SERVERS = 10;
+
+  private static final int KEYS = 2000;
+
+  private final List<Subchannel> subchannels = new ArrayList<Subchannel>();
+
+  @Before
+  public void setUp() {
+    for (int i = 0; i < SERVERS; i++) {
+      subchannels.add(new FakeSubchannel("10.0.0." + i));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    RpcContext.removeContext();
+  }
+
+  @Test
+  public void testHashKeyFromRequestField() {
+    GrpcURL refUrl = refUrl("value");
+    CallOptions callOptions = ConsistentHashStrategy.attachHashKey(CallOptions.DEFAULT, refUrl,
+        StringValue.newBuilder().setValue("user-1").build());
+    assertEquals("user-1", callOptions.getOption(ConsistentHashStrategy.HASH_KEY));
+    RpcContext.getContext().setAttachment("value", "user-2");
+    callOptions = ConsistentHashStrategy.attachHashKey(CallOptions.DEFAULT, refUrl,
+        StringValue.newBuilder().setValue("user-1").build());
+    assertEquals("user-2", callOptions.getOption(ConsistentHashStrategy.HASH_KEY));
+  }
+
+  @Test
+  public void testUnsetFieldHasNoHashKey() {
+    assertSame(CallOptions.DEFAULT, ConsistentHashStrategy.attachHashKey(CallOptions.DEFAULT,
+        refUrl("value"), StringValue.getDefaultInstance()));
+    assertSame(CallOptions.DEFAULT, ConsistentHashStrategy.attachHashKey(CallOptions.DEFAULT,
+        refUrl("values"), ListValue.getDefaultInstance()));
+  }
+
+  @Test
+  public void testNonEmptyRepeatedFieldIsHashKey() {
+    ListValue values =
+        ListValue.newBuilder().addValues(Value.newBuilder().setStringValue("a")).build();
+    assertNotNull(ConsistentHashStrategy
+        .attachHashKey(CallOptions.DEFAULT, refUrl("values"), values)
+        .getOption(ConsistentHashStrategy.HASH_KEY));
+  }
+
+  @Test
+  public void testSameKeySameServer() {
+    ConsistentHashStrategy strategy = new ConsistentHashStrategy(1.25);
+    ProviderSnapshot snapshot = new ProviderSnapshot(subchannels, null);
+    for (int i = 0; i < KEYS; i++) {
+      Subchannel first = strategy.select(subchannels, snapshot, null, args("key" + i));
+      assertSame(first, strategy.select(subchannels, snapshot, null, args("key" + i)));
+    }
+  }
+
+  @Test
+  public void testRebuiltRingKeepsMapping() {
+    Map<String, Subchannel> before = assign(new ConsistentHashStrategy(1.25), subchannels);
+    ConsistentHashStrategy strategy = new ConsistentHashStrategy(1.25);
+    assign(strategy, subchannels.subList(0, SERVERS / 2));
+    assertEquals(before, assign(strategy, subchannels));
+  }
+
+  @Test
+  public void testRemovedServerOnlyMovesItsKeys() {
+    ConsistentHashStrategy strategy = new ConsistentHashStrategy(1.25);
+    Map<String, Subchannel> before = assign(strategy, subchannels);
+    Subchannel removed = subchannels.get(3);
+    List<Subchannel> remaining = new ArrayList<Subchannel>(subchannels);
+    remaining.remove(removed);
+    Map<String, Subchannel> after = assign(strategy, remaining);
+    int moved = 0;
+    for (Map.Entry<String, Subchannel> entry : before.entrySet()) {
+      if (entry.getValue() == removed) {
+        assertNotEquals(removed, after.get(entry.getKey()));
+        moved++;
+      } else {
+        assertSame(entry.getValue(), after.get(entry.getKey()));
+      }
+    }
+    assertTrue(moved > 0);
+  }
+
+  @Test
+  public void testAddedServerOnlyTakesKeys() {
+    ConsistentHashStrategy strategy = new ConsistentHashStrategy(1.25);
+    List<Subchannel> initial = subchannels.subList(0, SERVERS - 1);
+    Subchannel added = subchannels.get(SERVERS - 1);
+    Map<String, Subchannel> before = assign(strategy, initial);
+    Map<String, Subchannel> after = assign(strategy, subchannels);
+    int moved = 0;
+    for (Map.Entry<String, Subchannel> entry : after.entrySet()) {
+      if (entry.getValue() == added) {
+        moved++;
+      } else {
+        assertSame(before.get(entry.getKey()), entry.getValue());
+      }
+    }
+    // 约1/N的key迁移到新服务端
+    assertTrue(moved > KEYS / SERVERS / 2 && moved < KEYS / SERVERS * 2);
+  }
+
+  @Test
+  public void testFilteredCandidateIsSkippedWithoutChangingRing() {
+    ConsistentHashStrategy strategy = new ConsistentHashStrategy(1.25);
+    ProviderSnapshot snapshot = new ProviderSnapshot(subchannels, null);
+    Map<String, Subchannel> before = assign(strategy, snapshot, subchannels);
+    Subchannel filtered = subchannels.get(5);
+    List<Subchannel> candidates = new ArrayList<Subchannel>(subchannels);
+    candidates.remove(filtered);
+    Map<String, Subchannel> skipped = assign(strategy, snapshot, candidates);
+    for (Map.Entry<String, Subchannel> entry : before.entrySet()) {
+      if (entry.getValue() != filtered) {
+        assertSame(entry.getValue(), skipped.get(entry.getKey()));
+      } else {
+        assertNotEquals(filtered, skipped.get(entry.getKey()));
+      }
+    }
+    assertEquals(before, assign(strategy, snapshot, subchannels));
+  }
+
+  private static Map<String, Subchannel> assign(ConsistentHashStrategy strategy,
+      List<Subchannel> servers) {
+    return assign(strategy, new ProviderSnapshot(servers, null), servers);
+  }
+
+  private static Map<String, Subchannel> assign(ConsistentHashStrategy strategy,
+      ProviderSnapshot snapshot, List<Subchannel> candidates) {
+    Map<String, Subchannel> assignment = Maps.newHashMap();
+    for (int i = 0; i < KEYS; i++) {
+      String key = "key" + i;
+      assignment.put(key, strategy.select(candidates, snapshot, null, args(key)));
+    }
+    return assignment;
+  }
+
+  private static GrpcURL refUrl(String hashKey) {
+    return new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0,
+        ConsistentHashStrategyTest.class.getName(), Constants.HASH_KEY_KEY, hashKey);
+  }
+
+  private static PickSubchannelArgs args(String hashKey) {
+    return FakeSubchannel.args(
+        CallOptions.DEFAULT.withOption(ConsistentHashStrategy.HASH_KEY, hashKey));
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import io.grpc.Attributes;
+import io.grpc.CallOptions;
+import io.grpc.ClientStreamTracer;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 负载均衡测试用的子通道，地址为host:8080，带一份SubchannelStats，可以模拟在途请求
+ *
+ * @author liushiming
+ * @version FakeSubchannel.java, v 0.0.1 2017年10月30日 下午5:48:10 liushiming
+ * @since JDK 1.8
+ */
+public final class FakeSubchannel extends Subchannel {
+
+  private final EquivalentAddressGroup addressGroup;
+
+  private final Attributes attributes;
+
+  private final List<ClientStreamTracer> inflight = Lists.newArrayList();
+
+  public FakeSubchannel(String host) {
+    this(host, Attributes.EMPTY);
+  }
+
+  public FakeSubchannel(String host, Attributes attributes) {
+    this.addressGroup = new EquivalentAddressGroup(new InetSocketAddress(host, 8080));
+    this.attributes = Attributes.newBuilder(attributes)
+        .set(SubchannelStats.STATS_KEY, new SubchannelStats()).build();
+  }
+
+  public static PickSubchannelArgs args(final CallOptions callOptions) {
+    return new PickSubchannelArgs() {
+
+      @Override
+      public CallOptions getCallOptions() {
+        return callOptions;
+      }
+
+      @Override
+      public Metadata getHeaders() {
+        return new Metadata();
+      }
+
+      @Override
+      public MethodDescriptor<?, ?> getMethodDescriptor() {
+        return null;
+      }
+    };
+  }
+
+  /**
+   * 在SubchannelStats上开始count个流，直到finishCalls才结束
+   */
+  public FakeSubchannel startCalls(int count) {
+    ClientStreamTracer.Factory factory = SubchannelStats.get(this).tracerFactory();
+    for (int i = 0; i < count; i++) {
+      inflight.add(factory.newClientStreamTracer(CallOptions.DEFAULT, new Metadata()));
+    }
+    return this;
+  }
+
+  public void finishCalls(Status status) {
+    for (ClientStreamTracer tracer : inflight) {
+      tracer.streamClosed(status);
+    }
+    inflight.clear();
+  }
+
+  @Override
+  public void shutdown() {}
+
+  @Override
+  public void requestConnection() {}
+
+  @Override
+  public EquivalentAddressGroup getAddresses() {
+    return addressGroup;
+  }
+
+  @Override
+  public Attributes getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  public String toString() {
+    return addressGroup.toString();
+  }
+
+}
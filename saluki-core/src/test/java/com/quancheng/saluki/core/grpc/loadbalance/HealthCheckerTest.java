@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * 探测失败连续达到阈值才判为不可用，恢复要连续返回SERVING；NOT_SERVING立即生效
+ *
+ * @author liushiming
+ * @version HealthCheckerTest.java, v 0.0.1 2017年10月30日 下午6:40:25 liushiming
+ * @since JDK 1.8
+ */
+public class HealthCheckerTest {
+
+  private static final int SERVING = 1;
+
+  private static final int NOT_SERVING = 2;
+
+  private final ProbeChannel channel = new ProbeChannel();
+
+  private HealthChecker healthChecker;
+
+  private HealthChecker.Target target;
+
+  @Before
+  public void setUp() {
+    // 周期足够长，定时探测不会在测试期间触发，由测试直接调用run
+    healthChecker = new HealthChecker(TimeUnit.HOURS.toMillis(1),
+        new AtomicReference<Channel>(channel));
+    FakeSubchannel subchannel = new FakeSubchannel("10.0.0.1");
+    target = healthChecker.addTarget(subchannel.getAddresses());
+    target.addSubchannel(subchannel);
+    SocketAddress address = subchannel.getAddresses().getAddresses().get(0);
+    GrpcURL providerUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "10.0.0.1", 8080,
+        HealthCheckerTest.class.getName());
+    healthChecker.updateServices(Collections.singletonMap(providerUrl.getServiceInterface(),
+        Collections.singletonMap(address, providerUrl)));
+  }
+
+  @After
+  public void tearDown() {
+    healthChecker.shutdown();
+  }
+
+  @Test
+  public void testSingleFailureKeepsServing() {
+    probe(Status.DEADLINE_EXCEEDED);
+    probe(Status.UNAVAILABLE);
+    assertTrue(target.isServing());
+    probe(Status.DEADLINE_EXCEEDED);
+    assertFalse(target.isServing());
+  }
+
+  @Test
+  public void testSuccessResetsFailures() {
+    probe(Status.DEADLINE_EXCEEDED);
+    probe(Status.DEADLINE_EXCEEDED);
+    probe(SERVING);
+    probe(Status.DEADLINE_EXCEEDED);
+    probe(Status.DEADLINE_EXCEEDED);
+    assertTrue(target.isServing());
+  }
+
+  @Test
+  public void testNotReadyIsNotCounted() {
+    for (int i = 0; i < 5; i++) {
+      probe(HealthChecker.NOT_READY);
+    }
+    assertTrue(target.isServing());
+  }
+
+  @Test
+  public void testRecoveryNeedsConsecutiveServing() {
+    probe(NOT_SERVING);
+    assertFalse(target.isServing());
+    probe(SERVING);
+    assertFalse(target.isServing());
+    probe(Status.DEADLINE_EXCEEDED);
+    probe(SERVING);
+    assertFalse(target.isServing());
+    probe(SERVING);
+    assertTrue(target.isServing());
+  }
+
+  private void probe(Object outcome) {
+    channel.outcome = outcome;
+    target.run();
+  }
+
+  /**
+   * 探测调用在halfClose时按outcome立即结束：Integer作为Check的返回状态，Status作为调用失败
+   */
+  private static final class ProbeChannel extends Channel {
+
+    private volatile Object outcome;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> method,
+        CallOptions callOptions) {
+      final Object result = outcome;
+      return new ClientCall<ReqT, RespT>() {
+
+        private Listener<RespT> listener;
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          this.listener = responseListener;
+        }
+
+        @Override
+        public void request(int numMessages) {}
+
+        @Override
+        public void cancel(String message, Throwable cause) {}
+
+        @Override
+        public void halfClose() {
+          if (result instanceof Status) {
+            listener.onClose((Status) result, new Metadata());
+          } else {
+            listener.onMessage((RespT) result);
+            listener.onClose(Status.OK, new Metadata());
+          }
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {}
+      };
+    }
+
+    @Override
+    public String authority() {
+      return "test";
+    }
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * @author liushiming
+ * @version LoadReportTest.java, v 0.0.1 2017年10月27日 下午4:02:15 liushiming
+ * @since JDK 1.8
+ */
+public class LoadReportTest {
+
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testParse() {
+    LoadReport report = LoadReport.parse("3,1500,750");
+    assertEquals(3, report.getInflight());
+    assertEquals(1500L, report.getQueueMicros());
+    assertEquals(0.75, report.getUtilization(), DELTA);
+  }
+
+  @Test
+  public void testEncodeParseRoundTrip() {
+    LoadReport report = LoadReport.parse(new LoadReport(12, 40, 0.3333).encode());
+    assertEquals(12, report.getInflight());
+    assertEquals(40L, report.getQueueMicros());
+    assertEquals(0.333, report.getUtilization(), DELTA);
+  }
+
+  @Test
+  public void testParseClampsOutOfRangeValues() {
+    LoadReport report = LoadReport.parse("-1,-5,2000");
+    assertEquals(0, report.getInflight());
+    assertEquals(0L, report.getQueueMicros());
+    assertEquals(1.0, report.getUtilization(), DELTA);
+  }
+
+  @Test
+  public void testParseIgnoresExtraFields() {
+    LoadReport report = LoadReport.parse("1,2,3,4");
+    assertEquals(1, report.getInflight());
+    assertEquals(2L, report.getQueueMicros());
+    assertEquals(0.003, report.getUtilization(), DELTA);
+  }
+
+  @Test
+  public void testParseMalformed() {
+    assertNull(LoadReport.parse(null));
+    assertNull(LoadReport.parse(""));
+    assertNull(LoadReport.parse("1,2"));
+    assertNull(LoadReport.parse("a,b,c"));
+    assertNull(LoadReport.parse("1,2,0.5"));
+  }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 优先同可用区，同可用区不够健康时按比例溢出到同地域，再到其他地域
+ *
+ * @author liushiming
+ * @version LocalityFilterTest.java, v 0.0.1 2017年10月30日 下午7:10:36 liushiming
+ * @since JDK 1.8
+ */
+public class LocalityFilterTest {
+
+  private final Map<SocketAddress, GrpcURL> providers = Maps.newHashMap();
+
+  private final List<Subchannel> subchannels = new ArrayList<Subchannel>();
+
+  @Test
+  public void testWithoutZoneKeepsCandidates() {
+    server("10.0.0.1", "az1", "r1");
+    server("10.0.0.2", "az2", "r1");
+    GrpcURL refUrl = refUrl(null, null, null);
+    assertSame(subchannels, filter(refUrl));
+  }
+
+  @Test
+  public void testPrefersLocalZone() {
+    Subchannel local = server("10.0.0.1", "az1", "r1");
+    server("10.0.0.2", "az2", "r1");
+    server("10.0.0.3", "az3", "r2");
+    assertEquals(Arrays.asList(local), filter(refUrl("az1", "r1", null)));
+  }
+
+  @Test
+  public void testSpillsToSameRegionThenRemote() {
+    Subchannel sameRegion = server("10.0.0.2", "az2", "r1");
+    Subchannel remote = server("10.0.0.3", "az3", "r2");
+    assertEquals(Arrays.asList(sameRegion), filter(refUrl("az1", "r1", null)));
+    subchannels.remove(sameRegion);
+    assertEquals(Arrays.asList(remote), filter(refUrl("az1", "r1", null)));
+  }
+
+  @Test
+  public void testUnhealthyLocalZoneSpillsOver() {
+    Subchannel local = server("10.0.0.1", "az1", "r1");
+    server("10.0.0.2", "az2", "r1");
+    // 本可用区注册了4台，只有1台在Picker里
+    registered("10.0.0.11", "az1", "r1");
+    registered("10.0.0.12", "az1", "r1");
+    registered("10.0.0.13", "az1", "r1");
+    GrpcURL refUrl = refUrl("az1", "r1", "1.0");
+    int stayed = 0;
+    for (int i = 0; i < 4000; i++) {
+      if (filter(refUrl).contains(local)) {
+        stayed++;
+      }
+    }
+    assertTrue("stayed " + stayed, Math.abs(stayed - 1000) < 200);
+  }
+
+  private List<Subchannel> filter(GrpcURL refUrl) {
+    return LocalityFilter.filter(subchannels, new ProviderSnapshot(subchannels, providers),
+        refUrl);
+  }
+
+  private Subchannel server(String host, String zone, String region) {
+    FakeSubchannel subchannel = new FakeSubchannel(host);
+    subchannels.add(subchannel);
+    registered(host, zone, region);
+    return subchannel;
+  }
+
+  private void registered(String host, String zone, String region) {
+    providers.put(new InetSocketAddress(host, 8080), new GrpcURL(Constants.REMOTE_PROTOCOL, host,
+        8080, "test.Echo", Constants.ZONE_KEY, zone, Constants.REGION_KEY, region));
+  }
+
+  private static GrpcURL refUrl(String zone, String region, String threshold) {
+    return new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0, "test.Echo")
+        .addParameter(Constants.ZONE_KEY, zone).addParameter(Constants.REGION_KEY, region)
+        .addParameter(Constants.LOCALITY_THRESHOLD_KEY, threshold);
+  }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.grpc.Attributes;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Status;
+
+/**
+ * 连续失败摘除：只有服务端或传输层故障计为失败，业务异常和调用方取消不计
+ *
+ * @author liushiming
+ * @version OutlierDetectorTest.java, v 0.0.1 2017年10月30日 下午6:12:40 liushiming
+ * @since JDK 1.8
+ */
+public class OutlierDetectorTest {
+
+  private final OutlierDetector detector =
+      new OutlierDetector(new OutlierDetector.Settings(3, 60000L, 100));
+
+  @Test
+  public void testConsecutiveTransportFailuresEject() {
+    FakeSubchannel subchannel = newSubchannel("10.0.0.1");
+    OutlierDetector.Host host = subchannel.getAttributes().get(OutlierDetector.HOST_KEY);
+    host.record(Status.UNAVAILABLE, 0);
+    host.record(Status.DEADLINE_EXCEEDED, 0);
+    assertFalse(host.isEjected());
+    host.record(Status.UNAVAILABLE, 0);
+    assertTrue(host.isEjected());
+  }
+
+  @Test
+  public void testBusinessErrorsDoNotEject() {
+    FakeSubchannel subchannel = newSubchannel("10.0.0.1");
+    OutlierDetector.Host host = subchannel.getAttributes().get(OutlierDetector.HOST_KEY);
+    for (int i = 0; i < 10; i++) {
+      host.record(Status.UNKNOWN.withDescription("business exception"), 0);
+      host.record(Status.CANCELLED, 0);
+    }
+    assertFalse(host.isEjected());
+  }
+
+  @Test
+  public void testSuccessResetsConsecutiveFailures() {
+    FakeSubchannel subchannel = newSubchannel("10.0.0.1");
+    OutlierDetector.Host host = subchannel.getAttributes().get(OutlierDetector.HOST_KEY);
+    host.record(Status.UNAVAILABLE, 0);
+    host.record(Status.UNAVAILABLE, 0);
+    host.record(Status.UNKNOWN, 0);
+    host.record(Status.UNAVAILABLE, 0);
+    assertFalse(host.isEjected());
+    host.record(Status.OK, 0);
+    host.record(Status.UNAVAILABLE, 0);
+    host.record(Status.UNAVAILABLE, 0);
+    assertFalse(host.isEjected());
+  }
+
+  @Test
+  public void testFilterSkipsEjectedUnlessAllEjected() {
+    FakeSubchannel first = newSubchannel("10.0.0.1");
+    FakeSubchannel second = newSubchannel("10.0.0.2");
+    List<Subchannel> subchannels = Arrays.<Subchannel>asList(first, second);
+    eject(first);
+    assertEquals(Arrays.<Subchannel>asList(second), OutlierDetector.filter(subchannels));
+    eject(second);
+    assertSame(subchannels, OutlierDetector.filter(subchannels));
+  }
+
+  private FakeSubchannel newSubchannel(String host) {
+    FakeSubchannel probe = new FakeSubchannel(host);
+    OutlierDetector.Host outlierHost = detector.addHost(probe.getAddresses());
+    return new FakeSubchannel(host,
+        Attributes.newBuilder().set(OutlierDetector.HOST_KEY, outlierHost).build());
+  }
+
+  private static void eject(FakeSubchannel subchannel) {
+    OutlierDetector.Host host = subchannel.getAttributes().get(OutlierDetector.HOST_KEY);
+    for (int i = 0; i < 3; i++) {
+      host.record(Status.UNAVAILABLE, 0);
+    }
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Status;
+
+/**
+ * 两个候选里选在途请求少的，maxInflight作为单个服务端的上限
+ *
+ * @author liushiming
+ * @version P2cStrategyTest.java, v 0.0.1 2017年10月30日 下午6:12:45 liushiming
+ * @since JDK 1.8
+ */
+public class P2cStrategyTest {
+
+  private static final PickSubchannelArgs ARGS = FakeSubchannel.args(CallOptions.DEFAULT);
+
+  private final FakeSubchannel busy = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel idle = new FakeSubchannel("10.0.0.2");
+
+  private final FakeSubchannel full = new FakeSubchannel("10.0.0.3");
+
+  @Test
+  public void testPicksLessLoaded() {
+    busy.startCalls(3);
+    idle.startCalls(1);
+    List<Subchannel> candidates = Arrays.<Subchannel>asList(busy, idle);
+    ProviderSnapshot snapshot = new ProviderSnapshot(candidates, null);
+    P2cStrategy strategy = new P2cStrategy(0);
+    for (int i = 0; i < 100; i++) {
+      assertSame(idle, strategy.select(candidates, snapshot, null, ARGS));
+    }
+  }
+
+  @Test
+  public void testFullServersFallBackToScan() {
+    busy.startCalls(2);
+    full.startCalls(2);
+    idle.startCalls(1);
+    List<Subchannel> candidates = Arrays.<Subchannel>asList(busy, full, idle);
+    ProviderSnapshot snapshot = new ProviderSnapshot(candidates, null);
+    P2cStrategy strategy = new P2cStrategy(2);
+    for (int i = 0; i < 100; i++) {
+      assertSame(idle, strategy.select(candidates, snapshot, null, ARGS));
+    }
+  }
+
+  @Test
+  public void testAllFullSelectsNothing() {
+    busy.startCalls(2);
+    full.startCalls(2);
+    List<Subchannel> candidates = Arrays.<Subchannel>asList(busy, full);
+    ProviderSnapshot snapshot = new ProviderSnapshot(candidates, null);
+    P2cStrategy strategy = new P2cStrategy(2);
+    assertNull(strategy.select(candidates, snapshot, null, ARGS));
+    assertNull(strategy.select(candidates.subList(0, 1), snapshot, null, ARGS));
+    busy.finishCalls(Status.OK);
+    assertSame(busy, strategy.select(candidates, snapshot, null, ARGS));
+  }
+
+}
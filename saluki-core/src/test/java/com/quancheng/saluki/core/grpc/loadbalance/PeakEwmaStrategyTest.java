@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+import io.grpc.Status;
+
+/**
+ * 慢的服务端分不到流量，没有样本的新服务端空闲时优先探测，有在途请求时按惩罚值计算
+ *
+ * @author liushiming
+ * @version PeakEwmaStrategyTest.java, v 0.0.1 2017年10月30日 下午6:20:08 liushiming
+ * @since JDK 1.8
+ */
+public class PeakEwmaStrategyTest {
+
+  private static final PickSubchannelArgs ARGS = FakeSubchannel.args(CallOptions.DEFAULT);
+
+  private final FakeSubchannel slow = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel fast = new FakeSubchannel("10.0.0.2");
+
+  private final FakeSubchannel fresh = new FakeSubchannel("10.0.0.3");
+
+  private final PeakEwmaStrategy strategy = new PeakEwmaStrategy();
+
+  @Test
+  public void testSlowServerLosesTraffic() throws Exception {
+    observe(slow, 20);
+    observe(fast, 0);
+    assertAlwaysPicks(fast, slow, fast);
+  }
+
+  @Test
+  public void testPeakIsTakenImmediately() throws Exception {
+    observe(slow, 0);
+    double before = SubchannelStats.get(slow).getEwmaNanos();
+    observe(slow, 20);
+    assertTrue(SubchannelStats.get(slow).getEwmaNanos() >= 20000000);
+    assertTrue(SubchannelStats.get(slow).getEwmaNanos() > before);
+  }
+
+  @Test
+  public void testIdleServerWithoutSamplesIsProbed() throws Exception {
+    observe(fast, 0);
+    assertAlwaysPicks(fresh, fast, fresh);
+  }
+
+  @Test
+  public void testBusyServerWithoutSamplesIsPenalized() throws Exception {
+    observe(slow, 20);
+    fresh.startCalls(1);
+    assertAlwaysPicks(slow, slow, fresh);
+  }
+
+  private void assertAlwaysPicks(Subchannel expected, Subchannel a, Subchannel b) {
+    List<Subchannel> candidates = Arrays.asList(a, b);
+    ProviderSnapshot snapshot = new ProviderSnapshot(candidates, null);
+    for (int i = 0; i < 100; i++) {
+      assertSame(expected, strategy.select(candidates, snapshot, null, ARGS));
+    }
+  }
+
+  private static void observe(FakeSubchannel subchannel, long millis) throws Exception {
+    subchannel.startCalls(1);
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+    subchannel.finishCalls(Status.OK);
+  }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketAddress;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+/**
+ * 预热系数从注册时间和READY时间中较晚的一个开始，在warmup毫秒内从0.1升到1
+ *
+ * @author liushiming
+ * @version SlowStartTest.java, v 0.0.1 2017年10月30日 下午6:58:14 liushiming
+ * @since JDK 1.8
+ */
+public class SlowStartTest {
+
+  private static final long WARMUP = 10000;
+
+  private final FakeSubchannel subchannel = new FakeSubchannel("10.0.0.1");
+
+  private final Map<SocketAddress, GrpcURL> providers = Maps.newHashMap();
+
+  @Test
+  public void testNoWarmupIsFullTraffic() {
+    provider(System.currentTimeMillis());
+    assertEquals(1, SlowStart.factor(providers, subchannel, null), 0);
+  }
+
+  @Test
+  public void testLinearRamp() {
+    provider(System.currentTimeMillis() - WARMUP / 2, Constants.WARMUP_KEY,
+        String.valueOf(WARMUP));
+    assertEquals(0.55, SlowStart.factor(providers, subchannel, null), 0.01);
+  }
+
+  @Test
+  public void testExponentialRamp() {
+    provider(System.currentTimeMillis() - WARMUP / 2, Constants.WARMUP_KEY,
+        String.valueOf(WARMUP), Constants.WARMUP_CURVE_KEY, SlowStart.CURVE_EXPONENTIAL);
+    assertEquals(0.1 * Math.sqrt(10), SlowStart.factor(providers, subchannel, null), 0.01);
+  }
+
+  @Test
+  public void testRampEnds() {
+    provider(System.currentTimeMillis() - WARMUP, Constants.WARMUP_KEY, String.valueOf(WARMUP));
+    assertEquals(1, SlowStart.factor(providers, subchannel, null), 0);
+  }
+
+  @Test
+  public void testReferenceWarmupAppliesWhenProviderHasNone() {
+    provider(System.currentTimeMillis());
+    GrpcURL refUrl = new GrpcURL(Constants.REMOTE_PROTOCOL, "127.0.0.1", 0, "test.Echo",
+        Constants.WARMUP_KEY, String.valueOf(WARMUP));
+    double factor = SlowStart.factor(providers, subchannel, refUrl);
+    assertTrue(factor >= 0.1 && factor < 0.2);
+  }
+
+  @Test
+  public void testReconnectRestartsRamp() {
+    provider(System.currentTimeMillis() - WARMUP, Constants.WARMUP_KEY, String.valueOf(WARMUP));
+    SubchannelStats.get(subchannel).markReady();
+    double factor = SlowStart.factor(providers, subchannel, null);
+    assertTrue(factor >= 0.1 && factor < 0.2);
+  }
+
+  @Test
+  public void testAdmitByFactor() {
+    provider(System.currentTimeMillis(), Constants.WARMUP_KEY, String.valueOf(WARMUP));
+    assertTrue(SlowStart.admit(providers, subchannel, null, 0.05));
+    assertFalse(SlowStart.admit(providers, subchannel, null, 0.5));
+  }
+
+  private void provider(long timestamp, String... pairs) {
+    GrpcURL provider = new GrpcURL(Constants.REMOTE_PROTOCOL, "10.0.0.1", 8080, "test.Echo",
+        pairs).addParameter(Constants.TIMESTAMP_KEY, String.valueOf(timestamp));
+    providers.put(subchannel.getAddresses().getAddresses().get(0), provider);
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.grpc.CallOptions;
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 策略先按服务端选再在服务端的连接里选，扩了连接的服务端分到的请求不会比只有一条连接的多
+ *
+ * @author liushiming
+ * @version StripeSelectionTest.java, v 0.0.1 2017年10月30日 下午5:56:32 liushiming
+ * @since JDK 1.8
+ */
+public class StripeSelectionTest {
+
+  private static final int PICKS = 4000;
+
+  private static final PickSubchannelArgs ARGS = FakeSubchannel.args(CallOptions.DEFAULT);
+
+  private final FakeSubchannel a1 = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel a2 = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel a3 = new FakeSubchannel("10.0.0.1");
+
+  private final FakeSubchannel b1 = new FakeSubchannel("10.0.0.2");
+
+  private final List<Subchannel> all = Arrays.<Subchannel>asList(a1, a2, a3, b1);
+
+  private final ProviderSnapshot snapshot = new ProviderSnapshot(all, null);
+
+  @Test
+  public void testRoundRobinPicksServersEvenly() {
+    assertEquals(PICKS / 2, picksOfStriped(new RoundRobinStrategy()));
+  }
+
+  @Test
+  public void testP2cPicksServersEvenly() {
+    assertEven(picksOfStriped(new P2cStrategy(0)));
+  }
+
+  @Test
+  public void testPeakEwmaPicksServersEvenly() {
+    assertEven(picksOfStriped(new PeakEwmaStrategy()));
+  }
+
+  @Test
+  public void testLoadAwarePicksServersEvenly() {
+    assertEven(picksOfStriped(new LoadAwareStrategy()));
+  }
+
+  @Test
+  public void testP2cComparesServerTotals() {
+    a1.startCalls(1);
+    a2.startCalls(1);
+    a3.startCalls(1);
+    b1.startCalls(2);
+    P2cStrategy strategy = new P2cStrategy(0);
+    for (int i = 0; i < 100; i++) {
+      assertSame(b1, strategy.select(all, snapshot, null, ARGS));
+    }
+  }
+
+  @Test
+  public void testStripeOfPicksLeastInflight() {
+    a1.startCalls(2);
+    a3.startCalls(1);
+    for (int i = 0; i < 10; i++) {
+      assertSame(a2, snapshot.stripeOf(a1));
+    }
+    assertEquals(3, snapshot.inflightOf(a2));
+  }
+
+  @Test
+  public void testStripeOfRotatesIdleStripes() {
+    int[] counts = new int[3];
+    for (int i = 0; i < 300; i++) {
+      counts[all.indexOf(snapshot.stripeOf(a1))]++;
+    }
+    assertEquals(100, counts[0]);
+    assertEquals(100, counts[1]);
+    assertEquals(100, counts[2]);
+  }
+
+  @Test
+  public void testServersOf() {
+    assertEquals(Arrays.<Subchannel>asList(a1, b1), snapshot.serversOf(all));
+    List<Subchannel> unstriped = Arrays.<Subchannel>asList(a1, b1);
+    assertSame(unstriped, new ProviderSnapshot(unstriped, null).serversOf(unstriped));
+    assertNotSame(all, snapshot.serversOf(all));
+  }
+
+  /**
+   * 和Picker一样先由策略选服务端，再由stripeOf选连接，返回落在多连接服务端上的次数
+   */
+  private int picksOfStriped(LoadBalanceStrategy strategy) {
+    EquivalentAddressGroup striped = a1.getAddresses();
+    int picks = 0;
+    for (int i = 0; i < PICKS; i++) {
+      Subchannel chosen = snapshot.stripeOf(strategy.select(all, snapshot, null, ARGS));
+      if (chosen.getAddresses().equals(striped)) {
+        picks++;
+      }
+    }
+    return picks;
+  }
+
+  private static void assertEven(int picks) {
+    // 按连接选时多连接的服务端会分到3/4
+    assertTrue("picks " + picks, Math.abs(picks - PICKS / 2) < PICKS / 10);
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.loadbalance;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+import io.grpc.CallOptions;
+import io.grpc.LoadBalancer.PickSubchannelArgs;
+import io.grpc.LoadBalancer.Subchannel;
+
+/**
+ * 按权重的比例选路，过滤掉的服务端不会被选中，多连接的服务端不会多分请求
+ *
+ * @author liushiming
+ * @version WeightedRoundRobinStrategyTest.java, v 0.0.1 2017年10月30日 下午6:41:27 liushiming
+ * @since JDK 1.8
+ */
+public class WeightedRoundRobinStrategyTest {
+
+  private static final PickSubchannelArgs ARGS = FakeSubchannel.args(CallOptions.DEFAULT);
+
+  private final Map<SocketAddress, GrpcURL> providers = Maps.newHashMap();
+
+  private final WeightedRoundRobinStrategy strategy = new WeightedRoundRobinStrategy();
+
+  @Test
+  public void testPicksByWeight() {
+    Subchannel heavy = server("10.0.0.1", 300);
+    Subchannel light = server("10.0.0.2", 100);
+    ProviderSnapshot snapshot = snapshot(heavy, light);
+    assertEquals(300, count(heavy, snapshot.getSubchannels(), snapshot, 400));
+  }
+
+  @Test
+  public void testFilteredServerIsNeverPicked() {
+    Subchannel a = server("10.0.0.1", 100);
+    Subchannel b = server("10.0.0.2", 100);
+    Subchannel filtered = server("10.0.0.3", 100);
+    ProviderSnapshot snapshot = snapshot(a, b, filtered);
+    List<Subchannel> candidates = Arrays.asList(a, b);
+    assertEquals(0, count(filtered, candidates, snapshot, 300));
+    assertEquals(150, count(a, candidates, snapshot, 300), 30);
+  }
+
+  @Test
+  public void testMostlyFilteredScheduleFallsBackToCandidates() {
+    Subchannel filtered = server("10.0.0.1", 10000);
+    Subchannel candidate = server("10.0.0.2", 1);
+    ProviderSnapshot snapshot = snapshot(filtered, candidate);
+    List<Subchannel> candidates = new ArrayList<Subchannel>();
+    candidates.add(candidate);
+    candidates.add(server("10.0.0.3", 1));
+    for (int i = 0; i < 100; i++) {
+      assertNotSame(filtered, strategy.select(candidates, snapshot, null, ARGS));
+    }
+  }
+
+  @Test
+  public void testStripedServerGetsItsWeightOnly() {
+    Subchannel a1 = server("10.0.0.1", 100);
+    Subchannel a2 = new FakeSubchannel("10.0.0.1");
+    Subchannel a3 = new FakeSubchannel("10.0.0.1");
+    Subchannel b = server("10.0.0.2", 100);
+    ProviderSnapshot snapshot = snapshot(a1, a2, a3, b);
+    assertEquals(200, count(b, snapshot.getSubchannels(), snapshot, 400));
+    List<Subchannel> candidates = new ArrayList<Subchannel>(snapshot.getSubchannels());
+    assertSame(a1, strategy.select(candidates.subList(0, 3), snapshot, null, ARGS));
+  }
+
+  private Subchannel server(String host, int weight) {
+    FakeSubchannel subchannel = new FakeSubchannel(host);
+    providers.put(subchannel.getAddresses().getAddresses().get(0),
+        new GrpcURL(Constants.REMOTE_PROTOCOL, host, 8080, "test.Echo", Constants.WEIGHT_KEY,
+            String.valueOf(weight)));
+    return subchannel;
+  }
+
+  private ProviderSnapshot snapshot(Subchannel... subchannels) {
+    return new ProviderSnapshot(Arrays.asList(subchannels), providers);
+  }
+
+  private int count(Subchannel expected, List<Subchannel> candidates, ProviderSnapshot snapshot,
+      int picks) {
+    int count = 0;
+    for (int i = 0; i < picks; i++) {
+      if (strategy.select(candidates, snapshot, null, ARGS) == expected) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.router.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+import com.quancheng.saluki.core.grpc.router.GrpcRouter;
+import com.quancheng.saluki.core.utils.GrpcURLUtils;
+
+/**
+ * 编译后的条件与逐条调用GrpcURLUtils.isMatchGlobPattern的结果必须一致
+ *
+ * @author liushiming
+ * @version ConditionRouterTest.java, v 0.0.1 2017年10月27日 下午3:25:40 liushiming
+ * @since JDK 1.8
+ */
+public class ConditionRouterTest {
+
+  private static final String SERVICE = "com.quancheng.example.HelloService";
+
+  private static final String[] PATTERNS =
+      {"*", "10.0.0.1", "10.0.*", "*.1", "10.*.1", "1*.0*.1", "192.168.*", "*0"};
+
+  private static final String[] HOSTS =
+      {"10.0.0.1", "10.0.1.2", "10.1.0.1", "192.168.0.1", "172.16.0.10"};
+
+  private final GrpcURL refUrl = url("10.10.0.5", 0);
+
+  @Test
+  public void testMatchAgreesWithGlob() {
+    for (String pattern : PATTERNS) {
+      GrpcRouter router = new ConditionRouter("=> host = " + pattern);
+      for (String host : HOSTS) {
+        assertEquals(pattern + " = " + host, GrpcURLUtils.isMatchGlobPattern(pattern, host),
+            router.match(refUrl, providers(url(host, 8080))));
+      }
+    }
+  }
+
+  @Test
+  public void testMismatchAgreesWithGlob() {
+    for (String pattern : PATTERNS) {
+      GrpcRouter router = new ConditionRouter("=> host != " + pattern);
+      for (String host : HOSTS) {
+        assertEquals(pattern + " != " + host, !GrpcURLUtils.isMatchGlobPattern(pattern, host),
+            router.match(refUrl, providers(url(host, 8080))));
+      }
+    }
+  }
+
+  @Test
+  public void testMultipleExactValuesNeverMatch() {
+    GrpcRouter router = new ConditionRouter("=> host = 10.0.0.1,10.0.0.2");
+    assertFalse(router.match(refUrl, providers(url("10.0.0.1", 8080))));
+    assertFalse(router.match(refUrl, providers(url("10.0.0.2", 8080))));
+  }
+
+  @Test
+  public void testWhenConditionSelectsConsumers() {
+    GrpcRouter router = new ConditionRouter("host = 10.10.* => port = 8080");
+    assertTrue(router.match(refUrl, providers(url("10.0.0.1", 8080))));
+    assertFalse(router.match(refUrl, providers(url("10.0.0.1", 9090))));
+    GrpcURL otherRefUrl = url("192.168.0.5", 0);
+    assertTrue(router.match(otherRefUrl, providers(url("10.0.0.1", 9090))));
+  }
+
+  @Test
+  public void testReferenceToConsumerParameter() {
+    GrpcRouter router = new ConditionRouter("=> application = $application");
+    GrpcURL provider = url("10.0.0.1", 8080).addParameter("application", "order");
+    assertTrue(router.match(refUrl.addParameter("application", "order"), providers(provider)));
+    assertFalse(router.match(refUrl.addParameter("application", "user"), providers(provider)));
+  }
+
+  @Test
+  public void testMissingParameterIsIgnored() {
+    GrpcRouter router = new ConditionRouter("=> application = order");
+    assertTrue(router.match(refUrl, providers(url("10.0.0.1", 8080))));
+  }
+
+  private static GrpcURL url(String host, int port) {
+    return new GrpcURL(Constants.REMOTE_PROTOCOL, host, port, SERVICE);
+  }
+
+  private static List<GrpcURL> providers(GrpcURL provider) {
+    return Collections.singletonList(provider);
+  }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.quancheng.saluki.core.grpc.router.internal;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.ScriptEngineManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.quancheng.saluki.core.common.Constants;
+import com.quancheng.saluki.core.common.GrpcURL;
+
+/**
+ * 脚本按传入的GrpcURL路由，不能访问Java类，首次建Bindings的耗时不会让规则被停用
+ *
+ * @author liushiming
+ * @version ScriptRouterTest.java, v 0.0.1 2017年10月30日 下午7:48:33 liushiming
+ * @since JDK 1.8
+ */
+public class ScriptRouterTest {
+
+  private static final String ONLY_FIRST_HOST = "function route(refUrl, providerUrls) {"
+      + "  return providerUrls.get(0).getHost() == '10.0.0.1';" + "}";
+
+  private static final String USES_JAVA_TYPE = "function route(refUrl, providerUrls) {"
+      + "  try { Java.type('java.io.File'); return true; } catch (e) { return false; }" + "}";
+
+  private final GrpcURL refUrl = url("10.10.0.5", 0);
+
+  @Before
+  public void setUp() {
+    // JDK 15以后不再自带JavaScript引擎
+    Assume.assumeNotNull(new ScriptEngineManager().getEngineByName("javascript"));
+  }
+
+  @Test
+  public void testRouteByProvider() {
+    ScriptRouter router = new ScriptRouter("javascript", ONLY_FIRST_HOST);
+    // 第一次匹配要新建Bindings并执行规则脚本，不计入时间预算
+    assertFalse(router.match(refUrl, providers("10.0.0.2")));
+    assertTrue(router.match(refUrl, providers("10.0.0.1")));
+    assertFalse(router.match(refUrl, providers("10.0.0.2")));
+  }
+
+  @Test
+  public void testJavaClassesAreDenied() {
+    ScriptRouter router = new ScriptRouter("javascript", USES_JAVA_TYPE);
+    assertFalse(router.match(refUrl, providers("10.0.0.1")));
+  }
+
+  @Test
+  public void testBrokenScriptAllowsAll() {
+    ScriptRouter router = new ScriptRouter("javascript", "function route(refUrl, urls) {");
+    assertTrue(router.match(refUrl, providers("10.0.0.2")));
+  }
+
+  private static List<GrpcURL> providers(String host) {
+    return Collections.singletonList(url(host, 8080));
+  }
+
+  private static GrpcURL url(String host, int port) {
+    return new GrpcURL(Constants.REMOTE_PROTOCOL, host, port, "test.Echo");
+  }
+
+}
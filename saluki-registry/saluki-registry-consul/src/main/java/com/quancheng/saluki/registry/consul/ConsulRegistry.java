@@ -30,7 +30,9 @@ import com.quancheng.saluki.core.common.Constants;
 import com.quancheng.saluki.core.common.GrpcURL;
 import com.quancheng.saluki.core.common.NamedThreadFactory;
 import com.quancheng.saluki.core.registry.NotifyListener;
+import com.quancheng.saluki.core.registry.NotifyListener.NotifyCacheListener;
 import com.quancheng.saluki.core.registry.NotifyListener.NotifyRouterListener;
+import com.quancheng.saluki.core.registry.NotifyListener.NotifyWeightListener;
 import com.quancheng.saluki.core.registry.internal.FailbackRegistry;
 import com.quancheng.saluki.core.utils.CollectionUtils;
 import com.quancheng.saluki.registry.consul.internal.ConsulClient;
@@ -120,6 +122,24 @@ public class ConsulRegistry extends FailbackRegistry {
         notifyServiceListeners.remove(url.getServiceKey());
     }
 
+    /**
+     * 停止缓存失效通知和权重的阻塞查询线程
+     */
+    @Override
+    public synchronized void destroy() {
+        for (CacheLookUper cacheLookUper : cacheLookUpers.values()) {
+            cacheLookUper.shutdown();
+        }
+        cacheLookUpers.clear();
+        notifyCacheListeners.clear();
+        for (WeightLookUper weightLookUper : weightLookUpers.values()) {
+            weightLookUper.shutdown();
+        }
+        weightLookUpers.clear();
+        notifyWeightListeners.clear();
+        super.destroy();
+    }
+
     @Override
     public List<GrpcURL> discover(GrpcURL url) {
         String group = url.getGroup();
@@ -324,4 +344,229 @@ public class ConsulRegistry extends FailbackRegistry {
             }
         }
     }
+
+    /**
+     * 响应缓存失效通知
+     */
+    private final Map<String, Long>                                    lookupServiceCaches  = Maps.newConcurrentMap();
+    private final Map<String, Set<NotifyListener.NotifyCacheListener>> notifyCacheListeners = Maps.newConcurrentMap();
+    private final Map<String, CacheLookUper>                           cacheLookUpers       = Maps.newConcurrentMap();
+
+    @Override
+    public synchronized void subscribe(String serviceName, NotifyCacheListener listener) {
+        Set<NotifyListener.NotifyCacheListener> listeners = notifyCacheListeners.get(serviceName);
+        if (listeners != null) {
+            listeners.add(listener);
+        } else {
+            listeners = Sets.newConcurrentHashSet();
+            listeners.add(listener);
+            notifyCacheListeners.put(serviceName, listeners);
+            CacheLookUper cacheLookUper = new CacheLookUper(serviceName);
+            cacheLookUper.setDaemon(true);
+            cacheLookUpers.put(serviceName, cacheLookUper);
+            cacheLookUper.start();
+        }
+    }
+
+    /**
+     * 最后一个监听器取消订阅时停止该服务的阻塞查询线程
+     */
+    @Override
+    public synchronized void unsubscribe(String serviceName, NotifyCacheListener listener) {
+        Set<NotifyListener.NotifyCacheListener> listeners = notifyCacheListeners.get(serviceName);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                notifyCacheListeners.remove(serviceName);
+                lookupServiceCaches.remove(serviceName);
+                CacheLookUper cacheLookUper = cacheLookUpers.remove(serviceName);
+                if (cacheLookUper != null) {
+                    cacheLookUper.shutdown();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void publishCacheInvalidation(String serviceName) {
+        client.updateKVValue(GrpcURLUtils.toCacheInvalidationKey(serviceName),
+                             String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 与RouterLookUper一样阻塞查询KV，但只在取值变化时才通知，首次查到的取值只作为基准
+     */
+    private class CacheLookUper extends Thread {
+
+        private final String     serviceName;
+
+        private String           lastVersion;
+
+        private volatile boolean stopped;
+
+        public CacheLookUper(String serviceName){
+            this.serviceName = serviceName;
+        }
+
+        public void shutdown() {
+            stopped = true;
+            interrupt();
+        }
+
+        private String lookupCacheUpdate() {
+            Long lastConsulIndexId = lookupServiceCaches.get(serviceName) == null ? 0L : lookupServiceCaches.get(serviceName);
+            String key = GrpcURLUtils.toCacheInvalidationKey(serviceName);
+            ConsulRouterResp consulResp = client.lookupRouterMessage(key, lastConsulIndexId);
+            if (consulResp != null) {
+                lookupServiceCaches.put(serviceName, consulResp.getConsulIndex());
+                return consulResp.getSalukiConsulRouter();
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    String version = lookupCacheUpdate();
+                    // 键不存在也是确定的基准，否则服务端第一次发布的失效通知只会被当作基准而丢失
+                    String currentVersion = version != null ? version : "";
+                    if (lastVersion != null && !currentVersion.equals(lastVersion)) {
+                        Set<NotifyListener.NotifyCacheListener> listeners = notifyCacheListeners.get(serviceName);
+                        if (listeners != null) {
+                            for (NotifyListener.NotifyCacheListener listener : listeners) {
+                                listener.notify(serviceName);
+                            }
+                        }
+                    }
+                    lastVersion = currentVersion;
+                    if (version == null) {
+                        sleep(ConsulConstants.DEFAULT_LOOKUP_INTERVAL);
+                    }
+                } catch (Throwable e) {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 服务端权重的动态调整
+     */
+    private final Map<String, Long>                                     lookupServiceWeights  = Maps.newConcurrentMap();
+    private final Map<String, Set<NotifyListener.NotifyWeightListener>> notifyWeightListeners = Maps.newConcurrentMap();
+    private final Map<String, String>                                   serviceWeights        = Maps.newConcurrentMap();
+    private final Map<String, WeightLookUper>                           weightLookUpers       = Maps.newConcurrentMap();
+
+    @Override
+    public synchronized void subscribe(String serviceName, NotifyWeightListener listener) {
+        Set<NotifyListener.NotifyWeightListener> listeners = notifyWeightListeners.get(serviceName);
+        if (listeners != null) {
+            listeners.add(listener);
+            String weights = serviceWeights.get(serviceName);
+            if (weights != null) {
+                listener.notify(serviceName, weights);
+            }
+        } else {
+            listeners = Sets.newConcurrentHashSet();
+            listeners.add(listener);
+            notifyWeightListeners.put(serviceName, listeners);
+            WeightLookUper weightLookUper = new WeightLookUper(serviceName);
+            weightLookUper.setDaemon(true);
+            weightLookUpers.put(serviceName, weightLookUper);
+            weightLookUper.start();
+        }
+    }
+
+    /**
+     * 最后一个监听器取消订阅时停止该服务的阻塞查询线程
+     */
+    @Override
+    public synchronized void unsubscribe(String serviceName, NotifyWeightListener listener) {
+        Set<NotifyListener.NotifyWeightListener> listeners = notifyWeightListeners.get(serviceName);
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                notifyWeightListeners.remove(serviceName);
+                lookupServiceWeights.remove(serviceName);
+                serviceWeights.remove(serviceName);
+                WeightLookUper weightLookUper = weightLookUpers.remove(serviceName);
+                if (weightLookUper != null) {
+                    weightLookUper.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * 取值变化时通知，包括首次查到和被删除；当前取值同时记在serviceWeights里，后订阅的监听器订阅时立即收到
+     */
+    private class WeightLookUper extends Thread {
+
+        private final String     serviceName;
+
+        private String           lastWeights;
+
+        private volatile boolean stopped;
+
+        public WeightLookUper(String serviceName){
+            this.serviceName = serviceName;
+        }
+
+        public void shutdown() {
+            stopped = true;
+            interrupt();
+        }
+
+        private String lookupWeightUpdate() {
+            Long lastConsulIndexId = lookupServiceWeights.get(serviceName) == null ? 0L : lookupServiceWeights.get(serviceName);
+            String key = GrpcURLUtils.toWeightKey(serviceName);
+            ConsulRouterResp consulResp = client.lookupRouterMessage(key, lastConsulIndexId);
+            if (consulResp != null) {
+                lookupServiceWeights.put(serviceName, consulResp.getConsulIndex());
+                return consulResp.getSalukiConsulRouter();
+            }
+            return null;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    String weights = lookupWeightUpdate();
+                    if (weights == null ? lastWeights != null : !weights.equals(lastWeights)) {
+                        if (weights == null) {
+                            serviceWeights.remove(serviceName);
+                        } else {
+                            serviceWeights.put(serviceName, weights);
+                        }
+                        Set<NotifyListener.NotifyWeightListener> listeners = notifyWeightListeners.get(serviceName);
+                        if (listeners != null) {
+                            for (NotifyListener.NotifyWeightListener listener : listeners) {
+                                listener.notify(serviceName, weights);
+                            }
+                        }
+                    }
+                    lastWeights = weights;
+                    if (weights == null) {
+                        sleep(ConsulConstants.DEFAULT_LOOKUP_INTERVAL);
+                    }
+                } catch (Throwable e) {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(2000);
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+            }
+        }
+    }
 }
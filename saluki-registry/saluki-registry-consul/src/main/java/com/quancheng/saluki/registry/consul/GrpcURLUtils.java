@@ -26,6 +26,14 @@ public class GrpcURLUtils {
         return Constants.CONSUL_SERVICE_PRE + group;
     }
 
+    public static String toCacheInvalidationKey(String serviceName) {
+        return Constants.CONSUL_SERVICE_PRE + "cache" + Constants.PATH_SEPARATOR + serviceName;
+    }
+
+    public static String toWeightKey(String serviceName) {
+        return Constants.CONSUL_SERVICE_PRE + "weight" + Constants.PATH_SEPARATOR + serviceName;
+    }
+
     private static String toServicePath(GrpcURL url) {
         String name = url.getServiceInterface();
         String group = url.getGroup();
@@ -129,6 +129,10 @@ public class ConsulClient {
                                  kvPutParams).getValue();
     }
 
+    public Boolean updateKVValue(String key, String value) {
+        return client.setKVValue(key, value).getValue();
+    }
+
     public ConsulRouterResp lookupRouterMessage(String serviceName, long lastConsulIndex) {
         QueryParams queryParams = new QueryParams(ConsulConstants.CONSUL_BLOCK_TIME_SECONDS, lastConsulIndex);
         Response<GetValue> orgResponse = client.getKVValue(serviceName, queryParams);
@@ -46,4 +46,40 @@ public @interface SalukiReference {
 
   int timeOut() default Constants.RPC_ASYNC_DEFAULT_TIMEOUT;
 
+  String proxy() default "";
+
+  String isolation() default "";
+
+  int maxConcurrent() default 0;
+
+  String[] idempotentMethods() default {};
+
+  String[] hedgingMethods() default {};
+
+  int hedgingDelay() default 0;
+
+  int maxHedges() default 0;
+
+  String[] batchMethods() default {};
+
+  String[] coalesceMethods() default {};
+
+  String[] cacheMethods() default {};
+
+  int cacheTtl() default 0;
+
+  int cacheSize() default 0;
+
+  String loadBalance() default "";
+
+  int maxInflight() default 0;
+
+  String hashKey() default "";
+
+  double hashLoadFactor() default 0;
+
+  int warmup() default 0;
+
+  String warmupCurve() default "";
+
 }
@@ -43,6 +43,71 @@ public class GrpcProperties {
 
   private String registryAddress;
 
+  /**
+   * 每个注册中心共用的netty io线程数，0为netty默认值；transport可选nio、epoll
+   */
+  private int ioThreads;
+
+  private String transport;
+
+  /**
+   * 所有group共用一个Channel，多个group由同一个服务端进程提供时不再重复建连
+   */
+  private boolean shareChannel;
+
+  /**
+   * 到每个服务端地址的初始连接数和最大连接数，单连接在途流数接近maxStreams时自动扩连接；0为默认值
+   */
+  private int connections;
+
+  private int maxConnections;
+
+  private int maxStreams;
+
+  /**
+   * 在负载均衡层摘除连续失败、成功率或耗时明显偏离其他服务端的节点；摘除时长（毫秒）按摘除次数倍增，
+   * 同时被摘除的节点不超过maxEjectionPercent；0为默认值
+   */
+  private boolean outlierDetection;
+
+  private int outlierConsecutiveErrors;
+
+  private long outlierEjectionTime;
+
+  private int outlierMaxEjectionPercent;
+
+  /**
+   * 客户端主动调用服务端的Health服务，NOT_SERVING的服务端不再选中；healthCheckInterval为探测周期（毫秒），0为默认值
+   */
+  private boolean healthCheck;
+
+  private long healthCheckInterval;
+
+  /**
+   * 服务端在响应Trailer里附带负载报告的采样比例（0~1），客户端loadbalance为loadaware时据此选路；0为不报告
+   */
+  private double loadReportRate;
+
+  /**
+   * 服务端注册的权重，0为默认值
+   */
+  private int weight;
+
+  /**
+   * 服务端启动后的预热时长（毫秒），0为不预热
+   */
+  private int warmup;
+
+  /**
+   * 本进程所在的可用区和地域，服务端随注册信息下发，客户端优先调用同可用区的服务端；
+   * 同可用区可用的服务端比例低于localityThreshold时按比例溢出到其他可用区
+   */
+  private String zone;
+
+  private String region;
+
+  private double localityThreshold;
+
   public String getHost() {
     return host;
   }
@@ -99,6 +164,150 @@ public class GrpcProperties {
     this.monitorinterval = monitorinterval;
   }
 
+  public int getIoThreads() {
+    return ioThreads;
+  }
+
+  public void setIoThreads(int ioThreads) {
+    this.ioThreads = ioThreads;
+  }
+
+  public String getTransport() {
+    return transport;
+  }
+
+  public void setTransport(String transport) {
+    this.transport = transport;
+  }
+
+  public boolean isShareChannel() {
+    return shareChannel;
+  }
+
+  public void setShareChannel(boolean shareChannel) {
+    this.shareChannel = shareChannel;
+  }
+
+  public int getConnections() {
+    return connections;
+  }
+
+  public void setConnections(int connections) {
+    this.connections = connections;
+  }
+
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  public void setMaxConnections(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  public int getMaxStreams() {
+    return maxStreams;
+  }
+
+  public void setMaxStreams(int maxStreams) {
+    this.maxStreams = maxStreams;
+  }
+
+  public boolean isOutlierDetection() {
+    return outlierDetection;
+  }
+
+  public void setOutlierDetection(boolean outlierDetection) {
+    this.outlierDetection = outlierDetection;
+  }
+
+  public int getOutlierConsecutiveErrors() {
+    return outlierConsecutiveErrors;
+  }
+
+  public void setOutlierConsecutiveErrors(int outlierConsecutiveErrors) {
+    this.outlierConsecutiveErrors = outlierConsecutiveErrors;
+  }
+
+  public long getOutlierEjectionTime() {
+    return outlierEjectionTime;
+  }
+
+  public void setOutlierEjectionTime(long outlierEjectionTime) {
+    this.outlierEjectionTime = outlierEjectionTime;
+  }
+
+  public int getOutlierMaxEjectionPercent() {
+    return outlierMaxEjectionPercent;
+  }
+
+  public void setOutlierMaxEjectionPercent(int outlierMaxEjectionPercent) {
+    this.outlierMaxEjectionPercent = outlierMaxEjectionPercent;
+  }
+
+  public boolean isHealthCheck() {
+    return healthCheck;
+  }
+
+  public void setHealthCheck(boolean healthCheck) {
+    this.healthCheck = healthCheck;
+  }
+
+  public long getHealthCheckInterval() {
+    return healthCheckInterval;
+  }
+
+  public void setHealthCheckInterval(long healthCheckInterval) {
+    this.healthCheckInterval = healthCheckInterval;
+  }
+
+  public double getLoadReportRate() {
+    return loadReportRate;
+  }
+
+  public void setLoadReportRate(double loadReportRate) {
+    this.loadReportRate = loadReportRate;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  public void setWeight(int weight) {
+    this.weight = weight;
+  }
+
+  public int getWarmup() {
+    return warmup;
+  }
+
+  public void setWarmup(int warmup) {
+    this.warmup = warmup;
+  }
+
+  public String getZone() {
+    return zone;
+  }
+
+  public void setZone(String zone) {
+    this.zone = zone;
+  }
+
+  public String getRegion() {
+    return region;
+  }
+
+  public void setRegion(String region) {
+    this.region = region;
+  }
+
+  public double getLocalityThreshold() {
+    return localityThreshold;
+  }
+
+  public void setLocalityThreshold(double localityThreshold) {
+    this.localityThreshold = localityThreshold;
+  }
+
   public String getGroup() {
     return group;
   }
@@ -137,6 +137,13 @@ public class GrpcReferenceRunner extends InstantiationAwareBeanPostProcessorAdap
       this.addMonitorInterval(rpcReferenceConfig);
       this.addHostAndPort(rpcReferenceConfig);
       this.addValidatorGroups(reference, rpcReferenceConfig);
+      this.addProxy(reference, rpcReferenceConfig);
+      this.addIsolation(reference, rpcReferenceConfig);
+      this.addHedging(reference, rpcReferenceConfig);
+      this.addBatchMethods(reference, rpcReferenceConfig);
+      this.addCoalesceMethods(reference, rpcReferenceConfig);
+      this.addCache(reference, rpcReferenceConfig);
+      this.addLoadBalance(reference, rpcReferenceConfig);
       if (this.isGenericClient(referenceClass)) {
         rpcReferenceConfig.setGeneric(true);
       }
@@ -160,6 +167,88 @@ public class GrpcReferenceRunner extends InstantiationAwareBeanPostProcessorAdap
     }
   }
 
+  private void addProxy(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
+    if (StringUtils.isNotBlank(reference.proxy())) {
+      rpcReferenceConfig.setProxy(reference.proxy());
+    }
+  }
+
+  private void addIsolation(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
+    if (StringUtils.isNotBlank(reference.isolation())) {
+      rpcReferenceConfig.setIsolation(reference.isolation());
+    }
+    if (reference.maxConcurrent() > 0) {
+      rpcReferenceConfig.setMaxConcurrent(reference.maxConcurrent());
+    }
+  }
+
+  private void addHedging(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
+    if (reference.idempotentMethods().length > 0) {
+      rpcReferenceConfig
+          .setIdempotentMethods(new HashSet<String>(Arrays.asList(reference.idempotentMethods())));
+    }
+    if (reference.hedgingMethods().length > 0) {
+      rpcReferenceConfig
+          .setHedgingMethods(new HashSet<String>(Arrays.asList(reference.hedgingMethods())));
+    }
+    if (reference.hedgingDelay() > 0) {
+      rpcReferenceConfig.setHedgingDelay(reference.hedgingDelay());
+    }
+    if (reference.maxHedges() > 0) {
+      rpcReferenceConfig.setMaxHedges(reference.maxHedges());
+    }
+  }
+
+  private void addBatchMethods(SalukiReference reference,
+      RpcReferenceConfig rpcReferenceConfig) {
+    if (reference.batchMethods().length > 0) {
+      rpcReferenceConfig
+          .setBatchMethods(new HashSet<String>(Arrays.asList(reference.batchMethods())));
+    }
+  }
+
+  private void addCoalesceMethods(SalukiReference reference,
+      RpcReferenceConfig rpcReferenceConfig) {
+    if (reference.coalesceMethods().length > 0) {
+      rpcReferenceConfig
+          .setCoalesceMethods(new HashSet<String>(Arrays.asList(reference.coalesceMethods())));
+    }
+  }
+
+  private void addCache(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
+    if (reference.cacheMethods().length > 0) {
+      rpcReferenceConfig
+          .setCacheMethods(new HashSet<String>(Arrays.asList(reference.cacheMethods())));
+    }
+    if (reference.cacheTtl() > 0) {
+      rpcReferenceConfig.setCacheTtl(reference.cacheTtl());
+    }
+    if (reference.cacheSize() > 0) {
+      rpcReferenceConfig.setCacheSize(reference.cacheSize());
+    }
+  }
+
+  private void addLoadBalance(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
+    if (StringUtils.isNotBlank(reference.loadBalance())) {
+      rpcReferenceConfig.setLoadBalance(reference.loadBalance());
+    }
+    if (reference.maxInflight() > 0) {
+      rpcReferenceConfig.setMaxInflight(reference.maxInflight());
+    }
+    if (StringUtils.isNotBlank(reference.hashKey())) {
+      rpcReferenceConfig.setHashKey(reference.hashKey());
+    }
+    if (reference.hashLoadFactor() > 0) {
+      rpcReferenceConfig.setHashLoadFactor(reference.hashLoadFactor());
+    }
+    if (reference.warmup() > 0) {
+      rpcReferenceConfig.setWarmup(reference.warmup());
+    }
+    if (StringUtils.isNotBlank(reference.warmupCurve())) {
+      rpcReferenceConfig.setWarmupCurve(reference.warmupCurve());
+    }
+  }
+
   private void addHostAndPort(RpcReferenceConfig rpcReferenceConfig) {
     String host = grpcProperties.getHost();
     int registryHttpPort = grpcProperties.getRegistryHttpPort();
@@ -206,6 +295,22 @@ public class GrpcReferenceRunner extends InstantiationAwareBeanPostProcessorAdap
       rpcReferenceConfig.setRegistryAddress(registryHostAndPort[0]);
       rpcReferenceConfig.setRegistryPort(Integer.valueOf(registryHostAndPort[1]));
     }
+    rpcReferenceConfig.setIoThreads(grpcProperties.getIoThreads());
+    rpcReferenceConfig.setTransport(grpcProperties.getTransport());
+    rpcReferenceConfig.setShareChannel(grpcProperties.isShareChannel());
+    rpcReferenceConfig.setConnections(grpcProperties.getConnections());
+    rpcReferenceConfig.setMaxConnections(grpcProperties.getMaxConnections());
+    rpcReferenceConfig.setMaxStreams(grpcProperties.getMaxStreams());
+    rpcReferenceConfig.setOutlierDetection(grpcProperties.isOutlierDetection());
+    rpcReferenceConfig.setOutlierConsecutiveErrors(grpcProperties.getOutlierConsecutiveErrors());
+    rpcReferenceConfig.setOutlierEjectionTime(grpcProperties.getOutlierEjectionTime());
+    rpcReferenceConfig.setOutlierMaxEjectionPercent(grpcProperties.getOutlierMaxEjectionPercent());
+    rpcReferenceConfig.setHealthCheck(grpcProperties.isHealthCheck());
+    rpcReferenceConfig.setHealthCheckInterval(grpcProperties.getHealthCheckInterval());
+    rpcReferenceConfig.setLoadReportRate(grpcProperties.getLoadReportRate());
+    rpcReferenceConfig.setZone(grpcProperties.getZone());
+    rpcReferenceConfig.setRegion(grpcProperties.getRegion());
+    rpcReferenceConfig.setLocalityThreshold(grpcProperties.getLocalityThreshold());
   }
 
   private void addHaRetries(SalukiReference reference, RpcReferenceConfig rpcReferenceConfig) {
@@ -133,6 +133,8 @@ public class GrpcServiceRunner implements DisposableBean, CommandLineRunner {
     rpcSerivceConfig.setRegistryRpcPort(grpcProperties.getRegistryRpcPort());
     rpcSerivceConfig.setHost(grpcProperties.getHost());
     rpcSerivceConfig.setHttpPort(grpcProperties.getRegistryHttpPort());
+    rpcSerivceConfig.setWeight(grpcProperties.getWeight());
+    rpcSerivceConfig.setWarmup(grpcProperties.getWarmup());
   }
 
   private void addRegistyAddress(RpcServiceConfig rpcSerivceConfig) {
@@ -148,6 +150,22 @@ public class GrpcServiceRunner implements DisposableBean, CommandLineRunner {
       rpcSerivceConfig.setRegistryAddress(registryHostAndPort[0]);
       rpcSerivceConfig.setRegistryPort(Integer.valueOf(registryHostAndPort[1]));
     }
+    rpcSerivceConfig.setIoThreads(grpcProperties.getIoThreads());
+    rpcSerivceConfig.setTransport(grpcProperties.getTransport());
+    rpcSerivceConfig.setShareChannel(grpcProperties.isShareChannel());
+    rpcSerivceConfig.setConnections(grpcProperties.getConnections());
+    rpcSerivceConfig.setMaxConnections(grpcProperties.getMaxConnections());
+    rpcSerivceConfig.setMaxStreams(grpcProperties.getMaxStreams());
+    rpcSerivceConfig.setOutlierDetection(grpcProperties.isOutlierDetection());
+    rpcSerivceConfig.setOutlierConsecutiveErrors(grpcProperties.getOutlierConsecutiveErrors());
+    rpcSerivceConfig.setOutlierEjectionTime(grpcProperties.getOutlierEjectionTime());
+    rpcSerivceConfig.setOutlierMaxEjectionPercent(grpcProperties.getOutlierMaxEjectionPercent());
+    rpcSerivceConfig.setHealthCheck(grpcProperties.isHealthCheck());
+    rpcSerivceConfig.setHealthCheckInterval(grpcProperties.getHealthCheckInterval());
+    rpcSerivceConfig.setLoadReportRate(grpcProperties.getLoadReportRate());
+    rpcSerivceConfig.setZone(grpcProperties.getZone());
+    rpcSerivceConfig.setRegion(grpcProperties.getRegion());
+    rpcSerivceConfig.setLocalityThreshold(grpcProperties.getLocalityThreshold());
   }
 
   private int getRealityRpcPort() {
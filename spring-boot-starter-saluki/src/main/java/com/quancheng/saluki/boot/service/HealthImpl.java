@@ -35,8 +35,7 @@ public class HealthImpl implements Health {
   public HealthCheckResponse Check(HealthCheckRequest healthcheckrequest) {
     String service = healthcheckrequest.getService();
     try {
-      Object obj = applicationContext.getBeansOfType(ReflectUtils.name2class(service));
-      if (obj != null) {
+      if (!applicationContext.getBeansOfType(ReflectUtils.name2class(service)).isEmpty()) {
         HealthCheckResponse response = new HealthCheckResponse();
         response.setStatus(com.quancheng.saluki.service.serviceparam.ServingStatus.SERVING);
         return response;